@@ -5,7 +5,7 @@ error()
 { 
 	echo "ERROR:	Improper arguments provided! "
 	echo "<memory>"
-	echo "(OPTIONAL) -d (record diaries to a file)"
+	echo "(OPTIONAL) -d (record diaries to a file - as text, or as csv / tsv if DIARY_FORMAT is set to one of those)"
 	echo "(OPTIONAL) -r (create a report on the data for each experiment)"
 	echo "(OPTIONAL) -a <analysisPath> (analyze the data using this AnalysisFile)"
 	echo "At least ONE of these flags must be set!"
@@ -41,7 +41,7 @@ analysis=$initAnalysis
 while getopts "dra:" opt; do
     case "${opt}" in
         d)
-        	diary="true"
+        	diary="${DIARY_FORMAT:-true}"
         	;;
         r)
         	report="true"
@@ -1,68 +1,88 @@
 import sys
+import matplotlib
+matplotlib.use("Agg")
 import numpy as np
 import matplotlib.pyplot as plt
+from multiprocessing import Pool
 from scipy.optimize import curve_fit
 
 def fit_func(x, a, b, c):
      y = a * np.exp(-b * x) + c
      return y
 
-# 0->pythonFile 1->AOType 2->folderPath 3->title 4->xLabel 5->yLabel 6->xData 7->xType 8->yData 9->yType
-
-numArgs = len(sys.argv)
-if numArgs != 10:
-    sys.exit(10) # numArgs
-
-aoType = sys.argv[1]
-folderPath = sys.argv[2]
-titl = sys.argv[3]
-xLab = sys.argv[4]
-yLab = sys.argv[5]
-givenXs = sys.argv[6].split(",")
-xType = sys.argv[7]
-givenYs = sys.argv[8].split(",")
-yType = sys.argv[9]
+def convert(givenValues, givenType):
+    retVal = []
+    if givenType == "int":
+        for vI in givenValues:
+            retVal.append(int(vI.replace("[","").replace("]","")))
+    elif givenType == "float":
+        for vI in givenValues:
+            retVal.append(float(vI.replace("[","").replace("]","")))
+    else:
+        for vI in givenValues:
+            retVal.append(vI.replace("[","").replace("]",""))
+    return retVal
 
-x = []
-y = []
+def draw(aoType, folderPath, titl, xLab, yLab, x, y):
+    xLen = len(x)
+    yLen = len(y)
+    
+    plt.figure(figsize=(16, 9), dpi=90)
+    
+    if aoType == "delayCounter":
+        plt.plot(x, y, ".")
+    elif aoType == "histogram":
+        plt.plot(y, "-o")
+        plt.xticks(np.arange(xLen), x, size='small')
+    elif aoType == "throughput":
+        plt.plot(x, y, ".")
+        plt.plot(np.unique(x), np.poly1d(np.polyfit(x, y, 3))(np.unique(x))) 
+    else:
+        plt.close()
+        return 11 #Bad_Args
+    
+    plt.title(titl)
+    plt.xlabel(xLab)
+    plt.ylabel(yLab)
+    plt.savefig(folderPath+titl+'.png', bbox_inches='tight')
+    plt.close()
+    return 0
 
-plt.figure(figsize=(16, 9), dpi=90)
+def drawGraph(graph):
+    # graph = [aoType, folderPath, title, xLabel, yLabel, xType, yType, xData, yData]
+    # A graph that can't be drawn is reported and skipped - so it doesn't take the rest of the batch with it
+    try:
+        retVal = draw(graph[0], graph[1], graph[2], graph[3], graph[4], 
+                      convert(graph[7], graph[5]), convert(graph[8], graph[6]))
+    except Exception as e:
+        plt.close("all")
+        print("Couldn't draw graph " + graph[2] + ": " + repr(e))
+        return 12 #Draw_Failed
+    if retVal != 0:
+        print("Couldn't draw graph " + graph[2] + ": unknown graph type " + graph[0])
+    return retVal
 
-if xType == "int":
-    for xI in givenXs:
-        x.append(int(xI.replace("[","").replace("]","")))
-elif xType == "float":
-    for xI in givenXs:
-        x.append(float(xI.replace("[","").replace("]","")))
-else:
-    for xI in givenXs:
-        x.append(xI.replace("[","").replace("]",""))
-        
-xLen = len(x)
-        
-if yType == "int":
-    for yI in givenYs:
-        y.append(int(yI.replace("[","").replace("]","")))
-elif yType == "float":
-    for yI in givenYs:
-        y.append(float(yI.replace("[","").replace("]","")))
-else:
-    for yI in givenYs:
-        y.append(yI.replace("[","").replace("]",""))
-        
-yLen = len(y)
+def readBatch(dataPath):
+    # Each graph is 3 tab-separated lines:
+    # graph aoType folderPath title xLabel yLabel xType yType
+    # x xData...
+    # y yData...
+    graphs = []
+    with open(dataPath) as dataFile:
+        lines = dataFile.read().split("\n")
+    i = 0
+    while i + 2 < len(lines):
+        header = lines[i].split("\t")
+        if header[0] != "graph" or len(header) != 8:
+            i += 1
+            continue
+        xData = lines[i+1].split("\t")[1:]
+        yData = lines[i+2].split("\t")[1:]
+        graphs.append(header[1:] + [xData, yData])
+        i += 3
+    return graphs
 
-if aoType == "delayCounter":
-    plt.plot(x, y, ".")
-elif aoType == "histogram":
-    plt.plot(y, "-o")
-    plt.xticks(np.arange(xLen), x, size='small')
-elif aoType == "throughput":
-    plt.plot(x, y, ".")
-    plt.plot(np.unique(x), np.poly1d(np.polyfit(x, y, 3))(np.unique(x))) 
-else:
-    sys.exit(11) #Bad_Args
-    
+# An old attempt at fitting the throughput graphs - kept for reference
 '''
     x1 = x[1]
     xMid = x[int(xLen/2)]
@@ -115,9 +135,37 @@ else:
     plt.plot(np.unique(x), np.poly1d(np.polyfit(x, y, 2))(np.unique(x)), label="x^2")
     
     plt.plot(np.unique(x), np.poly1d(np.polyfit(x, y, 4))(np.unique(x)), label="x^4")
-'''  
+'''
 
-plt.title(titl)
-plt.xlabel(xLab)
-plt.ylabel(yLab)
-plt.savefig(folderPath+titl+'.png', bbox_inches='tight')
+# Batch: 0->pythonFile 1->--batch 2->dataFile 3->(OPTIONAL) numWorkers
+# Single: 0->pythonFile 1->AOType 2->folderPath 3->title 4->xLabel 5->yLabel 6->xData 7->xType 8->yData 9->yType
+
+# The batch path starts a multiprocessing Pool - whose workers re-import this file under spawn
+if __name__ == "__main__":
+    numArgs = len(sys.argv)
+    if numArgs >= 3 and sys.argv[1] == "--batch":
+        graphs = readBatch(sys.argv[2])
+        numWorkers = 1
+        if numArgs > 3:
+            numWorkers = max(int(sys.argv[3]), 1)
+        
+        if numWorkers > 1 and len(graphs) > 1:
+            workers = Pool(min(numWorkers, len(graphs)))
+            results = workers.map(drawGraph, graphs)
+            workers.close()
+            workers.join()
+        else:
+            results = [drawGraph(graph) for graph in graphs]
+        
+        failed = [r for r in results if r != 0]
+        print("Drew " + str(len(results) - len(failed)) + " of " + str(len(results)) + " graphs.")
+        if failed:
+            sys.exit(failed[0])
+        sys.exit(0)
+    
+    if numArgs != 10:
+        sys.exit(10) # numArgs
+    
+    x = convert(sys.argv[6].split(","), sys.argv[7])
+    y = convert(sys.argv[8].split(","), sys.argv[9])
+    sys.exit(draw(sys.argv[1], sys.argv[2], sys.argv[3], sys.argv[4], sys.argv[5], x, y))
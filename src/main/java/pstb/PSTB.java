@@ -2,7 +2,10 @@ package pstb;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -34,6 +37,7 @@ import pstb.startup.workload.PSAction;
 import pstb.startup.workload.WorkloadFileParser;
 import pstb.util.PSTBError;
 import pstb.util.PSTBUtil;
+import pstb.util.PSTBUtil.WaitType;
 import pstb.util.UI;
 
 /**
@@ -114,7 +118,7 @@ public class PSTB {
         }
         
         logger.debug("Properties file loaded successfully!!");
-            
+        
         ArrayList<String> workloadFilesStrings = benchmarkRules.getWorkloadFilesStrings();
         ArrayList<PSEngine> requestedEngines = benchmarkRules.getEngines();
         boolean pRequested = benchmarkRules.padresRequested();
@@ -243,7 +247,7 @@ public class PSTB {
                     }
                     
                     allLTs.put(topoI, network);
-                    
+                
                 }
                 logger.debug("Topology Check Complete for topology " + topoI + ".");
             }
@@ -308,10 +312,14 @@ public class PSTB {
         ArrayList<ExperimentType> askedModes = benchmarkRules.getModes();
         Iterator<String> iteratorLT = allLTs.keySet().iterator();
         
+        // It's made through a channel so the throughput master can multiplex its clients over it
         ServerSocket masterSocket = null;
         try
         {
-            masterSocket = new ServerSocket(PSTBUtil.PORT);
+            ServerSocketChannel masterChannel = ServerSocketChannel.open();
+            masterChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            masterChannel.bind(new InetSocketAddress(PSTBUtil.PORT));
+            masterSocket = masterChannel.socket();
         }
         catch(Exception e)
         {
@@ -377,6 +385,23 @@ public class PSTB {
                         }
                     }
                     
+                    local.setOpenLoop(benchmarkRules.getOpenLoop());
+                    dis.setOpenLoop(benchmarkRules.getOpenLoop());
+                    local.setAsyncWindow(benchmarkRules.getAsyncWindow());
+                    dis.setAsyncWindow(benchmarkRules.getAsyncWindow());
+                    local.setClientsPerHost(benchmarkRules.getClientsPerHost());
+                    dis.setClientsPerHost(benchmarkRules.getClientsPerHost());
+                    local.setPayloadContent(benchmarkRules.getPayloadContent());
+                    dis.setPayloadContent(benchmarkRules.getPayloadContent());
+                    local.setDiaryChunkSize(benchmarkRules.getDiaryChunkSize());
+                    dis.setDiaryChunkSize(benchmarkRules.getDiaryChunkSize());
+                    local.setLatencyRecording(benchmarkRules.getLatencyRecording());
+                    dis.setLatencyRecording(benchmarkRules.getLatencyRecording());
+                    local.setHistogramPrecision(benchmarkRules.getHistogramPrecision());
+                    dis.setHistogramPrecision(benchmarkRules.getHistogramPrecision());
+                    local.setRateSearch(benchmarkRules.getRateSearch());
+                    dis.setRateSearch(benchmarkRules.getRateSearch());
+                    
                     if(givenDS.equals(DistributedState.No) || givenDS.equals(DistributedState.Both) )
                     {
                         checkLocalPT = local.developTopologyObjects(false);
@@ -572,7 +597,7 @@ public class PSTB {
                     return false;
                 }
                 
-                PSTBUtil.synchronizeRun();
+                PSTBUtil.waitUntil(givenPT.getRunStartTime(), logger, "Main: ");
                 logger.fatal("Synchronization complete.");
                 
                 PhysicalTopology.ActiveProcessRetVal valueCAP = givenPT.checkActiveProcesses();
@@ -621,7 +646,7 @@ public class PSTB {
                     }
                     
                     // So that we don't continuously check, let's put this thread to sleep for a tenth of the run
-                    PSTBUtil.waitAPeriod(sleepLength, logger, "Main: ");
+                    PSTBUtil.waitAPeriod(sleepLength, WaitType.Park, logger, "Main: ");
                     
                     valueCAP = givenPT.checkActiveProcesses();
                 }
@@ -693,9 +718,9 @@ public class PSTB {
                         }
                         logger.debug("Run starting...");
                         
-                        PSTBUtil.synchronizeRun();
+                        PSTBUtil.waitUntil(givenPT.getRunStartTime(), logger, "Main: ");
                         logger.info("Synchronization complete.");
-                                
+                        
                         PhysicalTopology.ActiveProcessRetVal valueCAP = givenPT.checkActiveProcesses();
                         while(!valueCAP.equals(ActiveProcessRetVal.FloatingBrokers))
                         {
@@ -713,9 +738,9 @@ public class PSTB {
                                 givenPT.destroyAllNodes();
                                 return false;
                             }
-                                    
+                            
                             // So that we don't continuously check, let's put this thread to sleep for two seconds
-                            PSTBUtil.waitAPeriod(givenPL, logger, "");
+                            PSTBUtil.waitAPeriod(givenPL, WaitType.Park, logger, "");
                             
                             valueCAP = givenPT.checkActiveProcesses();
                         }    
@@ -0,0 +1,394 @@
+package pstb.analysis;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.analysis.analysisobjects.PSTBAnalysisObject;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * A cache of what each diary contributed to each analysis, kept between runs of the analyzers.
+ * 
+ * Every result is stored under the hash of the diary's contents plus the kind of analysis (and its parameters),
+ * so adding a new run's diaries only means analyzing those - everything else is read back from the cache and merged.
+ * A diary whose file changes gets a new hash, so its old results are simply never looked up again.
+ * 
+ * Hashing a diary means reading all of it, so the hashes are remembered too (in HASH_INDEX),
+ * along with each file's size and modification time - a file is only hashed again if one of those changes.
+ * 
+ * To clear the cache, delete its folder.
+ */
+public class AnalysisCache
+{
+    // Constants
+    public static final int VERSION = 1;
+    private static final String HASH_INDEX = "diaryHashes.txt";
+    private static final String RESULT_EXTENSION = ".res";
+    private static final String INDEX_SEPARATOR = "\t";
+    private static final int HASH_BUFFER_SIZE = 1 << 20;
+    
+    // Variables
+    private final Path diaryFolder;
+    private final Path cacheFolder;
+    private final ConcurrentHashMap<String, String[]> knownFiles; // diary name -> {size, modified time, hash}
+    private int numHits;
+    private int numMisses;
+    
+    /**
+     * Constructor
+     * 
+     * @param givenDiaryFolder - the folder the diary files are in
+     * @param givenCacheFolder - the folder to keep the cache in
+     */
+    public AnalysisCache(Path givenDiaryFolder, Path givenCacheFolder)
+    {
+        diaryFolder = givenDiaryFolder;
+        cacheFolder = givenCacheFolder;
+        knownFiles = new ConcurrentHashMap<String, String[]>();
+        numHits = 0;
+        numMisses = 0;
+    }
+    
+    /**
+     * Creates the cache folder (if needed), and reads the diary hashes remembered from earlier runs
+     * 
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false if the cache can't be used; true otherwise
+     */
+    public boolean open(Logger log, String logHeader)
+    {
+        try
+        {
+            Files.createDirectories(cacheFolder);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't create the analysis cache " + cacheFolder + ": ", e);
+            return false;
+        }
+        
+        Path indexPath = cacheFolder.resolve(HASH_INDEX);
+        if(Files.notExists(indexPath))
+        {
+            return true;
+        }
+        
+        List<String> lines = null;
+        try
+        {
+            lines = Files.readAllLines(indexPath, StandardCharsets.UTF_8);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't read the analysis cache's diary hashes - they'll be worked out again: ", e);
+            return true;
+        }
+        
+        for(int i = 0 ; i < lines.size() ; i++)
+        {
+            String[] fields = lines.get(i).split(INDEX_SEPARATOR);
+            if(fields.length == 4)
+            {
+                knownFiles.put(fields[0], new String[] { fields[1], fields[2], fields[3] });
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Remembers the diary hashes for the next run
+     * 
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false on error; true otherwise
+     */
+    public boolean save(Logger log, String logHeader)
+    {
+        TreeMap<String, String[]> sortedFiles = new TreeMap<String, String[]>(knownFiles);
+        
+        Path indexPath = cacheFolder.resolve(HASH_INDEX);
+        Path tempPath = cacheFolder.resolve(HASH_INDEX + ".tmp");
+        BufferedWriter out = null;
+        try
+        {
+            out = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8);
+            for(String nameI : sortedFiles.keySet())
+            {
+                String[] fileI = sortedFiles.get(nameI);
+                out.write(nameI + INDEX_SEPARATOR + String.join(INDEX_SEPARATOR, fileI) + "\n");
+            }
+            out.close();
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't save the analysis cache's diary hashes: ", e);
+            if(out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch(IOException eClose)
+                {
+                    // We're already reporting an error
+                }
+            }
+            return false;
+        }
+        
+        log.info(logHeader + "Analysis cache: " + numHits + " results reused, " + numMisses + " worked out.");
+        return true;
+    }
+    
+    /**
+     * Reads a cached result into the given analysis object
+     * The result is first read into an empty object of the same kind, so a truncated or corrupt result never touches givenAO
+     * - it's deleted instead, and will be worked out (and stored) again.
+     * 
+     * @param givenDiaryName - the diary the result came from
+     * @param givenKind - the kind of analysis (and its parameters)
+     * @param givenAO - the analysis object to add the result to
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return true if the result was cached (and has been added); false otherwise
+     */
+    public boolean load(String givenDiaryName, String givenKind, PSTBAnalysisObject givenAO, Logger log, String logHeader)
+    {
+        Path resultPath = getResultPath(givenDiaryName, givenKind, log, logHeader);
+        if(resultPath == null || Files.notExists(resultPath))
+        {
+            countMiss();
+            return false;
+        }
+        
+        byte[] result = null;
+        try
+        {
+            result = Files.readAllBytes(resultPath);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(result));
+            if(in.readInt() != VERSION)
+            {
+                countMiss();
+                return false;
+            }
+            
+            givenAO.createEmpty().readData(in);
+            if(in.available() != 0)
+            {
+                throw new IOException(in.available() + " bytes left over after the result");
+            }
+        }
+        catch(IOException | RuntimeException e)
+        {
+            log.error(logHeader + "Couldn't read the cached " + givenKind + " of " + givenDiaryName + " - it'll be worked out again: ", e);
+            deleteResult(resultPath, log, logHeader);
+            countMiss();
+            return false;
+        }
+        
+        // The result reads cleanly - so it can now be added to givenAO
+        try
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(result, Integer.BYTES, result.length - Integer.BYTES));
+            givenAO.readData(in);
+        }
+        catch(IOException e)
+        {
+            // The same bytes were just read without error - so this can't happen
+            log.error(logHeader + "Couldn't re-read the cached " + givenKind + " of " + givenDiaryName + ": ", e);
+            countMiss();
+            return false;
+        }
+        
+        countHit();
+        return true;
+    }
+    
+    private static void deleteResult(Path givenResultPath, Logger log, String logHeader)
+    {
+        try
+        {
+            Files.deleteIfExists(givenResultPath);
+        }
+        catch(IOException e)
+        {
+            log.warn(logHeader + "Couldn't delete unreadable cached result " + givenResultPath + ": ", e);
+        }
+    }
+    
+    /**
+     * Caches the given analysis object's data as the result of the given analysis of the given diary
+     * 
+     * @param givenDiaryName - the diary the result came from
+     * @param givenKind - the kind of analysis (and its parameters)
+     * @param givenAO - the analysis object holding the result (of this diary alone)
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false on error; true otherwise
+     */
+    public boolean store(String givenDiaryName, String givenKind, PSTBAnalysisObject givenAO, Logger log, String logHeader)
+    {
+        Path resultPath = getResultPath(givenDiaryName, givenKind, log, logHeader);
+        if(resultPath == null)
+        {
+            return false;
+        }
+        
+        // Other threads may be storing results too - so write a private file, and then move it into place
+        Path tempPath = resultPath.resolveSibling(resultPath.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try
+        {
+            ByteArrayOutputStream resultBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(resultBytes);
+            out.writeInt(VERSION);
+            givenAO.writeData(out);
+            out.flush();
+            
+            Files.write(tempPath, resultBytes.toByteArray());
+            Files.move(tempPath, resultPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't cache the " + givenKind + " of " + givenDiaryName + ": ", e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    private synchronized void countHit()
+    {
+        numHits++;
+    }
+    
+    private synchronized void countMiss()
+    {
+        numMisses++;
+    }
+    
+    /**
+     * @return null if the diary can't be hashed; the Path its result should be cached at otherwise
+     */
+    private Path getResultPath(String givenDiaryName, String givenKind, Logger log, String logHeader)
+    {
+        String hash = getHash(givenDiaryName, log, logHeader);
+        if(hash == null)
+        {
+            return null;
+        }
+        
+        String cleanKind = givenKind.replaceAll("[^a-zA-Z0-9-]", "-");
+        return cacheFolder.resolve(hash + "_" + cleanKind + RESULT_EXTENSION);
+    }
+    
+    /**
+     * Gets the hash of the given diary's contents
+     * It's only worked out if the diary's file is new, or has changed, since it was last hashed
+     * 
+     * @return the hash; null if it couldn't be worked out
+     */
+    private String getHash(String givenDiaryName, Logger log, String logHeader)
+    {
+        Path diaryPath = diaryFolder.resolve(givenDiaryName + ".dia");
+        
+        String size = null;
+        String modified = null;
+        try
+        {
+            size = Long.toString(Files.size(diaryPath));
+            modified = Long.toString(Files.getLastModifiedTime(diaryPath).toMillis());
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't look at diary file " + diaryPath + ": ", e);
+            return null;
+        }
+        
+        String[] known = knownFiles.get(givenDiaryName);
+        if(known != null && known[0].equals(size) && known[1].equals(modified))
+        {
+            return known[2];
+        }
+        
+        String hash = hashFile(diaryPath, log, logHeader);
+        if(hash != null)
+        {
+            knownFiles.put(givenDiaryName, new String[] { size, modified, hash });
+        }
+        return hash;
+    }
+    
+    private static String hashFile(Path givenPath, Logger log, String logHeader)
+    {
+        MessageDigest digest = null;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            log.error(logHeader + "Couldn't get a hash function: ", e);
+            return null;
+        }
+        
+        FileChannel channel = null;
+        try
+        {
+            channel = FileChannel.open(givenPath, StandardOpenOption.READ);
+            ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+            while(channel.read(buffer) != -1)
+            {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't hash diary file " + givenPath + ": ", e);
+            if(channel != null)
+            {
+                try
+                {
+                    channel.close();
+                }
+                catch(IOException eClose)
+                {
+                    // We're already reporting an error
+                }
+            }
+            return null;
+        }
+        
+        byte[] hashBytes = digest.digest();
+        StringBuilder retVal = new StringBuilder(hashBytes.length * 2);
+        for(int i = 0 ; i < hashBytes.length ; i++)
+        {
+            retVal.append(String.format("%02x", hashBytes[i]));
+        }
+        return retVal.toString();
+    }
+}
@@ -2,8 +2,6 @@ package pstb.analysis;
 
 import java.awt.geom.Point2D;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -11,10 +9,13 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -28,15 +29,14 @@ import pstb.analysis.analysisobjects.scenario.PSTBScenarioAO;
 import pstb.analysis.analysisobjects.throughput.PSTBFinalThroughput;
 import pstb.analysis.analysisobjects.throughput.PSTBThroughputAO;
 import pstb.analysis.analysisobjects.throughput.PSTBTwoPoints;
-import pstb.analysis.diary.ClientDiary;
 import pstb.analysis.diary.DiaryEntry;
+import pstb.analysis.diary.DiaryExportFormat;
+import pstb.analysis.diary.DiaryExporter;
 import pstb.analysis.diary.DiaryHeader;
-import pstb.analysis.diary.DistributedFlagValue;
+import pstb.analysis.diary.DiaryReader;
+import pstb.analysis.diary.LatencyHistogram;
+import pstb.analysis.diary.ReadableDiary;
 import pstb.benchmark.object.client.padres.PSClientPADRES;
-import pstb.startup.config.AttributeRatio;
-import pstb.startup.config.MessageSize;
-import pstb.startup.config.NetworkProtocol;
-import pstb.startup.config.NumAttribute;
 import pstb.startup.workload.PSActionType;
 import pstb.util.PSTBError;
 import pstb.util.PSTBUtil;
@@ -90,12 +90,18 @@ public class Analyzer {
     private static final String finalThroughputStub = "finalThroughput/";
     private static final String roundLatencyStub = "roundLatency/";
     private static final String crStub = "currentRatio/";
+    private static final String graphDataStub = "graphData.txt";
+    private static final String cacheStub = "cache/";
     
     // Variables - Key Components
-    private static HashMap<String, ClientDiary> bookshelf = new HashMap<String, ClientDiary>();
+    private static ConcurrentHashMap<String, ReadableDiary> bookshelf = new ConcurrentHashMap<String, ReadableDiary>();
     private static ArrayList<PSTBAnalysisObject> analyzedInformation = new ArrayList<PSTBAnalysisObject>();
     private static ArrayList<AnalysisType> analyzedCheckScenario = new ArrayList<AnalysisType>();
     private static ArrayList<DiaryHeader> analyzedCheckThroughput = new ArrayList<DiaryHeader>();
+    private static DiaryContextIndex scenarioIndex = new DiaryContextIndex(NUM_SCENARIO_STRINGS, LOC_TOPO_FILE_PATH);
+    private static DiaryContextIndex throughputIndex = new DiaryContextIndex(NUM_THROUGHPUT_STRINGS, LOC_TOPO_FILE_PATH);
+    private static DiaryExportFormat diaryFormat = DiaryExportFormat.Text;
+    private static AnalysisCache analysisCache = null;
     
     // Variables - Folder Strings
     private static String diariesFolderString;
@@ -135,6 +141,16 @@ public class Analyzer {
         {
             printDiaries = new Boolean(true);
         }
+        else if(printFlag.equals("csv"))
+        {
+            printDiaries = new Boolean(true);
+            diaryFormat = DiaryExportFormat.CSV;
+        }
+        else if(printFlag.equals("tsv"))
+        {
+            printDiaries = new Boolean(true);
+            diaryFormat = DiaryExportFormat.TSV;
+        }
         else if(printFlag.equals("false"))
         {
             printDiaries = new Boolean(false);
@@ -218,6 +234,14 @@ public class Analyzer {
             }
             boolean isScenario = ext.equals(AnalysisFileExtension.sin);
             
+            // Anything already analyzed in an earlier run is read back from the cache
+            analysisCache = new AnalysisCache(Paths.get(System.getProperty("user.dir")), Paths.get(analysisFolderString + cacheStub));
+            if(!analysisCache.open(logger, logHeader))
+            {
+                logger.warn(logHeader + "Analyzing without a cache.");
+                analysisCache = null;
+            }
+            
             logger.info("Beginning to execute these analysises...");
             boolean analysisCheck = executeAnalysis(requestedAnalysis, isScenario);
             if(!analysisCheck)
@@ -225,6 +249,10 @@ public class Analyzer {
                 logger.error("Analysis Failed!");
                 System.exit(PSTBError.A_ANALYSIS);
             }
+            if(analysisCache != null)
+            {
+                analysisCache.save(logger, logHeader);
+            }
             logger.info("Analysis complete.");
             
             logger.info("Storing this analysis into a file...");
@@ -247,14 +275,11 @@ public class Analyzer {
             if(true)
             {
                 logger.info("Starting graphs...");
+                // Every graph goes into one data file, which graph.py draws in one go
+                GraphBatch graphs = new GraphBatch();
                 int numAO = analyzedInformation.size();
                 for(int i = 0; i < numAO ; i++)
                 {
-                    String[] command = new String[11];
-                    command[0] = "python";
-                    command[1] = "graph.py";
-                    boolean createGraph = false;
-                    
                     if(isScenario)
                     {
                         AnalysisType atI = analyzedCheckScenario.get(i);
@@ -266,7 +291,6 @@ public class Analyzer {
                             
                             if(t.size() > 1)
                             {
-                                createGraph = true;
                                 ArrayList<Long> x = new ArrayList<Long>();
                                 ArrayList<Integer> y = new ArrayList<Integer>();
                                 
@@ -275,22 +299,18 @@ public class Analyzer {
                                     y.add(tY);
                                 });
                                 
-                                command[2] = "delayCounter";
-                                command[3] = delayFolderString;
-                                command[4] = temp.getName();
+                                String xLabel = null;
                                 if(tempsType.equals(PSActionType.R))
                                 {
-                                    command[5] = "Delay (ms)";
+                                    xLabel = "Delay (ms)";
                                 }
                                 else
                                 {
-                                    command[5] = "Delay (ns)";
+                                    xLabel = "Delay (ns)";
                                 }
-                                command[6] = "Frequency";
-                                command[7] = Arrays.toString(x.toArray());
-                                command[8] = "int";
-                                command[9] = Arrays.toString(y.toArray());
-                                command[10] = "int";
+                                
+                                graphs.addGraph("delayCounter", delayFolderString, temp.getName(), xLabel, "Frequency", 
+                                        x.toArray(), "int", y.toArray(), "int");
                             }
                             
                         }
@@ -303,10 +323,10 @@ public class Analyzer {
                             
                             if(y != null)
                             {
-                                createGraph = true;
                                 int yLength = y.length;
                                 
                                 String[] x = new String[yLength];
+                                Integer[] boxedY = new Integer[yLength];
                                 
                                 long floorValue = temp.getFloorValue();
                                 Double range = temp.getRange();
@@ -335,18 +355,13 @@ public class Analyzer {
                                     }
                                     
                                     x[j] = convertedFloor + " - " + convertedCeiling;
+                                    boxedY[j] = y[j];
                                 }
                                 
-                                command[2] = "histogram";
-                                command[3] = histogramFolderString;
-                                command[4] = temp.getName();
-                                command[5] = "";
-                                command[6] = "Frequency";
-                                command[7] = Arrays.toString(x);
-                                command[8] = "string";
-                                command[9] = Arrays.toString(y);
-                                command[10] = "int";
+                                graphs.addGraph("histogram", histogramFolderString, temp.getName(), "", "Frequency", 
+                                        x, "string", boxedY, "int");
                             }
+                            
                         }
                     }
                     else
@@ -361,8 +376,6 @@ public class Analyzer {
                             int numPoints = data.size();
                             if(numPoints > 1)
                             {
-                                createGraph = true;
-                                
                                 String[] x = new String[numPoints];
                                 String[] y = new String[numPoints];
                                 
@@ -376,56 +389,53 @@ public class Analyzer {
                                     y[j] = yJ.toString();
                                 }
                                 
-                                command[2] = "throughput";
+                                String folder = null;
+                                String yLabel = null;
                                 if(dhI.equals(DiaryHeader.CurrentThroughput))
                                 {
-                                    command[3] = currentThroughputFolderString;
-                                    command[6] = "Current Throughput (messages/sec)";
+                                    folder = currentThroughputFolderString;
+                                    yLabel = "Current Throughput (messages/sec)";
                                 }
                                 else if(dhI.equals(DiaryHeader.AverageThroughput))
                                 {
-                                    command[3] = averageThroughputFolderString;
-                                    command[6] = "Average Throughput (messages/sec)";
+                                    folder = averageThroughputFolderString;
+                                    yLabel = "Average Throughput (messages/sec)";
                                 }
                                 else if(dhI.equals(DiaryHeader.Secant))
                                 {
-                                    command[3] = secantFolderString;
-                                    command[6] = "Secant (unitless)";
+                                    folder = secantFolderString;
+                                    yLabel = "Secant (unitless)";
                                 }
                                 else if(dhI.equals(DiaryHeader.CurrentRatio))
                                 {
-                                    command[3] = crFolderString;
-                                    command[6] = "Ratio (unitless)";
+                                    folder = crFolderString;
+                                    yLabel = "Ratio (unitless)";
                                 }
                                 else
                                 {
-                                    command[3] = roundLatencyFolderString;
-                                    command[6] = "Latency (sec)";
+                                    folder = roundLatencyFolderString;
+                                    yLabel = "Latency (sec)";
                                 }
-                                command[4] = aoI.getName();
-                                command[5] = "Input Rate (messages/sec)";
-                                command[7] = Arrays.toString(x);
-                                command[8] = "float";
-                                command[9] = Arrays.toString(y);
-                                command[10] = "float";
+                                
+                                graphs.addGraph("throughput", folder, aoI.getName(), "Input Rate (messages/sec)", yLabel, 
+                                        x, "float", y, "float");
                             }
-                            
-                        }
-                    }
-                    
-                    if(createGraph)
-                    {
-                        Boolean graphCheck = PSTBUtil.createANewProcess(command, logger, true, false,
-                                "Couldn't create graph process!", 
-                                "Graph complete.", 
-                                "Graph process failed!");
-                        if(graphCheck == null || !graphCheck)
-                        {
-                            logger.error("Graph failed!");
-                            System.exit(PSTBError.A_REPORT);
+                        
                         }
                     }
                 }
+                
+                String graphDataFolder = throughputFolderString;
+                if(isScenario)
+                {
+                    graphDataFolder = scenarioFolderString;
+                }
+                boolean graphCheck = graphs.draw(Paths.get(graphDataFolder + graphDataStub), logger, logHeader);
+                if(!graphCheck)
+                {
+                    logger.error("Graph failed!");
+                    System.exit(PSTBError.A_REPORT);
+                }
                 logger.info("Graphs complete.");
             }
         }
@@ -448,47 +458,22 @@ public class Analyzer {
             return s.endsWith(".dia");
         });
         
-        // Loop through the files and add them to the "Bookshelf"
-        for(int i = 0 ; i < listFiles.length ; i++)
-        {
-            File diaryI = listFiles[i];
-            String diaryIName = diaryI.toString().replace(".dia", "").replace(System.getProperty("user.dir"), "").replace("/", "");
-            
-            FileInputStream in = null;
-            try 
-            {
-                in = new FileInputStream(diaryI);
-            } 
-            catch (FileNotFoundException e) 
-            {
-                logger.error(logHeader + "Error creating new file input stream to read diary: ", e);
-                return false;
-            }
-            
-            ClientDiary tiedDiary = PSTBUtil.readDiaryObject(in, logger, logHeader);
-            if(tiedDiary != null)
-            {
-                bookshelf.put(diaryIName, tiedDiary);
-            }
-            else
-            {
-                logger.error(logHeader + "Error getting diary " + diaryIName + "!");
-                return false;
-            }
-            
-            try 
-            {
-                in.close();
-            } 
-            catch (IOException e) 
-            {
-                logger.error(logHeader + "Error closing FileInputStream: ", e);
-                return false;
-            }
-            
-        }
+        // Open the files in parallel and add them to the "Bookshelf"
+        // Binary diaries are memory-mapped - nothing is read until the analysis asks for it
+        boolean openCheck = DiaryReader.openDiaries(listFiles, (diaryI) -> {
+            return diaryI.toString()
+                    .replace(".dia", "")
+                    .replace(System.getProperty("user.dir"), "")
+                    .replace("/", "");
+        }, bookshelf, logger, logHeader);
         
-        return true;
+        // Split every diary's name into its context once, so the analyses can look diaries up by it
+        ArrayList<String> sortedNames = new ArrayList<String>(bookshelf.keySet());
+        sortedNames.sort(null);
+        scenarioIndex.addAll(sortedNames);
+        throughputIndex.addAll(sortedNames);
+        
+        return openCheck;
     }
     
     /**
@@ -513,34 +498,11 @@ public class Analyzer {
             }
         }
         
-        // Try to record diaries to this file
-        try
+        // Record each diary to its own file (any old ones are overwritten)
+        boolean exportCheck = DiaryExporter.exportDiaries(bookshelf, diariesFolderString, diaryFormat, logger, logHeader);
+        if(!exportCheck)
         {
-            bookshelf.forEach((diaryName, diary)->
-            {
-                String diaryFileString = diariesFolderString + diaryName + ".txt";
-                Path diaryFilePath = Paths.get(diaryFileString);
-                
-                // If any old diaries exist here - delete them
-                try 
-                {
-                    Files.deleteIfExists(diaryFilePath);
-                } 
-                catch (IOException e)
-                {
-                    throw new IllegalArgumentException("IO couldn't delete file " + diaryFileString + "!");
-                }
-                
-                boolean check = diary.recordDiary(diaryFilePath, logger);
-                if(!check)
-                {
-                    throw new IllegalArgumentException();
-                }
-            });
-        }
-        catch(IllegalArgumentException e)
-        {
-            logger.error(logHeader + "Couldn't records all of the diaries to a file: ", e);
+            logger.error(logHeader + "Couldn't records all of the diaries to a file!");
             return false;
         }
         
@@ -627,6 +589,16 @@ public class Analyzer {
         ArrayList<String> requestedDiaryNames = getAffiliatedScenarioDiaries(requestedBN, requestedTFS, requestedDFV, requestedP, 
                 requestedRL, requestedRN, requestedCN);
         
+        for(int i = 0 ; i < requestedDiaryNames.size() ; i++)
+        {
+            String diaryNameI = requestedDiaryNames.get(i);
+            if(!bookshelf.containsKey(diaryNameI))
+            {
+                logger.error(logHeader + diaryNameI + " isn't in the bookshelf!");
+                return false;
+            }
+        }
+        
         String RL = null;
         String RN = null;
         String CN = null;
@@ -670,74 +642,29 @@ public class Analyzer {
         }
         int numPSATs = requestedPSATList.size();
         
-        PSTBScenarioAO analysisObjectI = null;
         for(int j = 0 ; j < numATs ; j++)
         {
             AnalysisType atJ = (AnalysisType) requestedATList.get(j);
-            if(atJ.equals(AnalysisType.DelayCounter))
-            {
-                analysisObjectI = new PSTBDataCounter(true);
-            }
-            else if(atJ.equals(AnalysisType.FrequencyCounter))
-            {
-                analysisObjectI = new PSTBDataCounter(false);
-            }
-            else if(atJ.equals(AnalysisType.AverageDelay))
-            {
-                analysisObjectI = new PSTBAvgDelay();
-            }
-            else if(atJ.equals(AnalysisType.Histogram))
-            {
-                analysisObjectI = new PSTBHistogram();
-            }
-            else
-            {
-                logger.error(logHeader + "Invalid AnalysisType requested - execution!");
-                analyzedInformation.clear();
-                return false;
-            }
             
             for(int k = 0 ; k < numPSATs ; k++)
             {
+                // Each PSActionType needs its own object - otherwise every type's data ends up in the same one
+                PSTBScenarioAO analysisObjectI = createScenarioAO(atJ);
+                if(analysisObjectI == null)
+                {
+                    logger.error(logHeader + "Invalid AnalysisType requested - execution!");
+                    analyzedInformation.clear();
+                    return false;
+                }
+                
                 PSActionType psatK = (PSActionType) requestedPSATList.get(k);
                 analysisObjectI.setName(psatK + "_" + analysisObjectName);
                 analysisObjectI.setType(psatK);
                 
-                for(int l = 0 ; l < requestedDiaryNames.size() ; l++)
+                boolean analysisCheck = analyzeDiariesInParallel(requestedDiaryNames, atJ, psatK, analysisObjectI);
+                if(!analysisCheck)
                 {
-                    String diaryNameL = requestedDiaryNames.get(l);
-                    if(!bookshelf.containsKey(diaryNameL))
-                    {
-                        logger.error(logHeader + diaryNameL + " isn't in the bookshelf!");
-                        return false;
-                    }
-                    
-                    ClientDiary diaryL = bookshelf.get(diaryNameL);
-                    for(int m = 0 ; m < diaryL.size() ; m++)
-                    {
-                        DiaryEntry pageM = diaryL.getDiaryEntryI(m);
-                        PSActionType pageMsActionType = pageM.getPSActionType();
-                        
-                        if(pageMsActionType == null)
-                        {
-                            logger.error(logHeader + "Diary Page is missing an associated Action Type!");
-                            return false;
-                        }
-                        else if(pageMsActionType.equals(psatK))
-                        {
-                            Long associatedDelay = null;
-                            if(psatK.equals(PSActionType.R))
-                            {
-                                associatedDelay = pageM.getMessageDelay();
-                            }
-                            else
-                            {
-                                associatedDelay = pageM.getActionDelay();
-                            }
-                            
-                            analysisObjectI.handleDataPoint(associatedDelay);
-                        }
-                    }
+                    return false;
                 }
                 
                 // Let's add this analyzed object to the list, along with recording what analysis we accomplished
@@ -749,6 +676,188 @@ public class Analyzer {
         return true;
     }
     
+    /**
+     * Creates an empty analysis object for the given AnalysisType
+     * 
+     * @param givenAT - the AnalysisType
+     * @return null if the AnalysisType isn't a scenario one; the object otherwise
+     */
+    private static PSTBScenarioAO createScenarioAO(AnalysisType givenAT)
+    {
+        if(givenAT.equals(AnalysisType.DelayCounter))
+        {
+            return new PSTBDataCounter(true);
+        }
+        else if(givenAT.equals(AnalysisType.FrequencyCounter))
+        {
+            return new PSTBDataCounter(false);
+        }
+        else if(givenAT.equals(AnalysisType.AverageDelay))
+        {
+            return new PSTBAvgDelay();
+        }
+        else if(givenAT.equals(AnalysisType.Histogram))
+        {
+            return new PSTBHistogram();
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Analyzes the given diaries' delays for the given PSActionType - each diary into its own object, in parallel - 
+     * and then merges those objects into the given one
+     * A diary that was analyzed the same way in an earlier run is read back from the cache instead.
+     * 
+     * @param givenDiaryNames - the names of the diaries to analyze
+     * @param givenAT - the AnalysisType
+     * @param givenType - the PSActionType to analyze
+     * @param givenAO - the object to merge everything into
+     * @return false if any diary couldn't be analyzed; true otherwise
+     */
+    private static boolean analyzeDiariesInParallel(ArrayList<String> givenDiaryNames, AnalysisType givenAT, PSActionType givenType, 
+            PSTBScenarioAO givenAO)
+    {
+        int numDiaries = givenDiaryNames.size();
+        if(numDiaries == 0)
+        {
+            return true;
+        }
+        
+        String kind = givenAT + "_" + givenType;
+        
+        int numWorkers = Math.min(numDiaries, Runtime.getRuntime().availableProcessors());
+        ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+        
+        ArrayList<Future<PSTBScenarioAO>> results = new ArrayList<Future<PSTBScenarioAO>>(numDiaries);
+        for(int i = 0 ; i < numDiaries ; i++)
+        {
+            String diaryNameI = givenDiaryNames.get(i);
+            results.add(workers.submit(() -> {
+                PSTBScenarioAO aoI = createScenarioAO(givenAT);
+                if(analysisCache != null && analysisCache.load(diaryNameI, kind, aoI, logger, logHeader))
+                {
+                    return aoI;
+                }
+                
+                if(!analyzeDiary(bookshelf.get(diaryNameI), givenType, aoI))
+                {
+                    return null;
+                }
+                
+                if(analysisCache != null)
+                {
+                    analysisCache.store(diaryNameI, kind, aoI, logger, logHeader);
+                }
+                return aoI;
+            }));
+        }
+        
+        boolean allAnalyzed = true;
+        for(int i = 0 ; i < numDiaries ; i++)
+        {
+            try
+            {
+                PSTBScenarioAO aoI = results.get(i).get();
+                if(aoI == null)
+                {
+                    allAnalyzed = false;
+                }
+                else
+                {
+                    givenAO.merge(aoI);
+                }
+            }
+            catch(InterruptedException | ExecutionException e)
+            {
+                logger.error(logHeader + "Error waiting for diary " + givenDiaryNames.get(i) + " to be analyzed: ", e);
+                allAnalyzed = false;
+            }
+        }
+        workers.shutdown();
+        
+        return allAnalyzed;
+    }
+    
+    /**
+     * Hands every delay the given diary has for the given PSActionType to the given analysis object
+     * 
+     * @param givenDiary - the diary
+     * @param givenType - the PSActionType
+     * @param givenAO - the analysis object
+     * @return false if the diary has a page without a PSActionType; true otherwise
+     */
+    private static boolean analyzeDiary(ReadableDiary givenDiary, PSActionType givenType, PSTBScenarioAO givenAO)
+    {
+        if(givenType.equals(PSActionType.P))
+        {
+            warnOfDroppedActions(givenDiary);
+        }
+        
+        // A Client that counted this type into a histogram only kept entries for some of its actions
+        // - so the histogram is the whole story
+        LatencyHistogram histogram = givenDiary.getLatencyHistogram(givenType);
+        if(histogram != null)
+        {
+            givenAO.handleHistogram(histogram);
+            return true;
+        }
+        
+        DiaryHeader delayHeader = DiaryHeader.ActionDelay;
+        if(givenType.equals(PSActionType.R))
+        {
+            delayHeader = DiaryHeader.MessageDelay;
+        }
+        
+        // Read the columns directly - there's no need to build a DiaryEntry for every page
+        for(int i = 0 ; i < givenDiary.size() ; i++)
+        {
+            PSActionType pageIsActionType = givenDiary.getPSActionType(i);
+            
+            if(pageIsActionType == null)
+            {
+                logger.error(logHeader + "Diary Page is missing an associated Action Type!");
+                return false;
+            }
+            else if(pageIsActionType.equals(givenType))
+            {
+                Long associatedDelay = null;
+                if(givenDiary.hasValue(i, delayHeader))
+                {
+                    associatedDelay = givenDiary.getLongValue(i, delayHeader);
+                }
+                
+                givenAO.handleDataPoint(associatedDelay);
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Warns if the given diary has any publications an open-loop Client dropped
+     * They have no delay, so the delays being analyzed leave out exactly the periods the broker couldn't keep up with.
+     * 
+     * @param givenDiary - the diary
+     */
+    private static void warnOfDroppedActions(ReadableDiary givenDiary)
+    {
+        int numDropped = 0;
+        for(int i = 0 ; i < givenDiary.size() ; i++)
+        {
+            if(givenDiary.hasValue(i, DiaryHeader.DroppedAction))
+            {
+                numDropped++;
+            }
+        }
+        
+        if(numDropped > 0)
+        {
+            logger.warn(logHeader + "A diary created " + givenDiary.getTimeCreated() + " has " + numDropped 
+                    + " dropped publications - their latencies are missing from its delays.");
+        }
+    }
+    
     private static boolean exceuteThroughputAnalysis(HashMap<AnalysisInput, ArrayList<Object>> analysisI,
             ArrayList<Object> requestedBN, ArrayList<Object> requestedTFS, 
             ArrayList<Object> requestedDFV, ArrayList<Object> requestedP)
@@ -779,7 +888,7 @@ public class Analyzer {
         for(int j = 0 ; j < numDiaries ; j++)
         {
             String diaryNameJ = requestedDiaryNames.get(j);
-            ClientDiary diaryJ = bookshelf.get(diaryNameJ);
+            ReadableDiary diaryJ = bookshelf.get(diaryNameJ);
             
             logger.debug(logHeader + "Working on object " + diaryNameJ + "...");
             
@@ -799,6 +908,14 @@ public class Analyzer {
                 }
                 analysisObjectI.setName(name);
                 
+                String kind = dhK.toString();
+                if(analysisCache != null && analysisCache.load(diaryNameJ, kind, analysisObjectI, logger, logHeader))
+                {
+                    analyzedInformation.add(analysisObjectI);
+                    analyzedCheckThroughput.add(dhK);
+                    continue;
+                }
+                
                 for(int l = 0 ; l < diaryJ.size() ; l++)
                 {
                     DiaryEntry pageL = diaryJ.getDiaryEntryI(l);
@@ -844,6 +961,11 @@ public class Analyzer {
                     }
                 }
                 
+                if(analysisCache != null)
+                {
+                    analysisCache.store(diaryNameJ, kind, analysisObjectI, logger, logHeader);
+                }
+                
                 analyzedInformation.add(analysisObjectI);
                 analyzedCheckThroughput.add(dhK);
             }
@@ -874,156 +996,20 @@ public class Analyzer {
         // NOTE:    null here means that we want all references to that variable
         //         Example - if requestedTPF is null, then we want all to look at all the topology files that these diary files have 
         
-        ArrayList<String> retVal = new ArrayList<String>();
-        String[] nameTestArray = new String[NUM_SCENARIO_STRINGS];
-        
-        // Which lists are null?
-        boolean nullBN = (requestedBN == null);
-        boolean nullTPF = (requestedTPF == null);
-        boolean nullDFV = (requestedDFV == null);
-        boolean nullP = (requestedP == null);
-        boolean nullRL = (requestedRL == null);
-        boolean nullRN = (requestedRN == null);
-        boolean nullCN = (requestedCN == null);
-        
-        int numBN = 1;
-        int numTPF = 1;
-        int numDFV = 1;
-        int numP = 1;
-        int numRL = 1;
-        int numRN = 1;
-        int numCN = 1;
-        
-        // Set nums
-        if(!nullBN)
-        {
-            numBN = requestedBN.size();
-        }
-        if(!nullTPF)
-        {
-            numTPF = requestedTPF.size();
-        }
-        if(!nullDFV)
-        {
-            numDFV = requestedDFV.size();
-        }
-        if(!nullP)
-        {
-            numP = requestedP.size();
-        }
-        if(!nullRL)
+        ArrayList<ArrayList<Object>> requestedValues = new ArrayList<ArrayList<Object>>(NUM_SCENARIO_STRINGS);
+        for(int i = 0 ; i < NUM_SCENARIO_STRINGS ; i++)
         {
-            numRL = requestedRL.size();
-        }
-        if(!nullRN)
-        {
-            numRN = requestedRN.size();
-        }
-        if(!nullCN)
-        {
-            numCN = requestedCN.size();
+            requestedValues.add(null);
         }
+        requestedValues.set(LOC_BENCHMARK_NUMBER, requestedBN);
+        requestedValues.set(LOC_TOPO_FILE_PATH, requestedTPF);
+        requestedValues.set(LOC_DISTRIBUTED_FLAG, requestedDFV);
+        requestedValues.set(LOC_PROTOCOL, requestedP);
+        requestedValues.set(LOC_RUN_LENGTH, requestedRL);
+        requestedValues.set(LOC_RUN_NUMBER, requestedRN);
+        requestedValues.set(LOC_CLIENT_NAME, requestedCN);
         
-        // Loop through "all lists" to add its String to the Regex
-        for(int iBN = 0 ; iBN < numBN ; iBN++)
-        {
-            if(nullBN)
-            {
-                nameTestArray[LOC_BENCHMARK_NUMBER] = PSTBUtil.BENCHMARK_NUMBER_REGEX;
-            }
-            else
-            {
-                nameTestArray[LOC_BENCHMARK_NUMBER] = (String) requestedBN.get(iBN);
-            }
-            
-            for(int iTPF = 0 ; iTPF < numTPF ; iTPF++)
-            {
-                if(nullTPF)
-                {
-                    nameTestArray[LOC_TOPO_FILE_PATH] = "\\w+";
-                }
-                else
-                {
-                    nameTestArray[LOC_TOPO_FILE_PATH] = (String) requestedTPF.get(iTPF);
-                }
-                
-                for(int iDFV = 0 ; iDFV < numDFV ; iDFV++)
-                {
-                    if(nullDFV)
-                    {
-                        nameTestArray[LOC_DISTRIBUTED_FLAG] = "\\w+";
-                    }
-                    else
-                    {
-                        nameTestArray[LOC_DISTRIBUTED_FLAG] = ((DistributedFlagValue) requestedDFV.get(iDFV)).toString();
-                    }
-                    
-                    for(int iP = 0 ; iP < numP ; iP++)
-                    {
-                        if(nullP)
-                        {
-                            nameTestArray[LOC_PROTOCOL] = "\\w+";
-                        }
-                        else
-                        {
-                            nameTestArray[LOC_PROTOCOL] = ((NetworkProtocol) requestedP.get(iP)).toString();
-                        }
-                        
-                        for(int iRL = 0 ; iRL < numRL ; iRL++)
-                        {
-                            if(nullRL)
-                            {
-                                nameTestArray[LOC_RUN_LENGTH] = "\\w+";
-                            }
-                            else
-                            {
-                                nameTestArray[LOC_RUN_LENGTH] = ((Long) requestedRL.get(iRL)).toString();
-                            }
-                            
-                            for(int iRN = 0 ; iRN < numRN ; iRN++)
-                            {
-                                if(nullRN)
-                                {
-                                    nameTestArray[LOC_RUN_NUMBER] = "\\w+";
-                                }
-                                else
-                                {
-                                    nameTestArray[LOC_RUN_NUMBER] = ((Long) requestedRN.get(iRN)).toString();
-                                }
-                                
-                                for(int iCN = 0 ; iCN < numCN ; iCN++)
-                                {
-                                    if(nullCN)
-                                    {
-                                        nameTestArray[LOC_CLIENT_NAME] = "\\w+";
-                                    }
-                                    else
-                                    {
-                                        nameTestArray[LOC_CLIENT_NAME] = (String) requestedCN.get(iCN);
-                                    }
-                                    
-                                    String nameTestString = String.join(PSTBUtil.CONTEXT_SEPARATOR, nameTestArray);
-                                    
-                                    Pattern nameTest = Pattern.compile(nameTestString);
-                                    Iterator<String> bookshelfIt = bookshelf.keySet().iterator();
-                                    
-                                    for( ; bookshelfIt.hasNext() ; )
-                                    {
-                                        String diaryNameI = bookshelfIt.next(); 
-                                        if(nameTest.matcher(diaryNameI).matches())
-                                        {
-                                            retVal.add(diaryNameI);
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        
-        return retVal;
+        return scenarioIndex.find(requestedValues);
     }
     
     private static ArrayList<String> getAffiliatedThroughputDiaries(ArrayList<Object> requestedBN,
@@ -1034,176 +1020,25 @@ public class Analyzer {
         // NOTE:    null here means that we want all references to that variable
         //         Example - if requestedTPF is null, then we want all to look at all the topology files that these diary files have 
         
-        ArrayList<String> retVal = new ArrayList<String>();
-        String[] nameTestArray = new String[NUM_THROUGHPUT_STRINGS];
-        
-        // Which lists are null?
-        boolean nullBN = (requestedBN == null);
-        boolean nullTPF = (requestedTPF == null);
-        boolean nullDFV = (requestedDFV == null);
-        boolean nullP = (requestedP == null);
-        boolean nullPL = (requestedPL == null);
-        boolean nullMS = (requestedMS == null);
-        boolean nullNA = (requestedNA == null);
-        boolean nullAR = (requestedAR == null);
-        
-        int numBN = 1;
-        int numTPF = 1;
-        int numDFV = 1;
-        int numP = 1;
-        int numPL = 1;
-        int numMS = 1;
-        int numNA = 1;
-        int numAR = 1;
+        ArrayList<Object> requestedNode = new ArrayList<Object>();
+        requestedNode.add(PSTBUtil.MASTER);
         
-        // Set nums
-        if(!nullBN)
-        {
-            numBN = requestedBN.size();
-        }
-        if(!nullTPF)
-        {
-            numTPF = requestedTPF.size();
-        }
-        if(!nullDFV)
-        {
-            numDFV = requestedDFV.size();
-        }
-        if(!nullP)
-        {
-            numP = requestedP.size();
-        }
-        if(!nullPL)
+        ArrayList<ArrayList<Object>> requestedValues = new ArrayList<ArrayList<Object>>(NUM_THROUGHPUT_STRINGS);
+        for(int i = 0 ; i < NUM_THROUGHPUT_STRINGS ; i++)
         {
-            numPL = requestedPL.size();
-        }
-        if(!nullMS)
-        {
-            numMS = requestedMS.size();
-        }
-        if(!nullNA)
-        {
-            numNA = requestedNA.size();
-        }
-        if(!nullAR)
-        {
-            numAR = requestedAR.size();
-        }
-        
-        nameTestArray[LOC_NODE_NAME] = PSTBUtil.MASTER;
-        
-        // Loop through all lists to add its String to the Regex
-        for(int iBN = 0 ; iBN < numBN ; iBN++)
-        {
-            if(nullBN)
-            {
-                nameTestArray[LOC_BENCHMARK_NUMBER] = PSTBUtil.BENCHMARK_NUMBER_REGEX;
-            }
-            else
-            {
-                nameTestArray[LOC_BENCHMARK_NUMBER] = (String) requestedBN.get(iBN);
-            }
-            
-            for(int iTPF = 0 ; iTPF < numTPF ; iTPF++)
-            {
-                if(nullTPF)
-                {
-                    nameTestArray[LOC_TOPO_FILE_PATH] = "\\w+";
-                }
-                else
-                {
-                    nameTestArray[LOC_TOPO_FILE_PATH] = (String) requestedTPF.get(iTPF);
-                }
-                
-                for(int iDFV = 0 ; iDFV < numDFV ; iDFV++)
-                {
-                    if(nullDFV)
-                    {
-                        nameTestArray[LOC_DISTRIBUTED_FLAG] = "\\w+";
-                    }
-                    else
-                    {
-                        nameTestArray[LOC_DISTRIBUTED_FLAG] = ((DistributedFlagValue) requestedDFV.get(iDFV)).toString();
-                    }
-                    
-                    for(int iP = 0 ; iP < numP ; iP++)
-                    {
-                        if(nullP)
-                        {
-                            nameTestArray[LOC_PROTOCOL] = "\\w+";
-                        }
-                        else
-                        {
-                            nameTestArray[LOC_PROTOCOL] = ((NetworkProtocol) requestedP.get(iP)).toString();
-                        }
-                        
-                        for(int iPL = 0 ; iPL < numPL ; iPL++)
-                        {
-                            if(nullPL)
-                            {
-                                nameTestArray[LOC_PERIOD_LENGTH] = "\\w+";
-                            }
-                            else
-                            {
-                                nameTestArray[LOC_PERIOD_LENGTH] = ((Long) requestedPL.get(iPL)).toString();
-                            }
-                            
-                            for(int iMS = 0 ; iMS < numMS ; iMS++)
-                            {
-                                if(nullMS)
-                                {
-                                    nameTestArray[LOC_MESSAGE_SIZE] = "\\w+";
-                                }
-                                else
-                                {
-                                    nameTestArray[LOC_MESSAGE_SIZE] = ((MessageSize) requestedMS.get(iMS)).toString();
-                                }
-                                
-                                for(int iNA = 0 ; iNA < numNA ; iNA++)
-                                {
-                                    if(nullNA)
-                                    {
-                                        nameTestArray[LOC_NUM_ATTRIBUTE] = "\\w+";
-                                    }
-                                    else
-                                    {
-                                        nameTestArray[LOC_NUM_ATTRIBUTE] = ((NumAttribute) requestedNA.get(iNA)).toString();
-                                    }
-                                    
-                                    for(int iAR = 0 ; iAR < numAR ; iAR++)
-                                    {
-                                        if(nullAR)
-                                        {
-                                            nameTestArray[LOC_ATTRIBUTE_RATIO] = "\\w+";
-                                        }
-                                        else
-                                        {
-                                            nameTestArray[LOC_ATTRIBUTE_RATIO] = ((AttributeRatio) requestedAR.get(iAR)).toString();
-                                        }
-                                            
-                                        String nameTestString = String.join(PSTBUtil.CONTEXT_SEPARATOR, nameTestArray);
-                                        
-                                        Pattern nameTest = Pattern.compile(nameTestString);
-                                        Iterator<String> bookshelfIt = bookshelf.keySet().iterator();
-                                        
-                                        for( ; bookshelfIt.hasNext() ; )
-                                        {
-                                            String diaryNameI = bookshelfIt.next(); 
-                                            if(nameTest.matcher(diaryNameI).matches())
-                                            {
-                                                retVal.add(diaryNameI);
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            requestedValues.add(null);
         }
+        requestedValues.set(LOC_BENCHMARK_NUMBER, requestedBN);
+        requestedValues.set(LOC_TOPO_FILE_PATH, requestedTPF);
+        requestedValues.set(LOC_DISTRIBUTED_FLAG, requestedDFV);
+        requestedValues.set(LOC_PROTOCOL, requestedP);
+        requestedValues.set(LOC_PERIOD_LENGTH, requestedPL);
+        requestedValues.set(LOC_MESSAGE_SIZE, requestedMS);
+        requestedValues.set(LOC_NUM_ATTRIBUTE, requestedNA);
+        requestedValues.set(LOC_ATTRIBUTE_RATIO, requestedAR);
+        requestedValues.set(LOC_NODE_NAME, requestedNode);
         
-        return retVal;
+        return throughputIndex.find(requestedValues);
     }
     
     /**
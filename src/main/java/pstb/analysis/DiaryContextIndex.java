@@ -0,0 +1,184 @@
+package pstb.analysis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import pstb.util.PSTBUtil;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * An inverted index over diary names.
+ * 
+ * A diary's name is its node's context - its fields joined by PSTBUtil.CONTEXT_SEPARATOR
+ * (e.g. benchmark number, topology file, distributed flag, protocol, ..., node name).
+ * Every name is split into those fields once, and each field keeps a map of value -> the diaries with that value.
+ * So finding the diaries that match a set of requested values is just unions and intersections of those sets
+ * - rather than a regex over every diary for every combination of requested values.
+ * 
+ * The topology file string can contain the separator itself, so one field (the flexible field) takes 
+ * whatever is left over between the fields before it and the fields after it.
+ * @see PSTBUtil#generateContext
+ */
+public class DiaryContextIndex
+{
+    private final int numFields;
+    private final int flexibleField;
+    private final ArrayList<String> names;
+    private final ArrayList<HashMap<String, BitSet>> fieldIndexes;
+    
+    /**
+     * Constructor
+     * 
+     * @param givenNumFields - the number of fields in a name
+     * @param givenFlexibleField - the field that can contain the separator
+     */
+    public DiaryContextIndex(int givenNumFields, int givenFlexibleField)
+    {
+        numFields = givenNumFields;
+        flexibleField = givenFlexibleField;
+        names = new ArrayList<String>();
+        fieldIndexes = new ArrayList<HashMap<String, BitSet>>(givenNumFields);
+        for(int i = 0 ; i < givenNumFields ; i++)
+        {
+            fieldIndexes.add(new HashMap<String, BitSet>());
+        }
+    }
+    
+    /**
+     * Adds a diary name to the index
+     * 
+     * @param givenName - the name
+     * @return false if the name doesn't have enough fields (and so wasn't added); true otherwise
+     */
+    public boolean add(String givenName)
+    {
+        String[] fields = parse(givenName);
+        if(fields == null)
+        {
+            return false;
+        }
+        
+        int id = names.size();
+        names.add(givenName);
+        for(int i = 0 ; i < numFields ; i++)
+        {
+            HashMap<String, BitSet> fieldIndexI = fieldIndexes.get(i);
+            BitSet diariesWithValue = fieldIndexI.get(fields[i]);
+            if(diariesWithValue == null)
+            {
+                diariesWithValue = new BitSet();
+                fieldIndexI.put(fields[i], diariesWithValue);
+            }
+            diariesWithValue.set(id);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Adds every given diary name to the index
+     * 
+     * @param givenNames - the names
+     * @return the number of names that were added
+     */
+    public int addAll(Iterable<String> givenNames)
+    {
+        int retVal = 0;
+        for(String nameI : givenNames)
+        {
+            if(add(nameI))
+            {
+                retVal++;
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * @return the number of diaries indexed
+     */
+    public int size()
+    {
+        return names.size();
+    }
+    
+    /**
+     * Splits a diary name into its fields
+     * 
+     * @param givenName - the name
+     * @return the fields; null if the name has too few of them
+     */
+    String[] parse(String givenName)
+    {
+        String[] parts = givenName.split(PSTBUtil.CONTEXT_SEPARATOR, -1);
+        if(parts.length < numFields)
+        {
+            return null;
+        }
+        
+        String[] retVal = new String[numFields];
+        int numExtra = parts.length - numFields;
+        for(int i = 0 ; i < flexibleField ; i++)
+        {
+            retVal[i] = parts[i];
+        }
+        
+        StringBuilder flexibleValue = new StringBuilder(parts[flexibleField]);
+        for(int i = 1 ; i <= numExtra ; i++)
+        {
+            flexibleValue.append(PSTBUtil.CONTEXT_SEPARATOR).append(parts[flexibleField + i]);
+        }
+        retVal[flexibleField] = flexibleValue.toString();
+        
+        for(int i = flexibleField + 1 ; i < numFields ; i++)
+        {
+            retVal[i] = parts[i + numExtra];
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Finds the diaries that match the requested values
+     * A diary matches if, for every field, its value is one of those requested for that field
+     * 
+     * @param requestedValues - for each field, the values requested (compared by toString()); null to accept any value
+     * @return the names of the matching diaries, in the order they were added
+     */
+    public ArrayList<String> find(List<? extends List<?>> requestedValues)
+    {
+        BitSet matches = new BitSet();
+        matches.set(0, names.size());
+        
+        for(int i = 0 ; i < numFields && !matches.isEmpty() ; i++)
+        {
+            List<?> requestedI = requestedValues.get(i);
+            if(requestedI == null)
+            {
+                continue;
+            }
+            
+            HashMap<String, BitSet> fieldIndexI = fieldIndexes.get(i);
+            BitSet matchesI = new BitSet();
+            for(int j = 0 ; j < requestedI.size() ; j++)
+            {
+                BitSet diariesWithValue = fieldIndexI.get(requestedI.get(j).toString());
+                if(diariesWithValue != null)
+                {
+                    matchesI.or(diariesWithValue);
+                }
+            }
+            matches.and(matchesI);
+        }
+        
+        ArrayList<String> retVal = new ArrayList<String>(matches.cardinality());
+        for(int id = matches.nextSetBit(0) ; id >= 0 ; id = matches.nextSetBit(id + 1))
+        {
+            retVal.add(names.get(id));
+        }
+        return retVal;
+    }
+}
@@ -0,0 +1,179 @@
+package pstb.analysis;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.util.PSTBUtil;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Collects graphs to be drawn by graph.py, and then has them all drawn at once.
+ * 
+ * Rather than passing each graph's data to its own python process as arguments,
+ * every graph is written into one data file and a single graph.py process draws them all - in parallel.
+ * 
+ * Data file - one block per graph, every field separated by a tab:
+ * graph | aoType | folderPath | title | xLabel | yLabel | xType | yType
+ * x | each x value
+ * y | each y value
+ */
+public class GraphBatch
+{
+    // Constants
+    public static final String GRAPH_SCRIPT = "graph.py";
+    public static final String BATCH_FLAG = "--batch";
+    private static final String FIELD_SEPARATOR = "\t";
+    
+    // Variables
+    private ArrayList<String> lines;
+    private int numGraphs;
+    
+    /**
+     * Empty Constructor
+     */
+    public GraphBatch()
+    {
+        lines = new ArrayList<String>();
+        numGraphs = 0;
+    }
+    
+    /**
+     * @return the number of graphs waiting to be drawn
+     */
+    public int size()
+    {
+        return numGraphs;
+    }
+    
+    /**
+     * Adds a graph to be drawn
+     * 
+     * @param aoType - the kind of graph (see graph.py)
+     * @param folderPath - the folder to put the graph into
+     * @param title - the graph's title (and file name)
+     * @param xLabel - the x axis label
+     * @param yLabel - the y axis label
+     * @param x - the x values
+     * @param xType - the type of the x values: int, float or string
+     * @param y - the y values
+     * @param yType - the type of the y values: int, float or string
+     */
+    public void addGraph(String aoType, String folderPath, String title, String xLabel, String yLabel, 
+            Object[] x, String xType, Object[] y, String yType)
+    {
+        lines.add(joinFields("graph", aoType, folderPath, title, xLabel, yLabel, xType, yType));
+        lines.add(joinValues("x", x));
+        lines.add(joinValues("y", y));
+        numGraphs++;
+    }
+    
+    /**
+     * Writes every graph into the given data file, and has graph.py draw them all
+     * 
+     * @param dataFilePath - where to write the data file
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false on error; true otherwise
+     */
+    public boolean draw(Path dataFilePath, Logger log, String logHeader)
+    {
+        if(numGraphs == 0)
+        {
+            return true;
+        }
+        
+        BufferedWriter out = null;
+        try
+        {
+            out = Files.newBufferedWriter(dataFilePath, StandardCharsets.UTF_8);
+            for(int i = 0 ; i < lines.size() ; i++)
+            {
+                out.write(lines.get(i));
+                out.write("\n");
+            }
+            out.close();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't write the graph data file " + dataFilePath + ": ", e);
+            if(out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch(IOException eClose)
+                {
+                    // We're already reporting an error
+                }
+            }
+            return false;
+        }
+        
+        int numWorkers = Math.min(numGraphs, Runtime.getRuntime().availableProcessors());
+        
+        String[] command = new String[5];
+        command[0] = "python";
+        command[1] = GRAPH_SCRIPT;
+        command[2] = BATCH_FLAG;
+        command[3] = dataFilePath.toString();
+        command[4] = Integer.toString(numWorkers);
+        
+        Boolean graphCheck = PSTBUtil.createANewProcess(command, log, true, true,
+                logHeader + "Couldn't create graph process!", 
+                logHeader + "Drew " + numGraphs + " graphs.", 
+                logHeader + "Graph process failed!");
+        if(graphCheck == null || !graphCheck)
+        {
+            return false;
+        }
+        
+        lines.clear();
+        numGraphs = 0;
+        return true;
+    }
+    
+    private static String joinFields(String... fields)
+    {
+        StringBuilder retVal = new StringBuilder();
+        for(int i = 0 ; i < fields.length ; i++)
+        {
+            if(i > 0)
+            {
+                retVal.append(FIELD_SEPARATOR);
+            }
+            retVal.append(clean(fields[i]));
+        }
+        return retVal.toString();
+    }
+    
+    private static String joinValues(String tag, Object[] values)
+    {
+        StringBuilder retVal = new StringBuilder(tag);
+        for(int i = 0 ; i < values.length ; i++)
+        {
+            retVal.append(FIELD_SEPARATOR);
+            retVal.append(clean(String.valueOf(values[i])));
+        }
+        return retVal.toString();
+    }
+    
+    /**
+     * Tabs and line breaks would break up the data file, so they become spaces
+     */
+    private static String clean(String givenField)
+    {
+        if(givenField == null)
+        {
+            return "";
+        }
+        return givenField.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -2,7 +2,6 @@ package pstb.analysis;
 
 import java.awt.geom.Point2D;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -12,6 +11,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -22,13 +22,19 @@ import org.apache.logging.log4j.Logger;
 import pstb.analysis.analysisobjects.throughput.PSTBFinalThroughput;
 import pstb.analysis.analysisobjects.throughput.PSTBThroughputAO;
 import pstb.analysis.analysisobjects.throughput.PSTBTwoPoints;
-import pstb.analysis.diary.ClientDiary;
 import pstb.analysis.diary.DiaryEntry;
+import pstb.analysis.diary.DiaryExportFormat;
+import pstb.analysis.diary.DiaryExporter;
 import pstb.analysis.diary.DiaryHeader;
+import pstb.analysis.diary.DiaryReader;
 import pstb.analysis.diary.DistributedFlagValue;
+import pstb.analysis.diary.LatencyHistogram;
+import pstb.analysis.diary.ReadableDiary;
 import pstb.benchmark.object.client.padres.PSClientPADRES;
+import pstb.startup.workload.PSActionType;
 import pstb.util.PSTBError;
 import pstb.util.PSTBUtil;
+import pstb.util.PSTBUtil.TimeType;
 
 /**
  * @author padres-dev-4187
@@ -63,12 +69,16 @@ public class ThroughputAnalyzer {
     private static final String diariesStub = "diaries/";
     private static final String reportStub = "reports/";
     private static final String analysisStub = "analysis/";
+    private static final String graphDataStub = "graphData.txt";
+    private static final String cacheStub = "cache/";
     
     // Constants - Analysis
     private static final CharSequence PROBLEMATIC_DIARY_COMPONENT = "_ONE_String0P_";
     
     // Variables - Key Components
-    private static HashMap<String, ClientDiary> bookshelf = new HashMap<String, ClientDiary>();
+    private static ConcurrentHashMap<String, ReadableDiary> bookshelf = new ConcurrentHashMap<String, ReadableDiary>();
+    private static DiaryExportFormat diaryFormat = DiaryExportFormat.Text;
+    private static AnalysisCache analysisCache = null;
     
     // Variables - Folder Strings
     private static String diariesFolderString;
@@ -100,6 +110,16 @@ public class ThroughputAnalyzer {
         {
             printDiaries = new Boolean(true);
         }
+        else if(printFlag.equals("csv"))
+        {
+            printDiaries = new Boolean(true);
+            diaryFormat = DiaryExportFormat.CSV;
+        }
+        else if(printFlag.equals("tsv"))
+        {
+            printDiaries = new Boolean(true);
+            diaryFormat = DiaryExportFormat.TSV;
+        }
         else if(printFlag.equals("false"))
         {
             printDiaries = new Boolean(false);
@@ -162,6 +182,14 @@ public class ThroughputAnalyzer {
         }
         logger.debug("All diaries collected.");
         
+        // Anything already extracted in an earlier run is read back from the cache
+        analysisCache = new AnalysisCache(Paths.get(System.getProperty("user.dir")), Paths.get(analysisFolderString + cacheStub));
+        if(!analysisCache.open(logger, logHeader))
+        {
+            logger.warn(logHeader + "Analyzing without a cache.");
+            analysisCache = null;
+        }
+        
         if(printDiaries.booleanValue())
         {
             logger.debug("Printing all diaries to file...");
@@ -180,33 +208,11 @@ public class ThroughputAnalyzer {
                 }
             }
             
-            // Try to record diaries to this file
-            try
-            {
-                bookshelf.forEach((diaryName, diary)->{
-                    String diaryFileString = diariesFolderString + diaryName + ".txt";
-                    Path diaryFilePath = Paths.get(diaryFileString);
-                    
-                    // If any old diaries exist here - delete them
-                    try 
-                    {
-                        Files.deleteIfExists(diaryFilePath);
-                    } 
-                    catch (IOException e)
-                    {
-                        throw new IllegalArgumentException("IO couldn't delete file " + diaryFileString + "!");
-                    }
-                    
-                    boolean check = diary.recordDiary(diaryFilePath, logger);
-                    if(!check)
-                    {
-                        throw new IllegalArgumentException();
-                    }
-                });
-            }
-            catch(IllegalArgumentException e)
+            // Record each diary to its own file (any old ones are overwritten)
+            boolean exportCheck = DiaryExporter.exportDiaries(bookshelf, diariesFolderString, diaryFormat, logger, logHeader);
+            if(!exportCheck)
             {
-                logger.fatal(logHeader + "Couldn't records all of the diaries to a file: ", e);
+                logger.fatal(logHeader + "Couldn't records all of the diaries to a file!");
                 System.exit(PSTBError.A_DIARY);
             }
             
@@ -219,6 +225,9 @@ public class ThroughputAnalyzer {
                     "null", "null", "null", PSTBUtil.MASTER);
             ArrayList<DiaryHeader> reportableDHs = getProperDHs();
             
+            // Every graph goes into one data file, which graph.py draws in one go
+            GraphBatch graphs = new GraphBatch();
+            
             int numMasterDiaries = masterDiaries.size();
             for(int i = 0 ; i < numMasterDiaries ; i++)
             {
@@ -264,13 +273,26 @@ public class ThroughputAnalyzer {
                     if(PSTBUtil.isDHThroughputGraphable(dhJ))
                     {
                         PSTBTwoPoints temp = (PSTBTwoPoints) tpoIJ;
-                        boolean graphCheck = simpleGraph(folderString, title, temp);
+                        boolean graphCheck = simpleGraph(folderString, title, temp, graphs);
                         if(!graphCheck)
                         {
                             System.exit(PSTBError.A_REPORT);
                         }
                     }
                 });
+                
+                boolean latencyCheck = recordLatencyHistograms(diaryI);
+                if(!latencyCheck)
+                {
+                    System.exit(PSTBError.A_REPORT);
+                }
+            }
+            
+            boolean drawCheck = graphs.draw(Paths.get(reportFolderString + graphDataStub), logger, logHeader);
+            if(!drawCheck)
+            {
+                logger.fatal(logHeader + "Couldn't draw the report graphs!");
+                System.exit(PSTBError.A_REPORT);
             }
         }
         
@@ -525,9 +547,14 @@ public class ThroughputAnalyzer {
                     System.out.println("");
                 }
                 }
-                
+            
             logger.debug("Analysis complete.");
         }
+        
+        if(analysisCache != null)
+        {
+            analysisCache.save(logger, logHeader);
+        }
     }
     
     /**
@@ -550,50 +577,14 @@ public class ThroughputAnalyzer {
             return s.endsWith(".dia");
         });
         
-        // Loop through the files and add them to the "Bookshelf"
-        for(int i = 0 ; i < listFiles.length ; i++)
-        {
-            File diaryI = listFiles[i];
-            String diaryIName = diaryI.toString()
+        // Open the files in parallel and add them to the "Bookshelf"
+        // Binary diaries are memory-mapped - nothing is read until the analysis asks for it
+        return DiaryReader.openDiaries(listFiles, (diaryI) -> {
+            return diaryI.toString()
                     .replace(".dia", "")
                     .replace(System.getProperty("user.dir"), "")
                     .replace("/", "");
-            
-            FileInputStream in = null;
-            try 
-            {
-                in = new FileInputStream(diaryI);
-            } 
-            catch (Exception e) 
-            {
-                logger.error(logHeader + "Error creating new file input stream to read diary: ", e);
-                return false;
-            }
-            
-            ClientDiary tiedDiary = PSTBUtil.readDiaryObject(in, logger, logHeader);
-            if(tiedDiary != null)
-            {
-                bookshelf.put(diaryIName, tiedDiary);
-            }
-            else
-            {
-                logger.error(logHeader + "Error getting diary " + diaryIName + "!");
-                return false;
-            }
-            
-            try 
-            {
-                in.close();
-            } 
-            catch (Exception e) 
-            {
-                logger.error(logHeader + "Error closing FileInputStream: ", e);
-                return false;
-            }
-            
-        }
-        
-        return true;
+        }, bookshelf, logger, logHeader);
     }
     
     private static ArrayList<String> getAffiliatedThroughputDiaries(String requestedBN, String requestedTPF, String requestedDFV,
@@ -720,7 +711,7 @@ public class ThroughputAnalyzer {
     
     private static PSTBThroughputAO extractThroughputObject(String givenDiaryName, DiaryHeader requestedAnalysis)
     {
-        ClientDiary diary = bookshelf.get(givenDiaryName);
+        ReadableDiary diary = bookshelf.get(givenDiaryName);
         String name = requestedAnalysis.toString() + PSTBUtil.CONTEXT_SEPARATOR + givenDiaryName;
         
         boolean checkRA = PSTBUtil.isDHThroughput(requestedAnalysis);
@@ -742,6 +733,12 @@ public class ThroughputAnalyzer {
         }
         retVal.setName(name);
         
+        String kind = requestedAnalysis.toString();
+        if(analysisCache != null && analysisCache.load(givenDiaryName, kind, retVal, logger, logHeader))
+        {
+            return retVal;
+        }
+        
         for(int i = 0 ; i < diary.size() ; i++)
         {
             DiaryEntry pageI = diary.getDiaryEntryI(i);
@@ -788,6 +785,11 @@ public class ThroughputAnalyzer {
             }
         }
         
+        if(analysisCache != null)
+        {
+            analysisCache.store(givenDiaryName, kind, retVal, logger, logHeader);
+        }
+        
         return retVal;
     }
     
@@ -805,27 +807,99 @@ public class ThroughputAnalyzer {
         return true;
     }
     
-    private static boolean simpleGraph(String folderString, String titleName, PSTBTwoPoints givenAO)
+    /**
+     * Merges the LatencyHistograms of every client in the given master diary's experiment
+     * and records a summary of each PSActionType's next to the rest of that experiment's report
+     * (Only clients that recorded their latencies into histograms have any - if none did, nothing is recorded.)
+     * 
+     * @param givenMasterDiary - the name of the master diary
+     * @return false on error; true otherwise
+     */
+    private static boolean recordLatencyHistograms(String givenMasterDiary)
     {
-        if(givenAO == null)
+        String[] brokenDiary = givenMasterDiary.split(PSTBUtil.CONTEXT_SEPARATOR);
+        ArrayList<String> clientDiaries = getAffiliatedThroughputDiaries(brokenDiary[LOC_BENCHMARK_NUMBER], 
+                brokenDiary[LOC_TOPO_FILE_PATH], brokenDiary[LOC_DISTRIBUTED_FLAG], brokenDiary[LOC_PROTOCOL], 
+                brokenDiary[LOC_PERIOD_LENGTH], brokenDiary[LOC_MESSAGE_SIZE], brokenDiary[LOC_NUM_ATTRIBUTE], 
+                brokenDiary[LOC_ATTRIBUTE_RATIO], "null");
+        clientDiaries.remove(givenMasterDiary);
+        
+        String report = "";
+        PSActionType[] actionTypes = PSActionType.values();
+        for(int i = 0 ; i < actionTypes.length ; i++)
+        {
+            LatencyHistogram merged = null;
+            for(int j = 0 ; j < clientDiaries.size() ; j++)
+            {
+                LatencyHistogram histogramJ = bookshelf.get(clientDiaries.get(j)).getLatencyHistogram(actionTypes[i]);
+                if(histogramJ == null)
+                {
+                    continue;
+                }
+                
+                if(merged == null)
+                {
+                    merged = histogramJ.copy();
+                }
+                else
+                {
+                    merged.merge(histogramJ);
+                }
+            }
+            
+            if(merged != null)
+            {
+                TimeType valueType = TimeType.Nano;
+                if(actionTypes[i].equals(PSActionType.R))
+                {
+                    valueType = TimeType.Milli;
+                }
+                report += actionTypes[i] + " (" + clientDiaries.size() + " clients):\n" + merged.summarize(valueType) + "\n";
+            }
+        }
+        
+        if(report.isEmpty())
+        {
+            return true;
+        }
+        
+        String folderString = reportFolderString
+                + brokenDiary[LOC_TOPO_FILE_PATH] + "/"
+                + brokenDiary[LOC_DISTRIBUTED_FLAG] + "/"
+                + brokenDiary[LOC_PROTOCOL] + "/"
+                + brokenDiary[LOC_PERIOD_LENGTH] + "/"
+                + brokenDiary[LOC_MESSAGE_SIZE] + "/"
+                + brokenDiary[LOC_NUM_ATTRIBUTE] + "/"
+                + brokenDiary[LOC_ATTRIBUTE_RATIO] + "/";
+        Path reportPath = Paths.get(folderString + brokenDiary[LOC_BENCHMARK_NUMBER] + PSTBUtil.CONTEXT_SEPARATOR + "Latency.txt");
+        try
+        {
+            Files.createDirectories(reportPath.getParent());
+            Files.deleteIfExists(reportPath);
+            Files.write(reportPath, report.getBytes());
+        }
+        catch(IOException e)
         {
+            logger.fatal(logHeader + "Couldn't record the latency histograms for " + givenMasterDiary + ": ", e);
             return false;
         }
         
-        boolean createGraph = false;
+        return true;
+    }
+    
+    private static boolean simpleGraph(String folderString, String titleName, PSTBTwoPoints givenAO, GraphBatch givenGraphs)
+    {
+        if(givenAO == null)
+        {
+            return false;
+        }
         
         DiaryHeader givenAODH = givenAO.getAssociatedDH();
         
-        String[] command = new String[11];
-        command[0] = "python";
-        command[1] = "graph.py";
-        
         ArrayList<Point2D.Double> data = givenAO.getDataset();
         int numPoints = data.size();
         if(numPoints > 1)
         {
-            createGraph = true;
-            
             String[] x = new String[numPoints];
             String[] y = new String[numPoints];
             
@@ -839,47 +913,32 @@ public class ThroughputAnalyzer {
                 y[i] = yI.toString();
             }
             
-            command[2] = "throughput";
-            command[3] = folderString;
-            command[4] = titleName;
-            command[5] = "Input Rate (messages/sec)";
+            String yLabel = null;
             if(givenAODH.equals(DiaryHeader.CurrentThroughput))
             {
-                command[6] = "Current Throughput (messages/sec)";
+                yLabel = "Current Throughput (messages/sec)";
             }
             else if(givenAODH.equals(DiaryHeader.AverageThroughput))
             {
-                command[6] = "Average Throughput (messages/sec)";
+                yLabel = "Average Throughput (messages/sec)";
             }
             else if(givenAODH.equals(DiaryHeader.Secant))
             {
-                command[6] = "Secant (unitless)";
+                yLabel = "Secant (unitless)";
             }
             else if(givenAODH.equals(DiaryHeader.CurrentRatio))
             {
-                command[6] = "Ratio (unitless)";
+                yLabel = "Ratio (unitless)";
             }
             else
             {
-                command[6] = "Latency (sec)";
+                yLabel = "Latency (sec)";
             }
-            command[7] = Arrays.toString(x);
-            command[8] = "float";
-            command[9] = Arrays.toString(y);
-            command[10] = "float";
+            
+            givenGraphs.addGraph("throughput", folderString, titleName, "Input Rate (messages/sec)", yLabel, 
+                    x, "float", y, "float");
         }
         
-        if(createGraph)
-        {
-            Boolean graphCheck = PSTBUtil.createANewProcess(command, logger, true, false,
-                    "Couldn't create graph process!", 
-                    "Graph complete.", 
-                    "Graph process failed!");
-            if(graphCheck == null || !graphCheck)
-            {
-                return false;
-            }
-        }
         return true;
     }
     
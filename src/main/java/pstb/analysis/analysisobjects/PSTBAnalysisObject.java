@@ -1,5 +1,8 @@
 package pstb.analysis.analysisobjects;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -66,4 +69,29 @@ public abstract class PSTBAnalysisObject {
      * @return false on failure; true otherwise
      */
     public abstract boolean completeRecord(Path givenFilePath);
+    
+    /**
+     * Creates a new object of the same kind (and settings) as this one, with no data
+     * 
+     * @return the new object
+     */
+    public abstract PSTBAnalysisObject createEmpty();
+    
+    /**
+     * Writes the data this object has collected (not its name or type)
+     * 
+     * @param out - where to write it
+     * @throws IOException if it can't be written
+     * @see pstb.analysis.AnalysisCache
+     */
+    public abstract void writeData(DataOutput out) throws IOException;
+    
+    /**
+     * Reads data written by writeData(), and adds it to whatever this object has already collected
+     * 
+     * @param in - where to read it from
+     * @throws IOException if it can't be read
+     * @see pstb.analysis.AnalysisCache
+     */
+    public abstract void readData(DataInput in) throws IOException;
 }
@@ -3,12 +3,15 @@
  */
 package pstb.analysis.analysisobjects.scenario;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 import pstb.analysis.Analyzer;
+import pstb.analysis.diary.LatencyHistogram;
 import pstb.startup.workload.PSActionType;
 import pstb.util.PSTBUtil;
 import pstb.util.PSTBUtil.TimeType;
@@ -24,7 +27,7 @@ public class PSTBAvgDelay extends PSTBScenarioAO {
     private Long value;
     
     private Long sum;
-    private int instances;
+    private long instances;
 
     /**
      * Constructor
@@ -93,9 +96,63 @@ public class PSTBAvgDelay extends PSTBScenarioAO {
 
     @Override
     public void handleDataPoint(Long givenDataPoint) {
+        if(givenDataPoint == null)
+        {
+            return;
+        }
+        
         sum += givenDataPoint;
         instances++;
         
         value = sum / instances;
     }
+    
+    @Override
+    public void handleHistogram(LatencyHistogram givenHistogram) {
+        if(givenHistogram.getTotalCount() == 0)
+        {
+            return;
+        }
+        
+        // The histogram keeps its sum exactly, so the average is too
+        sum += givenHistogram.getSum();
+        instances += givenHistogram.getTotalCount();
+        
+        value = sum / instances;
+    }
+    
+    @Override
+    public void merge(PSTBScenarioAO givenAO) {
+        PSTBAvgDelay givenAvgDelay = (PSTBAvgDelay) givenAO;
+        addSumAndInstances(givenAvgDelay.sum, givenAvgDelay.instances);
+    }
+    
+    @Override
+    public PSTBAvgDelay createEmpty() {
+        return new PSTBAvgDelay();
+    }
+    
+    @Override
+    public void writeData(DataOutput out) throws IOException {
+        out.writeLong(sum);
+        out.writeLong(instances);
+    }
+    
+    @Override
+    public void readData(DataInput in) throws IOException {
+        long givenSum = in.readLong();
+        addSumAndInstances(givenSum, in.readLong());
+    }
+    
+    private void addSumAndInstances(long givenSum, long givenInstances) {
+        if(givenInstances == 0)
+        {
+            return;
+        }
+        
+        sum += givenSum;
+        instances += givenInstances;
+        
+        value = sum / instances;
+    }
 }
@@ -3,15 +3,20 @@
  */
 package pstb.analysis.analysisobjects.scenario;
 
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
+import pstb.analysis.diary.LatencyHistogram;
 import pstb.startup.workload.PSActionType;
+import pstb.util.LongIntCounter;
 import pstb.util.PSTBUtil;
 import pstb.util.PSTBUtil.TimeType;
 
@@ -21,11 +26,14 @@ import pstb.util.PSTBUtil.TimeType;
  * Extends the Frequency Counter class to allow increased functionality crucial to PSTB
  * Such as what PSActionType we are is recording, 
  * as well as identifying units when recording into a file.
+ * 
+ * The occurrences are kept in a LongIntCounter, and are only sorted (by value or by frequency) when they're requested.
  * @see FrequencyCounter
+ * @see LongIntCounter
  */
 public class PSTBDataCounter extends PSTBScenarioAO{
     // Variables
-    private TreeMap<Long, Integer> frequency;
+    private LongIntCounter frequency;
     private boolean recordByKey;
     
     /**
@@ -34,19 +42,41 @@ public class PSTBDataCounter extends PSTBScenarioAO{
     public PSTBDataCounter(boolean givenRBK)
     {
         super();
-        frequency = new TreeMap<Long, Integer>();
+        frequency = new LongIntCounter();
         recordByKey = givenRBK;
         logHeader = "PSTBDC: ";
     }
     
+    public boolean getRecordByKey()
+    {
+        return recordByKey;
+    }
+    
+    /**
+     * Builds a map of every data point to its occurrences
+     * - ordered by data point, or by the most occurrences if this counter doesn't record by key
+     * 
+     * @return the map
+     */
     public Map<Long, Integer> getFrequency()
+    {
+        long[] sortedPoints = getSortedDataPoints();
+        Map<Long, Integer> retVal = new LinkedHashMap<Long, Integer>(sortedPoints.length * 2);
+        for(int i = 0 ; i < sortedPoints.length ; i++)
+        {
+            retVal.put(sortedPoints[i], frequency.get(sortedPoints[i]));
+        }
+        return retVal;
+    }
+    
+    private long[] getSortedDataPoints()
     {
         if(!recordByKey)
         {
-            return PSTBUtil.sortGivenMapByValue(frequency);
+            return frequency.keysByCount();
         }
         
-        return frequency;
+        return frequency.keysByValue();
     }
     
     /**
@@ -56,27 +86,78 @@ public class PSTBDataCounter extends PSTBScenarioAO{
      */
     public void addOccurrence(Long dataPoint)
     {
-        if(frequency.containsKey(dataPoint))
-        {
-            Integer numOccurances = frequency.get(dataPoint);
-            numOccurances++;
-            frequency.put(dataPoint, numOccurances);
-        }
-        else
+        addOccurrences(dataPoint, 1);
+    }
+    
+    /**
+     * Add a number of occurrences of the value dataPoint.
+     * 
+     * @param dataPoint - the data point to add
+     * @param givenOccurrences - the number of occurrences
+     */
+    public void addOccurrences(Long dataPoint, int givenOccurrences)
+    {
+        if(dataPoint == null)
         {
-            frequency.put(dataPoint, 1);
+            return;
         }
+        addOccurrences(dataPoint.longValue(), givenOccurrences);
+    }
+    
+    /**
+     * Add a number of occurrences of the value dataPoint.
+     * 
+     * @param dataPoint - the data point to add
+     * @param givenOccurrences - the number of occurrences
+     */
+    public void addOccurrences(long dataPoint, int givenOccurrences)
+    {
+        frequency.add(dataPoint, givenOccurrences);
     }
     
     /**
      * Gets the occurrences of a certain dataPoint
      * 
      * @param dataPoint - the data point requested
-     * @return the number of occurrences
+     * @return the number of occurrences; null if it never occurred
      */
     public Integer getOccurrences(Long dataPoint)
     {
-        return frequency.get(dataPoint);
+        int occurrences = frequency.get(dataPoint);
+        if(occurrences == 0)
+        {
+            return null;
+        }
+        return occurrences;
+    }
+    
+    /**
+     * Adds every occurrence counted by the given counter to this one
+     * 
+     * @param givenAO - the PSTBDataCounter to merge in
+     */
+    @Override
+    public void merge(PSTBScenarioAO givenAO)
+    {
+        frequency.merge(((PSTBDataCounter) givenAO).frequency);
+    }
+    
+    @Override
+    public PSTBDataCounter createEmpty()
+    {
+        return new PSTBDataCounter(recordByKey);
+    }
+    
+    @Override
+    public void writeData(DataOutput out) throws IOException
+    {
+        frequency.writeTo(out);
+    }
+    
+    @Override
+    public void readData(DataInput in) throws IOException
+    {
+        frequency.readFrom(in);
     }
     
     @Override
@@ -88,49 +169,65 @@ public class PSTBDataCounter extends PSTBScenarioAO{
             return true;
         }
         
-        Long[] sortedTimes = null;
-        if(!recordByKey)
-        {
-            Map<Long, Integer> sortedFrequency = PSTBUtil.sortGivenMapByValue(frequency);
-            sortedTimes = sortedFrequency.keySet().toArray(new Long[sortedFrequency.size()]);
-        }
-        else
+        TimeType valueType = TimeType.Nano;
+        if(type.equals(PSActionType.R))
         {
-            sortedTimes = frequency.keySet().toArray(new Long[frequency.size()]);
+            valueType = TimeType.Milli;
         }
         
-        for(int i = 0 ; i < sortedTimes.length ; i++)
+        long[] sortedTimes = getSortedDataPoints();
+        
+        BufferedWriter out = null;
+        try
         {
-            Long timeI = sortedTimes[i];
-            Integer frequencyI = frequency.get(timeI);    
-            
-            String convertedTimeI = null;
-            if(type.equals(PSActionType.R))
+            out = Files.newBufferedWriter(givenFilePath, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            for(int i = 0 ; i < sortedTimes.length ; i++)
             {
-                convertedTimeI = PSTBUtil.createTimeString(timeI, TimeType.Milli, TimeUnit.MILLISECONDS);
+                long timeI = sortedTimes[i];
+                int frequencyI = frequency.get(timeI);
+                
+                String convertedTimeI = PSTBUtil.createTimeString(timeI, valueType, TimeUnit.MILLISECONDS);
+                
+                out.write(convertedTimeI + "    " + "(" + timeI + ")" + "    " + "occurred" + " " + frequencyI + "\n");
             }
-            else
-            {
-                convertedTimeI = PSTBUtil.createTimeString(timeI, TimeType.Nano, TimeUnit.MILLISECONDS);
-            }
-            
-            String lineI = convertedTimeI + "    " + "(" + timeI + ")" + "    " + "occurred" + " " + frequencyI + "\n";
-            try
-            {
-                Files.write(givenFilePath, lineI.getBytes(), StandardOpenOption.APPEND);
-            }
-            catch(IOException e)
+            out.close();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Error writing data points: ", e);
+            if(out != null)
             {
-                log.error(logHeader + "Error writing dataPoint " + timeI + " with occurance " + frequencyI + ": ", e);
-                return false;
+                try
+                {
+                    out.close();
+                }
+                catch(IOException eClose)
+                {
+                    // We're already reporting an error
+                }
             }
+            return false;
         }
         
         return true;
     }
-
+    
     @Override
     public void handleDataPoint(Long givenDataPoint) {
         addOccurrence(givenDataPoint);
     }
+    
+    @Override
+    public void handleHistogram(LatencyHistogram givenHistogram) {
+        // Each bucket's values are counted as the value in its middle
+        for(int i = 0 ; i < givenHistogram.getNumBuckets() ; i++)
+        {
+            long countI = givenHistogram.getBucketCount(i);
+            if(countI != 0)
+            {
+                // The counter keeps int counts - a bigger bucket saturates rather than wrapping
+                addOccurrences(givenHistogram.getBucketValue(i), (int) Math.min(countI, Integer.MAX_VALUE));
+            }
+        }
+    }
 }
@@ -3,26 +3,40 @@
  */
 package pstb.analysis.analysisobjects.scenario;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
+import pstb.analysis.diary.LatencyHistogram;
 import pstb.startup.workload.PSActionType;
 import pstb.util.PSTBUtil;
 import pstb.util.PSTBUtil.TimeType;
 
 /**
  * @author padres-dev-4187
- *
+ * 
+ * Bins delays into a histogram, and works out their percentiles.
+ * 
+ * The data points are kept in a primitive long[] (sorted in place when needed)
+ * - a boxed list costs several times the memory once there are millions of them.
+ * Latencies Clients counted into LatencyHistograms are merged in as they are, without being expanded into data points.
+ * Two PSTBHistograms (e.g. from different diaries or runs) can be merged with merge().
  */
 public class PSTBHistogram extends PSTBScenarioAO {
+    // Constants
+    private static final int INIT_CAPACITY = 1024;
+    
     // Variables
-    private ArrayList<Long> dataset;
+    private long[] dataset;
+    private int numDataPoints;
+    private boolean sorted;
+    private LatencyHistogram counted; // the latencies Clients counted into histograms rather than diary entries
     private int histogram[];
     private Double range;
     private Long floorValue;
@@ -30,20 +44,55 @@ public class PSTBHistogram extends PSTBScenarioAO {
     public PSTBHistogram()
     {
         super();
-        dataset = new ArrayList<Long>();
+        dataset = new long[INIT_CAPACITY];
+        numDataPoints = 0;
+        sorted = true;
+        counted = null;
         histogram = null;
         range = null;
         floorValue = null;
+        logHeader = "PSTBHistogram: ";
     }
     
     public void addToDataset(Long datapointToAdd)
     {
-        dataset.add(datapointToAdd);
+        addToDataset(datapointToAdd.longValue());
+    }
+    
+    public void addToDataset(long datapointToAdd)
+    {
+        if(numDataPoints == dataset.length)
+        {
+            dataset = Arrays.copyOf(dataset, dataset.length * 2);
+        }
+        
+        if(numDataPoints > 0 && datapointToAdd < dataset[numDataPoints - 1])
+        {
+            sorted = false;
+        }
+        dataset[numDataPoints] = datapointToAdd;
+        numDataPoints++;
+    }
+    
+    /**
+     * @return a copy of the data points (not including any counted into histograms)
+     */
+    public long[] getDataset()
+    {
+        return Arrays.copyOf(dataset, numDataPoints);
     }
     
-    public ArrayList<Long> getDataset()
+    /**
+     * @return the number of data points - including any counted into histograms
+     */
+    public long size()
     {
-        return dataset;
+        long retVal = numDataPoints;
+        if(counted != null)
+        {
+            retVal += counted.getTotalCount();
+        }
+        return retVal;
     }
     
     public int[] getHistogram()
@@ -61,29 +110,196 @@ public class PSTBHistogram extends PSTBScenarioAO {
         return floorValue;
     }
     
+    public LatencyHistogram getCounted()
+    {
+        return counted;
+    }
+    
+    private boolean isEmpty()
+    {
+        return size() == 0;
+    }
+    
+    private void sortDataset()
+    {
+        if(!sorted)
+        {
+            Arrays.sort(dataset, 0, numDataPoints);
+            sorted = true;
+        }
+    }
+    
+    /**
+     * Adds everything in the given histogram to this one
+     * 
+     * @param givenAO - the PSTBHistogram to merge in
+     */
+    @Override
+    public void merge(PSTBScenarioAO givenAO)
+    {
+        if(givenAO == null)
+        {
+            return;
+        }
+        
+        PSTBHistogram givenHistogram = (PSTBHistogram) givenAO;
+        if(numDataPoints + givenHistogram.numDataPoints > dataset.length)
+        {
+            dataset = Arrays.copyOf(dataset, numDataPoints + givenHistogram.numDataPoints);
+        }
+        System.arraycopy(givenHistogram.dataset, 0, dataset, numDataPoints, givenHistogram.numDataPoints);
+        numDataPoints += givenHistogram.numDataPoints;
+        sorted = false;
+        
+        if(givenHistogram.counted != null)
+        {
+            handleHistogram(givenHistogram.counted);
+        }
+        
+        histogram = null;
+    }
+    
+    @Override
+    public PSTBHistogram createEmpty()
+    {
+        return new PSTBHistogram();
+    }
+    
+    @Override
+    public void writeData(DataOutput out) throws IOException
+    {
+        out.writeInt(numDataPoints);
+        for(int i = 0 ; i < numDataPoints ; i++)
+        {
+            out.writeLong(dataset[i]);
+        }
+        
+        out.writeBoolean(counted != null);
+        if(counted != null)
+        {
+            counted.writeTo(out);
+        }
+    }
+    
+    @Override
+    public void readData(DataInput in) throws IOException
+    {
+        int numGiven = in.readInt();
+        if(numGiven < 0)
+        {
+            throw new IOException("Histogram has an invalid number of data points " + numGiven + "!");
+        }
+        for(int i = 0 ; i < numGiven ; i++)
+        {
+            addToDataset(in.readLong());
+        }
+        
+        if(in.readBoolean())
+        {
+            handleHistogram(LatencyHistogram.readFrom(in));
+        }
+        
+        histogram = null;
+    }
+    
+    /**
+     * Gets the value at the given percentile
+     * This is exact if every data point was recorded individually;
+     * if any were counted into histograms it's to within their precision
+     * 
+     * @param givenPercentile - the percentile (0.0 - 100.0)
+     * @return the value; null if there are no data points
+     */
+    public Long getPercentile(double givenPercentile)
+    {
+        if(isEmpty())
+        {
+            return null;
+        }
+        
+        if(counted != null)
+        {
+            return getEverything().getValueAtPercentile(givenPercentile);
+        }
+        
+        // Nearest rank
+        sortDataset();
+        double percentile = Math.min(Math.max(givenPercentile, 0.0), 100.0);
+        int rank = (int) Math.ceil((percentile / 100.0) * numDataPoints);
+        rank = Math.max(rank, 1);
+        return dataset[rank - 1];
+    }
+    
+    /**
+     * @return the mean of every data point; null if there are none
+     */
+    public Double getMean()
+    {
+        if(isEmpty())
+        {
+            return null;
+        }
+        
+        double sum = 0.0;
+        for(int i = 0 ; i < numDataPoints ; i++)
+        {
+            sum += dataset[i];
+        }
+        if(counted != null)
+        {
+            sum += counted.getSum();
+        }
+        return sum / size();
+    }
+    
+    /**
+     * @return every data point counted into one LatencyHistogram (at the counted histograms' precision)
+     */
+    private LatencyHistogram getEverything()
+    {
+        LatencyHistogram retVal = counted.copy();
+        for(int i = 0 ; i < numDataPoints ; i++)
+        {
+            retVal.recordValue(dataset[i]);
+        }
+        return retVal;
+    }
+    
     public boolean buildHistogram()
     {
-        if(dataset.isEmpty())
+        if(isEmpty())
         {
             log.error("No data exists to turn into a histogram!");
             return false;
         }
         
-        int numDataPoints = dataset.size();
-        Long[] sortedDataset = dataset.toArray(new Long[numDataPoints]);
-        Arrays.sort(sortedDataset);
+        sortDataset();
         
-        int numberOfBins = calculateNumBins(numDataPoints);
-        floorValue = sortedDataset[0];
-        range = (sortedDataset[numDataPoints-1].doubleValue() - floorValue.doubleValue() + 1.0) / numberOfBins;
+        long totalDataPoints = size();
+        long lowest = Long.MAX_VALUE;
+        long highest = Long.MIN_VALUE;
+        if(numDataPoints > 0)
+        {
+            lowest = dataset[0];
+            highest = dataset[numDataPoints-1];
+        }
+        if(counted != null && counted.getTotalCount() > 0)
+        {
+            lowest = Math.min(lowest, counted.getMin());
+            highest = Math.max(highest, counted.getMax());
+        }
+        
+        int numberOfBins = Math.max(calculateNumBins(totalDataPoints), 1);
+        floorValue = lowest;
+        range = ((double) highest - floorValue.doubleValue() + 1.0) / numberOfBins;
         
         histogram = new int[numberOfBins];
         
         int binNum = 1;
         for(int i = 0 ; i < numDataPoints ; i++)
         {
-            Long dataPointI = sortedDataset[i];
-            while(dataPointI.doubleValue() > (floorValue + range*binNum))
+            long dataPointI = dataset[i];
+            while(dataPointI > (floorValue + range*binNum))
             {
                 binNum++;
             }
@@ -91,10 +307,26 @@ public class PSTBHistogram extends PSTBScenarioAO {
             histogram[binNum-1]++;
         }
         
+        // Each of the counted buckets goes into the bin its middle value falls in
+        if(counted != null)
+        {
+            for(int i = 0 ; i < counted.getNumBuckets() ; i++)
+            {
+                long countI = counted.getBucketCount(i);
+                if(countI != 0)
+                {
+                    double valueI = Math.min(Math.max(counted.getBucketValue(i), lowest), highest);
+                    int binI = (int) Math.ceil((valueI - floorValue) / range) - 1;
+                    binI = Math.min(Math.max(binI, 0), numberOfBins - 1);
+                    histogram[binI] += countI;
+                }
+            }
+        }
+        
         return true;
     }
     
-    private int calculateNumBins(int numElements)
+    private int calculateNumBins(long numElements)
     {
         if(numElements <= 30)
         {
@@ -108,7 +340,7 @@ public class PSTBHistogram extends PSTBScenarioAO {
     
     @Override
     public boolean completeRecord(Path givenFilePath) {
-        if(dataset.isEmpty())
+        if(isEmpty())
         {
             log.error("No data exists to print our histogram!");
             return true;
@@ -116,51 +348,78 @@ public class PSTBHistogram extends PSTBScenarioAO {
         
         buildHistogram();
         
+        TimeType valueType = TimeType.Nano;
+        if(type.equals(PSActionType.R))
+        {
+            valueType = TimeType.Milli;
+        }
+        
         DecimalFormat binFormat = new DecimalFormat("#.#####");
         
+        StringBuilder record = new StringBuilder();
         for(int i = 0 ; i < histogram.length ; i++)
         {
             Double binFloor = floorValue + range*i;
             Double binCeiling = floorValue + range*(i+1);
             
-            String convertedFloor = null;
-            String convertedCeiling = null;
-            
-            if(type.equals(PSActionType.R))
-            {
-                convertedFloor = PSTBUtil.createTimeString(binFloor.longValue(), TimeType.Milli, TimeUnit.MILLISECONDS);
-                convertedCeiling = PSTBUtil.createTimeString(binCeiling.longValue(), TimeType.Milli, TimeUnit.MILLISECONDS);
-            }
-            else
-            {
-                convertedFloor = PSTBUtil.createTimeString(binFloor.longValue(), TimeType.Nano, TimeUnit.MILLISECONDS);
-                convertedCeiling = PSTBUtil.createTimeString(binCeiling.longValue(), TimeType.Nano, TimeUnit.MILLISECONDS);
-            }
+            String convertedFloor = PSTBUtil.createTimeString(binFloor.longValue(), valueType, TimeUnit.MILLISECONDS);
+            String convertedCeiling = PSTBUtil.createTimeString(binCeiling.longValue(), valueType, TimeUnit.MILLISECONDS);
             
             String cleanFloor = binFormat.format(binFloor);
             String cleanCeiling = binFormat.format(binCeiling);
             
-            String lineI = convertedFloor + " - " + convertedCeiling 
+            record.append(convertedFloor + " - " + convertedCeiling 
                     + "    " + "(" + cleanFloor + " - " + cleanCeiling + ")" 
-                    + "    " + "->" + " " + histogram[i] + "\n";
-            
-            try
-            {
-                Files.write(givenFilePath, lineI.getBytes(), StandardOpenOption.APPEND);
-            }
-            catch(IOException e)
-            {
-                log.error(logHeader + "Error writing bin " + i + ": ", e);
-                return false;
-            }
+                    + "    " + "->" + " " + histogram[i] + "\n");
+        }
+        
+        // Then the percentiles
+        record.append("\n");
+        record.append("count = " + size() + "\n");
+        long mean = getMean().longValue();
+        record.append("mean = " + PSTBUtil.createTimeString(mean, valueType, TimeUnit.MILLISECONDS) + " (" + mean + ")\n");
+        double[] percentiles = LatencyHistogram.SUMMARY_PERCENTILES;
+        for(int i = 0 ; i < percentiles.length ; i++)
+        {
+            long valueI = getPercentile(percentiles[i]);
+            record.append("p" + percentiles[i] + " = " + PSTBUtil.createTimeString(valueI, valueType, TimeUnit.MILLISECONDS) 
+                    + " (" + valueI + ")\n");
+        }
+        long max = getPercentile(100.0);
+        record.append("max = " + PSTBUtil.createTimeString(max, valueType, TimeUnit.MILLISECONDS) + " (" + max + ")\n");
+        
+        try
+        {
+            Files.write(givenFilePath, record.toString().getBytes(), StandardOpenOption.APPEND);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Error writing histogram: ", e);
+            return false;
         }
         
         return true;
     }
-
+    
     @Override
     public void handleDataPoint(Long givenDataPoint) {
-        addToDataset(givenDataPoint);
+        if(givenDataPoint == null)
+        {
+            return;
+        }
+        addToDataset(givenDataPoint.longValue());
+    }
+    
+    @Override
+    public void handleHistogram(LatencyHistogram givenHistogram) {
+        if(counted == null)
+        {
+            counted = givenHistogram.copy();
+        }
+        else
+        {
+            counted.merge(givenHistogram);
+        }
     }
 
 }
@@ -3,6 +3,7 @@ package pstb.analysis.analysisobjects.scenario;
 import java.nio.file.Path;
 
 import pstb.analysis.analysisobjects.PSTBAnalysisObject;
+import pstb.analysis.diary.LatencyHistogram;
 import pstb.startup.workload.PSActionType;
 
 public abstract class PSTBScenarioAO extends PSTBAnalysisObject {
@@ -40,4 +41,19 @@ public abstract class PSTBScenarioAO extends PSTBAnalysisObject {
     public abstract boolean completeRecord(Path givenFilePath);
     
     public abstract void handleDataPoint(Long givenDataPoint);
+    
+    /**
+     * Adds every latency a Client counted into a LatencyHistogram
+     * (Instead of a data point per diary entry.)
+     * 
+     * @param givenHistogram - the histogram
+     */
+    public abstract void handleHistogram(LatencyHistogram givenHistogram);
+    
+    /**
+     * Adds everything the given object has collected to this one
+     * 
+     * @param givenAO - an object of the same kind as this one
+     */
+    public abstract void merge(PSTBScenarioAO givenAO);
 }
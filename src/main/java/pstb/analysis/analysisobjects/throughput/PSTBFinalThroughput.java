@@ -3,6 +3,8 @@
  */
 package pstb.analysis.analysisobjects.throughput;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -63,5 +65,27 @@ public class PSTBFinalThroughput extends PSTBThroughputAO {
     public void handleDataPoint(Double givenDataPoint) {
         value = givenDataPoint;
     }
+    
+    @Override
+    public PSTBFinalThroughput createEmpty() {
+        return new PSTBFinalThroughput();
+    }
+    
+    @Override
+    public void writeData(DataOutput out) throws IOException {
+        out.writeBoolean(value != null);
+        if(value != null)
+        {
+            out.writeDouble(value);
+        }
+    }
+    
+    @Override
+    public void readData(DataInput in) throws IOException {
+        if(in.readBoolean())
+        {
+            value = in.readDouble();
+        }
+    }
 
 }
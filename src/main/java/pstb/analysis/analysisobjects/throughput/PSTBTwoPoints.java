@@ -4,6 +4,8 @@
 package pstb.analysis.analysisobjects.throughput;
 
 import java.awt.geom.Point2D;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -100,6 +102,36 @@ public class PSTBTwoPoints extends PSTBThroughputAO {
         dataset.add(newPoint);
     }
 
+    @Override
+    public PSTBTwoPoints createEmpty() {
+        return new PSTBTwoPoints(associated);
+    }
+    
+    @Override
+    public void writeData(DataOutput out) throws IOException {
+        out.writeInt(dataset.size());
+        for(int i = 0 ; i < dataset.size() ; i++)
+        {
+            Point2D.Double pointI = dataset.get(i);
+            out.writeDouble(pointI.getX());
+            out.writeDouble(pointI.getY());
+        }
+    }
+    
+    @Override
+    public void readData(DataInput in) throws IOException {
+        int numPoints = in.readInt();
+        if(numPoints < 0)
+        {
+            throw new IOException("Invalid number of points " + numPoints + "!");
+        }
+        for(int i = 0 ; i < numPoints ; i++)
+        {
+            double x = in.readDouble();
+            dataset.add(new Point2D.Double(x, in.readDouble()));
+        }
+    }
+    
     @Override
     public void handleDataPoint(Double givenDataPoint) {
         // NULL
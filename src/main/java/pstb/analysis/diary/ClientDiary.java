@@ -1,11 +1,16 @@
 package pstb.analysis.diary;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.Logger;
 
@@ -16,179 +21,890 @@ import pstb.util.PSTBUtil;
  * @author padres-dev-4187
  * 
  * Allows the Client to record data during a run.
+ * 
+ * The diary is stored column by column (a struct-of-arrays):
+ * each numeric DiaryHeader gets its own primitive long[] column (created the first time that header is used),
+ * the PSActionType is stored as its ordinal,
+ * Attributes are dictionary-encoded into an int[] column (the same few subscriptions / publications repeat over and over)
+ * and MessageIDs are kept as a plain String[] column (they're unique to nearly every row, so a dictionary would only add to them).
+ * DiaryEntries are only built when someone asks for one through getDiaryEntryI().
+ * Analysis code that just needs a value or two should use the column accessors instead.
+ * 
+ * A diary can also be spilled (see startSpilling()):
+ * every time it reaches a given number of entries, those entries are serialized to a file and dropped from memory.
+ * The file is then a diary file made up of several chunks - which DiaryReader stitches back together.
+ * That keeps a long run's diary from running the Client out of heap,
+ * and means a run that dies part way through still leaves every chunk it wrote behind.
+ * The chunks are written by their own thread - so whoever adds the entry that fills a chunk only hands it over -
+ * and at most MAX_PENDING_SPILLS chunks can be waiting to be written before adding an entry blocks.
+ * 
+ * Finally, a diary can keep a LatencyHistogram per PSActionType (see startHistograms()).
+ * A Client recording into histograms only needs an entry for the actions it has to look up again later
+ * - everything else is just a count in a fixed-size histogram.
  */
-public class ClientDiary implements java.io.Serializable
+public class ClientDiary extends ReadableDiary implements java.io.Serializable
 {
     // Constants
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 3L;
+    private static final int INIT_CAPACITY = 64;
+    static final int NO_VALUE = -1;
+    static final PSActionType[] ACTION_TYPES = PSActionType.values();
+    // The only PSActionTypes that are ever looked up by their attributes (by unsubscribe / unadvertise)
+    private static final PSActionType[] INDEXED_ACTION_TYPES = {PSActionType.A, PSActionType.S};
+    private static final int MAX_PENDING_SPILLS = 2;
     
-    // Key Variable
-    ArrayList<DiaryEntry> diary;
+    // Key Variables
+    // (These are package-private so that DiaryWriter / DiaryReader can move whole columns at once)
+    int numEntries;
+    long[][] columns;
+    long[] presence;
+    byte[] actionTypes;
+    String[] messageIDs;
+    int[] attributes;
+    ArrayList<String> dictionary;
     String timeCreated;
+    LatencyHistogram[] latencyHistograms; // by PSActionType ordinal - null for any type that isn't being recorded
+    
+    // Indexes
+    // These are rebuilt from the diary itself whenever it's deserialized
+    // (Only INDEXED_ACTION_TYPES rows go into the action / attribute index - so it grows with the ads and subs, not the messages)
+    private transient HashMap<String, Integer> dictionaryCodes;
+    private transient HashMap<PSActionType, HashMap<String, Integer>> actionAttributeIndex;
+    
+    // Spilling
+    // The ads and subs the action / attribute index pointed to when their chunk was spilled
+    // - so that a spilled subscription can still be unsubscribed (nothing else is ever looked up again)
+    private transient HashMap<PSActionType, HashMap<String, DiaryEntry>> spilledActionAttributeEntries;
+    private transient DiaryWriter spillOut; // only touched by spillWriter until it's shut down
+    private transient ExecutorService spillWriter;
+    private transient Semaphore spillSlots;
+    private transient Path spillFile;
+    private transient int spillChunkSize;
+    private transient int numSpilled;
+    private transient volatile IOException spillError;
     
     /**
      * Empty Constructor
      */
     public ClientDiary()
     {
-        diary = new ArrayList<DiaryEntry>();
         Long currTime = System.currentTimeMillis();
         timeCreated = PSTBUtil.DATE_FORMAT.format(currTime);
+        
+        dictionary = new ArrayList<String>();
+        latencyHistograms = new LatencyHistogram[ACTION_TYPES.length];
+        resetColumns();
+        rebuildIndexes();
+    }
+    
+    /**
+     * Column Constructor
+     * Used by DiaryReader and the spill writer - the given arrays are taken over, not copied
+     * (givenDictionary only has to cover the attributes)
+     */
+    ClientDiary(int givenNumEntries, long[][] givenColumns, long[] givenPresence, byte[] givenActionTypes,
+            String[] givenMessageIDs, int[] givenAttributes, ArrayList<String> givenDictionary, String givenTimeCreated)
+    {
+        timeCreated = givenTimeCreated;
+        numEntries = givenNumEntries;
+        columns = givenColumns;
+        presence = givenPresence;
+        actionTypes = givenActionTypes;
+        messageIDs = givenMessageIDs;
+        attributes = givenAttributes;
+        dictionary = givenDictionary;
+        latencyHistograms = new LatencyHistogram[ACTION_TYPES.length];
+        rebuildIndexes();
+    }
+    
+    private void resetColumns()
+    {
+        numEntries = 0;
+        columns = new long[DiaryEntry.NUM_HEADERS][];
+        presence = new long[INIT_CAPACITY];
+        actionTypes = new byte[INIT_CAPACITY];
+        messageIDs = new String[INIT_CAPACITY];
+        attributes = new int[INIT_CAPACITY];
+    }
+    
+    private void ensureCapacity(int requiredSize)
+    {
+        int currentCapacity = presence.length;
+        if(requiredSize <= currentCapacity)
+        {
+            return;
+        }
+        
+        int newCapacity = Math.max(requiredSize, currentCapacity + (currentCapacity >> 1));
+        presence = Arrays.copyOf(presence, newCapacity);
+        actionTypes = Arrays.copyOf(actionTypes, newCapacity);
+        messageIDs = Arrays.copyOf(messageIDs, newCapacity);
+        attributes = Arrays.copyOf(attributes, newCapacity);
+        for(int i = 0 ; i < columns.length ; i++)
+        {
+            if(columns[i] != null)
+            {
+                columns[i] = Arrays.copyOf(columns[i], newCapacity);
+            }
+        }
+    }
+    
+    private int encode(String givenString)
+    {
+        if(givenString == null)
+        {
+            return NO_VALUE;
+        }
+        
+        Integer code = dictionaryCodes.get(givenString);
+        if(code == null)
+        {
+            code = dictionary.size();
+            dictionary.add(givenString);
+            dictionaryCodes.put(givenString, code);
+        }
+        return code;
+    }
+    
+    private String decode(int givenCode)
+    {
+        if(givenCode == NO_VALUE)
+        {
+            return null;
+        }
+        return dictionary.get(givenCode);
     }
     
     /**
      * Adds a new diary entry to this diary
+     * (and to its indexes - so the entry should be complete before it's added)
+     * The entry's values are copied into the diary's columns.
      * 
      * @param givenDE - the diary entry to add
      */
-    public void addDiaryEntryToDiary(DiaryEntry givenDE) 
+    public void addDiaryEntryToDiary(DiaryEntry givenDE)
     {
-        diary.add(givenDE);
+        if(givenDE == null)
+        {
+            return;
+        }
+        
+        int row = numEntries;
+        ensureCapacity(row + 1);
+        
+        long givenPresent = givenDE.present;
+        for(int i = 0 ; i < DiaryEntry.NUM_HEADERS ; i++)
+        {
+            if((givenPresent & (1L << i)) != 0 && !DiaryEntry.isObjectHeader(DiaryEntry.HEADERS[i]))
+            {
+                if(columns[i] == null)
+                {
+                    columns[i] = new long[presence.length];
+                }
+                columns[i][row] = givenDE.values[i];
+            }
+        }
+        
+        presence[row] = givenPresent;
+        actionTypes[row] = (givenDE.actionType == null) ? NO_VALUE : (byte) givenDE.actionType.ordinal();
+        messageIDs[row] = givenDE.messageID;
+        attributes[row] = encode(givenDE.attributes);
+        numEntries++;
+        
+        indexEntry(row);
+        
+        if(spillOut != null && numEntries >= spillChunkSize)
+        {
+            spillChunk();
+        }
     }
     
     /**
-     * Gets a diary entry given it's associated Message ID
+     * Adds every entry in the given diary to the end of this diary
      * 
-     * @param givenMID - the associated messageID
-     * @return Either the given diary entry, or null
+     * @param givenDiary - the diary to copy the entries of
      */
-    public DiaryEntry getDiaryEntryGivenMessageID(String givenMID)
+    public void appendDiary(ClientDiary givenDiary)
     {
-        DiaryEntry appropriateDiary = null;
-        for(int i = 0; i < diary.size() ; i++)
+        int givenSize = givenDiary.numEntries;
+        int firstRow = numEntries;
+        ensureCapacity(firstRow + givenSize);
+        
+        // The column values can be copied as is...
+        for(int i = 0 ; i < DiaryEntry.NUM_HEADERS ; i++)
         {
-            DiaryEntry iTHEntry = diary.get(i);
-            if(iTHEntry.containsValue(givenMID))
+            if(givenDiary.columns[i] != null)
             {
-                appropriateDiary = iTHEntry;
-                break;
+                if(columns[i] == null)
+                {
+                    columns[i] = new long[presence.length];
+                }
+                System.arraycopy(givenDiary.columns[i], 0, columns[i], firstRow, givenSize);
             }
         }
-        return appropriateDiary;
+        System.arraycopy(givenDiary.presence, 0, presence, firstRow, givenSize);
+        System.arraycopy(givenDiary.actionTypes, 0, actionTypes, firstRow, givenSize);
+        System.arraycopy(givenDiary.messageIDs, 0, messageIDs, firstRow, givenSize);
+        
+        // ...but the attributes have to be moved into our dictionary
+        ArrayList<String> givenDictionary = givenDiary.dictionary;
+        int[] codeMap = new int[givenDictionary.size()];
+        for(int i = 0 ; i < codeMap.length ; i++)
+        {
+            codeMap[i] = encode(givenDictionary.get(i));
+        }
+        for(int i = 0 ; i < givenSize ; i++)
+        {
+            int givenAttri = givenDiary.attributes[i];
+            attributes[firstRow + i] = (givenAttri == NO_VALUE) ? NO_VALUE : codeMap[givenAttri];
+        }
+        
+        numEntries += givenSize;
+        for(int i = firstRow ; i < numEntries ; i++)
+        {
+            indexEntry(i);
+        }
+        
+        for(int i = 0 ; i < ACTION_TYPES.length ; i++)
+        {
+            addLatencyHistogram(ACTION_TYPES[i], givenDiary.latencyHistograms[i]);
+        }
+        
+        if(spillOut != null && numEntries >= spillChunkSize)
+        {
+            spillChunk();
+        }
     }
     
     /**
-     * Gets a diary entry given it's associated Action Type and Attributes
+     * Starts recording the latencies of every PSActionType into LatencyHistograms
+     * @see recordLatency()
      * 
-     * @param givenAction - the associated PSActionType
-     * @param givenAttri - the associated attributes
-     * @return Either the given diary entry, or null
+     * @param givenPrecision - the number of significant digits the histograms should keep
      */
-    public DiaryEntry getDiaryEntryGivenActionTypeNAttributes(PSActionType givenAction, String givenAttri, Logger log)
+    public void startHistograms(int givenPrecision)
     {
-        DiaryEntry appropriateDiary = null;
-        for(int i = 0; i < diary.size() ; i++)
+        for(int i = 0 ; i < ACTION_TYPES.length ; i++)
         {
-            DiaryEntry iTHEntry = diary.get(i);
-            if(iTHEntry == null)
-            {
-                log.error("Diary contains an entry that's null!");
-                break;
-            }
-            if(iTHEntry.containsValue(givenAction) && iTHEntry.containsValue(givenAttri))
+            if(latencyHistograms[i] == null)
             {
-                appropriateDiary = iTHEntry;
-                break;
+                latencyHistograms[i] = new LatencyHistogram(givenPrecision);
             }
         }
-        return appropriateDiary;
     }
     
-    
     /**
-     * Gets the Diary Entry at index i
+     * Records a latency into the given PSActionType's histogram
      * 
-     * @param i - index
-     * @return the associated DiaryEntry
+     * @param givenType - the PSActionType
+     * @param givenLatency - the latency (nanoseconds for an action; milliseconds for a Received message)
+     * @return false if that PSActionType isn't being recorded into a histogram; true otherwise
      */
-    public DiaryEntry getDiaryEntryI(int i)
+    public boolean recordLatency(PSActionType givenType, long givenLatency)
     {
-        return diary.get(i);
+        LatencyHistogram histogram = latencyHistograms[givenType.ordinal()];
+        if(histogram == null)
+        {
+            return false;
+        }
+        
+        histogram.recordValue(givenLatency);
+        return true;
     }
     
     /**
-     * Returns the size of the Diary
-     * (Basically an extension of the ArrayList<> size function)
+     * @param givenType - the PSActionType
+     * @return true if the given PSActionType's latencies are being recorded into a histogram; false otherwise
+     */
+    public boolean hasLatencyHistogram(PSActionType givenType)
+    {
+        return latencyHistograms[givenType.ordinal()] != null;
+    }
+    
+    @Override
+    public LatencyHistogram getLatencyHistogram(PSActionType givenType)
+    {
+        return latencyHistograms[givenType.ordinal()];
+    }
+    
+    /**
+     * Merges the given histogram into this diary's histogram for the given PSActionType
+     * (Starting one if there isn't one yet.)
      * 
-     * @return the size of the diary
+     * @param givenType - the PSActionType
+     * @param givenHistogram - the histogram; null does nothing
      */
-    public int size() {
-        return diary.size();
+    public void addLatencyHistogram(PSActionType givenType, LatencyHistogram givenHistogram)
+    {
+        if(givenHistogram == null)
+        {
+            return;
+        }
+        
+        int i = givenType.ordinal();
+        if(latencyHistograms[i] == null)
+        {
+            latencyHistograms[i] = givenHistogram.copy();
+        }
+        else
+        {
+            latencyHistograms[i].merge(givenHistogram);
+        }
     }
     
     /**
-     * Takes the contents of this diary, and writes it to a file
+     * Starts spilling this diary to the given file
+     * From now on, every time the diary holds givenChunkSize entries they're written out as a chunk and dropped from memory
+     * (So size() and getDiaryEntryI() only cover the entries that haven't been spilled yet.)
      * 
-     * @param givenFilePath - the Path of the file to write to
+     * @param givenFilePath - the file to spill to (it's overwritten)
+     * @param givenContext - the context of the node this diary belongs to (it goes in the file's header)
+     * @param givenChunkSize - the number of entries in each chunk
      * @param log - the Logger to record errors
+     * @return false on error; true otherwise
      */
-    public boolean recordDiary(Path givenFilePath, Logger log)
+    public boolean startSpilling(Path givenFilePath, String givenContext, int givenChunkSize, Logger log)
     {
-        int diarySize = diary.size();
+        if(spillOut != null)
+        {
+            log.error("ClientDiary: This diary is already being spilled to " + spillFile + "!");
+            return false;
+        }
+        if(givenChunkSize < 1)
+        {
+            log.error("ClientDiary: " + givenChunkSize + " isn't a valid chunk size!");
+            return false;
+        }
         
-        String openingLine = "Created at " + timeCreated + "\n"
-                + "There are " + diarySize + " entries\n" 
-                + "\n";
         try
         {
-            Files.deleteIfExists(givenFilePath);
-            Files.write(givenFilePath, openingLine.getBytes());
+            spillOut = new DiaryWriter(givenFilePath, givenContext, timeCreated, DiaryWriter.UNKNOWN_NUM_ENTRIES);
         }
         catch(IOException e)
         {
-            log.error("ClientDiary: Error writing diarySize", e);
+            log.error("ClientDiary: Couldn't open " + givenFilePath + " to spill to: ", e);
             return false;
         }
         
-        for(int i = 0; i < diarySize ; i++)
+        spillWriter = Executors.newSingleThreadExecutor(r -> {
+            Thread writer = new Thread(r, "DiarySpill-" + givenFilePath.getFileName());
+            writer.setDaemon(true);
+            return writer;
+        });
+        spillSlots = new Semaphore(MAX_PENDING_SPILLS);
+        spillFile = givenFilePath;
+        spillChunkSize = givenChunkSize;
+        numSpilled = 0;
+        spillError = null;
+        spilledActionAttributeEntries = new HashMap<PSActionType, HashMap<String, DiaryEntry>>();
+        
+        if(numEntries >= spillChunkSize)
         {
-            String intro = "Page " + i + ":\n";
-            try
+            spillChunk();
+        }
+        return true;
+    }
+    
+    /**
+     * Writes whatever the diary is still holding as a final chunk, and closes the spill file
+     * 
+     * @param log - the Logger to record errors
+     * @return false if any chunk couldn't be written; true otherwise
+     */
+    public boolean finishSpilling(Logger log)
+    {
+        if(spillOut == null)
+        {
+            log.error("ClientDiary: This diary isn't being spilled!");
+            return false;
+        }
+        
+        // Even an empty diary gets one chunk, so that the file can be read
+        if(numEntries > 0 || numSpilled == 0)
+        {
+            spillChunk();
+        }
+        
+        // Every chunk has to be written before the histograms go on the end
+        boolean writerDone = false;
+        spillWriter.shutdown();
+        try
+        {
+            writerDone = spillWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        spillWriter = null;
+        spillSlots = null;
+        
+        if(!writerDone)
+        {
+            log.error("ClientDiary: Interrupted waiting for the chunks to be written to " + spillFile + "!");
+            spillOut = null;
+            return false;
+        }
+        
+        try
+        {
+            spillOut.writeHistograms(this);
+            spillOut.close();
+        }
+        catch(IOException e)
+        {
+            if(spillError == null)
             {
-                Files.write(givenFilePath, intro.getBytes(), StandardOpenOption.APPEND);
+                spillError = e;
             }
-            catch(IOException e)
+        }
+        spillOut = null;
+        
+        if(spillError != null)
+        {
+            log.error("ClientDiary: Error spilling to " + spillFile + ": ", spillError);
+            return false;
+        }
+        
+        log.info("ClientDiary: Spilled " + numSpilled + " entries to " + spillFile + ".");
+        return true;
+    }
+    
+    /**
+     * @return true if this diary is being spilled to a file; false otherwise
+     */
+    public boolean isSpilling()
+    {
+        return spillOut != null;
+    }
+    
+    /**
+     * @return the file this diary is (or was) spilled to; null if it never was
+     */
+    public Path getSpillFile()
+    {
+        return spillFile;
+    }
+    
+    /**
+     * Hands the entries currently in memory to the spill writer as one chunk, then drops them
+     * (Blocking if MAX_PENDING_SPILLS chunks are already waiting to be written.)
+     * An error is remembered and reported by finishSpilling()
+     * - entries can be added from the listening side, which has nowhere to report it.
+     */
+    private void spillChunk()
+    {
+        // Remember the latest ad / sub for every attribute before its row disappears
+        // (The index only holds the INDEXED_ACTION_TYPES, so this is all the lookups will ever need)
+        actionAttributeIndex.forEach((actionI, entriesI) -> {
+            HashMap<String, DiaryEntry> spilledEntriesI = spilledActionAttributeEntries.get(actionI);
+            if(spilledEntriesI == null)
             {
-                log.error("ClientDiary: Error writing intro " + i, e);
-                return false;
+                spilledEntriesI = new HashMap<String, DiaryEntry>();
+                spilledActionAttributeEntries.put(actionI, spilledEntriesI);
             }
-            
-            boolean check = diary.get(i).recordPage(givenFilePath, log);
-            if(!check)
+            for(HashMap.Entry<String, Integer> entryJ : entriesI.entrySet())
             {
-                return false;
+                spilledEntriesI.put(entryJ.getKey(), getDiaryEntryI(entryJ.getValue()));
             }
-            
-            String newLine = "\n";
+        });
+        
+        // The columns are handed over whole - this diary starts new ones
+        int chunkSize = numEntries;
+        long[][] chunkColumns = columns;
+        long[] chunkPresence = presence;
+        byte[] chunkActionTypes = actionTypes;
+        String[] chunkMessageIDs = messageIDs;
+        int[] chunkAttributes = attributes;
+        ArrayList<String> chunkDictionary = dictionary;
+        
+        spillSlots.acquireUninterruptibly();
+        spillWriter.execute(() -> {
             try
             {
-                Files.write(givenFilePath, newLine.getBytes(), StandardOpenOption.APPEND);
+                if(spillError == null)
+                {
+                    ClientDiary chunk = new ClientDiary(chunkSize, chunkColumns, chunkPresence, chunkActionTypes, chunkMessageIDs,
+                            chunkAttributes, chunkDictionary, timeCreated);
+                    spillOut.writeChunk(chunk);
+                    spillOut.flush();
+                }
             }
             catch(IOException e)
             {
-                log.error("ClientDiary: Error writing newLine " + i, e);
-                return false;
+                spillError = e;
             }
+            finally
+            {
+                spillSlots.release();
+            }
+        });
+        
+        numSpilled += numEntries;
+        resetColumns();
+        dictionary = new ArrayList<String>();
+        rebuildIndexes();
+    }
+    
+    /**
+     * Gets a diary entry given it's associated Message ID
+     * 
+     * (Nothing looks entries up this way during a run, so this scans the column rather than keeping an index)
+     * 
+     * @param givenMID - the associated messageID
+     * @return Either the first diary entry with that messageID, or null
+     */
+    public DiaryEntry getDiaryEntryGivenMessageID(String givenMID)
+    {
+        if(givenMID == null)
+        {
+            return null;
         }
         
-        return true;
+        for(int i = 0 ; i < numEntries ; i++)
+        {
+            if(givenMID.equals(getMessageID(i)))
+            {
+                return getDiaryEntryI(i);
+            }
+        }
+        
+        return null;
     }
-
+    
+    /**
+     * Gets a diary entry given it's associated Action Type and Attributes
+     * 
+     * @param givenAction - the associated PSActionType
+     * @param givenAttri - the associated attributes
+     * @return Either the most recent diary entry with that Action Type and Attributes, or null
+     * (Always null for anything but the INDEXED_ACTION_TYPES)
+     */
+    public DiaryEntry getDiaryEntryGivenActionTypeNAttributes(PSActionType givenAction, String givenAttri, Logger log)
+    {
+        if(givenAction == null || givenAttri == null)
+        {
+            log.error("ClientDiary: Can't search for a null Action Type or Attribute!");
+            return null;
+        }
+        
+        HashMap<String, Integer> actionsEntries = actionAttributeIndex.get(givenAction);
+        Integer row = (actionsEntries == null) ? null : actionsEntries.get(givenAttri);
+        if(row == null)
+        {
+            return getSpilledEntry(givenAction, givenAttri);
+        }
+        
+        return getDiaryEntryI(row);
+    }
+    
+    private DiaryEntry getSpilledEntry(PSActionType givenAction, String givenAttri)
+    {
+        if(spilledActionAttributeEntries == null)
+        {
+            return null;
+        }
+        
+        HashMap<String, DiaryEntry> spilledEntries = spilledActionAttributeEntries.get(givenAction);
+        if(spilledEntries == null)
+        {
+            return null;
+        }
+        
+        return spilledEntries.get(givenAttri);
+    }
+    
+    /**
+     * Adds the given row to the index - if it's one of the INDEXED_ACTION_TYPES
+     * 
+     * @param givenRow - the row to index
+     */
+    private void indexEntry(int givenRow)
+    {
+        PSActionType rowsAT = getPSActionType(givenRow);
+        if(!isIndexed(rowsAT))
+        {
+            return;
+        }
+        
+        String rowsAttri = getAttributes(givenRow);
+        if(rowsAttri != null)
+        {
+            HashMap<String, Integer> actionsEntries = actionAttributeIndex.get(rowsAT);
+            if(actionsEntries == null)
+            {
+                actionsEntries = new HashMap<String, Integer>();
+                actionAttributeIndex.put(rowsAT, actionsEntries);
+            }
+            // We want the latest entry, so that a re-subscription is undone using its own information
+            actionsEntries.put(rowsAttri, givenRow);
+        }
+    }
+    
+    private static boolean isIndexed(PSActionType givenAT)
+    {
+        for(int i = 0 ; i < INDEXED_ACTION_TYPES.length ; i++)
+        {
+            if(INDEXED_ACTION_TYPES[i] == givenAT)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Throws away the indexes and builds them again from the diary
+     */
+    private void rebuildIndexes()
+    {
+        dictionaryCodes = new HashMap<String, Integer>();
+        for(int i = 0 ; i < dictionary.size() ; i++)
+        {
+            dictionaryCodes.put(dictionary.get(i), i);
+        }
+        
+        actionAttributeIndex = new HashMap<PSActionType, HashMap<String, Integer>>();
+        
+        for(int i = 0 ; i < numEntries ; i++)
+        {
+            indexEntry(i);
+        }
+    }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        // No need to send the spare capacity
+        trimToSize();
+        out.defaultWriteObject();
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        // Diaries serialized before histograms existed won't have any
+        if(latencyHistograms == null)
+        {
+            latencyHistograms = new LatencyHistogram[ACTION_TYPES.length];
+        }
+        rebuildIndexes();
+    }
+    
+    private void trimToSize()
+    {
+        int newCapacity = Math.max(numEntries, 1);
+        if(newCapacity == presence.length)
+        {
+            return;
+        }
+        
+        presence = Arrays.copyOf(presence, newCapacity);
+        actionTypes = Arrays.copyOf(actionTypes, newCapacity);
+        messageIDs = Arrays.copyOf(messageIDs, newCapacity);
+        attributes = Arrays.copyOf(attributes, newCapacity);
+        for(int i = 0 ; i < columns.length ; i++)
+        {
+            if(columns[i] != null)
+            {
+                columns[i] = Arrays.copyOf(columns[i], newCapacity);
+            }
+        }
+    }
+    
+    /**
+     * Gets the Diary Entry at index i
+     * (This builds a new DiaryEntry from the columns - changing it won't change the diary)
+     * 
+     * @param i - index
+     * @return the associated DiaryEntry
+     */
+    public DiaryEntry getDiaryEntryI(int i)
+    {
+        if(i < 0 || i >= numEntries)
+        {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + numEntries);
+        }
+        
+        DiaryEntry retVal = new DiaryEntry();
+        long rowPresent = presence[i];
+        for(int j = 0 ; j < DiaryEntry.NUM_HEADERS ; j++)
+        {
+            if((rowPresent & (1L << j)) != 0 && columns[j] != null)
+            {
+                retVal.values[j] = columns[j][i];
+            }
+        }
+        retVal.present = rowPresent;
+        retVal.actionType = getPSActionType(i);
+        retVal.messageID = getMessageID(i);
+        retVal.attributes = getAttributes(i);
+        
+        return retVal;
+    }
+    
+    /**
+     * Does the entry at index i have a value for the given header?
+     * 
+     * @param i - index
+     * @param givenDH - the DiaryHeader
+     * @return true if it does; false otherwise
+     */
+    public boolean hasValue(int i, DiaryHeader givenDH)
+    {
+        return (presence[i] & (1L << givenDH.ordinal())) != 0;
+    }
+    
+    /**
+     * Gets the raw value of a Long or Integer header at index i without building a DiaryEntry
+     * Check hasValue() first - a missing value comes back as 0
+     * 
+     * @param i - index
+     * @param givenDH - the DiaryHeader
+     * @return the value
+     */
+    public long getLongValue(int i, DiaryHeader givenDH)
+    {
+        long[] column = columns[givenDH.ordinal()];
+        if(column == null || !hasValue(i, givenDH))
+        {
+            return 0L;
+        }
+        return column[i];
+    }
+    
+    /**
+     * Gets the PSActionType at index i without building a DiaryEntry
+     * 
+     * @param i - index
+     * @return the PSActionType; null if there isn't one
+     */
+    public PSActionType getPSActionType(int i)
+    {
+        byte ordinal = actionTypes[i];
+        if(ordinal == NO_VALUE)
+        {
+            return null;
+        }
+        return ACTION_TYPES[ordinal];
+    }
+    
+    /**
+     * Gets the MessageID at index i without building a DiaryEntry
+     * 
+     * @param i - index
+     * @return the MessageID; null if there isn't one
+     */
+    public String getMessageID(int i)
+    {
+        return messageIDs[i];
+    }
+    
+    /**
+     * Gets the Attributes at index i without building a DiaryEntry
+     * 
+     * @param i - index
+     * @return the Attributes; null if there aren't any
+     */
+    public String getAttributes(int i)
+    {
+        return decode(attributes[i]);
+    }
+    
+    /**
+     * Returns the size of the Diary
+     * 
+     * @return the size of the diary
+     */
+    public int size() {
+        return numEntries;
+    }
+    
+    @Override
+    public String getTimeCreated()
+    {
+        return timeCreated;
+    }
+    
     public void clear() {
-        diary.clear();
+        resetColumns();
+        dictionary.clear();
+        rebuildIndexes();
     }
     
     public void removeDiaryEntiresWithGivenPSActionType(PSActionType givenAT)
     {
-        Iterator<DiaryEntry> itD = diary.iterator();
-        while(itD.hasNext())
+        if(givenAT == null)
         {
-            DiaryEntry entryI = itD.next();
-            PSActionType entryIsAT = entryI.getPSActionType();
-            if(entryIsAT != null && entryIsAT.equals(givenAT))
+            return;
+        }
+        
+        // Compact every column in place, keeping the rows that don't match
+        byte removedOrdinal = (byte) givenAT.ordinal();
+        int kept = 0;
+        for(int i = 0 ; i < numEntries ; i++)
+        {
+            if(actionTypes[i] == removedOrdinal)
+            {
+                continue;
+            }
+            
+            if(kept != i)
             {
-                itD.remove();
+                presence[kept] = presence[i];
+                actionTypes[kept] = actionTypes[i];
+                messageIDs[kept] = messageIDs[i];
+                attributes[kept] = attributes[i];
+                for(int j = 0 ; j < columns.length ; j++)
+                {
+                    if(columns[j] != null)
+                    {
+                        columns[j][kept] = columns[j][i];
+                    }
+                }
             }
+            kept++;
+        }
+        
+        if(kept != numEntries)
+        {
+            // Don't hold on to the removed rows' message IDs
+            Arrays.fill(messageIDs, kept, numEntries, null);
+            numEntries = kept;
+            compactDictionary();
+            rebuildIndexes();
+        }
+    }
+    
+    /**
+     * Drops any dictionary strings that no remaining row uses
+     * (Otherwise every removed Received message's attributes would stay in memory)
+     */
+    private void compactDictionary()
+    {
+        int[] newCodes = new int[dictionary.size()];
+        Arrays.fill(newCodes, NO_VALUE);
+        ArrayList<String> newDictionary = new ArrayList<String>();
+        
+        for(int i = 0 ; i < numEntries ; i++)
+        {
+            attributes[i] = remapCode(attributes[i], newCodes, newDictionary);
+        }
+        
+        dictionary = newDictionary;
+    }
+    
+    private int remapCode(int givenCode, int[] newCodes, ArrayList<String> newDictionary)
+    {
+        if(givenCode == NO_VALUE)
+        {
+            return NO_VALUE;
+        }
+        
+        if(newCodes[givenCode] == NO_VALUE)
+        {
+            newCodes[givenCode] = newDictionary.size();
+            newDictionary.add(dictionary.get(givenCode));
         }
+        return newCodes[givenCode];
     }
 }
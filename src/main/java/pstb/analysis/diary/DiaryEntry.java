@@ -1,14 +1,18 @@
 package pstb.analysis.diary;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.Logger;
 
+import pstb.benchmark.throughput.RateSearchPhase;
+import pstb.startup.config.RateSearch;
 import pstb.startup.workload.PSActionType;
 import pstb.util.PSTBUtil;
 import pstb.util.PSTBUtil.TimeType;
@@ -18,11 +22,24 @@ import pstb.util.PSTBUtil.TimeType;
  * 
  * A record of what happened with regards to a particular PSAction: 
  * When did we start this PSAction? How long did it take to finish? What are its attributes?
+ * 
+ * The page has a fixed schema - one primitive slot per DiaryHeader plus a bitmask of which slots are filled - 
+ * rather than a HashMap of boxed values.
+ * Doubles are stored as their raw long bits.
+ * (The bitmask is a single long, so there can't be more than 64 DiaryHeaders.)
  */
 public class DiaryEntry  implements java.io.Serializable
 {
-    private static final long serialVersionUID = 1L;
-    HashMap<DiaryHeader, Object> page;
+    private static final long serialVersionUID = 2L;
+    
+    static final DiaryHeader[] HEADERS = DiaryHeader.values();
+    static final int NUM_HEADERS = HEADERS.length;
+    
+    long[] values;
+    long present;
+    PSActionType actionType;
+    String messageID;
+    String attributes;
     
     private final String logHeader = "DiaryEntry: ";
     
@@ -31,7 +48,177 @@ public class DiaryEntry  implements java.io.Serializable
      */
     public DiaryEntry()
     {
-        page = new HashMap<DiaryHeader, Object>();
+        values = new long[NUM_HEADERS];
+        present = 0L;
+        actionType = null;
+        messageID = null;
+        attributes = null;
+    }
+    
+    /**
+     * Is the given DiaryHeader's value a Double?
+     * 
+     * @param givenDH - the DiaryHeader
+     * @return true if it is; false otherwise
+     */
+    static boolean isDoubleHeader(DiaryHeader givenDH)
+    {
+        switch(givenDH)
+        {
+            case MessageRate:
+            case RoundLatency:
+            case CurrentThroughput:
+            case Secant:
+            case AverageThroughput:
+            case FinalThroughput:
+            case Y0:
+            case Y1:
+            case X0:
+            case X1:
+            case CurrentRatio:
+            case RoundThroughput:
+            case NextMessageRate:
+            case LowerRate:
+            case UpperRate:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Is the given DiaryHeader's value an Integer?
+     * 
+     * @param givenDH - the DiaryHeader
+     * @return true if it is; false otherwise
+     */
+    static boolean isIntegerHeader(DiaryHeader givenDH)
+    {
+        switch(givenDH)
+        {
+            case PayloadSize:
+            case Round:
+            case MessagesReceievedRound:
+            case MessagesReceievedTotal:
+            case RateSearch:
+            case SearchPhase:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Is the given DiaryHeader's value an Object (i.e. not a number)?
+     * 
+     * @param givenDH - the DiaryHeader
+     * @return true if it is; false otherwise
+     */
+    static boolean isObjectHeader(DiaryHeader givenDH)
+    {
+        return givenDH.equals(DiaryHeader.PSActionType) || givenDH.equals(DiaryHeader.MessageID) 
+                || givenDH.equals(DiaryHeader.Attributes);
+    }
+    
+    private void putLong(DiaryHeader givenDH, Long givenValue)
+    {
+        int slot = givenDH.ordinal();
+        if(givenValue == null)
+        {
+            present &= ~(1L << slot);
+        }
+        else
+        {
+            values[slot] = givenValue;
+            present |= (1L << slot);
+        }
+    }
+    
+    private void putInteger(DiaryHeader givenDH, Integer givenValue)
+    {
+        putLong(givenDH, (givenValue == null) ? null : Long.valueOf(givenValue.longValue()));
+    }
+    
+    private void putDouble(DiaryHeader givenDH, Double givenValue)
+    {
+        putLong(givenDH, (givenValue == null) ? null : Long.valueOf(Double.doubleToRawLongBits(givenValue)));
+    }
+    
+    private void markObject(DiaryHeader givenDH, Object givenValue)
+    {
+        int slot = givenDH.ordinal();
+        if(givenValue == null)
+        {
+            present &= ~(1L << slot);
+        }
+        else
+        {
+            present |= (1L << slot);
+        }
+    }
+    
+    private Long getLong(DiaryHeader givenDH)
+    {
+        int slot = givenDH.ordinal();
+        if((present & (1L << slot)) == 0)
+        {
+            return null;
+        }
+        return values[slot];
+    }
+    
+    private Integer getInteger(DiaryHeader givenDH)
+    {
+        int slot = givenDH.ordinal();
+        if((present & (1L << slot)) == 0)
+        {
+            return null;
+        }
+        return (int) values[slot];
+    }
+    
+    private Double getDouble(DiaryHeader givenDH)
+    {
+        int slot = givenDH.ordinal();
+        if((present & (1L << slot)) == 0)
+        {
+            return null;
+        }
+        return Double.longBitsToDouble(values[slot]);
+    }
+    
+    /**
+     * Gets the value stored under the given header, in its proper (boxed) type
+     * 
+     * @param givenDH - the DiaryHeader
+     * @return the value; null if there isn't one
+     */
+    public Object getValue(DiaryHeader givenDH)
+    {
+        if(givenDH.equals(DiaryHeader.PSActionType))
+        {
+            return actionType;
+        }
+        else if(givenDH.equals(DiaryHeader.MessageID))
+        {
+            return messageID;
+        }
+        else if(givenDH.equals(DiaryHeader.Attributes))
+        {
+            return attributes;
+        }
+        else if(isDoubleHeader(givenDH))
+        {
+            return getDouble(givenDH);
+        }
+        else if(isIntegerHeader(givenDH))
+        {
+            return getInteger(givenDH);
+        }
+        else
+        {
+            return getLong(givenDH);
+        }
     }
     
     /**
@@ -41,7 +228,8 @@ public class DiaryEntry  implements java.io.Serializable
      */
     public void setPSActionType(PSActionType givenPSAT)
     {
-        page.put(DiaryHeader.PSActionType, givenPSAT);
+        actionType = givenPSAT;
+        markObject(DiaryHeader.PSActionType, givenPSAT);
     }
     
     /**
@@ -51,7 +239,7 @@ public class DiaryEntry  implements java.io.Serializable
      */
     public void setTimeActionStarted(Long givenTAS)
     {
-        page.put(DiaryHeader.TimeActionStarted, givenTAS);
+        putLong(DiaryHeader.TimeActionStarted, givenTAS);
     }
     
     /**
@@ -61,7 +249,7 @@ public class DiaryEntry  implements java.io.Serializable
      */
     public void setTimeFunctionReturned(Long givenTFR)
     {
-        page.put(DiaryHeader.TimeFunctionReturned, givenTFR);
+        putLong(DiaryHeader.TimeFunctionReturned, givenTFR);
     }
     
     /**
@@ -71,7 +259,7 @@ public class DiaryEntry  implements java.io.Serializable
      */
     public void addStartedAction(Long givenSA)
     {
-        page.put(DiaryHeader.StartedAction, givenSA);
+        putLong(DiaryHeader.StartedAction, givenSA);
     }
     
     /**
@@ -81,7 +269,7 @@ public class DiaryEntry  implements java.io.Serializable
      */
     public void addEndedAction(Long givenEA)
     {
-        page.put(DiaryHeader.EndedAction, givenEA);
+        putLong(DiaryHeader.EndedAction, givenEA);
     }
     
     /**
@@ -90,391 +278,549 @@ public class DiaryEntry  implements java.io.Serializable
      */
     public void addActionDelay(Long givenAD)
     {
-        page.put(DiaryHeader.ActionDelay, givenAD);
+        putLong(DiaryHeader.ActionDelay, givenAD);
+    }
+    
+    /**
+     * Intended Action setter
+     * (Only open-loop clients record this)
+     * 
+     * @param givenIA - the System.nanoTime() the action was scheduled to start at
+     */
+    public void addIntendedAction(Long givenIA)
+    {
+        putLong(DiaryHeader.IntendedAction, givenIA);
+    }
+    
+    /**
+     * Intended Action Delay setter
+     * (Only open-loop clients record this)
+     * 
+     * @param givenIAD - the time between when the action was scheduled to start and when it ended
+     */
+    public void addIntendedActionDelay(Long givenIAD)
+    {
+        putLong(DiaryHeader.IntendedActionDelay, givenIAD);
+    }
+    
+    /**
+     * Start Slip setter
+     * (Only open-loop clients record this)
+     * 
+     * @param givenSS - the time between when the action was scheduled to start and when it actually started
+     */
+    public void addStartSlip(Long givenSS)
+    {
+        putLong(DiaryHeader.StartSlip, givenSS);
+    }
+    
+    /**
+     * Dropped Action setter
+     * (Only open-loop clients record this - for a publication that was never sent because the send window was full)
+     * 
+     * @param givenDA - the System.nanoTime() the action was dropped at
+     */
+    public void addDroppedAction(Long givenDA)
+    {
+        putLong(DiaryHeader.DroppedAction, givenDA);
     }
     
     public void addMessageID(String givenMID)
     {
-        page.put(DiaryHeader.MessageID, givenMID);
+        messageID = givenMID;
+        markObject(DiaryHeader.MessageID, givenMID);
     }
     
     public void addAttributes(String givenA)
     {
-        page.put(DiaryHeader.Attributes, givenA);
+        attributes = givenA;
+        markObject(DiaryHeader.Attributes, givenA);
     }
     
     public void addPayloadSize(Integer givenPS)
     {
-        page.put(DiaryHeader.PayloadSize, givenPS);
+        putInteger(DiaryHeader.PayloadSize, givenPS);
     }
     
     public void addTimeActiveStarted(Long givenTAS)
     {
-        page.put(DiaryHeader.TimeActiveStarted, givenTAS);
+        putLong(DiaryHeader.TimeActiveStarted, givenTAS);
     }
     
     public void addTimeActiveAck(Long givenTAA)
     {
-        page.put(DiaryHeader.TimeActiveEnded, givenTAA);
+        putLong(DiaryHeader.TimeActiveEnded, givenTAA);
     }
     
     public void addTimeCreated(Long givenTC)
     {
-        page.put(DiaryHeader.TimeMessageCreated, givenTC);
+        putLong(DiaryHeader.TimeMessageCreated, givenTC);
     }
     
     public void addTimeReceived(Long givenTR)
     {
-        page.put(DiaryHeader.TimeMessageReceived, givenTR);
+        putLong(DiaryHeader.TimeMessageReceived, givenTR);
     }
     
     public void addTimeDifference(Long givenTD)
     {
-        page.put(DiaryHeader.MessageDelay, givenTD);
+        putLong(DiaryHeader.MessageDelay, givenTD);
     }
     
     public void setRound(Integer givenRound)
     {
-        page.put(DiaryHeader.Round, givenRound);
+        putInteger(DiaryHeader.Round, givenRound);
     }
     
     public void setMessageRate(Double givenMR) 
     {
-        page.put(DiaryHeader.MessageRate, givenMR);
+        putDouble(DiaryHeader.MessageRate, givenMR);
     }
     
     public void setRoundLatency(Double givenLatency)
     {    
-        page.put(DiaryHeader.RoundLatency, givenLatency);
+        putDouble(DiaryHeader.RoundLatency, givenLatency);
     }
     
     public void setMessagesReceievedRound(Integer givenMRR)
     {    
-        page.put(DiaryHeader.MessagesReceievedRound, givenMRR);
+        putInteger(DiaryHeader.MessagesReceievedRound, givenMRR);
     }
     
     public void setMessagesReceievedTotal(Integer givenMRT)
     {    
-        page.put(DiaryHeader.MessagesReceievedTotal, givenMRT);
+        putInteger(DiaryHeader.MessagesReceievedTotal, givenMRT);
     }
-
+    
     public void setCurrentThroughput(Double givenCT) {
-        page.put(DiaryHeader.CurrentThroughput, givenCT);
+        putDouble(DiaryHeader.CurrentThroughput, givenCT);
     }
     
     public void setSecant(Double givenMT)
     {
-        page.put(DiaryHeader.Secant, givenMT);
+        putDouble(DiaryHeader.Secant, givenMT);
     }
     
     public void setAverageThroughput(Double givenAT)
     {
-        page.put(DiaryHeader.AverageThroughput, givenAT);
+        putDouble(DiaryHeader.AverageThroughput, givenAT);
     }
     
     public void setFinalThroughput(Double givenFT)
     {
-        page.put(DiaryHeader.FinalThroughput, givenFT);
+        putDouble(DiaryHeader.FinalThroughput, givenFT);
     }
     
     public void setY0(Double y0)
     {
-        page.put(DiaryHeader.Y0, y0);
+        putDouble(DiaryHeader.Y0, y0);
     }
     
     public void setY1(Double y1)
     {
-        page.put(DiaryHeader.Y1, y1);
+        putDouble(DiaryHeader.Y1, y1);
     }
     
     public void setX0(Double x0)
     {
-        page.put(DiaryHeader.X0, x0);
+        putDouble(DiaryHeader.X0, x0);
     }
     
     public void setX1(Double x1)
     {
-        page.put(DiaryHeader.X1, x1);
+        putDouble(DiaryHeader.X1, x1);
     }
     
     public void setCurrentRatio(Double givenCR)
     {
-        page.put(DiaryHeader.CurrentRatio, givenCR);
+        putDouble(DiaryHeader.CurrentRatio, givenCR);
+    }
+    
+    public void setRateSearch(RateSearch givenRS)
+    {
+        putInteger(DiaryHeader.RateSearch, (givenRS == null) ? null : givenRS.ordinal());
+    }
+    
+    public void setSearchPhase(RateSearchPhase givenSP)
+    {
+        putInteger(DiaryHeader.SearchPhase, (givenSP == null) ? null : givenSP.ordinal());
+    }
+    
+    public void setRoundThroughput(Double givenRT)
+    {
+        putDouble(DiaryHeader.RoundThroughput, givenRT);
+    }
+    
+    public void setNextMessageRate(Double givenNMR)
+    {
+        putDouble(DiaryHeader.NextMessageRate, givenNMR);
+    }
+    
+    public void setLowerRate(Double givenLR)
+    {
+        putDouble(DiaryHeader.LowerRate, givenLR);
+    }
+    
+    public void setUpperRate(Double givenUR)
+    {
+        putDouble(DiaryHeader.UpperRate, givenUR);
     }
     
     public PSActionType getPSActionType()
     {
-        return (PSActionType) page.get(DiaryHeader.PSActionType);
+        return actionType;
     }
     
     public Long getStartedAction()
     {
-        return (Long) page.get(DiaryHeader.StartedAction);
+        return getLong(DiaryHeader.StartedAction);
     }
     
     public Long getEndedAction()
     {
-        return (Long) page.get(DiaryHeader.EndedAction);
+        return getLong(DiaryHeader.EndedAction);
     }
     
     public Long getActionDelay()
     {
-        return (Long) page.get(DiaryHeader.ActionDelay);
+        return getLong(DiaryHeader.ActionDelay);
+    }
+    
+    public Long getIntendedAction()
+    {
+        return getLong(DiaryHeader.IntendedAction);
+    }
+    
+    public Long getIntendedActionDelay()
+    {
+        return getLong(DiaryHeader.IntendedActionDelay);
+    }
+    
+    public Long getStartSlip()
+    {
+        return getLong(DiaryHeader.StartSlip);
+    }
+    
+    public Long getDroppedAction()
+    {
+        return getLong(DiaryHeader.DroppedAction);
     }
     
     public String getMessageID()
     {
-        return (String) page.get(DiaryHeader.MessageID);
+        return messageID;
     }
     
     public String getAttributes()
     {
-        return (String) page.get(DiaryHeader.Attributes);
+        return attributes;
     }
     
     public Integer getPayloadSize()
     {
-        return (Integer) page.get(DiaryHeader.PayloadSize);
+        return getInteger(DiaryHeader.PayloadSize);
     }
     
     public Long getTimeActiveStarted()
     {
-        return (Long) page.get(DiaryHeader.TimeActiveStarted);
+        return getLong(DiaryHeader.TimeActiveStarted);
     }
     
     public Long getTimeActiveEnded()
     {
-        return (Long) page.get(DiaryHeader.TimeActiveEnded);
+        return getLong(DiaryHeader.TimeActiveEnded);
     }
     
     public Long getTimeCreated()
     {
-        return (Long) page.get(DiaryHeader.TimeMessageCreated);
+        return getLong(DiaryHeader.TimeMessageCreated);
     }
     
     public Long getTimeReceived()
     {
-        return (Long) page.get(DiaryHeader.TimeMessageReceived);
+        return getLong(DiaryHeader.TimeMessageReceived);
     }
     
     public Long getMessageDelay()
     {
-        return (Long) page.get(DiaryHeader.MessageDelay);
+        return getLong(DiaryHeader.MessageDelay);
     }
     
     public Double getMessageRate()
     {
-        return (Double) page.get(DiaryHeader.MessageRate);
+        return getDouble(DiaryHeader.MessageRate);
     }
     
     public Double getRoundLatency()
     {    
-        return (Double) page.get(DiaryHeader.RoundLatency);
+        return getDouble(DiaryHeader.RoundLatency);
     }
     
     public Double getCurrentThroughput()
     {
-        return (Double) page.get(DiaryHeader.CurrentThroughput);
+        return getDouble(DiaryHeader.CurrentThroughput);
     }
     
     public Double getAverageThroughput()
     {
-        return (Double) page.get(DiaryHeader.AverageThroughput);
+        return getDouble(DiaryHeader.AverageThroughput);
     }
     
     public Double getSecant()
     {
-        return (Double) page.get(DiaryHeader.Secant);
+        return getDouble(DiaryHeader.Secant);
     }
     
     public Double getFinalThroughput()
     {
-        return (Double) page.get(DiaryHeader.FinalThroughput);
+        return getDouble(DiaryHeader.FinalThroughput);
     }
     
     public Double getY0()
     {
-        return (Double) page.get(DiaryHeader.Y0);
+        return getDouble(DiaryHeader.Y0);
     }
     
     public Double getY1()
     {
-        return (Double) page.get(DiaryHeader.Y1);
+        return getDouble(DiaryHeader.Y1);
     }
     
     public Double getX0()
     {
-        return (Double) page.get(DiaryHeader.X0);
+        return getDouble(DiaryHeader.X0);
     }
     
     public Double getX1()
     {
-        return (Double) page.get(DiaryHeader.X1);
+        return getDouble(DiaryHeader.X1);
     }
     
     public Double getCurrentRatio()
     {
-        return (Double) page.get(DiaryHeader.CurrentRatio);
+        return getDouble(DiaryHeader.CurrentRatio);
+    }
+    
+    public RateSearch getRateSearch()
+    {
+        Integer ordinal = getInteger(DiaryHeader.RateSearch);
+        RateSearch[] values = RateSearch.values();
+        return (ordinal == null || ordinal < 0 || ordinal >= values.length) ? null : values[ordinal];
+    }
+    
+    public RateSearchPhase getSearchPhase()
+    {
+        Integer ordinal = getInteger(DiaryHeader.SearchPhase);
+        RateSearchPhase[] values = RateSearchPhase.values();
+        return (ordinal == null || ordinal < 0 || ordinal >= values.length) ? null : values[ordinal];
+    }
+    
+    public Double getRoundThroughput()
+    {
+        return getDouble(DiaryHeader.RoundThroughput);
+    }
+    
+    public Double getNextMessageRate()
+    {
+        return getDouble(DiaryHeader.NextMessageRate);
+    }
+    
+    public Double getLowerRate()
+    {
+        return getDouble(DiaryHeader.LowerRate);
+    }
+    
+    public Double getUpperRate()
+    {
+        return getDouble(DiaryHeader.UpperRate);
     }
     
     public boolean containsKey(Object value) 
     {
-        return page.containsKey(value);
+        if(!(value instanceof DiaryHeader))
+        {
+            return false;
+        }
+        
+        return (present & (1L << ((DiaryHeader) value).ordinal())) != 0;
     }
     
     /**
      * Combs the Entry looking for a value
-     * (Basically an extension of the HashMap<> containsValue()
+     * (Behaves like the old HashMap<> containsValue())
      * @param value
      * @return true if it's in the Entry; false otherwise
      */
     public boolean containsValue(Object value) 
     {
-        return page.containsValue(value);
+        for(int i = 0 ; i < NUM_HEADERS ; i++)
+        {
+            if((present & (1L << i)) != 0)
+            {
+                Object valueI = getValue(HEADERS[i]);
+                if(valueI != null && valueI.equals(value))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
     
+    /**
+     * Appends this page to the given file - in the human-readable diary layout
+     * (Prefer DiaryExporter when writing a whole diary - this opens the file for every page.)
+     * 
+     * @param givenFilePath - the file to append to
+     * @param log - the Logger to record errors
+     * @return false on error; true otherwise
+     */
     public boolean recordPage(Path givenFilePath, Logger log)
     {
-        if(!Files.exists(givenFilePath))
+        BufferedWriter out = null;
+        try
         {
-            try 
-            {
-                Files.createFile(givenFilePath);
-            } 
-            catch (IOException e) 
+            out = Files.newBufferedWriter(givenFilePath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            writePage(out);
+            out.close();
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            log.error(logHeader + "Error writing to file: ", e);
+            if(out != null)
             {
-                log.error(logHeader + "Couldn't create a new file for this DiaryEntry: ", e);
-                return false;
+                try
+                {
+                    out.close();
+                }
+                catch(IOException eClose)
+                {
+                    // We're already reporting an error
+                }
             }
+            return false;
         }
         
-        try
+        return true;
+    }
+    
+    /**
+     * Writes this page in the human-readable diary layout:
+     * one "Header: value" line per value - with a converted " -> " value after any times or delays
+     * 
+     * @param out - where to write the page
+     * @throws IOException if the page can't be written
+     */
+    void writePage(Writer out) throws IOException
+    {
+        for(int i = 0 ; i < NUM_HEADERS ; i++)
         {
-            page.forEach((header, data)->{
-                /*
-                 *  If we're looking at TimeActionStarted or TimeBrokerFinished, don't record the number value
-                 *  Instead, convert that number into a date
-                 */
-                if(header.equals(DiaryHeader.TimeActionStarted) || header.equals(DiaryHeader.TimeFunctionReturned))
-                {
-                    Long convertedData = (Long) data;
-                    if(convertedData != null)
-                    {
-                        data = PSTBUtil.DATE_FORMAT.format(convertedData);
-                    }
-                    else
-                    {
-                        throw new IllegalArgumentException("Converted data null for header" + header 
-                                                                + " and data " + data);
-                    }
-                }
-                
-                String line = header + ": " + data;
-                try
+            if((present & (1L << i)) == 0)
+            {
+                continue;
+            }
+            
+            DiaryHeader header = HEADERS[i];
+            Object data = getValue(header);
+            
+            /*
+             *  If we're looking at TimeActionStarted or TimeBrokerFinished, don't record the number value
+             *  Instead, convert that number into a date
+             */
+            if(header.equals(DiaryHeader.TimeActionStarted) || header.equals(DiaryHeader.TimeFunctionReturned))
+            {
+                Long convertedData = (Long) data;
+                if(convertedData != null)
                 {
-                    Files.write(givenFilePath, line.getBytes(), StandardOpenOption.APPEND);
+                    data = PSTBUtil.DATE_FORMAT.format(convertedData);
                 }
-                catch(IOException e)
+                else
                 {
-                    throw new IllegalArgumentException("IO failed at line " + line);
+                    throw new IllegalArgumentException("Converted data null for header" + header 
+                                                            + " and data " + data);
                 }
-                
-                /*
-                 * If we're looking at a delay value or a time started/ended value,
-                 * Then let's convert it from a long number into something meaningful.
-                 * Except for TimeStartedAction or TimeEndedAction - these values don't mean anything.
-                 * 
-                 * Why have both the original value and the converted value?
-                 * That way a user can double check that the values are accurate, if they wish.
-                 */
-                if(header.equals(DiaryHeader.ActionDelay) 
-                    || header.equals(DiaryHeader.MessageDelay)
-                    || header.equals(DiaryHeader.TimeActiveStarted)
-                    || header.equals(DiaryHeader.TimeActiveEnded)
-                    || header.equals(DiaryHeader.TimeMessageCreated) 
-                    || header.equals(DiaryHeader.TimeMessageReceived)
-                    )
+            }
+            
+            String line = header + ": " + data;
+            out.write(line);
+            
+            /*
+             * If we're looking at a delay value or a time started/ended value,
+             * Then let's convert it from a long number into something meaningful.
+             * Except for TimeStartedAction or TimeEndedAction - these values don't mean anything.
+             * 
+             * Why have both the original value and the converted value?
+             * That way a user can double check that the values are accurate, if they wish.
+             */
+            if(header.equals(DiaryHeader.ActionDelay) 
+                || header.equals(DiaryHeader.IntendedActionDelay)
+                || header.equals(DiaryHeader.StartSlip)
+                || header.equals(DiaryHeader.MessageDelay)
+                || header.equals(DiaryHeader.TimeActiveStarted)
+                || header.equals(DiaryHeader.TimeActiveEnded)
+                || header.equals(DiaryHeader.TimeMessageCreated) 
+                || header.equals(DiaryHeader.TimeMessageReceived)
+                )
+            {
+                Long convertedData = (Long) data;
+                if(convertedData != null)
                 {
-                    Long convertedData = (Long) data;
-                    if(convertedData != null)
-                    {
-                        String formatted = null;
-                        
-                        // All of these are time stamps in nanoseconds
-                        if(header.equals(DiaryHeader.ActionDelay) 
-                                || header.equals(DiaryHeader.TimeActiveStarted)
-                                || header.equals(DiaryHeader.TimeActiveEnded)
-                                )
-                        {
-                            formatted = PSTBUtil.createTimeString(convertedData, TimeType.Nano, TimeUnit.MILLISECONDS);
-                        }
-                        // This time stamp is in milliseconds
-                        else if(header.equals(DiaryHeader.MessageDelay))
-                        {
-                            formatted = PSTBUtil.createTimeString(convertedData, TimeType.Milli, TimeUnit.MILLISECONDS);
-                        }
-                        // The other 2 (for now) are dates 
-                        else
-                        {
-                            formatted = PSTBUtil.DATE_FORMAT.format(convertedData);
-                        }
-                        
-                        line = " -> " + formatted;
-                        try
-                        {
-                            Files.write(givenFilePath, line.getBytes(), StandardOpenOption.APPEND);
-                        }
-                        catch(IOException e)
-                        {
-                            throw new IllegalArgumentException("IO failed to add time data at line " + line);
-                        }
-                    }
-                    else
+                    String formatted = null;
+                    
+                    // All of these are time stamps in nanoseconds
+                    if(header.equals(DiaryHeader.ActionDelay) 
+                            || header.equals(DiaryHeader.IntendedActionDelay)
+                            || header.equals(DiaryHeader.StartSlip)
+                            || header.equals(DiaryHeader.TimeActiveStarted)
+                            || header.equals(DiaryHeader.TimeActiveEnded)
+                            )
                     {
-                        throw new IllegalArgumentException("Converted data null at line " + line);
+                        formatted = PSTBUtil.createTimeString(convertedData, TimeType.Nano, TimeUnit.MILLISECONDS);
                     }
-                }
-                else if(header.equals(DiaryHeader.RoundLatency))
-                {
-                    Double convertedData = (Double) data;
-                    if(convertedData != null)
+                    // This time stamp is in milliseconds
+                    else if(header.equals(DiaryHeader.MessageDelay))
                     {
-                        convertedData *= PSTBUtil.MILLISEC_TO_NANOSEC;
-                        String formatted = PSTBUtil.createTimeString(convertedData.longValue(), TimeType.Nano, TimeUnit.SECONDS);
-                        
-                        line = " -> " + formatted;
-                        try
-                        {
-                            Files.write(givenFilePath, line.getBytes(), StandardOpenOption.APPEND);
-                        }
-                        catch(IOException e)
-                        {
-                            throw new IllegalArgumentException("IO failed to add time data at line " + line);
-                        }
+                        formatted = PSTBUtil.createTimeString(convertedData, TimeType.Milli, TimeUnit.MILLISECONDS);
                     }
+                    // The other 2 (for now) are dates 
                     else
                     {
-                        throw new IllegalArgumentException("Converted data null at line " + line);
+                        formatted = PSTBUtil.DATE_FORMAT.format(convertedData);
                     }
+                    
+                    out.write(" -> " + formatted);
                 }
-                
-                line = "\n";
-                try
+                else
                 {
-                    Files.write(givenFilePath, line.getBytes(), StandardOpenOption.APPEND);
+                    throw new IllegalArgumentException("Converted data null at line " + line);
                 }
-                catch(IOException e)
+            }
+            else if(header.equals(DiaryHeader.RoundLatency))
+            {
+                Double convertedData = (Double) data;
+                if(convertedData != null)
                 {
-                    throw new IllegalArgumentException("IO failed to add a newline at line " + line);
+                    convertedData *= PSTBUtil.MILLISEC_TO_NANOSEC;
+                    String formatted = PSTBUtil.createTimeString(convertedData.longValue(), TimeType.Nano, TimeUnit.SECONDS);
+                    
+                    out.write(" -> " + formatted);
                 }
-            });
-        }
-        catch(IllegalArgumentException e)
-        {
-            log.error(logHeader + "Error writing to file: ", e);
-            return false;
+                else
+                {
+                    throw new IllegalArgumentException("Converted data null at line " + line);
+                }
+            }
+            // These are stored as the enum's ordinal
+            else if(header.equals(DiaryHeader.RateSearch))
+            {
+                out.write(" -> " + getRateSearch());
+            }
+            else if(header.equals(DiaryHeader.SearchPhase))
+            {
+                out.write(" -> " + getSearchPhase());
+            }
+            
+            out.write("\n");
         }
-        
-        return true;
     }
 }
@@ -0,0 +1,16 @@
+/**
+ * 
+ */
+package pstb.analysis.diary;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * The formats a diary can be exported in.
+ * Text is the human-readable page-by-page layout;
+ * CSV and TSV are columnar - one row per entry, one column per DiaryHeader the diary uses.
+ * @see DiaryExporter
+ */
+public enum DiaryExportFormat {
+    Text, CSV, TSV
+}
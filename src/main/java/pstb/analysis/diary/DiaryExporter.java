@@ -0,0 +1,300 @@
+package pstb.analysis.diary;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.startup.workload.PSActionType;
+import pstb.util.PSTBUtil;
+import pstb.util.PSTBUtil.TimeType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Writes diaries out for people (and spreadsheets) to read.
+ * 
+ * Each diary is streamed through a single buffered channel - the file is opened once, not once per line.
+ * Text keeps the existing human-readable layout; CSV and TSV write one row per entry,
+ * with one column per DiaryHeader the diary actually uses and the raw (unconverted) values.
+ * @see DiaryExportFormat
+ */
+public class DiaryExporter
+{
+    private static final int BUFFER_SIZE = 65536;
+    
+    private DiaryExporter()
+    {
+        // Only static functions
+    }
+    
+    /**
+     * Gets the file extension a diary exported in the given format should have
+     * 
+     * @param givenFormat - the format
+     * @return the extension (including the ".")
+     */
+    public static String getExtension(DiaryExportFormat givenFormat)
+    {
+        switch(givenFormat)
+        {
+            case CSV:
+                return ".csv";
+            case TSV:
+                return ".tsv";
+            default:
+                return ".txt";
+        }
+    }
+    
+    /**
+     * Exports every diary in the given collection into the given folder - in parallel
+     * Each diary is written to a file named after its key
+     * 
+     * @param givenDiaries - the diaries to export (keyed by name)
+     * @param givenFolder - the folder to write them to (ending in a separator)
+     * @param givenFormat - the format to write them in
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false if any diary couldn't be exported; true otherwise
+     */
+    public static boolean exportDiaries(Map<String, ? extends ReadableDiary> givenDiaries, String givenFolder,
+            DiaryExportFormat givenFormat, Logger log, String logHeader)
+    {
+        int numDiaries = givenDiaries.size();
+        if(numDiaries == 0)
+        {
+            return true;
+        }
+        
+        int numWorkers = Math.min(numDiaries, Runtime.getRuntime().availableProcessors());
+        ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+        long start = System.nanoTime();
+        
+        ArrayList<String> names = new ArrayList<String>(numDiaries);
+        ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>(numDiaries);
+        givenDiaries.forEach((nameI, diaryI) -> {
+            Path fileI = Paths.get(givenFolder + nameI + getExtension(givenFormat));
+            names.add(nameI);
+            results.add(workers.submit(() -> exportDiary(diaryI, fileI, givenFormat, log, logHeader)));
+        });
+        
+        boolean allExported = true;
+        for(int i = 0 ; i < numDiaries ; i++)
+        {
+            try
+            {
+                if(!results.get(i).get())
+                {
+                    allExported = false;
+                }
+            }
+            catch(InterruptedException | ExecutionException e)
+            {
+                log.error(logHeader + "Error waiting for diary " + names.get(i) + " to be exported: ", e);
+                allExported = false;
+            }
+        }
+        workers.shutdown();
+        
+        long elapsed = System.nanoTime() - start;
+        log.info(logHeader + "Exported " + numDiaries + " diaries as " + givenFormat + " with " + numWorkers + " workers in "
+                + PSTBUtil.createTimeString(elapsed, TimeType.Nano, TimeUnit.MILLISECONDS) + ".");
+        
+        return allExported;
+    }
+    
+    /**
+     * Exports a diary into the given file (overwriting anything already there)
+     * 
+     * @param givenDiary - the diary
+     * @param givenFilePath - the file to write to
+     * @param givenFormat - the format to write it in
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false on error; true otherwise
+     */
+    public static boolean exportDiary(ReadableDiary givenDiary, Path givenFilePath, DiaryExportFormat givenFormat,
+            Logger log, String logHeader)
+    {
+        Writer out = null;
+        try
+        {
+            FileChannel channel = FileChannel.open(givenFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+            
+            if(givenFormat.equals(DiaryExportFormat.Text))
+            {
+                writeText(givenDiary, out);
+            }
+            else
+            {
+                char separator = givenFormat.equals(DiaryExportFormat.CSV) ? ',' : '\t';
+                writeColumns(givenDiary, out, separator);
+            }
+            
+            out.close();
+        }
+        catch(IOException | IllegalArgumentException e)
+        {
+            log.error(logHeader + "Couldn't export diary " + givenFilePath + ": ", e);
+            closeQuietly(out);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Writes the human-readable layout:
+     * when the diary was created, how many entries it has, and then each entry as a page
+     */
+    private static void writeText(ReadableDiary givenDiary, Writer out) throws IOException
+    {
+        int diarySize = givenDiary.size();
+        
+        out.write("Created at " + givenDiary.getTimeCreated() + "\n"
+                + "There are " + diarySize + " entries\n"
+                + "\n");
+        
+        for(int i = 0 ; i < diarySize ; i++)
+        {
+            out.write("Page " + i + ":\n");
+            givenDiary.getDiaryEntryI(i).writePage(out);
+            out.write("\n");
+        }
+    }
+    
+    /**
+     * Writes the columnar layout:
+     * a header row (Index, then every DiaryHeader used by at least one entry), and then one row per entry
+     * Missing values are left empty
+     */
+    private static void writeColumns(ReadableDiary givenDiary, Writer out, char separator) throws IOException
+    {
+        int diarySize = givenDiary.size();
+        DiaryHeader[] headers = DiaryEntry.HEADERS;
+        
+        ArrayList<DiaryHeader> usedHeaders = new ArrayList<DiaryHeader>();
+        for(int j = 0 ; j < headers.length ; j++)
+        {
+            for(int i = 0 ; i < diarySize ; i++)
+            {
+                if(givenDiary.hasValue(i, headers[j]))
+                {
+                    usedHeaders.add(headers[j]);
+                    break;
+                }
+            }
+        }
+        
+        StringBuilder row = new StringBuilder();
+        row.append("Index");
+        for(int j = 0 ; j < usedHeaders.size() ; j++)
+        {
+            row.append(separator).append(usedHeaders.get(j));
+        }
+        row.append('\n');
+        out.write(row.toString());
+        
+        for(int i = 0 ; i < diarySize ; i++)
+        {
+            row.setLength(0);
+            row.append(i);
+            for(int j = 0 ; j < usedHeaders.size() ; j++)
+            {
+                row.append(separator);
+                
+                DiaryHeader headerJ = usedHeaders.get(j);
+                if(!givenDiary.hasValue(i, headerJ))
+                {
+                    continue;
+                }
+                
+                if(headerJ.equals(DiaryHeader.PSActionType))
+                {
+                    PSActionType actionType = givenDiary.getPSActionType(i);
+                    row.append(actionType);
+                }
+                else if(headerJ.equals(DiaryHeader.MessageID))
+                {
+                    appendField(row, givenDiary.getMessageID(i), separator);
+                }
+                else if(headerJ.equals(DiaryHeader.Attributes))
+                {
+                    appendField(row, givenDiary.getAttributes(i), separator);
+                }
+                else if(DiaryEntry.isDoubleHeader(headerJ))
+                {
+                    row.append(givenDiary.getDoubleValue(i, headerJ));
+                }
+                else
+                {
+                    row.append(givenDiary.getLongValue(i, headerJ));
+                }
+            }
+            row.append('\n');
+            out.write(row.toString());
+        }
+    }
+    
+    /**
+     * Appends a string field
+     * CSV fields are quoted (with any quotes doubled) if they need to be;
+     * TSV can't quote, so any tabs or newlines become spaces
+     */
+    private static void appendField(StringBuilder row, String givenField, char separator)
+    {
+        if(givenField == null)
+        {
+            return;
+        }
+        
+        if(separator == '\t')
+        {
+            row.append(givenField.replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+        }
+        else if(givenField.indexOf(',') >= 0 || givenField.indexOf('"') >= 0 
+                || givenField.indexOf('\n') >= 0 || givenField.indexOf('\r') >= 0)
+        {
+            row.append('"').append(givenField.replace("\"", "\"\"")).append('"');
+        }
+        else
+        {
+            row.append(givenField);
+        }
+    }
+    
+    private static void closeQuietly(Writer givenWriter)
+    {
+        if(givenWriter == null)
+        {
+            return;
+        }
+        
+        try
+        {
+            givenWriter.close();
+        }
+        catch(IOException e)
+        {
+            // We're already reporting an error
+        }
+    }
+}
@@ -14,6 +14,7 @@ public enum DiaryHeader {
     PSActionType,
     TimeActionStarted, TimeFunctionReturned,
     StartedAction, EndedAction, ActionDelay,
+    IntendedAction, IntendedActionDelay, StartSlip, DroppedAction,
     MessageID, Attributes, PayloadSize, 
     TimeActiveStarted, TimeActiveEnded,
     TimeMessageCreated, TimeMessageReceived, MessageDelay,
@@ -22,5 +23,6 @@ public enum DiaryHeader {
     Round, MessageRate, 
     RoundLatency, MessagesReceievedRound, MessagesReceievedTotal,
     CurrentThroughput, Secant, AverageThroughput, FinalThroughput,
-    Y0, Y1, X0, X1, CurrentRatio
+    Y0, Y1, X0, X1, CurrentRatio,
+    RateSearch, SearchPhase, RoundThroughput, NextMessageRate, LowerRate, UpperRate
 }
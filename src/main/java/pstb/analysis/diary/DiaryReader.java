@@ -0,0 +1,652 @@
+package pstb.analysis.diary;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.startup.workload.PSActionType;
+import pstb.util.PSTBUtil;
+import pstb.util.PSTBUtil.TimeType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Reads diary files.
+ * 
+ * Binary diaries (see DiaryWriter) are read column by column straight into a ClientDiary.
+ * Columns and action types are matched up by name, so ones this version doesn't know about are dropped.
+ * Anything else is rejected - diaries serialized by older versions can't be read back into the current ClientDiary.
+ * @see DiaryWriter
+ */
+public class DiaryReader
+{
+    static final int NOT_FOUND = -1;
+    
+    // Reading a diary into the heap needs memory for the whole diary, so only a few are allowed at once
+    // (Mapping one costs next to nothing - so they don't count.)
+    private static final int MAX_HEAP_DECODES = 4;
+    private static final Semaphore HEAP_DECODES = new Semaphore(MAX_HEAP_DECODES);
+    
+    private final DataInputStream in;
+    private final ByteBuffer scratch;
+    private final Logger log;
+    private final String logHeader;
+    
+    private int[] columnMap; // file column -> DiaryHeader ordinal
+    private byte[] actionTypeMap; // file action type -> PSActionType ordinal
+    private boolean schemaMatches;
+    
+    private String context;
+    private String timeCreated;
+    private long declaredNumEntries;
+    private LatencyHistogram[] histograms; // by PSActionType ordinal
+    
+    private DiaryReader(DataInputStream givenIn, Logger givenLog, String givenLogHeader)
+    {
+        in = givenIn;
+        scratch = ByteBuffer.allocate(DiaryWriter.SCRATCH_SIZE);
+        log = givenLog;
+        logHeader = givenLogHeader;
+    }
+    
+    /**
+     * Opens the given diary file for analysis
+     * Binary diaries are memory-mapped, so their columns are only read when they're asked for
+     * (and the OS can page them out again whenever it likes).
+     * Binary diaries too big to map are read into memory instead.
+     * 
+     * @param givenFilePath - the diary file
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return null on failure; the diary otherwise
+     * @see MappedDiary
+     */
+    public static ReadableDiary openDiary(Path givenFilePath, Logger log, String logHeader)
+    {
+        InputStream in = null;
+        try
+        {
+            in = Files.newInputStream(givenFilePath);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't open diary " + givenFilePath + ": ", e);
+            return null;
+        }
+        
+        int magic = 0;
+        try
+        {
+            magic = new DataInputStream(in).readInt();
+            in.close();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't read the start of diary " + givenFilePath + ": ", e);
+            return null;
+        }
+        
+        if(magic == DiaryWriter.MAGIC)
+        {
+            ReadableDiary retVal = MappedDiary.open(givenFilePath, log, logHeader);
+            if(retVal != null)
+            {
+                return retVal;
+            }
+            log.warn(logHeader + "Couldn't map diary " + givenFilePath + " - reading it into memory instead.");
+        }
+        
+        try
+        {
+            in = Files.newInputStream(givenFilePath);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't open diary " + givenFilePath + ": ", e);
+            return null;
+        }
+        
+        ClientDiary retVal = null;
+        HEAP_DECODES.acquireUninterruptibly();
+        try
+        {
+            retVal = readDiary(in, log, logHeader);
+        }
+        finally
+        {
+            HEAP_DECODES.release();
+        }
+        
+        try
+        {
+            in.close();
+        }
+        catch(IOException e)
+        {
+            log.warn(logHeader + "Couldn't close diary " + givenFilePath + ": ", e);
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Opens every given diary file - in parallel - and puts them on the given bookshelf
+     * At most one diary is opened per core, and at most MAX_HEAP_DECODES of those can be read into the heap at once.
+     * 
+     * @param givenFiles - the diary files
+     * @param nameDiary - gives the name a diary file should have on the bookshelf
+     * @param givenBookshelf - the bookshelf to add the diaries to
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false if any diary couldn't be opened; true otherwise
+     * @see #openDiary(Path, Logger, String)
+     */
+    public static boolean openDiaries(File[] givenFiles, Function<File, String> nameDiary,
+            ConcurrentHashMap<String, ReadableDiary> givenBookshelf, Logger log, String logHeader)
+    {
+        int numFiles = givenFiles.length;
+        if(numFiles == 0)
+        {
+            return true;
+        }
+        
+        int numWorkers = Math.min(numFiles, Runtime.getRuntime().availableProcessors());
+        ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+        long start = System.nanoTime();
+        
+        ArrayList<Future<Long>> results = new ArrayList<Future<Long>>(numFiles);
+        for(int i = 0 ; i < numFiles ; i++)
+        {
+            File diaryI = givenFiles[i];
+            results.add(workers.submit(() -> openDiaryOntoBookshelf(diaryI, nameDiary.apply(diaryI), givenBookshelf, log, logHeader)));
+        }
+        
+        boolean allOpened = true;
+        long totalBytes = 0L;
+        for(int i = 0 ; i < numFiles ; i++)
+        {
+            try
+            {
+                Long bytesI = results.get(i).get();
+                if(bytesI == null)
+                {
+                    allOpened = false;
+                }
+                else
+                {
+                    totalBytes += bytesI;
+                }
+            }
+            catch(InterruptedException | ExecutionException e)
+            {
+                log.error(logHeader + "Error waiting for diary " + givenFiles[i] + ": ", e);
+                allOpened = false;
+            }
+        }
+        workers.shutdown();
+        
+        long elapsed = System.nanoTime() - start;
+        log.info(logHeader + "Opened " + numFiles + " diaries (" + totalBytes + " bytes) with " + numWorkers + " workers in "
+                + PSTBUtil.createTimeString(elapsed, TimeType.Nano, TimeUnit.MILLISECONDS)
+                + " - " + formatThroughput(totalBytes, elapsed) + ".");
+        
+        return allOpened;
+    }
+    
+    /**
+     * @return null on failure; the size of the diary file (in bytes) otherwise
+     */
+    private static Long openDiaryOntoBookshelf(File givenFile, String givenName, ConcurrentHashMap<String, ReadableDiary> givenBookshelf,
+            Logger log, String logHeader)
+    {
+        long start = System.nanoTime();
+        
+        ReadableDiary diary = openDiary(givenFile.toPath(), log, logHeader);
+        if(diary == null)
+        {
+            log.error(logHeader + "Error getting diary " + givenName + "!");
+            return null;
+        }
+        givenBookshelf.put(givenName, diary);
+        
+        long elapsed = System.nanoTime() - start;
+        long fileSize = givenFile.length();
+        log.debug(logHeader + "Opened " + givenName + " as a " + diary.getClass().getSimpleName() + ": " + diary.size() + " entries ("
+                + fileSize + " bytes) in " + PSTBUtil.createTimeString(elapsed, TimeType.Nano, TimeUnit.MICROSECONDS)
+                + " - " + formatThroughput(fileSize, elapsed) + ".");
+        return fileSize;
+    }
+    
+    private static String formatThroughput(long givenBytes, long givenNanos)
+    {
+        if(givenNanos <= 0)
+        {
+            return "- MB/s";
+        }
+        double mbPerSec = (givenBytes / (1024.0 * 1024.0)) / ((double) givenNanos / PSTBUtil.SEC_TO_NANOSEC);
+        return String.format("%.1f MB/s", mbPerSec);
+    }
+    
+    /**
+     * Reads a diary from the given InputStream - in whichever format it was written
+     * 
+     * @param givenIS - the InputStream to read
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return null on failure; the diary otherwise
+     */
+    public static ClientDiary readDiary(InputStream givenIS, Logger log, String logHeader)
+    {
+        BufferedInputStream bufferedIn = new BufferedInputStream(givenIS, DiaryWriter.SCRATCH_SIZE);
+        DataInputStream dataIn = new DataInputStream(bufferedIn);
+        
+        int magic = 0;
+        try
+        {
+            bufferedIn.mark(Integer.BYTES);
+            magic = dataIn.readInt();
+            bufferedIn.reset();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't read the start of the diary: ", e);
+            return null;
+        }
+        
+        if(magic != DiaryWriter.MAGIC)
+        {
+            log.error(logHeader + "Not a binary diary - serialized diaries from older versions are no longer supported!");
+            return null;
+        }
+        
+        return new DiaryReader(dataIn, log, logHeader).read();
+    }
+    
+    private ClientDiary read()
+    {
+        try
+        {
+            if(!readHeader())
+            {
+                return null;
+            }
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't read the diary's header: ", e);
+            return null;
+        }
+        
+        ClientDiary retVal = null;
+        boolean moreChunks = true;
+        while(moreChunks)
+        {
+            ClientDiary chunk = null;
+            try
+            {
+                chunk = readChunk();
+            }
+            catch(EOFException e)
+            {
+                // The writer never finished - i.e. its client died part way through the run
+                log.warn(logHeader + "Diary " + context + " ends early - keeping the chunks that were complete.");
+                moreChunks = false;
+            }
+            catch(IOException e)
+            {
+                log.error(logHeader + "Couldn't read a chunk of diary " + context + ": ", e);
+                return null;
+            }
+            
+            if(chunk == null)
+            {
+                moreChunks = false;
+            }
+            else if(retVal == null)
+            {
+                retVal = chunk;
+            }
+            else
+            {
+                retVal.appendDiary(chunk);
+            }
+        }
+        
+        if(retVal == null)
+        {
+            retVal = new ClientDiary(0, new long[DiaryEntry.NUM_HEADERS][], new long[1], new byte[1], new String[1], new int[1],
+                    new ArrayList<String>(), timeCreated);
+        }
+        
+        if(histograms != null)
+        {
+            for(int i = 0 ; i < histograms.length ; i++)
+            {
+                retVal.addLatencyHistogram(ClientDiary.ACTION_TYPES[i], histograms[i]);
+            }
+        }
+        
+        if(declaredNumEntries != DiaryWriter.UNKNOWN_NUM_ENTRIES && declaredNumEntries != retVal.size())
+        {
+            log.warn(logHeader + "Diary " + context + " should have " + declaredNumEntries + " entries - read " + retVal.size() + ".");
+        }
+        
+        return retVal;
+    }
+    
+    private boolean readHeader() throws IOException
+    {
+        in.readInt(); // MAGIC - already checked
+        short version = in.readShort();
+        if(version > DiaryWriter.VERSION)
+        {
+            log.error(logHeader + "Diary is version " + version + " - this version of PSTB can only read up to "
+                    + DiaryWriter.VERSION + "!");
+            return false;
+        }
+        
+        declaredNumEntries = in.readLong();
+        context = readString();
+        timeCreated = readString();
+        
+        String[] fileColumnNames = new String[in.readShort()];
+        for(int i = 0 ; i < fileColumnNames.length ; i++)
+        {
+            fileColumnNames[i] = readString();
+        }
+        columnMap = mapColumns(fileColumnNames);
+        
+        String[] fileActionTypeNames = new String[in.readShort()];
+        for(int i = 0 ; i < fileActionTypeNames.length ; i++)
+        {
+            fileActionTypeNames[i] = readString();
+        }
+        actionTypeMap = mapActionTypes(fileActionTypeNames);
+        
+        schemaMatches = schemaMatches(columnMap, actionTypeMap);
+        return true;
+    }
+    
+    /**
+     * Matches a diary file's columns up with our DiaryHeaders
+     * 
+     * @param fileColumnNames - the names of the columns in the file (in the file's order)
+     * @return the DiaryHeader ordinal of each of the file's columns; NOT_FOUND for any we don't know
+     */
+    static int[] mapColumns(String[] fileColumnNames)
+    {
+        DiaryHeader[] headers = DiaryEntry.HEADERS;
+        int[] retVal = new int[fileColumnNames.length];
+        for(int i = 0 ; i < fileColumnNames.length ; i++)
+        {
+            retVal[i] = NOT_FOUND;
+            for(int j = 0 ; j < headers.length ; j++)
+            {
+                if(headers[j].toString().equals(fileColumnNames[i]))
+                {
+                    retVal[i] = j;
+                    break;
+                }
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * Matches a diary file's action types up with our PSActionTypes
+     * 
+     * @param fileActionTypeNames - the names of the action types in the file (in the file's order)
+     * @return the PSActionType ordinal of each of the file's action types; NO_VALUE for any we don't know
+     */
+    static byte[] mapActionTypes(String[] fileActionTypeNames)
+    {
+        PSActionType[] actionTypes = ClientDiary.ACTION_TYPES;
+        byte[] retVal = new byte[fileActionTypeNames.length];
+        for(int i = 0 ; i < fileActionTypeNames.length ; i++)
+        {
+            retVal[i] = ClientDiary.NO_VALUE;
+            for(int j = 0 ; j < actionTypes.length ; j++)
+            {
+                if(actionTypes[j].toString().equals(fileActionTypeNames[i]))
+                {
+                    retVal[i] = (byte) j;
+                    break;
+                }
+            }
+        }
+        return retVal;
+    }
+    
+    /**
+     * @return true if the file's columns and action types are exactly ours (so nothing needs remapping); false otherwise
+     */
+    static boolean schemaMatches(int[] givenColumnMap, byte[] givenActionTypeMap)
+    {
+        if(givenColumnMap.length != DiaryEntry.NUM_HEADERS || givenActionTypeMap.length != ClientDiary.ACTION_TYPES.length)
+        {
+            return false;
+        }
+        for(int i = 0 ; i < givenColumnMap.length ; i++)
+        {
+            if(givenColumnMap[i] != i)
+            {
+                return false;
+            }
+        }
+        for(int i = 0 ; i < givenActionTypeMap.length ; i++)
+        {
+            if(givenActionTypeMap[i] != i)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return the next chunk; null if we've reached the end marker
+     */
+    private ClientDiary readChunk() throws IOException
+    {
+        int n = in.readInt();
+        if(n == DiaryWriter.HISTOGRAM_MARKER)
+        {
+            byte[] section = new byte[in.readInt()];
+            in.readFully(section);
+            histograms = readHistograms(section);
+            n = in.readInt();
+        }
+        if(n == DiaryWriter.END_MARKER)
+        {
+            return null;
+        }
+        
+        int dictionarySize = in.readInt();
+        ArrayList<String> dictionary = new ArrayList<String>(dictionarySize);
+        for(int i = 0 ; i < dictionarySize ; i++)
+        {
+            dictionary.add(readString());
+        }
+        
+        // Every array needs at least one slot, so that the diary can grow
+        int capacity = Math.max(n, 1);
+        long[] presence = readLongs(capacity, n);
+        byte[] actionTypes = new byte[capacity];
+        in.readFully(actionTypes, 0, n);
+        int[] messageIDCodes = readInts(capacity, n);
+        int[] attributes = readInts(capacity, n);
+        
+        // In memory, message IDs are kept as strings - and the dictionary only has to hold the attributes
+        String[] messageIDs = new String[capacity];
+        for(int i = 0 ; i < n ; i++)
+        {
+            if(messageIDCodes[i] != ClientDiary.NO_VALUE)
+            {
+                messageIDs[i] = dictionary.get(messageIDCodes[i]);
+            }
+        }
+        dictionary = keepAttributes(n, attributes, dictionary);
+        
+        long[][] columns = new long[DiaryEntry.NUM_HEADERS][];
+        long fileColumnMask = in.readLong();
+        for(int i = 0 ; i < columnMap.length ; i++)
+        {
+            if((fileColumnMask & (1L << i)) != 0)
+            {
+                long[] columnI = readLongs(capacity, n);
+                if(columnMap[i] != NOT_FOUND)
+                {
+                    columns[columnMap[i]] = columnI;
+                }
+            }
+        }
+        
+        if(!schemaMatches)
+        {
+            remapSchema(n, presence, actionTypes);
+        }
+        
+        return new ClientDiary(n, columns, presence, actionTypes, messageIDs, attributes, dictionary, timeCreated);
+    }
+    
+    /**
+     * Reads a diary file's histogram section
+     * 
+     * @param givenSection - the section (without its marker and length)
+     * @return the histograms, by PSActionType ordinal (null for any type without one - or that we don't know)
+     * @throws IOException if the section can't be read
+     */
+    static LatencyHistogram[] readHistograms(byte[] givenSection) throws IOException
+    {
+        DataInputStream section = new DataInputStream(new ByteArrayInputStream(givenSection));
+        LatencyHistogram[] retVal = new LatencyHistogram[ClientDiary.ACTION_TYPES.length];
+        
+        int numHistograms = section.readShort();
+        for(int i = 0 ; i < numHistograms ; i++)
+        {
+            byte[] name = new byte[section.readInt()];
+            section.readFully(name);
+            byte[] actionTypeI = mapActionTypes(new String[] { new String(name, StandardCharsets.UTF_8) });
+            
+            LatencyHistogram histogramI = LatencyHistogram.readFrom(section);
+            if(actionTypeI[0] != ClientDiary.NO_VALUE)
+            {
+                retVal[actionTypeI[0]] = histogramI;
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Drops every dictionary string that isn't an attribute, recoding the attributes to match
+     * 
+     * @param n - the number of rows
+     * @param attributes - the attribute codes (recoded in place)
+     * @param givenDictionary - the chunk's dictionary
+     * @return the attributes' dictionary
+     */
+    private static ArrayList<String> keepAttributes(int n, int[] attributes, ArrayList<String> givenDictionary)
+    {
+        int[] newCodes = new int[givenDictionary.size()];
+        Arrays.fill(newCodes, ClientDiary.NO_VALUE);
+        ArrayList<String> retVal = new ArrayList<String>();
+        for(int i = 0 ; i < n ; i++)
+        {
+            int codeI = attributes[i];
+            if(codeI == ClientDiary.NO_VALUE)
+            {
+                continue;
+            }
+            if(newCodes[codeI] == ClientDiary.NO_VALUE)
+            {
+                newCodes[codeI] = retVal.size();
+                retVal.add(givenDictionary.get(codeI));
+            }
+            attributes[i] = newCodes[codeI];
+        }
+        return retVal;
+    }
+    
+    /**
+     * Moves the presence bits and action types from the file's ordinals to ours
+     */
+    private void remapSchema(int n, long[] presence, byte[] actionTypes)
+    {
+        for(int i = 0 ; i < n ; i++)
+        {
+            long filePresence = presence[i];
+            long ourPresence = 0L;
+            for(int j = 0 ; j < columnMap.length ; j++)
+            {
+                if((filePresence & (1L << j)) != 0 && columnMap[j] != NOT_FOUND)
+                {
+                    ourPresence |= (1L << columnMap[j]);
+                }
+            }
+            presence[i] = ourPresence;
+            
+            byte fileActionType = actionTypes[i];
+            if(fileActionType != ClientDiary.NO_VALUE)
+            {
+                actionTypes[i] = (fileActionType < actionTypeMap.length) ? actionTypeMap[fileActionType] : ClientDiary.NO_VALUE;
+            }
+        }
+    }
+    
+    private String readString() throws IOException
+    {
+        int length = in.readInt();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private long[] readLongs(int capacity, int length) throws IOException
+    {
+        long[] retVal = new long[capacity];
+        int perBlock = DiaryWriter.SCRATCH_SIZE / Long.BYTES;
+        for(int i = 0 ; i < length ; i += perBlock)
+        {
+            int blockLength = Math.min(perBlock, length - i);
+            in.readFully(scratch.array(), 0, blockLength * Long.BYTES);
+            scratch.clear();
+            scratch.asLongBuffer().get(retVal, i, blockLength);
+        }
+        return retVal;
+    }
+    
+    private int[] readInts(int capacity, int length) throws IOException
+    {
+        int[] retVal = new int[capacity];
+        int perBlock = DiaryWriter.SCRATCH_SIZE / Integer.BYTES;
+        for(int i = 0 ; i < length ; i += perBlock)
+        {
+            int blockLength = Math.min(perBlock, length - i);
+            in.readFully(scratch.array(), 0, blockLength * Integer.BYTES);
+            scratch.clear();
+            scratch.asIntBuffer().get(retVal, i, blockLength);
+        }
+        return retVal;
+    }
+}
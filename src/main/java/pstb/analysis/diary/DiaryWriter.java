@@ -0,0 +1,337 @@
+package pstb.analysis.diary;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.startup.workload.PSActionType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Writes ClientDiaries in the binary diary format.
+ * 
+ * A diary file is a header followed by one or more chunks, and then an end marker.
+ * Everything is big-endian.
+ * 
+ * Header:
+ * int MAGIC | short VERSION | long number of entries (UNKNOWN_NUM_ENTRIES until the writer is closed)
+ * string context | string time created
+ * short number of columns, then each column's DiaryHeader name
+ * short number of action types, then each PSActionType name
+ * 
+ * Chunk:
+ * int number of entries (n) | int dictionary size, then each dictionary string
+ * long[n] presence | byte[n] action types | int[n] messageIDs | int[n] attributes
+ * long column mask, then a long[n] for each column in the mask
+ * (The messageIDs and attributes are codes into the chunk's dictionary:
+ * the distinct attributes come first, followed by every message ID in row order.)
+ * 
+ * Histograms (optional - only if the Client recorded any LatencyHistograms, and always just before the end):
+ * int HISTOGRAM_MARKER | int byte length of the rest of the section
+ * short number of histograms, then each one's PSActionType name followed by the histogram
+ * (see LatencyHistogram.writeTo())
+ * 
+ * End: int END_MARKER
+ * 
+ * (A string is an int byte length followed by that many UTF-8 bytes.)
+ * 
+ * The header names every column and action type, so the reader can match them up by name
+ * - i.e. a diary doesn't become unreadable just because DiaryHeader or PSActionType changed.
+ * @see DiaryReader
+ */
+public class DiaryWriter
+{
+    public static final int MAGIC = 0x50535442; // "PSTB"
+    public static final short VERSION = 2;
+    public static final long UNKNOWN_NUM_ENTRIES = -1L;
+    static final int END_MARKER = -1;
+    static final int HISTOGRAM_MARKER = -2;
+    static final long NUM_ENTRIES_OFFSET = 6L; // after MAGIC and VERSION
+    static final int SCRATCH_SIZE = 65536;
+    
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final ByteBuffer scratch;
+    private final long declaredNumEntries;
+    private long numEntriesWritten;
+    
+    /**
+     * Constructor
+     * Creates (or overwrites) the given file and writes the header
+     * 
+     * @param givenFilePath - the file to write to
+     * @param givenContext - the context of the node the diary belongs to
+     * @param givenTimeCreated - when the diary was created
+     * @param givenNumEntries - the number of entries that will be written; UNKNOWN_NUM_ENTRIES if that isn't known yet
+     * @throws IOException if the file can't be opened or written to
+     */
+    public DiaryWriter(Path givenFilePath, String givenContext, String givenTimeCreated, long givenNumEntries) throws IOException
+    {
+        channel = FileChannel.open(givenFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), SCRATCH_SIZE));
+        scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+        declaredNumEntries = givenNumEntries;
+        numEntriesWritten = 0L;
+        
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(givenNumEntries);
+        writeString(givenContext);
+        writeString(givenTimeCreated);
+        
+        DiaryHeader[] headers = DiaryEntry.HEADERS;
+        out.writeShort(headers.length);
+        for(int i = 0 ; i < headers.length ; i++)
+        {
+            writeString(headers[i].toString());
+        }
+        
+        PSActionType[] actionTypes = ClientDiary.ACTION_TYPES;
+        out.writeShort(actionTypes.length);
+        for(int i = 0 ; i < actionTypes.length ; i++)
+        {
+            writeString(actionTypes[i].toString());
+        }
+    }
+    
+    /**
+     * Writes the entries the given diary is currently holding as one chunk
+     * 
+     * @param givenDiary - the diary
+     * @throws IOException if the chunk can't be written
+     */
+    public void writeChunk(ClientDiary givenDiary) throws IOException
+    {
+        int n = givenDiary.numEntries;
+        out.writeInt(n);
+        
+        // The diary only keeps its attributes in a dictionary - its message IDs are added on the end
+        ArrayList<String> dictionary = givenDiary.dictionary;
+        String[] messageIDs = givenDiary.messageIDs;
+        int[] messageIDCodes = new int[n];
+        int nextCode = dictionary.size();
+        for(int i = 0 ; i < n ; i++)
+        {
+            messageIDCodes[i] = (messageIDs[i] == null) ? ClientDiary.NO_VALUE : nextCode++;
+        }
+        
+        out.writeInt(nextCode);
+        for(int i = 0 ; i < dictionary.size() ; i++)
+        {
+            writeString(dictionary.get(i));
+        }
+        for(int i = 0 ; i < n ; i++)
+        {
+            if(messageIDs[i] != null)
+            {
+                writeString(messageIDs[i]);
+            }
+        }
+        
+        writeLongs(givenDiary.presence, n);
+        out.write(givenDiary.actionTypes, 0, n);
+        writeInts(messageIDCodes, n);
+        writeInts(givenDiary.attributes, n);
+        
+        long[][] columns = givenDiary.columns;
+        long columnMask = 0L;
+        for(int i = 0 ; i < columns.length ; i++)
+        {
+            if(columns[i] != null)
+            {
+                columnMask |= (1L << i);
+            }
+        }
+        out.writeLong(columnMask);
+        for(int i = 0 ; i < columns.length ; i++)
+        {
+            if(columns[i] != null)
+            {
+                writeLongs(columns[i], n);
+            }
+        }
+        
+        numEntriesWritten += n;
+    }
+    
+    /**
+     * Writes the given diary's LatencyHistograms (if it has any)
+     * This should be the last thing written before close()
+     * 
+     * @param givenDiary - the diary
+     * @throws IOException if the histograms can't be written
+     */
+    public void writeHistograms(ClientDiary givenDiary) throws IOException
+    {
+        LatencyHistogram[] histograms = givenDiary.latencyHistograms;
+        PSActionType[] actionTypes = ClientDiary.ACTION_TYPES;
+        
+        short numHistograms = 0;
+        for(int i = 0 ; i < histograms.length ; i++)
+        {
+            if(histograms[i] != null)
+            {
+                numHistograms++;
+            }
+        }
+        if(numHistograms == 0)
+        {
+            return;
+        }
+        
+        // The section's length goes first, so it's written out separately
+        ByteArrayOutputStream sectionBytes = new ByteArrayOutputStream();
+        DataOutputStream section = new DataOutputStream(sectionBytes);
+        section.writeShort(numHistograms);
+        for(int i = 0 ; i < histograms.length ; i++)
+        {
+            if(histograms[i] != null)
+            {
+                byte[] name = actionTypes[i].toString().getBytes(StandardCharsets.UTF_8);
+                section.writeInt(name.length);
+                section.write(name);
+                histograms[i].writeTo(section);
+            }
+        }
+        section.flush();
+        
+        out.writeInt(HISTOGRAM_MARKER);
+        out.writeInt(sectionBytes.size());
+        sectionBytes.writeTo(out);
+    }
+    
+    /**
+     * Pushes everything written so far out to the file
+     * 
+     * @throws IOException if it can't be
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+    
+    /**
+     * Writes the end marker and closes the file
+     * If the number of entries wasn't known when the header was written, it's filled in now
+     * 
+     * @throws IOException if the file can't be finished
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            out.writeInt(END_MARKER);
+            out.flush();
+            
+            if(declaredNumEntries == UNKNOWN_NUM_ENTRIES)
+            {
+                ByteBuffer numEntries = ByteBuffer.allocate(Long.BYTES);
+                numEntries.putLong(0, numEntriesWritten);
+                channel.write(numEntries, NUM_ENTRIES_OFFSET);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+    
+    /**
+     * Writes the given diary into a new diary file
+     * 
+     * @param givenDiary - the diary
+     * @param givenContext - the context of the node the diary belongs to
+     * @param givenFilePath - the file to write to
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return false on error; true otherwise
+     */
+    public static boolean writeDiary(ClientDiary givenDiary, String givenContext, Path givenFilePath, Logger log, String logHeader)
+    {
+        DiaryWriter writer = null;
+        try
+        {
+            writer = new DiaryWriter(givenFilePath, givenContext, givenDiary.timeCreated, givenDiary.numEntries);
+            writer.writeChunk(givenDiary);
+            writer.writeHistograms(givenDiary);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't write diary " + givenFilePath + ": ", e);
+            closeQuietly(writer);
+            return false;
+        }
+        
+        try
+        {
+            writer.close();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't finish diary " + givenFilePath + ": ", e);
+            return false;
+        }
+        
+        return true;
+    }
+    
+    private static void closeQuietly(DiaryWriter givenWriter)
+    {
+        if(givenWriter == null)
+        {
+            return;
+        }
+        
+        try
+        {
+            givenWriter.out.close();
+        }
+        catch(IOException e)
+        {
+            // We're already reporting an error
+        }
+    }
+    
+    private void writeString(String givenString) throws IOException
+    {
+        byte[] bytes = givenString.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private void writeLongs(long[] givenArray, int length) throws IOException
+    {
+        int perBlock = SCRATCH_SIZE / Long.BYTES;
+        for(int i = 0 ; i < length ; i += perBlock)
+        {
+            int blockLength = Math.min(perBlock, length - i);
+            scratch.clear();
+            scratch.asLongBuffer().put(givenArray, i, blockLength);
+            out.write(scratch.array(), 0, blockLength * Long.BYTES);
+        }
+    }
+    
+    private void writeInts(int[] givenArray, int length) throws IOException
+    {
+        int perBlock = SCRATCH_SIZE / Integer.BYTES;
+        for(int i = 0 ; i < length ; i += perBlock)
+        {
+            int blockLength = Math.min(perBlock, length - i);
+            scratch.clear();
+            scratch.asIntBuffer().put(givenArray, i, blockLength);
+            out.write(scratch.array(), 0, blockLength * Integer.BYTES);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package pstb.analysis.diary;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import pstb.util.PSTBUtil;
+import pstb.util.PSTBUtil.TimeType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * A fixed-size, log-linear histogram of latencies.
+ * 
+ * Values are grouped into buckets whose width grows with the value
+ * - every value is kept to the given number of significant (decimal) digits, however big it is.
+ * So the memory used depends only on the precision, never on how many values are recorded,
+ * and two histograms with the same precision can be merged just by adding their counts.
+ * 
+ * The count, sum, min and max of the recorded values are kept exactly.
+ * (Negative values - e.g. from clock skew between machines - are counted as 0, but still kept in the min and the sum.)
+ */
+public class LatencyHistogram implements java.io.Serializable
+{
+    private static final long serialVersionUID = 1L;
+    
+    public static final int MIN_PRECISION = 1;
+    public static final int MAX_PRECISION = 4;
+    public static final int DEFAULT_PRECISION = 2;
+    public static final double[] SUMMARY_PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+    
+    private final int precision;
+    private final int subBucketBits;
+    private final int subBucketHalfCount;
+    private final long[] counts;
+    
+    private long totalCount;
+    private long sum;
+    private long min;
+    private long max;
+    
+    /**
+     * Constructor
+     * 
+     * @param givenPrecision - the number of significant digits to keep (MIN_PRECISION to MAX_PRECISION)
+     */
+    public LatencyHistogram(int givenPrecision)
+    {
+        if(givenPrecision < MIN_PRECISION || givenPrecision > MAX_PRECISION)
+        {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + "!");
+        }
+        
+        precision = givenPrecision;
+        
+        // Enough sub-buckets that neighbouring values at the given precision never share one
+        long largestUnitValue = 2L * (long) Math.pow(10, givenPrecision);
+        subBucketBits = 64 - Long.numberOfLeadingZeros(largestUnitValue - 1);
+        subBucketHalfCount = 1 << (subBucketBits - 1);
+        
+        int numMagnitudes = 64 - subBucketBits + 1;
+        counts = new long[(numMagnitudes + 1) * subBucketHalfCount];
+        
+        reset();
+    }
+    
+    /**
+     * Forgets every recorded value
+     */
+    public void reset()
+    {
+        for(int i = 0 ; i < counts.length ; i++)
+        {
+            counts[i] = 0L;
+        }
+        totalCount = 0L;
+        sum = 0L;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+    
+    /**
+     * Records a value
+     * 
+     * @param givenValue - the value
+     */
+    public void recordValue(long givenValue)
+    {
+        recordValue(givenValue, 1L);
+    }
+    
+    /**
+     * Records a value a number of times
+     * 
+     * @param givenValue - the value
+     * @param givenCount - the number of times to record it
+     */
+    public void recordValue(long givenValue, long givenCount)
+    {
+        if(givenCount <= 0)
+        {
+            return;
+        }
+        
+        counts[indexOf(Math.max(givenValue, 0L))] += givenCount;
+        totalCount += givenCount;
+        sum += givenValue * givenCount;
+        if(givenValue < min)
+        {
+            min = givenValue;
+        }
+        if(givenValue > max)
+        {
+            max = givenValue;
+        }
+    }
+    
+    /**
+     * Adds every value recorded in the given histogram to this one
+     * If the precisions differ, the given histogram's values are re-recorded at this one's precision
+     * 
+     * @param givenHistogram - the histogram to add
+     */
+    public void merge(LatencyHistogram givenHistogram)
+    {
+        if(givenHistogram == null || givenHistogram.totalCount == 0)
+        {
+            return;
+        }
+        
+        if(givenHistogram.precision == precision)
+        {
+            for(int i = 0 ; i < counts.length ; i++)
+            {
+                counts[i] += givenHistogram.counts[i];
+            }
+        }
+        else
+        {
+            for(int i = 0 ; i < givenHistogram.counts.length ; i++)
+            {
+                if(givenHistogram.counts[i] != 0)
+                {
+                    counts[indexOf(givenHistogram.medianValueOf(i))] += givenHistogram.counts[i];
+                }
+            }
+        }
+        
+        totalCount += givenHistogram.totalCount;
+        sum += givenHistogram.sum;
+        min = Math.min(min, givenHistogram.min);
+        max = Math.max(max, givenHistogram.max);
+    }
+    
+    public int getPrecision()
+    {
+        return precision;
+    }
+    
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+    
+    public long getSum()
+    {
+        return sum;
+    }
+    
+    /**
+     * @return the smallest value recorded; 0 if nothing has been
+     */
+    public long getMin()
+    {
+        return (totalCount == 0) ? 0L : min;
+    }
+    
+    /**
+     * @return the largest value recorded; 0 if nothing has been
+     */
+    public long getMax()
+    {
+        return (totalCount == 0) ? 0L : max;
+    }
+    
+    /**
+     * @return the mean of the recorded values; 0 if nothing has been recorded
+     */
+    public double getMean()
+    {
+        return (totalCount == 0) ? 0.0 : ((double) sum) / totalCount;
+    }
+    
+    /**
+     * Gets the value at the given percentile
+     * I.e. the (rounded up) value that the given percentage of recorded values are less than or equal to
+     * 
+     * @param givenPercentile - the percentile (0.0 - 100.0)
+     * @return that value (to within the histogram's precision); 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double givenPercentile)
+    {
+        if(totalCount == 0)
+        {
+            return 0L;
+        }
+        
+        double percentile = Math.min(Math.max(givenPercentile, 0.0), 100.0);
+        long countAtPercentile = (long) Math.ceil((percentile / 100.0) * totalCount);
+        countAtPercentile = Math.max(countAtPercentile, 1L);
+        
+        long runningCount = 0L;
+        for(int i = 0 ; i < counts.length ; i++)
+        {
+            runningCount += counts[i];
+            if(runningCount >= countAtPercentile)
+            {
+                return Math.max(Math.min(highestValueOf(i), max), min);
+            }
+        }
+        
+        return max;
+    }
+    
+    /**
+     * @return the number of buckets (used or not)
+     */
+    public int getNumBuckets()
+    {
+        return counts.length;
+    }
+    
+    /**
+     * @param givenBucket - the bucket
+     * @return the number of values recorded in the given bucket
+     */
+    public long getBucketCount(int givenBucket)
+    {
+        return counts[givenBucket];
+    }
+    
+    /**
+     * @param givenBucket - the bucket
+     * @return the value in the middle of the given bucket - i.e. the value any value in it is recorded as
+     */
+    public long getBucketValue(int givenBucket)
+    {
+        return medianValueOf(givenBucket);
+    }
+    
+    /**
+     * Summarizes this histogram: its count, mean, SUMMARY_PERCENTILES and max - one per line
+     * 
+     * @param givenTimeType - the unit the recorded values are in
+     * @return the summary
+     */
+    public String summarize(TimeType givenTimeType)
+    {
+        StringBuilder retVal = new StringBuilder();
+        retVal.append("count = " + totalCount + "\n");
+        retVal.append("mean = " + formatValue((long) getMean(), givenTimeType) + "\n");
+        for(int i = 0 ; i < SUMMARY_PERCENTILES.length ; i++)
+        {
+            retVal.append("p" + SUMMARY_PERCENTILES[i] + " = " 
+                    + formatValue(getValueAtPercentile(SUMMARY_PERCENTILES[i]), givenTimeType) + "\n");
+        }
+        retVal.append("max = " + formatValue(getMax(), givenTimeType) + "\n");
+        return retVal.toString();
+    }
+    
+    private static String formatValue(long givenValue, TimeType givenTimeType)
+    {
+        return PSTBUtil.createTimeString(givenValue, givenTimeType, TimeUnit.MILLISECONDS) + " (" + givenValue + ")";
+    }
+    
+    /**
+     * Writes this histogram - only the buckets that have values are written
+     * 
+     * @param out - where to write it
+     * @throws IOException if it can't be written
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        int numUsed = 0;
+        for(int i = 0 ; i < counts.length ; i++)
+        {
+            if(counts[i] != 0)
+            {
+                numUsed++;
+            }
+        }
+        
+        out.writeByte(precision);
+        out.writeLong(totalCount);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        out.writeInt(numUsed);
+        for(int i = 0 ; i < counts.length ; i++)
+        {
+            if(counts[i] != 0)
+            {
+                out.writeInt(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+    
+    /**
+     * Reads a histogram written by writeTo()
+     * 
+     * @param in - where to read it from
+     * @return the histogram
+     * @throws IOException if it can't be read (or isn't a valid histogram)
+     */
+    public static LatencyHistogram readFrom(DataInput in) throws IOException
+    {
+        int givenPrecision = in.readByte();
+        if(givenPrecision < MIN_PRECISION || givenPrecision > MAX_PRECISION)
+        {
+            throw new IOException("Histogram has an invalid precision " + givenPrecision + "!");
+        }
+        
+        LatencyHistogram retVal = new LatencyHistogram(givenPrecision);
+        retVal.totalCount = in.readLong();
+        retVal.sum = in.readLong();
+        retVal.min = in.readLong();
+        retVal.max = in.readLong();
+        
+        int numUsed = in.readInt();
+        for(int i = 0 ; i < numUsed ; i++)
+        {
+            int index = in.readInt();
+            long count = in.readLong();
+            if(index < 0 || index >= retVal.counts.length)
+            {
+                throw new IOException("Histogram has an invalid bucket " + index + "!");
+            }
+            retVal.counts[index] = count;
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Creates a copy of this histogram
+     * 
+     * @return the copy
+     */
+    public LatencyHistogram copy()
+    {
+        LatencyHistogram retVal = new LatencyHistogram(precision);
+        retVal.merge(this);
+        return retVal;
+    }
+    
+    /**
+     * @return the bucket the given (non-negative) value falls into
+     */
+    private int indexOf(long givenValue)
+    {
+        // The values below 2 * subBucketHalfCount are counted one-by-one (magnitude 0)
+        // Each magnitude above that doubles the width of its buckets
+        int magnitude = 64 - Long.numberOfLeadingZeros(givenValue | ((subBucketHalfCount << 1) - 1)) - subBucketBits;
+        int subBucket = (int) (givenValue >>> magnitude);
+        return (magnitude * subBucketHalfCount) + subBucket;
+    }
+    
+    private int magnitudeOf(int givenIndex)
+    {
+        return Math.max((givenIndex / subBucketHalfCount) - 1, 0);
+    }
+    
+    private long lowestValueOf(int givenIndex)
+    {
+        int magnitude = magnitudeOf(givenIndex);
+        long subBucket = givenIndex - ((long) magnitude * subBucketHalfCount);
+        return subBucket << magnitude;
+    }
+    
+    private long highestValueOf(int givenIndex)
+    {
+        int magnitude = magnitudeOf(givenIndex);
+        return lowestValueOf(givenIndex) + (1L << magnitude) - 1;
+    }
+    
+    private long medianValueOf(int givenIndex)
+    {
+        int magnitude = magnitudeOf(givenIndex);
+        return lowestValueOf(givenIndex) + ((1L << magnitude) >>> 1);
+    }
+}
@@ -0,0 +1,449 @@
+package pstb.analysis.diary;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.startup.workload.PSActionType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * A binary diary file (see DiaryWriter), memory-mapped rather than read into the heap.
+ * 
+ * Opening one walks the file to find where each chunk's columns start,
+ * and where each of its dictionary strings starts.
+ * After that every accessor reads straight out of the mapping - nothing is copied or decoded until it's asked for,
+ * and the OS is free to page the file back out.
+ * The dictionary offsets are the one thing kept on the heap per entry rather than per chunk:
+ * an int per dictionary string, and as every message ID is its own dictionary string, that's about an int per entry
+ * (4 bytes a row, against the dozens the entry itself takes up in the file).
+ * So holding hundreds of these costs their chunk tables plus those offsets,
+ * and an analysis only pays for the columns it actually reads.
+ * 
+ * A mapping can't be bigger than 2GB, so bigger files can't be opened this way.
+ * @see DiaryReader#openDiary(Path, Logger, String)
+ */
+public class MappedDiary extends ReadableDiary
+{
+    private static final int NO_COLUMN = -1;
+    
+    private final ByteBuffer file;
+    private final String context;
+    private final String timeCreated;
+    private final int numEntries;
+    
+    // Per chunk
+    private final int[] chunkStarts; // the index of each chunk's first entry
+    private final int[] presenceOffsets;
+    private final int[] actionTypeOffsets;
+    private final int[] messageIDOffsets;
+    private final int[] attributeOffsets;
+    private final int[][] columnOffsets; // by DiaryHeader ordinal
+    private final int[][] dictionaryOffsets; // by dictionary code - about one int per entry, as every message ID has a code
+    
+    // Schema
+    private final boolean schemaMatches;
+    private final int[] presenceBits; // DiaryHeader ordinal -> the file's bit for it
+    private final byte[] actionTypeMap;
+    
+    // The histograms are small, so they're read straight away
+    private final LatencyHistogram[] latencyHistograms; // by PSActionType ordinal
+    
+    private MappedDiary(ByteBuffer givenFile, String givenContext, String givenTimeCreated, int givenNumEntries,
+            ArrayList<int[]> givenChunkOffsets, ArrayList<int[]> givenColumnOffsets, ArrayList<int[]> givenDictionaryOffsets,
+            int[] givenColumnMap, byte[] givenActionTypeMap, LatencyHistogram[] givenHistograms)
+    {
+        file = givenFile;
+        context = givenContext;
+        timeCreated = givenTimeCreated;
+        numEntries = givenNumEntries;
+        
+        int numChunks = givenChunkOffsets.size();
+        chunkStarts = new int[numChunks];
+        presenceOffsets = new int[numChunks];
+        actionTypeOffsets = new int[numChunks];
+        messageIDOffsets = new int[numChunks];
+        attributeOffsets = new int[numChunks];
+        for(int i = 0 ; i < numChunks ; i++)
+        {
+            int[] chunkI = givenChunkOffsets.get(i);
+            chunkStarts[i] = chunkI[0];
+            presenceOffsets[i] = chunkI[1];
+            actionTypeOffsets[i] = chunkI[2];
+            messageIDOffsets[i] = chunkI[3];
+            attributeOffsets[i] = chunkI[4];
+        }
+        columnOffsets = givenColumnOffsets.toArray(new int[numChunks][]);
+        dictionaryOffsets = givenDictionaryOffsets.toArray(new int[numChunks][]);
+        
+        schemaMatches = DiaryReader.schemaMatches(givenColumnMap, givenActionTypeMap);
+        presenceBits = new int[DiaryEntry.NUM_HEADERS];
+        Arrays.fill(presenceBits, NO_COLUMN);
+        for(int i = 0 ; i < givenColumnMap.length ; i++)
+        {
+            if(givenColumnMap[i] != DiaryReader.NOT_FOUND)
+            {
+                presenceBits[givenColumnMap[i]] = i;
+            }
+        }
+        actionTypeMap = givenActionTypeMap;
+        latencyHistograms = givenHistograms;
+    }
+    
+    /**
+     * Maps the given binary diary file
+     * 
+     * @param givenFilePath - the diary file
+     * @param log - the Logger to record errors
+     * @param logHeader - the header to put on any errors
+     * @return null if the file couldn't be mapped; the diary otherwise
+     */
+    public static MappedDiary open(Path givenFilePath, Logger log, String logHeader)
+    {
+        ByteBuffer mappedFile = null;
+        FileChannel channel = null;
+        try
+        {
+            channel = FileChannel.open(givenFilePath, StandardOpenOption.READ);
+            long fileSize = channel.size();
+            if(fileSize > Integer.MAX_VALUE)
+            {
+                log.warn(logHeader + givenFilePath + " is too big to map.");
+                channel.close();
+                return null;
+            }
+            // The mapping stays valid once the channel is closed
+            mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            channel.close();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't map " + givenFilePath + ": ", e);
+            return null;
+        }
+        
+        try
+        {
+            return parse(mappedFile, givenFilePath, log, logHeader);
+        }
+        catch(BufferUnderflowException | IllegalArgumentException e)
+        {
+            log.error(logHeader + givenFilePath + " has a broken header: ", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Walks the file, noting where everything is
+     */
+    private static MappedDiary parse(ByteBuffer givenFile, Path givenFilePath, Logger log, String logHeader)
+    {
+        ByteBuffer walker = givenFile.duplicate();
+        
+        if(walker.getInt() != DiaryWriter.MAGIC)
+        {
+            log.error(logHeader + givenFilePath + " isn't a binary diary!");
+            return null;
+        }
+        short version = walker.getShort();
+        if(version > DiaryWriter.VERSION)
+        {
+            log.error(logHeader + givenFilePath + " is version " + version + " - this version of PSTB can only read up to "
+                    + DiaryWriter.VERSION + "!");
+            return null;
+        }
+        long declaredNumEntries = walker.getLong();
+        String context = readString(walker);
+        String timeCreated = readString(walker);
+        
+        String[] fileColumnNames = new String[walker.getShort()];
+        for(int i = 0 ; i < fileColumnNames.length ; i++)
+        {
+            fileColumnNames[i] = readString(walker);
+        }
+        int[] columnMap = DiaryReader.mapColumns(fileColumnNames);
+        
+        String[] fileActionTypeNames = new String[walker.getShort()];
+        for(int i = 0 ; i < fileActionTypeNames.length ; i++)
+        {
+            fileActionTypeNames[i] = readString(walker);
+        }
+        byte[] actionTypeMap = DiaryReader.mapActionTypes(fileActionTypeNames);
+        
+        ArrayList<int[]> chunkOffsets = new ArrayList<int[]>();
+        ArrayList<int[]> columnOffsets = new ArrayList<int[]>();
+        ArrayList<int[]> dictionaryOffsets = new ArrayList<int[]>();
+        LatencyHistogram[] histograms = new LatencyHistogram[ClientDiary.ACTION_TYPES.length];
+        int numEntries = 0;
+        boolean moreChunks = true;
+        while(moreChunks)
+        {
+            try
+            {
+                int n = walker.getInt();
+                if(n == DiaryWriter.HISTOGRAM_MARKER)
+                {
+                    byte[] section = new byte[walker.getInt()];
+                    walker.get(section);
+                    try
+                    {
+                        histograms = DiaryReader.readHistograms(section);
+                    }
+                    catch(IOException e)
+                    {
+                        log.warn(logHeader + "Diary " + context + " has broken histograms - ignoring them: ", e);
+                    }
+                    continue;
+                }
+                if(n == DiaryWriter.END_MARKER)
+                {
+                    moreChunks = false;
+                    continue;
+                }
+                
+                int[] dictionaryI = new int[walker.getInt()];
+                for(int i = 0 ; i < dictionaryI.length ; i++)
+                {
+                    dictionaryI[i] = walker.position();
+                    int length = walker.getInt();
+                    walker.position(walker.position() + length);
+                }
+                
+                int[] chunkI = new int[5];
+                chunkI[0] = numEntries;
+                chunkI[1] = walker.position();
+                chunkI[2] = chunkI[1] + n * Long.BYTES;
+                chunkI[3] = chunkI[2] + n;
+                chunkI[4] = chunkI[3] + n * Integer.BYTES;
+                walker.position(chunkI[4] + n * Integer.BYTES);
+                
+                int[] columnsI = new int[DiaryEntry.NUM_HEADERS];
+                Arrays.fill(columnsI, NO_COLUMN);
+                long fileColumnMask = walker.getLong();
+                for(int i = 0 ; i < columnMap.length ; i++)
+                {
+                    if((fileColumnMask & (1L << i)) != 0)
+                    {
+                        if(columnMap[i] != DiaryReader.NOT_FOUND)
+                        {
+                            columnsI[columnMap[i]] = walker.position();
+                        }
+                        walker.position(walker.position() + n * Long.BYTES);
+                    }
+                }
+                
+                chunkOffsets.add(chunkI);
+                columnOffsets.add(columnsI);
+                dictionaryOffsets.add(dictionaryI);
+                numEntries += n;
+            }
+            catch(BufferUnderflowException | IllegalArgumentException e)
+            {
+                // The writer never finished - i.e. its client died part way through the run
+                log.warn(logHeader + "Diary " + context + " ends early - keeping the chunks that were complete.");
+                moreChunks = false;
+            }
+        }
+        
+        if(declaredNumEntries != DiaryWriter.UNKNOWN_NUM_ENTRIES && declaredNumEntries != numEntries)
+        {
+            log.warn(logHeader + "Diary " + context + " should have " + declaredNumEntries + " entries - found " + numEntries + ".");
+        }
+        
+        return new MappedDiary(givenFile, context, timeCreated, numEntries, chunkOffsets, columnOffsets, dictionaryOffsets,
+                columnMap, actionTypeMap, histograms);
+    }
+    
+    private static String readString(ByteBuffer givenBuffer)
+    {
+        byte[] bytes = new byte[givenBuffer.getInt()];
+        givenBuffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @return the chunk the given entry is in
+     */
+    private int findChunk(int i)
+    {
+        if(i < 0 || i >= numEntries)
+        {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + numEntries);
+        }
+        
+        if(chunkStarts.length == 1)
+        {
+            return 0;
+        }
+        
+        int retVal = Arrays.binarySearch(chunkStarts, i);
+        if(retVal < 0)
+        {
+            retVal = -retVal - 2;
+        }
+        // Empty chunks share a start with the chunk after them
+        while(retVal + 1 < chunkStarts.length && chunkStarts[retVal + 1] <= i)
+        {
+            retVal++;
+        }
+        return retVal;
+    }
+    
+    /**
+     * @return the file's presence bits for the given entry, moved onto our DiaryHeader ordinals
+     */
+    private long getPresence(int chunk, int row)
+    {
+        long filePresence = file.getLong(presenceOffsets[chunk] + row * Long.BYTES);
+        if(schemaMatches)
+        {
+            return filePresence;
+        }
+        
+        long retVal = 0L;
+        for(int i = 0 ; i < presenceBits.length ; i++)
+        {
+            int bitI = presenceBits[i];
+            if(bitI != NO_COLUMN && (filePresence & (1L << bitI)) != 0)
+            {
+                retVal |= (1L << i);
+            }
+        }
+        return retVal;
+    }
+    
+    private String decode(int chunk, int code)
+    {
+        if(code == ClientDiary.NO_VALUE)
+        {
+            return null;
+        }
+        
+        ByteBuffer reader = file.duplicate();
+        reader.position(dictionaryOffsets[chunk][code]);
+        return readString(reader);
+    }
+    
+    @Override
+    public int size()
+    {
+        return numEntries;
+    }
+    
+    @Override
+    public DiaryEntry getDiaryEntryI(int i)
+    {
+        int chunk = findChunk(i);
+        int row = i - chunkStarts[chunk];
+        
+        DiaryEntry retVal = new DiaryEntry();
+        long rowPresent = getPresence(chunk, row);
+        int[] chunksColumns = columnOffsets[chunk];
+        for(int j = 0 ; j < DiaryEntry.NUM_HEADERS ; j++)
+        {
+            if((rowPresent & (1L << j)) != 0 && chunksColumns[j] != NO_COLUMN)
+            {
+                retVal.values[j] = file.getLong(chunksColumns[j] + row * Long.BYTES);
+            }
+        }
+        retVal.present = rowPresent;
+        retVal.actionType = getPSActionType(i);
+        retVal.messageID = getMessageID(i);
+        retVal.attributes = getAttributes(i);
+        
+        return retVal;
+    }
+    
+    @Override
+    public boolean hasValue(int i, DiaryHeader givenDH)
+    {
+        int chunk = findChunk(i);
+        int bit = givenDH.ordinal();
+        if(!schemaMatches)
+        {
+            bit = presenceBits[bit];
+            if(bit == NO_COLUMN)
+            {
+                return false;
+            }
+        }
+        
+        long filePresence = file.getLong(presenceOffsets[chunk] + (i - chunkStarts[chunk]) * Long.BYTES);
+        return (filePresence & (1L << bit)) != 0;
+    }
+    
+    @Override
+    public long getLongValue(int i, DiaryHeader givenDH)
+    {
+        int chunk = findChunk(i);
+        int columnOffset = columnOffsets[chunk][givenDH.ordinal()];
+        if(columnOffset == NO_COLUMN || !hasValue(i, givenDH))
+        {
+            return 0L;
+        }
+        return file.getLong(columnOffset + (i - chunkStarts[chunk]) * Long.BYTES);
+    }
+    
+    @Override
+    public PSActionType getPSActionType(int i)
+    {
+        int chunk = findChunk(i);
+        byte ordinal = file.get(actionTypeOffsets[chunk] + (i - chunkStarts[chunk]));
+        if(ordinal == ClientDiary.NO_VALUE)
+        {
+            return null;
+        }
+        if(!schemaMatches)
+        {
+            ordinal = (ordinal < actionTypeMap.length) ? actionTypeMap[ordinal] : ClientDiary.NO_VALUE;
+            if(ordinal == ClientDiary.NO_VALUE)
+            {
+                return null;
+            }
+        }
+        return ClientDiary.ACTION_TYPES[ordinal];
+    }
+    
+    @Override
+    public String getMessageID(int i)
+    {
+        int chunk = findChunk(i);
+        return decode(chunk, file.getInt(messageIDOffsets[chunk] + (i - chunkStarts[chunk]) * Integer.BYTES));
+    }
+    
+    @Override
+    public String getAttributes(int i)
+    {
+        int chunk = findChunk(i);
+        return decode(chunk, file.getInt(attributeOffsets[chunk] + (i - chunkStarts[chunk]) * Integer.BYTES));
+    }
+    
+    @Override
+    public LatencyHistogram getLatencyHistogram(PSActionType givenType)
+    {
+        return latencyHistograms[givenType.ordinal()];
+    }
+    
+    @Override
+    public String getTimeCreated()
+    {
+        return timeCreated;
+    }
+    
+    /**
+     * @return the context of the node this diary belongs to
+     */
+    public String getContext()
+    {
+        return context;
+    }
+}
@@ -0,0 +1,115 @@
+package pstb.analysis.diary;
+
+import java.nio.file.Path;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.startup.workload.PSActionType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * What analysis needs from a diary: its size, and the value of any column at any index.
+ * A ClientDiary holds its columns in memory; a MappedDiary reads them straight out of a memory-mapped diary file.
+ * @see ClientDiary
+ * @see MappedDiary
+ */
+public abstract class ReadableDiary
+{
+    /**
+     * Returns the size of the Diary
+     * 
+     * @return the size of the diary
+     */
+    public abstract int size();
+    
+    /**
+     * Gets the Diary Entry at index i
+     * (This builds a new DiaryEntry from the columns - changing it won't change the diary)
+     * 
+     * @param i - index
+     * @return the associated DiaryEntry
+     */
+    public abstract DiaryEntry getDiaryEntryI(int i);
+    
+    /**
+     * Does the entry at index i have a value for the given header?
+     * 
+     * @param i - index
+     * @param givenDH - the DiaryHeader
+     * @return true if it does; false otherwise
+     */
+    public abstract boolean hasValue(int i, DiaryHeader givenDH);
+    
+    /**
+     * Gets the raw value of a Long or Integer header at index i without building a DiaryEntry
+     * Check hasValue() first - a missing value comes back as 0
+     * 
+     * @param i - index
+     * @param givenDH - the DiaryHeader
+     * @return the value
+     */
+    public abstract long getLongValue(int i, DiaryHeader givenDH);
+    
+    /**
+     * Gets the PSActionType at index i without building a DiaryEntry
+     * 
+     * @param i - index
+     * @return the PSActionType; null if there isn't one
+     */
+    public abstract PSActionType getPSActionType(int i);
+    
+    /**
+     * Gets the MessageID at index i without building a DiaryEntry
+     * 
+     * @param i - index
+     * @return the MessageID; null if there isn't one
+     */
+    public abstract String getMessageID(int i);
+    
+    /**
+     * Gets the Attributes at index i without building a DiaryEntry
+     * 
+     * @param i - index
+     * @return the Attributes; null if there aren't any
+     */
+    public abstract String getAttributes(int i);
+    
+    /**
+     * Gets the LatencyHistogram the Client recorded the given PSActionType's latencies into
+     * 
+     * @param givenType - the PSActionType
+     * @return the histogram; null if the Client didn't record that type into one
+     */
+    public abstract LatencyHistogram getLatencyHistogram(PSActionType givenType);
+    
+    /**
+     * @return when this diary was created
+     */
+    public abstract String getTimeCreated();
+    
+    /**
+     * Gets the value of a Double header at index i without building a DiaryEntry
+     * Check hasValue() first - a missing value comes back as 0
+     * 
+     * @param i - index
+     * @param givenDH - the DiaryHeader
+     * @return the value
+     */
+    public double getDoubleValue(int i, DiaryHeader givenDH)
+    {
+        return Double.longBitsToDouble(getLongValue(i, givenDH));
+    }
+    
+    /**
+     * Takes the contents of this diary, and writes it to a file - in the human-readable layout
+     * 
+     * @param givenFilePath - the Path of the file to write to
+     * @param log - the Logger to record errors
+     * @see DiaryExporter
+     */
+    public boolean recordDiary(Path givenFilePath, Logger log)
+    {
+        return DiaryExporter.exportDiary(this, givenFilePath, DiaryExportFormat.Text, log, "Diary: ");
+    }
+}
@@ -0,0 +1,229 @@
+package pstb.benchmark.object.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import pstb.startup.workload.PSAction;
+import pstb.startup.workload.PSActionType;
+
+/**
+ * @author padres-dev-4187
+ *
+ * Keeps track of the Advertisements and Subscriptions that a Client currently has active
+ * ordered by when they're supposed to expire.
+ *
+ * This replaces the old ActiveList walk -
+ * instead of looking at every active action (and its DiaryEntry) on every loop,
+ * the Client only has to look at the head of a heap to see if anything is due.
+ * Removing an action because the workload itself Unadvertised / Unsubscribed it is done through a lookup table
+ * and the heap entry is simply marked as cancelled (and thrown away once it reaches the head).
+ */
+class ActiveActionScheduler
+{
+    private PriorityQueue<ActiveAction> expiryQueue;
+    private HashMap<String, ArrayDeque<ActiveAction>> lookup;
+    private long origin;
+    private int numActive;
+
+    /**
+     * Constructor
+     *
+     * @param givenOrigin - the System.nanoTime() all deadlines are relative to (i.e. the start of the run)
+     */
+    public ActiveActionScheduler(long givenOrigin)
+    {
+        expiryQueue = new PriorityQueue<ActiveAction>();
+        lookup = new HashMap<String, ArrayDeque<ActiveAction>>();
+        origin = givenOrigin;
+        numActive = 0;
+    }
+
+    /**
+     * Adds a newly launched Advertisement or Subscription
+     *
+     * @param givenAction - the action that was launched
+     * @param givenStartedAction - the System.nanoTime() value the action was started at
+     * @return false if the action isn't an A or S; true otherwise
+     */
+    public boolean add(PSAction givenAction, long givenStartedAction)
+    {
+        PSActionType givenType = givenAction.getActionType();
+        if(!givenType.equals(PSActionType.A) && !givenType.equals(PSActionType.S))
+        {
+            return false;
+        }
+
+        // Deadlines are kept relative to the origin so that "infinite" time actives can't overflow
+        long deadline = givenStartedAction - origin;
+        Long timeActive = givenAction.getTimeActive();
+        if(timeActive == null || timeActive > (Long.MAX_VALUE - deadline))
+        {
+            deadline = Long.MAX_VALUE;
+        }
+        else
+        {
+            deadline += timeActive;
+        }
+
+        ActiveAction newActive = new ActiveAction(givenAction, deadline);
+        expiryQueue.add(newActive);
+
+        String key = generateKey(givenType, givenAction.getAttributes());
+        ArrayDeque<ActiveAction> sameKey = lookup.get(key);
+        if(sameKey == null)
+        {
+            sameKey = new ArrayDeque<ActiveAction>();
+            lookup.put(key, sameKey);
+        }
+        sameKey.addLast(newActive);
+
+        numActive++;
+        return true;
+    }
+
+    /**
+     * Removes the oldest active action that the given Unadvertisement / Unsubscription undoes
+     *
+     * @param givenUndoAction - the V or U that was launched
+     * @return the action that was removed; null if there was no matching active action
+     */
+    public PSAction remove(PSAction givenUndoAction)
+    {
+        PSActionType undoType = givenUndoAction.getActionType();
+        PSActionType activeType = null;
+        if(undoType.equals(PSActionType.V))
+        {
+            activeType = PSActionType.A;
+        }
+        else if(undoType.equals(PSActionType.U))
+        {
+            activeType = PSActionType.S;
+        }
+        else
+        {
+            return null;
+        }
+
+        String key = generateKey(activeType, givenUndoAction.getAttributes());
+        ArrayDeque<ActiveAction> sameKey = lookup.get(key);
+        if(sameKey == null)
+        {
+            return null;
+        }
+
+        ActiveAction removed = sameKey.pollFirst();
+        if(sameKey.isEmpty())
+        {
+            lookup.remove(key);
+        }
+
+        removed.cancelled = true;
+        numActive--;
+        return removed.action;
+    }
+
+    /**
+     * Removes every active action whose time active has run out
+     *
+     * @param currentTime - the current System.nanoTime()
+     * @return the expired actions, in the order they expired
+     */
+    public ArrayList<PSAction> pollExpired(long currentTime)
+    {
+        ArrayList<PSAction> retVal = new ArrayList<PSAction>();
+        long now = currentTime - origin;
+
+        ActiveAction head = expiryQueue.peek();
+        while(head != null && (head.cancelled || head.deadline <= now))
+        {
+            expiryQueue.poll();
+            if(!head.cancelled)
+            {
+                detach(head);
+                retVal.add(head.action);
+            }
+            head = expiryQueue.peek();
+        }
+
+        return retVal;
+    }
+
+    /**
+     * Removes every remaining active action
+     *
+     * @return the remaining actions, ordered by their deadline
+     */
+    public ArrayList<PSAction> drain()
+    {
+        ArrayList<PSAction> retVal = new ArrayList<PSAction>();
+
+        ActiveAction head = expiryQueue.poll();
+        while(head != null)
+        {
+            if(!head.cancelled)
+            {
+                detach(head);
+                retVal.add(head.action);
+            }
+            head = expiryQueue.poll();
+        }
+
+        return retVal;
+    }
+
+    /**
+     * @return the number of actions currently active
+     */
+    public int size()
+    {
+        return numActive;
+    }
+
+    private void detach(ActiveAction givenActive)
+    {
+        PSAction action = givenActive.action;
+        String key = generateKey(action.getActionType(), action.getAttributes());
+        ArrayDeque<ActiveAction> sameKey = lookup.get(key);
+        if(sameKey != null)
+        {
+            sameKey.remove(givenActive);
+            if(sameKey.isEmpty())
+            {
+                lookup.remove(key);
+            }
+        }
+
+        givenActive.cancelled = true;
+        numActive--;
+    }
+
+    private String generateKey(PSActionType givenType, String givenAttributes)
+    {
+        return givenType.toString() + "|" + givenAttributes;
+    }
+
+    /**
+     * A heap node - the action and when it expires
+     */
+    private class ActiveAction implements Comparable<ActiveAction>
+    {
+        private PSAction action;
+        private long deadline;
+        private boolean cancelled;
+
+        public ActiveAction(PSAction givenAction, long givenDeadline)
+        {
+            action = givenAction;
+            deadline = givenDeadline;
+            cancelled = false;
+        }
+
+        @Override
+        public int compareTo(ActiveAction o)
+        {
+            return Long.compare(deadline, o.deadline);
+        }
+    }
+}
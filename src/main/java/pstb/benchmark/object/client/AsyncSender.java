@@ -0,0 +1,230 @@
+package pstb.benchmark.object.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.apache.logging.log4j.ThreadContext;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Sends a Client's publications asynchronously through a bounded in-flight window.
+ * 
+ * Each submitted action runs on one of the sender threads, and records itself into the diary once the broker returns.
+ * With submit(), the Client's own thread only blocks if the window is full -
+ * so it isn't held up by each publication's round trip, only by the window.
+ * With trySubmit(), it never blocks - an action that finds the window full is dropped (and counted) instead.
+ * 
+ * Each sender thread holds a slot - an index below the window size - for as long as it runs (see getSenderIndex()),
+ * and the Client gives every slot its own broker connection.
+ * So no two threads ever call into the same client library object at once
+ * (neither PADRES nor SIENA promises their clients are thread-safe), and the window's publications really overlap.
+ * 
+ * Each sender thread takes on the log4j ThreadContext of whoever submitted its action,
+ * so its log lines are routed to the same Client's log.
+ */
+class AsyncSender
+{
+    private static final ThreadLocal<Integer> SENDER_INDEX = new ThreadLocal<Integer>();
+    
+    private final int windowSize;
+    private final ConcurrentLinkedQueue<Integer> freeSlots;
+    private final ExecutorService pool;
+    private final Semaphore window;
+    private final AtomicBoolean failed;
+    private volatile long timesFull;
+    private volatile long numDropped;
+    
+    /**
+     * Constructor
+     * 
+     * @param givenWindowSize - the maximum number of actions that can be in flight at once
+     */
+    public AsyncSender(int givenWindowSize)
+    {
+        windowSize = givenWindowSize;
+        freeSlots = new ConcurrentLinkedQueue<Integer>();
+        for(int i = 0 ; i < givenWindowSize ; i++)
+        {
+            freeSlots.add(i);
+        }
+        // Each pool thread takes a slot for its lifetime
+        // (Actions never throw out of a pool thread - see execute() - so the pool never has to replace one.)
+        pool = Executors.newFixedThreadPool(givenWindowSize, r -> new Thread(() -> {
+            Integer slot = freeSlots.poll();
+            SENDER_INDEX.set(slot);
+            try
+            {
+                r.run();
+            }
+            finally
+            {
+                SENDER_INDEX.remove();
+                freeSlots.add(slot);
+            }
+        }, "AsyncSender"));
+        window = new Semaphore(givenWindowSize);
+        failed = new AtomicBoolean(false);
+        timesFull = 0L;
+        numDropped = 0L;
+    }
+    
+    /**
+     * Submits an action into the window
+     * Blocks until there's room for it
+     * 
+     * @param givenAction - the action to run - it should return false if it failed
+     * @return false if the action couldn't be submitted; true otherwise
+     */
+    public boolean submit(BooleanSupplier givenAction)
+    {
+        if(!window.tryAcquire())
+        {
+            timesFull++;
+            try
+            {
+                window.acquire();
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        
+        return execute(givenAction);
+    }
+    
+    /**
+     * Submits an action into the window if there's room for it right now; drops it otherwise
+     * (For an open-loop schedule - waiting for room would push every action after it back.)
+     * 
+     * @param givenAction - the action to run - it should return false if it failed
+     * @return null if the action couldn't be submitted; false if it was dropped; true otherwise
+     */
+    public Boolean trySubmit(BooleanSupplier givenAction)
+    {
+        if(!window.tryAcquire())
+        {
+            timesFull++;
+            numDropped++;
+            return false;
+        }
+        
+        if(!execute(givenAction))
+        {
+            return null;
+        }
+        return true;
+    }
+    
+    /**
+     * Hands an action to the sender threads
+     * (A slot in the window must already have been acquired for it.)
+     */
+    private boolean execute(BooleanSupplier givenAction)
+    {
+        Map<String, String> submittersContext = ThreadContext.getImmutableContext();
+        try
+        {
+            pool.execute(() -> {
+                ThreadContext.putAll(submittersContext);
+                try
+                {
+                    if(!givenAction.getAsBoolean())
+                    {
+                        failed.set(true);
+                    }
+                }
+                catch(RuntimeException e)
+                {
+                    failed.set(true);
+                }
+                finally
+                {
+                    window.release();
+                }
+            });
+        }
+        catch(RejectedExecutionException e)
+        {
+            window.release();
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * @return the slot of the sender thread calling this; -1 if it isn't a sender thread
+     */
+    public static int getSenderIndex()
+    {
+        Integer slot = SENDER_INDEX.get();
+        return (slot == null) ? -1 : slot;
+    }
+    
+    /**
+     * @return true if any submitted action has failed; false otherwise
+     */
+    public boolean hasFailed()
+    {
+        return failed.get();
+    }
+    
+    /**
+     * @return the number of actions currently in flight
+     */
+    public int getInFlight()
+    {
+        return windowSize - window.availablePermits();
+    }
+    
+    /**
+     * @return the number of times the window was full when an action was submitted
+     */
+    public long getTimesFull()
+    {
+        return timesFull;
+    }
+    
+    /**
+     * @return the number of actions trySubmit() dropped because the window was full
+     */
+    public long getNumDropped()
+    {
+        return numDropped;
+    }
+    
+    /**
+     * Lets every in-flight action finish, then shuts the sender threads down
+     * 
+     * @param givenTimeout - how long to wait for the in-flight actions (in nanoseconds)
+     * @return false if they didn't finish in time; true otherwise
+     */
+    public boolean stop(long givenTimeout)
+    {
+        pool.shutdown();
+        try
+        {
+            if(pool.awaitTermination(givenTimeout, TimeUnit.NANOSECONDS))
+            {
+                return true;
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        pool.shutdownNow();
+        return false;
+    }
+}
@@ -1,21 +1,35 @@
 package pstb.benchmark.object.client;
 
-import java.io.OutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.ThreadContext;
 
 import pstb.analysis.diary.ClientDiary;
 import pstb.analysis.diary.DiaryEntry;
+import pstb.analysis.diary.LatencyHistogram;
 import pstb.benchmark.object.PSNode;
 import pstb.benchmark.process.client.PSTBClientProcess;
+import pstb.benchmark.throughput.TPControlChannel;
 import pstb.startup.config.ExperimentType;
+import pstb.startup.config.LatencyRecording;
 import pstb.startup.config.MessageSize;
+import pstb.startup.config.PayloadContent;
 import pstb.startup.workload.PSAction;
 import pstb.startup.workload.PSActionType;
 import pstb.util.PSTBUtil;
+import pstb.util.PSTBUtil.WaitType;
+import pstb.util.WaitStatistics;
 
 /**
  * @author padres-dev-4187
@@ -32,6 +46,8 @@ public abstract class PSClient extends PSNode
     protected static final long serialVersionUID = 1L;
     protected final long MIN_RUNLENGTH = 1;
     protected final long TP_RUN_COMPLETE = -1;
+    protected static final int RECEIVE_RING_CAPACITY = 65536; // per receiving thread - only allocated once it receives a message
+    protected static final int OPEN_LOOP_SENDERS = 8;
     
     // Pre-set variables
     protected ReentrantLock diaryLock = new ReentrantLock();
@@ -42,6 +58,12 @@ public abstract class PSClient extends PSNode
     protected ArrayList<PSAction> workload;
     protected PSClientMode cMode;
     protected Integer numPubs;
+    protected Boolean openLoop;
+    protected Integer asyncWindow;
+    protected PayloadContent payloadContent;
+    protected Integer diaryChunkSize;
+    protected LatencyRecording latencyRecording;
+    protected Integer histogramPrecision;
     
     // Varaibles needed to run Throughput experiment
     private String masterIPAddress;
@@ -51,7 +73,19 @@ public abstract class PSClient extends PSNode
     private Double roundLatency;
     
     // Variables set during experiment
-    protected Boolean currentlyRunning;
+    protected volatile Boolean currentlyRunning;
+    protected transient ReceiveRing receivedMessages;
+    private transient volatile Thread contextThread;
+    private transient AsyncSender senders; // null if publications are sent synchronously
+    private long lastStartedAction; // the System.nanoTime() the last launched action was started at
+    private transient Long startTime; // when the master wants the run to start, in this machine's System.currentTimeMillis()
+    private transient ReceivedStats receivedStats; // what a throughput subscriber has received this round
+    private transient WaitStatistics waitStats; // this Client's own - other Clients may share its JVM
+    private transient Socket masterConnection; // kept open for the whole throughput run
+    private transient DataInputStream fromMaster;
+    private transient DataOutputStream toMaster;
+    private transient String tpPubAttributes; // every throughput publication's attributes - they only differ in their message number
+    private transient Integer tpPayloadSize;
     
     // Output Variables
     protected ClientDiary diary;
@@ -68,6 +102,12 @@ public abstract class PSClient extends PSNode
         cMode = null;
         
         numPubs = null;
+        openLoop = new Boolean(false);
+        asyncWindow = new Integer(0);
+        payloadContent = PayloadContent.Constant;
+        diaryChunkSize = new Integer(0);
+        latencyRecording = LatencyRecording.Entries;
+        histogramPrecision = new Integer(LatencyHistogram.DEFAULT_PRECISION);
         masterIPAddress = null;
         portNumber = null;
         messageDelay = null;
@@ -77,10 +117,21 @@ public abstract class PSClient extends PSNode
         currentlyRunning = null;
         
         diary = new ClientDiary();
+        receivedMessages = new ReceiveRing(RECEIVE_RING_CAPACITY, diary, diaryLock);
+        contextThread = null;
+        senders = null;
         
         nodeLog = LogManager.getLogger(PSTBClientProcess.class);
     }
     
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        // The rings aren't sent along with the client
+        receivedMessages = new ReceiveRing(RECEIVE_RING_CAPACITY, diary, diaryLock);
+        contextThread = null;
+    }
+    
     /**
      * Sets a list of the Brokers this client is connected to
      * (By which I mean their URIs)
@@ -112,6 +163,83 @@ public abstract class PSClient extends PSNode
         numPubs = givenNP;
     }
     
+    /**
+     * Sets whether this client sends its workload on an open-loop schedule
+     * (i.e. each action goes out at the time the workload says it should, no matter how long the previous ones took)
+     * 
+     * @param givenOL - true for open-loop; false for the normal, closed-loop behaviour
+     */
+    public void setOpenLoop(Boolean givenOL)
+    {
+        openLoop = givenOL;
+    }
+    
+    /**
+     * Sets the maximum number of publications that can be in flight at once
+     * 0 means publications are sent synchronously (i.e. the next action waits for the broker to return)
+     * 
+     * @param givenAW - the window size
+     */
+    public void setAsyncWindow(Integer givenAW)
+    {
+        asyncWindow = givenAW;
+    }
+    
+    /**
+     * Sets what the publication payloads should contain
+     * 
+     * @param givenPC - the PayloadContent
+     */
+    public void setPayloadContent(PayloadContent givenPC)
+    {
+        payloadContent = givenPC;
+    }
+    
+    /**
+     * Sets how many entries the diary can hold before they're spilled to the diary file
+     * 0 means the whole diary is kept in memory until the end of the run
+     * (Only scenario runs spill - throughput clients rework their diaries between rounds.)
+     * 
+     * @param givenDCS - the chunk size
+     */
+    public void setDiaryChunkSize(Integer givenDCS)
+    {
+        diaryChunkSize = givenDCS;
+    }
+    
+    /**
+     * Sets how latencies are recorded
+     * Entries - every action and every Received message gets a diary entry
+     * Histograms - latencies are counted into the diary's LatencyHistograms instead
+     * (Ads and Subs still get entries - they have to be found again to be undone.)
+     * 
+     * @param givenLR - the LatencyRecording
+     */
+    public void setLatencyRecording(LatencyRecording givenLR)
+    {
+        latencyRecording = givenLR;
+    }
+    
+    /**
+     * Sets how many significant digits the latency histograms keep
+     * 
+     * @param givenHP - the precision
+     */
+    public void setHistogramPrecision(Integer givenHP)
+    {
+        histogramPrecision = givenHP;
+    }
+    
+    /**
+     * Sets the time the run should start at
+     * 
+     * @param givenStartTime - the start time the master sent, in this machine's System.currentTimeMillis()
+     */
+    public void setStartTime(Long givenStartTime)
+    {
+        startTime = givenStartTime;
+    }
+    
     public void setMIP(String givenIP)
     {
         masterIPAddress = givenIP;
@@ -148,20 +276,51 @@ public abstract class PSClient extends PSNode
         }
     }
     
+    /**
+     * Gets whether or not the client is running
+     * (No lock is needed to read this - it's volatile - so the receiving thread can call this on every message)
+     * 
+     * @return the currentlyRunning flag
+     */
     public Boolean getCurrentlyRunning()
     {
-        Boolean retVal = null;
-        runningLock.lock();
-        try
+        return currentlyRunning;
+    }
+    
+    /**
+     * Sets the Logger's client context for the receiving thread
+     * Only the first message a thread receives actually has to do this
+     */
+    protected void setReceiveContext()
+    {
+        Thread currentThread = Thread.currentThread();
+        if(contextThread != currentThread)
         {
-            retVal = currentlyRunning;
+            ThreadContext.put("client", generateNodeContext());
+            contextThread = currentThread;
         }
-        finally
+    }
+    
+    /**
+     * @return true if latencies are being recorded into histograms rather than diary entries; false otherwise
+     */
+    protected boolean recordingHistograms()
+    {
+        return latencyRecording.equals(LatencyRecording.Histograms);
+    }
+    
+    /**
+     * Moves any received messages waiting in the ReceiveRing into the diary
+     * 
+     * @see ReceiveRing
+     */
+    protected void drainReceivedMessages()
+    {
+        int numDrained = receivedMessages.drain();
+        if(numDrained > 0)
         {
-            runningLock.unlock();
+            nodeLog.trace(logHeader + numDrained + " received messages added to the diary.");
         }
-        
-        return retVal; 
     }
     
     /**
@@ -182,6 +341,8 @@ public abstract class PSClient extends PSNode
      */
     public ClientDiary getDiary()
     {
+        drainReceivedMessages();
+        
         ClientDiary retVal = null;
         diaryLock.lock();
         try
@@ -201,6 +362,30 @@ public abstract class PSClient extends PSNode
         return cMode;
     }
     
+    /**
+     * Looks up a diary entry given it's Action Type and Attributes
+     * (The diary can be written to by other threads, so this takes the diaryLock)
+     * 
+     * @param givenAction - the associated PSActionType
+     * @param givenAttri - the associated attributes
+     * @return Either the most recent matching diary entry, or null
+     */
+    protected DiaryEntry findDiaryEntry(PSActionType givenAction, String givenAttri)
+    {
+        DiaryEntry retVal = null;
+        diaryLock.lock();
+        try
+        {
+            retVal = diary.getDiaryEntryGivenActionTypeNAttributes(givenAction, givenAttri, nodeLog);
+        }
+        finally
+        {
+            diaryLock.unlock();
+        }
+        
+        return retVal;
+    }
+    
     /**
      * Begins the run for the client
      * @return false if there are any errors; true otherwise
@@ -215,7 +400,48 @@ public abstract class PSClient extends PSNode
         }
         // We do
         
-        PSTBUtil.synchronizeRun();
+        if(recordingHistograms())
+        {
+            diaryLock.lock();
+            try
+            {
+                diary.startHistograms(histogramPrecision);
+            }
+            finally
+            {
+                diaryLock.unlock();
+            }
+            nodeLog.info(logHeader + "Recording latencies into histograms (" + histogramPrecision + " significant digits).");
+        }
+        
+        // A throughput subscriber only ever needs each round's totals - so it counts messages as they arrive
+        if(cMode.equals(PSClientMode.TPSub))
+        {
+            receivedStats = new ReceivedStats(histogramPrecision);
+            receivedMessages.countInto(receivedStats);
+        }
+        
+        if(cMode.equals(PSClientMode.Scenario) && diaryChunkSize != null && diaryChunkSize > 0)
+        {
+            Path diaryFile = Paths.get(generateNodeContext() + ".dia");
+            boolean spillCheck = diary.startSpilling(diaryFile, generateNodeContext(), diaryChunkSize, nodeLog);
+            if(!spillCheck)
+            {
+                nodeLog.error(logHeader + "Couldn't start spilling the diary!");
+                return false;
+            }
+            nodeLog.info(logHeader + "Spilling the diary to " + diaryFile + " every " + diaryChunkSize + " entries.");
+        }
+        
+        boolean sendersCheck = startSenders();
+        if(!sendersCheck)
+        {
+            nodeLog.error(logHeader + "Couldn't start the senders!");
+            return false;
+        }
+        
+        waitStats = new WaitStatistics();
+        PSTBUtil.waitUntil(startTime, waitStats, nodeLog, logHeader);
         
         startCR();
         
@@ -229,13 +455,132 @@ public abstract class PSClient extends PSNode
         {
             nodeLog.info(logHeader + "Starting throughput run...");
             runCheck = throughputRun();
+            disconnectFromMaster();
+        }
+        
+        sendersCheck = stopSenders();
+        if(!sendersCheck)
+        {
+            nodeLog.error(logHeader + "Not all asynchronous publications completed properly!");
+            runCheck = false;
         }
         
         stopCR();
         
+        drainReceivedMessages();
+        long timesFull = receivedMessages.getTimesFull();
+        if(timesFull > 0)
+        {
+            nodeLog.warn(logHeader + "The receive ring filled up " + timesFull + " times during the run.");
+        }
+        waitStats.logStatistics(nodeLog, logHeader);
+        
         return runCheck;
     }
     
+    /**
+     * Creates the sender pool if publications are going to be sent asynchronously
+     * - i.e. if we've been given an asyncWindow, or if this is an open-loop scenario run
+     * Every sender gets its own connection to the broker (see openSenderConnections()),
+     * so the publications in the window really are in flight at the same time.
+     * 
+     * @return false if the senders' connections couldn't be opened; true otherwise
+     */
+    private boolean startSenders()
+    {
+        int windowSize = 0;
+        if(asyncWindow != null && asyncWindow > 0)
+        {
+            windowSize = asyncWindow;
+        }
+        else if(openLoop && cMode.equals(PSClientMode.Scenario))
+        {
+            windowSize = OPEN_LOOP_SENDERS;
+        }
+        
+        if(windowSize > 0)
+        {
+            boolean connectionsCheck = openSenderConnections(windowSize);
+            if(!connectionsCheck)
+            {
+                nodeLog.error(logHeader + "Couldn't open the senders' connections!");
+                return false;
+            }
+            
+            nodeLog.info(logHeader + "Sending publications asynchronously with a window of " + windowSize + ".");
+            senders = new AsyncSender(windowSize);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Lets the sender pool finish any publications it still has in flight, then shuts it down
+     * 
+     * @return false if the pool didn't finish in time or any publication failed; true otherwise
+     */
+    private boolean stopSenders()
+    {
+        if(senders == null)
+        {
+            return true;
+        }
+        
+        Long timeout = periodLength;
+        if(cMode.equals(PSClientMode.Scenario))
+        {
+            timeout = runLength / 10;
+        }
+        
+        boolean finished = senders.stop(timeout);
+        if(!finished)
+        {
+            nodeLog.error(logHeader + "The senders didn't finish in time!");
+        }
+        
+        long timesFull = senders.getTimesFull();
+        if(timesFull > 0)
+        {
+            nodeLog.info(logHeader + "The send window was full " + timesFull + " times during the run.");
+        }
+        
+        long numDropped = senders.getNumDropped();
+        if(numDropped > 0)
+        {
+            nodeLog.warn(logHeader + numDropped + " scheduled publications were dropped because the send window was full"
+                    + " - each is in the diary as a DroppedAction.");
+        }
+        
+        boolean failed = senders.hasFailed();
+        senders = null;
+        closeSenderConnections();
+        return finished && !failed;
+    }
+    
+    /**
+     * Opens one extra connection to the broker per sender thread, for publishing only
+     * (The Client's own connection stays with its own thread - neither PADRES nor SIENA promises its clients are thread-safe.)
+     * @see getSenderIndex()
+     * 
+     * @param numSenders - the number of sender threads
+     * @return false on error; true otherwise
+     */
+    protected abstract boolean openSenderConnections(int numSenders);
+    
+    /**
+     * Closes the connections openSenderConnections() opened
+     */
+    protected abstract void closeSenderConnections();
+    
+    /**
+     * @return the index of the sender thread calling this (i.e. which sender connection to publish on);
+     * -1 if it's not a sender thread - and so should use the Client's own connection
+     */
+    protected int getSenderIndex()
+    {
+        return AsyncSender.getSenderIndex();
+    }
+    
     protected boolean variableCheck()
     {
         boolean everythingPresent = true;
@@ -282,7 +627,6 @@ public abstract class PSClient extends PSNode
     
     private boolean normalRun() 
     {
-        ArrayList<PSAction> activeList = new ArrayList<PSAction>();
         int numActions = workload.size();
         
         Long pauseTime = runLength / 10;
@@ -290,15 +634,39 @@ public abstract class PSClient extends PSNode
         int i = 0;
         Long runStart = System.nanoTime();
         Long currentTime = System.nanoTime();
+        ActiveActionScheduler activeActions = new ActiveActionScheduler(runStart);
+        
+        // Open-loop variables
+        long nextIntendedAction = runStart;
+        if(openLoop)
+        {
+            nodeLog.info(logHeader + "Sending on an open-loop schedule.");
+        }
+        
         while( (currentTime - runStart) < runLength)
         {
-            nodeLog.info(logHeader + "Updating active lists...");
-            updateActiveList(activeList);
-            nodeLog.info(logHeader + "Updated active lists.");
+            drainReceivedMessages();
+            
+            if(senders != null && senders.hasFailed())
+            {
+                nodeLog.error(logHeader + "An asynchronous publication failed!");
+                cleanup(activeActions);
+                return false;
+            }
+            
+            nodeLog.trace(logHeader + "Updating active lists...");
+            boolean updateCheck = updateActiveList(activeActions);
+            if(!updateCheck)
+            {
+                nodeLog.error(logHeader + "Couldn't update the active list!");
+                cleanup(activeActions);
+                return false;
+            }
+            nodeLog.trace(logHeader + "Updated active lists.");
             
             if(i >= numActions)
             {
-                PSTBUtil.waitAPeriod(pauseTime, nodeLog, (logHeader + "resting for " + pauseTime + "..."));
+                PSTBUtil.waitAPeriod(pauseTime, WaitType.Park, waitStats, nodeLog, (logHeader + "resting for " + pauseTime + "..."));
             }
             else
             {
@@ -306,40 +674,34 @@ public abstract class PSClient extends PSNode
                 PSActionType actionIsActionType = actionI.getActionType();
                 
                 nodeLog.debug(logHeader + "Attempting to send " + actionIsActionType + " " + actionI.getAttributes() + ".");
-                boolean checkPublication = launchAction(actionIsActionType, actionI);
+                boolean checkPublication = false;
+                if(openLoop)
+                {
+                    checkPublication = scheduleAction(actionI, nextIntendedAction);
+                    nextIntendedAction += actionI.getActionDelay();
+                }
+                else
+                {
+                    checkPublication = launchAction(actionIsActionType, actionI);
+                }
+                
                 if(!checkPublication)
                 {
                     nodeLog.error(logHeader + "launch failed!");
-                    cleanup(activeList);
+                    cleanup(activeActions);
                     return false;
                 }
                 
                 if(actionIsActionType.equals(PSActionType.A) || actionIsActionType.equals(PSActionType.S))
                 {
-                    activeList.add(actionI);
+                    activeActions.add(actionI, lastStartedAction);
                 }
                 else if(actionIsActionType.equals(PSActionType.V) || actionIsActionType.equals(PSActionType.U))
                 {
-                    String actionIAttr = actionI.getAttributes();
-                    int j = 0, numActiveActions = activeList.size();
-                    
-                    while(j < numActiveActions)
+                    PSAction undoneAction = activeActions.remove(actionI);
+                    if(undoneAction == null)
                     {
-                        PSAction actionJ = activeList.get(j);
-                        String actionJAttr = actionJ.getAttributes();
-                        PSActionType actionJType = actionJ.getActionType();
-                        if(actionJAttr.equals(actionIAttr))
-                        {
-                            if(
-                                    (actionJType.equals(PSActionType.A) && actionIsActionType.equals(PSActionType.V))
-                                    || (actionJType.equals(PSActionType.S) && actionIsActionType.equals(PSActionType.U))
-                                )
-                            {
-                                activeList.remove(j);
-                                break;
-                            }
-                        }
-                        j++;
+                        nodeLog.warn(logHeader + actionIsActionType + " " + actionI.getAttributes() + " didn't undo any active action.");
                     }
                 }
                 
@@ -348,8 +710,8 @@ public abstract class PSClient extends PSNode
             
             currentTime = System.nanoTime();
         }
-
-        boolean cleanupCheck = cleanup(activeList);
+        
+        boolean cleanupCheck = cleanup(activeActions);
         if(!cleanupCheck)
         {
             nodeLog.error(logHeader + "Couldn't end run cleanly!");
@@ -363,114 +725,160 @@ public abstract class PSClient extends PSNode
     }
     
     /**
-     * Updates the givenActiveList
-     * I.e. checks every node and sees if it's still active or not
-     * by looking at its start and exist time
+     * Launches the given action at its intended time - open-loop style
+     * I.e. the schedule is set by the workload alone - a slow broker doesn't push the following actions back.
+     * Publications are handed to the sender pool, so the next one can go out even if this one hasn't returned yet
+     * - and if the pool's window is full, the publication is dropped (and recorded as such) rather than waited for.
+     * Everything else is done here, as the active list depends on it;
+     * if one of those runs long, the actions after it are just late - each records how late it started (its StartSlip)
+     * and its latency is measured from when it should have started, so the slip isn't hidden.
      * 
-     * @param givenActiveList - the ActiveList to look over
+     * @param givenAction - the action to launch
+     * @param intendedAction - the System.nanoTime() this action is supposed to start at
+     * @return false on failure; true otherwise
+     */
+    private boolean scheduleAction(PSAction givenAction, long intendedAction)
+    {
+        long timeUntilIntended = intendedAction - System.nanoTime();
+        if(timeUntilIntended > 0)
+        {
+            PSTBUtil.waitAPeriod(timeUntilIntended, WaitType.Hybrid, waitStats, nodeLog, logHeader);
+        }
+        
+        PSActionType givenActionType = givenAction.getActionType();
+        if(!givenActionType.equals(PSActionType.P))
+        {
+            return performAction(givenActionType, givenAction, intendedAction, System.currentTimeMillis(), System.nanoTime());
+        }
+        
+        // The action starts now - any time it then spends waiting for a sender counts towards its ActionDelay
+        long submitTime = System.currentTimeMillis();
+        long submitAction = System.nanoTime();
+        Boolean submitCheck = senders.trySubmit(() -> performAction(PSActionType.P, givenAction, intendedAction, submitTime, submitAction));
+        if(submitCheck == null)
+        {
+            nodeLog.error(logHeader + "Couldn't schedule publication " + givenAction.getAttributes() + "!");
+            return false;
+        }
+        else if(!submitCheck)
+        {
+            recordDroppedAction(givenAction, intendedAction, submitTime);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Records a publication that was dropped because the send window was full
+     * It gets an entry of its own (even if latencies are going into histograms) with when it should have started
+     * and when it was dropped - so the periods where the broker couldn't keep up don't just vanish from the results.
+     * 
+     * @param givenAction - the dropped publication
+     * @param intendedAction - the System.nanoTime() it was supposed to start at
+     * @param timeStarted - the System.currentTimeMillis() it was submitted at
+     */
+    private void recordDroppedAction(PSAction givenAction, long intendedAction, long timeStarted)
+    {
+        long droppedAction = System.nanoTime();
+        
+        DiaryEntry droppedEntry = new DiaryEntry();
+        droppedEntry.setPSActionType(PSActionType.P);
+        droppedEntry.setTimeActionStarted(timeStarted);
+        droppedEntry.addIntendedAction(intendedAction);
+        droppedEntry.addDroppedAction(droppedAction);
+        droppedEntry.addStartSlip(droppedAction - intendedAction);
+        droppedEntry.addAttributes(givenAction.getAttributes());
+        
+        diaryLock.lock();
+        try
+        {
+            diary.addDiaryEntryToDiary(droppedEntry);
+        }
+        finally
+        {
+            diaryLock.unlock();
+        }
+        
+        if(senders.getNumDropped() == 1)
+        {
+            nodeLog.warn(logHeader + "Send window full - dropping publications. Every drop is recorded in the diary as a DroppedAction.");
+        }
+        nodeLog.debug(logHeader + "Send window full - dropped publication " + givenAction.getAttributes() + ".");
+    }
+    
+    /**
+     * Updates the given ActiveActionScheduler
+     * I.e. undoes every Ad / Sub whose time active has run out
+     * Only the actions that are actually due are looked at - everything else stays in the scheduler's heap
+     * 
+     * @param givenActiveActions - the scheduler holding all the active actions
      * @return false on any error; true if successful
      */
-    private boolean updateActiveList(ArrayList<PSAction> givenActiveList)
-    {    
-        int numActiveActions = givenActiveList.size();
-        ArrayList<Integer> nodesToRemove = new ArrayList<Integer>();
+    private boolean updateActiveList(ActiveActionScheduler givenActiveActions)
+    {
+        ArrayList<PSAction> expiredActions = givenActiveActions.pollExpired(System.nanoTime());
+        int numExpiredActions = expiredActions.size();
         
-        /*
-         * updateActiveList Pseudocode
-         * 
-         * For each member of the givenActiveList
-         *     Get the iTH one - itself, its PSActionType and its Attributes
-         *     Get the currentTime using System.nanoTime()
-         *     Get the Diary Entry associated with this Action - the one that was created when it was launched
-         *         Can't find it?
-         *             Error
-         *         Found it?
-         *             Get the System.nanoTime() value associated with starting it (Currently that's getStartedAction())
-         *             If the Difference between the currentTime and the "start Time" is >= the time it should have been active
-         *                 Launch the associated undo action - U or V (assuming that the offending Action is a S or A)
-         *                     Undo Successful?
-         *                         Add i to an ArrayList<Integer>
-         *                     Undo Unsuccessful?
-         *                         Error
-         * 
-         * After this is complete
-         *     Loop through the new ArrayList<Integer>
-         *         Remove the jTH Action from givenActiveList
-         */
-        for(int i = 0 ; i < numActiveActions ; i++)
+        for(int i = 0 ; i < numExpiredActions ; i++)
         {
-            PSAction activeActionI = givenActiveList.get(i);
-            PSActionType aAIActionType = activeActionI.getActionType();
-            String aAIAttributes = activeActionI.getAttributes();
-            nodeLog.trace(logHeader + "Accessing entry " + aAIAttributes + ".");
+            PSAction expiredActionI = expiredActions.get(i);
+            PSActionType eAIActionType = expiredActionI.getActionType();
             
-            Long currentTime = System.nanoTime();
+            nodeLog.debug(logHeader + eAIActionType + " " + expiredActionI.getAttributes() + " has expired.");
             
-            DiaryEntry activeActionIEntry = diary.getDiaryEntryGivenActionTypeNAttributes(aAIActionType, aAIAttributes, nodeLog);
-            if(activeActionIEntry == null)
+            boolean check = true;
+            if(eAIActionType.equals(PSActionType.S))
             {
-                nodeLog.error(logHeader + "Couldn't find " + activeActionI.getActionType() + " " + activeActionI.getAttributes() 
-                                        + "'s diary entry!");
+                check = endActiveAction(PSActionType.U, expiredActionI);
+            }
+            else if(eAIActionType.equals(PSActionType.A))
+            {
+                check = endActiveAction(PSActionType.V, expiredActionI);
+            }
+            else
+            {
+                nodeLog.error(logHeader + "improper active list given!");
                 return false;
             }
             
-            Long activeActionIStartTime = activeActionIEntry.getStartedAction();
-            
-            nodeLog.trace(logHeader + "Delay is = " + (currentTime - activeActionIStartTime) 
-                            + " TA is = " + activeActionI.getTimeActive());
-            
-            if((currentTime - activeActionIStartTime) >= activeActionI.getTimeActive())
+            if(!check)
             {
-                boolean check = true;
-                if(activeActionI.getActionType() == PSActionType.S)
-                {
-                    check = launchAction(PSActionType.U, activeActionI);
-                }
-                else if(activeActionI.getActionType() == PSActionType.A)
-                {
-                    check = launchAction(PSActionType.V, activeActionI);
-                }
-                else
-                {
-                    nodeLog.error(logHeader + "improper active list given!");
-                    return false;
-                }
-                
-                if(!check)
-                {
-                    nodeLog.error(logHeader + "Error ending " + activeActionI.getActionType() + " " + activeActionI.getAttributes());
-                    return false;
-                }
-                else
-                {
-                    nodesToRemove.add(i);
-                }
+                nodeLog.error(logHeader + "Error ending " + eAIActionType + " " + expiredActionI.getAttributes());
+                return false;
             }
         }
         
-        for(int i = 0 ; i < nodesToRemove.size() ; i++)
+        nodeLog.trace(logHeader + "Update complete.");
+        return true;
+    }
+    
+    /**
+     * Undoes an expired Ad / Sub
+     * On an open-loop schedule, the undo's delay isn't waited out - that would push every scheduled action after it back.
+     * 
+     * @param undoType - U or V
+     * @param givenAction - the expired Ad / Sub
+     * @return false on failure; true otherwise
+     */
+    private boolean endActiveAction(PSActionType undoType, PSAction givenAction)
+    {
+        if(openLoop)
         {
-            int j = nodesToRemove.get(i);
-            PSAction inactionActionJ = givenActiveList.get(j);
-            
-            nodeLog.debug(logHeader + "Removing " + inactionActionJ.getActionType().toString() + " " + inactionActionJ.getAttributes()
-                            + " from ActiveList...");
-            givenActiveList.remove(j);
-            nodeLog.debug(logHeader + "Remove successful.");
+            return performAction(undoType, givenAction, null, System.currentTimeMillis(), System.nanoTime());
         }
         
-        nodeLog.trace(logHeader + "Update complete.");
-        return true;
+        return launchAction(undoType, givenAction);
     }
     
     /**
      * Unadvertises and Unsubscribes any active Ads or Subs.
      * 
-     * @param activeList - the list of all remaining Ads and Subs
+     * @param activeActions - the scheduler holding all remaining Ads and Subs
      * @return false on failure; true otherwise
      */
-    private boolean cleanup(ArrayList<PSAction> activeList)
+    private boolean cleanup(ActiveActionScheduler activeActions)
     {
+        ArrayList<PSAction> activeList = activeActions.drain();
         int sizeAL = activeList.size();
         nodeLog.debug(logHeader + "Undoing " + sizeAL + " 'infinite' actions..."); 
         for(int i = 0 ; i < sizeAL ; i++)
@@ -516,7 +924,7 @@ public abstract class PSClient extends PSNode
         Long delay = 1000L;
         if(cMode.equals(PSClientMode.TPPub))
         {
-            PSTBUtil.waitAPeriod((long)(0.5 * PSTBUtil.SEC_TO_NANOSEC), nodeLog, logHeader);
+            PSTBUtil.waitAPeriod((long)(0.5 * PSTBUtil.SEC_TO_NANOSEC), WaitType.Park, waitStats, nodeLog, logHeader);
             firstActionType = PSActionType.A;
         }
         else
@@ -524,6 +932,17 @@ public abstract class PSClient extends PSNode
             firstActionType = PSActionType.S;
         }
         String attri = generateThroughputAttributes(firstActionType, 0);
+        tpPubAttributes = getThroughputTemplateAttributes(PSActionType.P);
+        tpPayloadSize = 0;
+        if(ms.equals(MessageSize.TenKilobytes))
+        {
+            tpPayloadSize = 1000;
+        }
+        else if(ms.equals(MessageSize.OneHundredKilobytes))
+        {
+            tpPayloadSize = 100000;
+        }
+        
         PSAction firstAction = new PSAction(firstActionType, delay, attri, 0, Long.MAX_VALUE);
         boolean firstActionCheck = launchAction(firstActionType, firstAction);
         if(!firstActionCheck)
@@ -548,6 +967,8 @@ public abstract class PSClient extends PSNode
                 Long currentTime = System.nanoTime();
                 while((currentTime - roundStart) < periodLength)
                 {
+                    drainReceivedMessages();
+                    
                     boolean checkDPA = duringPeriodAction(i);
                     if(!checkDPA)
                     {
@@ -557,6 +978,7 @@ public abstract class PSClient extends PSNode
                     currentTime = System.nanoTime();
                 }
                 nodeLog.info(logHeader + "Round " + periodNum + " complete.");
+                drainReceivedMessages();
                 boolean checkAPA = afterPeriodAction(periodNum);
                 if(!checkAPA)
                 {
@@ -608,19 +1030,10 @@ public abstract class PSClient extends PSNode
     {
         if(cMode.equals(PSClientMode.TPPub))
         {
-            String pubAttribute = generateThroughputAttributes(PSActionType.P, i);
-            
-            Integer payloadSize = 0;
-            if(ms.equals(MessageSize.TenKilobytes))
-            {
-                payloadSize = 1000;
-            }
-            else if(ms.equals(MessageSize.OneHundredKilobytes))
-            {
-                payloadSize = 100000;
-            }
-            
-            PSAction pubI = new PSAction(PSActionType.P, messageDelay, pubAttribute, payloadSize, 0L);
+            // The publication itself is built from its message number - and so are the attributes its diary entry records
+            // (see performAction) - so every message can share the template's attributes until then
+            PSAction pubI = new PSAction(PSActionType.P, messageDelay, tpPubAttributes, tpPayloadSize, 0L);
+            pubI.setMessageNumber(i);
             
             boolean pubISendCheck = launchAction(PSActionType.P, pubI);
             if(!pubISendCheck)
@@ -637,32 +1050,8 @@ public abstract class PSClient extends PSNode
     {
         if(cMode.equals(PSClientMode.TPSub))
         {
-            int counter = 0;
-            double delay = 0.0;
-            
-            ClientDiary currentDiary = null;
-            diaryLock.lock();
-            try
-            {
-                currentDiary = diary;
-            }
-            finally
-            {
-                diaryLock.unlock();
-            }
-            
-            for(int j = 0 ; j < currentDiary.size() ; j++)
-            {
-                DiaryEntry pageI = currentDiary.getDiaryEntryI(j);
-                PSActionType pageIsPSAT = pageI.getPSActionType();
-                if(pageIsPSAT != null && pageIsPSAT.equals(PSActionType.R))
-                {
-                    Double delayI = pageI.getMessageDelay().doubleValue();
-                    nodeLog.debug(logHeader + "delayI = " + delayI + " | counter = " + counter + ".");
-                    delay += delayI;
-                    counter++;
-                }
-            }
+            ReceivedStats.Snapshot round = receivedStats.snapshotAndReset();
+            int counter = (int) round.getNumReceived();
             
             if(counter == 0)
             {
@@ -670,19 +1059,29 @@ public abstract class PSClient extends PSNode
             }
             else
             {
-                roundLatency = delay / counter;
+                // Messages without a creation time are counted, but can't say anything about the latency
+                if(round.getNumTimed() > 0)
+                {
+                    roundLatency = round.getMeanDelay();
+                }
                 messagesReceived += counter;
-                nodeLog.info(logHeader + "RoundLatency = " + roundLatency + " | MessagesReceived = " + messagesReceived + ".");
+                nodeLog.info(logHeader + "RoundLatency = " + roundLatency + " | MessagesReceived = " + messagesReceived 
+                        + " | min = " + round.getMinDelay() + " | max = " + round.getMaxDelay() 
+                        + " | p99 = " + round.getHistogram().getValueAtPercentile(99.0) + ".");
             }
             
             Double secondsPubPerMessage = messageDelay.doubleValue() / PSTBUtil.SEC_TO_NANOSEC;
             Double messagesPerSecondPub = 1 / secondsPubPerMessage;
             Double messageRate = messagesPerSecondPub * numPubs;
-
+            
             diaryLock.lock();
             try
             {
-                diary.removeDiaryEntiresWithGivenPSActionType(PSActionType.R);
+                if(recordingHistograms())
+                {
+                    diary.addLatencyHistogram(PSActionType.R, round.getHistogram());
+                }
+                
                 DiaryEntry delayEntry = new DiaryEntry();
                 delayEntry.setRound(givenPN);
                 delayEntry.setMessageRate(messageRate);
@@ -724,81 +1123,114 @@ public abstract class PSClient extends PSNode
         }
     }
     
+    /**
+     * Sends the master this round's report, and waits for its reply
+     * The connection to the master is opened the first time this is called, and then kept for the rest of the run
+     * @see TPControlChannel
+     * 
+     * @param givenMR - the number of messages received this round
+     * @param givenDelay - this round's latency
+     * @return the new message delay; TP_RUN_COMPLETE if the master wants the run to stop; null on error
+     */
     private Long connectToMaster(Integer givenMR, Double givenDelay)
     {
-        Long retVal = null;
-        
-        nodeLog.debug(logHeader + "Attempting to connect to Throughput Master...");
-        Socket throughputMasterConnection = null;
-        try
-        {
-            throughputMasterConnection = new Socket(masterIPAddress, portNumber);
-        }
-        catch (Exception e) 
+        if(masterConnection == null)
         {
-            nodeLog.error(logHeader + "error creating a new Socket: ", e);
-            return null;
+            nodeLog.debug(logHeader + "Attempting to connect to Throughput Master...");
+            try
+            {
+                masterConnection = new Socket(masterIPAddress, portNumber);
+                masterConnection.setTcpNoDelay(true);
+                fromMaster = new DataInputStream(new BufferedInputStream(masterConnection.getInputStream()));
+                toMaster = new DataOutputStream(new BufferedOutputStream(masterConnection.getOutputStream()));
+            }
+            catch (Exception e) 
+            {
+                nodeLog.error(logHeader + "error connecting to the master: ", e);
+                disconnectFromMaster();
+                return null;
+            }
+            nodeLog.debug(logHeader + "Connected to Throughput Master.");
         }
-        nodeLog.debug(logHeader + "Connected to Throughput Master.");
         
-        OutputStream toMaster = null;
+        String receivedMessage = null;
         try
         {
-            toMaster = throughputMasterConnection.getOutputStream();
-        }
-        catch (Exception e) 
-        {
-            nodeLog.error(logHeader + "error creating a new OutputStream: ", e);
-        }
-        
-        if(toMaster != null)
-        {    
             String delay = nodeName + "_" + givenMR + "_" + givenDelay; 
             
             nodeLog.debug(logHeader + "Attempting to send delay to master...");
-            PSTBUtil.sendStringAcrossSocket(toMaster, delay);
+            TPControlChannel.writeFrame(toMaster, delay);
             nodeLog.debug(logHeader + "Delay sent.");
             
-            String receivedMessage = PSTBUtil.readConnection(throughputMasterConnection, nodeLog, logHeader);
-            nodeLog.info(logHeader + receivedMessage + " received.");
-            
-            if(receivedMessage == null)
+            receivedMessage = TPControlChannel.readFrame(fromMaster);
+        }
+        catch(IOException e)
+        {
+            nodeLog.error(logHeader + "Something happened with master: ", e);
+            disconnectFromMaster();
+            return null;
+        }
+        nodeLog.info(logHeader + receivedMessage + " received.");
+        
+        Long retVal = PSTBUtil.checkIfLong(receivedMessage, false, null);
+        if(retVal == null)
+        {
+            if(receivedMessage.equals(PSTBUtil.STOP))
             {
-                nodeLog.error(logHeader + "Something happened with master - got null!");
+                retVal = new Long(TP_RUN_COMPLETE);
+                disconnectFromMaster();
             }
             else
             {
-                retVal = PSTBUtil.checkIfLong(receivedMessage, false, null);
-                if(retVal == null)
-                {
-                    if(receivedMessage.equals(PSTBUtil.STOP))
-                    {
-                        retVal = new Long(TP_RUN_COMPLETE);
-                    }
-                }
+                nodeLog.error(logHeader + "Master sent " + receivedMessage + " - which isn't a delay!");
             }
         }
-
+        
+        return retVal;
+    }
+    
+    /**
+     * Closes the connection to the master (if there is one)
+     */
+    private void disconnectFromMaster()
+    {
+        if(masterConnection == null)
+        {
+            return;
+        }
+        
         try 
         {
-            throughputMasterConnection.close();
+            masterConnection.close();
         } 
-        catch (Exception e) 
+        catch (IOException e) 
         {
             nodeLog.error(logHeader + "couldn't close " + nodeName + "'s socket: ", e);
-            return null;
         }
+        masterConnection = null;
+        fromMaster = null;
+        toMaster = null;
         nodeLog.debug(logHeader + "Connection to master closed.");
-        
-        return retVal;
     }
     
     protected abstract String generateThroughputAttributes(PSActionType givenPSAT, int messageNumber);
     
+    /**
+     * Gets the attributes every throughput message of the given type shares
+     * (i.e. with a placeholder instead of the message number)
+     * 
+     * @param givenPSAT - the action type
+     * @return the attributes; null on error
+     */
+    protected abstract String getThroughputTemplateAttributes(PSActionType givenPSAT);
+    
     /**
      * Create a new diary entry and record all the information associated with it
      * e.g. TimeStartedAction, AckDelay, TimeActiveAck, ...
      * assuming executeAction runs successfully.
+     * Then wait for the action's delay.
+     * If publications are being sent asynchronously, a publication is only submitted into the send window here -
+     * it's recorded once the broker returns.
      * @see executeAction
      * 
      * @param selectedAction - the type of action we're doing
@@ -806,6 +1238,50 @@ public abstract class PSClient extends PSNode
      * @return true if the action was recorded; false on error
      */
     public boolean launchAction(PSActionType selectedAction, PSAction givenAction)
+    {
+        boolean actionSuccessful = false;
+        if(senders != null && selectedAction.equals(PSActionType.P))
+        {
+            if(senders.hasFailed())
+            {
+                nodeLog.error(logHeader + "An asynchronous publication failed!");
+                return false;
+            }
+            
+            // The action starts now - any time it then spends waiting for a sender counts towards its ActionDelay
+            long submitTime = System.currentTimeMillis();
+            long submitAction = System.nanoTime();
+            actionSuccessful = senders.submit(() -> performAction(selectedAction, givenAction, null, submitTime, submitAction));
+        }
+        else
+        {
+            actionSuccessful = performAction(selectedAction, givenAction, null, System.currentTimeMillis(), System.nanoTime());
+        }
+        
+        if(actionSuccessful)
+        {
+            PSTBUtil.waitAPeriod(givenAction.getActionDelay(), WaitType.Hybrid, waitStats, nodeLog, logHeader);
+        }
+        
+        return actionSuccessful;
+    }
+    
+    /**
+     * Create a new diary entry and record all the information associated with it
+     * e.g. TimeStartedAction, AckDelay, TimeActiveAck, ...
+     * assuming executeAction runs successfully.
+     * Unlike launchAction, this doesn't wait afterwards.
+     * @see executeAction
+     * 
+     * @param selectedAction - the type of action we're doing
+     * @param givenAction - the given Action
+     * @param intendedAction - the System.nanoTime() this action was scheduled to start at (null if it wasn't scheduled)
+     * @param timeStarted - the System.currentTimeMillis() this action was started (i.e. launched or submitted) at
+     * @param startAction - the System.nanoTime() this action was started at
+     * @return true if the action was recorded; false on error
+     */
+    private boolean performAction(PSActionType selectedAction, PSAction givenAction, Long intendedAction, 
+            long timeStarted, long startAction)
     {
         nodeLog.debug(logHeader + "Preparing to record " + selectedAction + " " + givenAction.getAttributes() + ".");
         
@@ -847,28 +1323,68 @@ public abstract class PSClient extends PSNode
         // Variable initialization - DiaryEntry
         DiaryEntry thisEntry = new DiaryEntry();
         
-        // Execute the action... after getting some number's first
-        Long startTime = System.currentTimeMillis();
-        Long startAction = System.nanoTime();
+        // Execute the action
+        // (Sender threads can get here at the same time - each publishes on its own connection)
         boolean actionSuccessful = executeAction(selectedAction, givenAction, thisEntry);
         Long brokerFinished = System.currentTimeMillis();
         Long endAction = System.nanoTime();
         
         if(actionSuccessful)
         {
+            // Only Ads and Subs go into the active list - and they're never sent from the sender pool
+            if(selectedAction.equals(PSActionType.A) || selectedAction.equals(PSActionType.S))
+            {
+                lastStartedAction = startAction;
+            }
+            
             // Get a few missing recordings
             Long timeDiff = endAction - startAction;
             String attributes = givenAction.getAttributes();
             
+            // Ads and Subs always get an entry - they have to be found again to be undone
+            // Everything else only needs its latency counted
+            if(recordingHistograms() && !selectedAction.equals(PSActionType.A) && !selectedAction.equals(PSActionType.S))
+            {
+                // An open-loop action's latency is measured from when it should have started
+                Long countedDiff = (intendedAction != null) ? endAction - intendedAction : timeDiff;
+                diaryLock.lock();
+                try
+                {
+                    diary.recordLatency(selectedAction, countedDiff);
+                }
+                finally
+                {
+                    diaryLock.unlock();
+                }
+                nodeLog.debug(logHeader + selectedAction + " " + attributes + " counted.");
+                return actionSuccessful;
+            }
+            
             // Add all recordings to DiaryEntry
             thisEntry.setPSActionType(selectedAction);
             thisEntry.addStartedAction(startAction);
             thisEntry.addEndedAction(endAction);
             thisEntry.addActionDelay(timeDiff);
-            thisEntry.setTimeActionStarted(startTime);
+            thisEntry.setTimeActionStarted(timeStarted);
             thisEntry.setTimeFunctionReturned(brokerFinished);
+            
+            // A throughput publication only carries its template's attributes
+            // - its entry gets the real ones (i.e. with its message number), built now that the message has gone out
+            Integer messageNumber = givenAction.getMessageNumber();
+            if(messageNumber != null)
+            {
+                attributes = generateThroughputAttributes(selectedAction, messageNumber);
+            }
             thisEntry.addAttributes(attributes);
             
+            if(intendedAction != null)
+            {
+                // Measured against when the action should have started, any time spent waiting to send is counted too
+                thisEntry.addIntendedAction(intendedAction);
+                thisEntry.addIntendedActionDelay(endAction - intendedAction);
+                thisEntry.addStartSlip(startAction - intendedAction);
+            }
+            
             if(selectedAction.equals(PSActionType.U) || selectedAction.equals(PSActionType.V))
             {
                 // If we're unsubscribing / unadvertising, we need to determine how long they were active for
@@ -877,11 +1393,11 @@ public abstract class PSClient extends PSNode
                 
                 if(selectedAction.equals(PSActionType.U))
                 {
-                    ascAction = diary.getDiaryEntryGivenActionTypeNAttributes(PSActionType.S, attributes, nodeLog);
+                    ascAction = findDiaryEntry(PSActionType.S, attributes);
                 }
                 else // I can do this cause I limited the options above
                 {
-                    ascAction = diary.getDiaryEntryGivenActionTypeNAttributes(PSActionType.A, attributes, nodeLog);
+                    ascAction = findDiaryEntry(PSActionType.A, attributes);
                 }
                 
                 if (ascAction == null)
@@ -908,14 +1424,16 @@ public abstract class PSClient extends PSNode
             try
             {
                 diary.addDiaryEntryToDiary(thisEntry);
+                if(recordingHistograms())
+                {
+                    diary.recordLatency(selectedAction, timeDiff);
+                }
             }
             finally
             {
                 diaryLock.unlock();
             }
             nodeLog.debug(logHeader + selectedAction + " " + attributes + " recorded.");
-            
-            PSTBUtil.waitAPeriod(delayValue, nodeLog, logHeader);
         }
         
         return actionSuccessful;
@@ -965,7 +1483,15 @@ public abstract class PSClient extends PSNode
                 case P:
                 {
                     nodeLog.debug(logHeader + generalLog + "publish " + givenAttributes);
-                    publish(givenAttributes, givenEntry, givenAction.getPayloadSize());
+                    Integer messageNumber = givenAction.getMessageNumber();
+                    if(messageNumber != null)
+                    {
+                        publishThroughput(messageNumber, givenEntry, givenAction.getPayloadSize());
+                    }
+                    else
+                    {
+                        publish(givenAttributes, givenEntry, givenAction.getPayloadSize());
+                    }
                     break;
                 }
                 default:
@@ -984,11 +1510,19 @@ public abstract class PSClient extends PSNode
     protected abstract void advertise(String givenAttributes, DiaryEntry resultingEntry) throws Exception;
     
     protected abstract void unadvertise(String givenAttributes, DiaryEntry resultingEntry) throws Exception;
-
+    
     protected abstract void subscribe(String givenAttributes, DiaryEntry resultingEntry) throws Exception;
-                      
+    
     protected abstract void unsubscribe(String givenAttributes, DiaryEntry resultingEntry) throws Exception;
-                       
+    
     protected abstract void publish(String givenAttributes, DiaryEntry resultingEntry, Integer givenPayLoadSize) throws Exception;
+    
+    /**
+     * Publishes the given throughput message
+     * Unlike publish(), this doesn't parse an attribute String - 
+     * the message is built from a cached template for the current NumAttribute / AttributeRatio
+     * @see generateThroughputAttributes
+     */
+    protected abstract void publishThroughput(int messageNumber, DiaryEntry resultingEntry, Integer givenPayLoadSize) throws Exception;
 
 }
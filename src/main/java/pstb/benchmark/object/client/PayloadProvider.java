@@ -0,0 +1,186 @@
+package pstb.benchmark.object.client;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import pstb.startup.config.PayloadContent;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Hands out publication payloads.
+ * 
+ * Rather than allocating (and filling) a new byte[] for every publication,
+ * one buffer is generated per payload size and PayloadContent and then shared by every publication that needs it
+ * - across every client in this JVM.
+ * So these buffers are READ-ONLY: nothing may write to a buffer it was given.
+ * (The engines only ever serialize payloads, so sharing them is safe.)
+ * 
+ * Each PayloadContent (by ordinal) has a small table of the sizes generated so far,
+ * so finding a payload is an array index and a scan over a handful of ints - nothing is allocated.
+ * The tables are copied on write, which only happens the first time a size is asked for.
+ */
+public class PayloadProvider
+{
+    private static final byte CONSTANT_BYTE = (byte) 1;
+    
+    // Indexed by PayloadContent ordinal
+    private static final AtomicReferenceArray<SizeTable> PAYLOADS = 
+            new AtomicReferenceArray<SizeTable>(PayloadContent.values().length);
+    
+    /**
+     * The payloads generated for one PayloadContent - sizes[i] is the size of payloads[i]
+     */
+    private static class SizeTable
+    {
+        private final int[] sizes;
+        private final byte[][] payloads;
+        
+        private SizeTable(int[] givenSizes, byte[][] givenPayloads)
+        {
+            sizes = givenSizes;
+            payloads = givenPayloads;
+        }
+        
+        private byte[] find(int givenSize)
+        {
+            for(int i = 0 ; i < sizes.length ; i++)
+            {
+                if(sizes[i] == givenSize)
+                {
+                    return payloads[i];
+                }
+            }
+            return null;
+        }
+    }
+    
+    private PayloadProvider()
+    {
+        // Only static functions
+    }
+    
+    /**
+     * Gets a payload of the given size
+     * 
+     * @param givenSize - the size of the payload (in bytes)
+     * @param givenContent - what the payload should contain
+     * @return a shared, read-only payload
+     */
+    public static byte[] getPayload(int givenSize, PayloadContent givenContent)
+    {
+        SizeTable table = PAYLOADS.get(givenContent.ordinal());
+        if(table != null)
+        {
+            byte[] retVal = table.find(givenSize);
+            if(retVal != null)
+            {
+                return retVal;
+            }
+        }
+        
+        return addPayload(givenSize, givenContent);
+    }
+    
+    /**
+     * Generates a payload and adds it to its PayloadContent's table
+     * (Unless another thread got there first - in which case that payload is returned.)
+     * 
+     * @param givenSize - the size of the payload (in bytes)
+     * @param givenContent - what the payload should contain
+     * @return the shared payload
+     */
+    private static byte[] addPayload(int givenSize, PayloadContent givenContent)
+    {
+        int index = givenContent.ordinal();
+        byte[] newPayload = null;
+        while(true)
+        {
+            SizeTable oldTable = PAYLOADS.get(index);
+            int oldLength = 0;
+            if(oldTable != null)
+            {
+                byte[] existing = oldTable.find(givenSize);
+                if(existing != null)
+                {
+                    return existing;
+                }
+                oldLength = oldTable.sizes.length;
+            }
+            
+            if(newPayload == null)
+            {
+                newPayload = generatePayload(givenSize, givenContent);
+            }
+            
+            int[] newSizes = new int[oldLength + 1];
+            byte[][] newPayloads = new byte[oldLength + 1][];
+            if(oldTable != null)
+            {
+                System.arraycopy(oldTable.sizes, 0, newSizes, 0, oldLength);
+                System.arraycopy(oldTable.payloads, 0, newPayloads, 0, oldLength);
+            }
+            newSizes[oldLength] = givenSize;
+            newPayloads[oldLength] = newPayload;
+            
+            if(PAYLOADS.compareAndSet(index, oldTable, new SizeTable(newSizes, newPayloads)))
+            {
+                return newPayload;
+            }
+        }
+    }
+    
+    /**
+     * Generates a payload
+     * The compressible payloads are made up of a constant run (the given percentage of the buffer) followed by random bytes
+     * The random bytes are seeded by the size, so every run (and every client) sends the same content
+     * 
+     * @param givenSize - the size of the payload (in bytes)
+     * @param givenContent - what the payload should contain
+     * @return the new payload
+     */
+    private static byte[] generatePayload(int givenSize, PayloadContent givenContent)
+    {
+        byte[] retVal = new byte[givenSize];
+        
+        double constantFraction = 1.0;
+        switch(givenContent)
+        {
+            case Compressible75P:
+            {
+                constantFraction = 0.75;
+                break;
+            }
+            case Compressible50P:
+            {
+                constantFraction = 0.5;
+                break;
+            }
+            case Compressible25P:
+            {
+                constantFraction = 0.25;
+                break;
+            }
+            case Random:
+            {
+                constantFraction = 0.0;
+                break;
+            }
+            default:
+                break;
+        }
+        
+        int constantLength = (int) (givenSize * constantFraction);
+        Arrays.fill(retVal, 0, constantLength, CONSTANT_BYTE);
+        
+        if(constantLength < givenSize)
+        {
+            byte[] randomBytes = new byte[givenSize - constantLength];
+            new Random(givenSize).nextBytes(randomBytes);
+            System.arraycopy(randomBytes, 0, retVal, constantLength, randomBytes.length);
+        }
+        
+        return retVal;
+    }
+}
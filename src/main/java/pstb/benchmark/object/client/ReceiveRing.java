@@ -0,0 +1,248 @@
+package pstb.benchmark.object.client;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import pstb.analysis.diary.ClientDiary;
+import pstb.analysis.diary.DiaryEntry;
+import pstb.startup.workload.PSActionType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Single-producer ring buffers for Received messages - one per receiving thread.
+ * 
+ * Each thread receiving publications (PADRES' processMessage / SIENA's notify) gets its own ring the first time it records a message,
+ * and writes each message into it without taking any locks.
+ * Since only that thread ever writes to its ring, receivers delivering at the same time can't overwrite each other's slots.
+ * The Client's own thread then drains every ring into the diary whenever it's convenient - between actions, between rounds, ...
+ * That way the receiving threads never have to fight the sending thread for the diaryLock.
+ * 
+ * A ring's arrays are only created when its thread receives its first message,
+ * so a Client that never receives anything (a publisher, or the master's copy of a Client) never pays for them.
+ * 
+ * If a ring ever fills up, its receiving thread drains the rings itself rather than drop a message
+ * (which does take the locks, so the rings should be sized so that this is rare).
+ * 
+ * If the diary is recording Received latencies into a histogram, a message that has a creation time
+ * is just counted there - it doesn't become a diary entry.
+ * 
+ * If the rings have been told to count into a ReceivedStats (i.e. for a throughput subscriber),
+ * messages never go into a ring at all - the receiving thread counts them there straight away.
+ * @see ReceivedStats
+ */
+public class ReceiveRing
+{
+    // Constants
+    public static final long NO_TIME = Long.MIN_VALUE;
+    
+    // Rings
+    private final int capacity;
+    private final ThreadLocal<Ring> localRing;
+    private final CopyOnWriteArrayList<Ring> rings; // every thread's ring - for the drainer
+    
+    // Where to drain to
+    private final ClientDiary diary;
+    private final ReentrantLock diaryLock;
+    private final ReentrantLock drainLock;
+    
+    // Stats
+    private final AtomicLong timesFull;
+    private volatile ReceivedStats countingInto; // null if messages go to the diary
+    
+    /**
+     * One receiving thread's ring
+     */
+    private static class Ring
+    {
+        private final int mask;
+        private final long[] timesCreated;
+        private final long[] timesReceived;
+        private final String[] messageIDs;
+        private final String[] attributes;
+        private final AtomicLong head; // the next slot to be drained - only moved by the drainer
+        private final AtomicLong tail; // the next slot to be written - only moved by the ring's receiving thread
+        
+        private Ring(int givenCapacity)
+        {
+            mask = givenCapacity - 1;
+            timesCreated = new long[givenCapacity];
+            timesReceived = new long[givenCapacity];
+            messageIDs = new String[givenCapacity];
+            attributes = new String[givenCapacity];
+            head = new AtomicLong(0L);
+            tail = new AtomicLong(0L);
+        }
+    }
+    
+    /**
+     * Constructor
+     * (No ring is created until a thread records a message.)
+     * 
+     * @param requestedCapacity - how many messages each receiving thread's ring should hold (this will be rounded up to a power of 2)
+     * @param givenDiary - the diary to drain into
+     * @param givenDiaryLock - the lock protecting that diary
+     */
+    public ReceiveRing(int requestedCapacity, ClientDiary givenDiary, ReentrantLock givenDiaryLock)
+    {
+        capacity = Integer.highestOneBit(Math.max(requestedCapacity, 2) - 1) << 1;
+        localRing = new ThreadLocal<Ring>();
+        rings = new CopyOnWriteArrayList<Ring>();
+        
+        diary = givenDiary;
+        diaryLock = givenDiaryLock;
+        drainLock = new ReentrantLock();
+        
+        timesFull = new AtomicLong(0L);
+        countingInto = null;
+    }
+    
+    /**
+     * From now on, count every Received message into the given ReceivedStats instead of the diary
+     * 
+     * @param givenStats - the stats to count into; null to go back to the diary
+     */
+    public void countInto(ReceivedStats givenStats)
+    {
+        countingInto = givenStats;
+    }
+    
+    /**
+     * @return true if Received messages are being counted into a ReceivedStats; false otherwise
+     */
+    public boolean isCounting()
+    {
+        return countingInto != null;
+    }
+    
+    /**
+     * Records a Received message into the calling thread's ring
+     * 
+     * @param givenMID - the message's ID (null if there isn't one)
+     * @param givenTimeCreated - when the message was created, in milliseconds (NO_TIME if that isn't known)
+     * @param givenTimeReceived - when the message was received, in milliseconds
+     * @param givenAttributes - the message's attributes
+     */
+    public void record(String givenMID, long givenTimeCreated, long givenTimeReceived, String givenAttributes)
+    {
+        ReceivedStats stats = countingInto;
+        if(stats != null)
+        {
+            stats.record(givenTimeReceived - givenTimeCreated, givenTimeCreated != NO_TIME);
+            return;
+        }
+        
+        Ring ring = localRing.get();
+        if(ring == null)
+        {
+            ring = new Ring(capacity);
+            rings.add(ring);
+            localRing.set(ring);
+        }
+        
+        long currentTail = ring.tail.get();
+        if(currentTail - ring.head.get() >= capacity)
+        {
+            timesFull.incrementAndGet();
+            drain();
+        }
+        
+        int slot = (int) (currentTail & ring.mask);
+        ring.messageIDs[slot] = givenMID;
+        ring.timesCreated[slot] = givenTimeCreated;
+        ring.timesReceived[slot] = givenTimeReceived;
+        ring.attributes[slot] = givenAttributes;
+        
+        // Publish the slot to the drainer
+        ring.tail.lazySet(currentTail + 1);
+    }
+    
+    /**
+     * Moves everything currently in the rings into the diary
+     * 
+     * @return the number of messages drained
+     */
+    public int drain()
+    {
+        drainLock.lock();
+        try
+        {
+            int retVal = 0;
+            for(Ring ringI : rings)
+            {
+                retVal += drain(ringI);
+            }
+            return retVal;
+        }
+        finally
+        {
+            drainLock.unlock();
+        }
+    }
+    
+    /**
+     * Moves everything currently in the given ring into the diary
+     * (The drainLock must be held.)
+     */
+    private int drain(Ring givenRing)
+    {
+        long currentHead = givenRing.head.get();
+        long currentTail = givenRing.tail.get();
+        if(currentHead == currentTail)
+        {
+            return 0;
+        }
+        
+        diaryLock.lock();
+        try
+        {
+            boolean countOnly = diary.hasLatencyHistogram(PSActionType.R);
+            for(long i = currentHead ; i < currentTail ; i++)
+            {
+                int slot = (int) (i & givenRing.mask);
+                long timeCreated = givenRing.timesCreated[slot];
+                long timeReceived = givenRing.timesReceived[slot];
+                
+                if(countOnly && timeCreated != NO_TIME)
+                {
+                    diary.recordLatency(PSActionType.R, timeReceived - timeCreated);
+                    givenRing.messageIDs[slot] = null;
+                    givenRing.attributes[slot] = null;
+                    continue;
+                }
+                
+                DiaryEntry receivedMsg = new DiaryEntry();
+                receivedMsg.setPSActionType(PSActionType.R);
+                receivedMsg.addMessageID(givenRing.messageIDs[slot]);
+                if(timeCreated != NO_TIME)
+                {
+                    receivedMsg.addTimeCreated(timeCreated);
+                    receivedMsg.addTimeDifference(timeReceived - timeCreated);
+                }
+                receivedMsg.addTimeReceived(timeReceived);
+                receivedMsg.addAttributes(givenRing.attributes[slot]);
+                diary.addDiaryEntryToDiary(receivedMsg);
+                
+                givenRing.messageIDs[slot] = null;
+                givenRing.attributes[slot] = null;
+            }
+        }
+        finally
+        {
+            diaryLock.unlock();
+        }
+        
+        // Hand the slots back to the receiver
+        givenRing.head.lazySet(currentTail);
+        return (int) (currentTail - currentHead);
+    }
+    
+    /**
+     * @return the number of times a receiver found its ring full and had to drain the rings itself
+     */
+    public long getTimesFull()
+    {
+        return timesFull.get();
+    }
+}
@@ -0,0 +1,222 @@
+package pstb.benchmark.object.client;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import pstb.analysis.diary.LatencyHistogram;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Running statistics of the messages a throughput subscriber has received this round:
+ * how many arrived, and the count, sum, min, max and histogram of the delays of those that had a creation time.
+ * 
+ * The receiving thread(s) update these in constant time per message - there's no DiaryEntry per message.
+ * The counters are split into stripes (picked by thread) so receiving threads don't fight over one lock,
+ * and each stripe's lock is only ever held for a handful of additions.
+ * 
+ * At the end of a round, snapshotAndReset() swaps every stripe's counters out for empty ones
+ * - so every message is counted in exactly one round's snapshot - and then adds them up outside of the locks.
+ * Only one thread should ever take snapshots.
+ */
+public class ReceivedStats
+{
+    private static final int MAX_STRIPES = 4;
+    
+    private final Stripe[] stripes;
+    private final int mask;
+    private final int histogramPrecision;
+    
+    private static class Stripe
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long numReceived;
+        private long numTimed;
+        private long delaySum;
+        private long minDelay;
+        private long maxDelay;
+        private LatencyHistogram histogram;
+        private LatencyHistogram spare; // an empty histogram to swap in - only touched by the snapshotting thread
+        
+        private Stripe(int givenPrecision)
+        {
+            histogram = new LatencyHistogram(givenPrecision);
+            spare = new LatencyHistogram(givenPrecision);
+            reset();
+        }
+        
+        private void reset()
+        {
+            numReceived = 0L;
+            numTimed = 0L;
+            delaySum = 0L;
+            minDelay = Long.MAX_VALUE;
+            maxDelay = Long.MIN_VALUE;
+        }
+    }
+    
+    /**
+     * A round's statistics
+     */
+    public static class Snapshot
+    {
+        private long numReceived;
+        private long numTimed;
+        private long delaySum;
+        private long minDelay;
+        private long maxDelay;
+        private LatencyHistogram histogram;
+        
+        private Snapshot(int givenPrecision)
+        {
+            numReceived = 0L;
+            numTimed = 0L;
+            delaySum = 0L;
+            minDelay = Long.MAX_VALUE;
+            maxDelay = Long.MIN_VALUE;
+            histogram = new LatencyHistogram(givenPrecision);
+        }
+        
+        /**
+         * @return the number of messages received
+         */
+        public long getNumReceived()
+        {
+            return numReceived;
+        }
+        
+        /**
+         * @return the number of those messages that had a creation time (and so a delay)
+         */
+        public long getNumTimed()
+        {
+            return numTimed;
+        }
+        
+        public long getDelaySum()
+        {
+            return delaySum;
+        }
+        
+        /**
+         * @return the mean delay; 0 if no message had one
+         */
+        public double getMeanDelay()
+        {
+            return (numTimed == 0) ? 0.0 : ((double) delaySum) / numTimed;
+        }
+        
+        /**
+         * @return the smallest delay; 0 if no message had one
+         */
+        public long getMinDelay()
+        {
+            return (numTimed == 0) ? 0L : minDelay;
+        }
+        
+        /**
+         * @return the largest delay; 0 if no message had one
+         */
+        public long getMaxDelay()
+        {
+            return (numTimed == 0) ? 0L : maxDelay;
+        }
+        
+        /**
+         * @return the delays' histogram
+         */
+        public LatencyHistogram getHistogram()
+        {
+            return histogram;
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param givenPrecision - the number of significant digits the delay histograms keep
+     */
+    public ReceivedStats(int givenPrecision)
+    {
+        int numStripes = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors()), MAX_STRIPES);
+        stripes = new Stripe[numStripes];
+        for(int i = 0 ; i < numStripes ; i++)
+        {
+            stripes[i] = new Stripe(givenPrecision);
+        }
+        mask = numStripes - 1;
+        histogramPrecision = givenPrecision;
+    }
+    
+    /**
+     * Counts a received message
+     * 
+     * @param givenDelay - the message's delay
+     * @param delayKnown - does the message have a delay (i.e. did it have a creation time)?
+     */
+    public void record(long givenDelay, boolean delayKnown)
+    {
+        Stripe stripe = stripes[(int) Thread.currentThread().getId() & mask];
+        stripe.lock.lock();
+        try
+        {
+            stripe.numReceived++;
+            if(delayKnown)
+            {
+                stripe.numTimed++;
+                stripe.delaySum += givenDelay;
+                if(givenDelay < stripe.minDelay)
+                {
+                    stripe.minDelay = givenDelay;
+                }
+                if(givenDelay > stripe.maxDelay)
+                {
+                    stripe.maxDelay = givenDelay;
+                }
+                stripe.histogram.recordValue(givenDelay);
+            }
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+    
+    /**
+     * Takes everything counted since the last snapshot, and starts counting again from nothing
+     * 
+     * @return this round's statistics
+     */
+    public Snapshot snapshotAndReset()
+    {
+        Snapshot retVal = new Snapshot(histogramPrecision);
+        for(int i = 0 ; i < stripes.length ; i++)
+        {
+            Stripe stripeI = stripes[i];
+            LatencyHistogram taken = null;
+            
+            stripeI.lock.lock();
+            try
+            {
+                retVal.numReceived += stripeI.numReceived;
+                retVal.numTimed += stripeI.numTimed;
+                retVal.delaySum += stripeI.delaySum;
+                retVal.minDelay = Math.min(retVal.minDelay, stripeI.minDelay);
+                retVal.maxDelay = Math.max(retVal.maxDelay, stripeI.maxDelay);
+                stripeI.reset();
+                
+                taken = stripeI.histogram;
+                stripeI.histogram = stripeI.spare;
+            }
+            finally
+            {
+                stripeI.lock.unlock();
+            }
+            
+            retVal.histogram.merge(taken);
+            taken.reset();
+            stripeI.spare = taken;
+        }
+        
+        return retVal;
+    }
+}
@@ -1,9 +1,7 @@
 package pstb.benchmark.object.client.padres;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-
-import org.apache.logging.log4j.ThreadContext;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ca.utoronto.msrg.padres.client.BrokerState;
 import ca.utoronto.msrg.padres.client.ClientConfig;
@@ -12,8 +10,10 @@ import ca.utoronto.msrg.padres.common.message.Message;
 import ca.utoronto.msrg.padres.common.message.Publication;
 import ca.utoronto.msrg.padres.common.message.PublicationMessage;
 import ca.utoronto.msrg.padres.common.message.parser.MessageFactory;
+import ca.utoronto.msrg.padres.common.message.parser.ParseException;
 import pstb.analysis.diary.DiaryEntry;
 import pstb.benchmark.object.client.PSClient;
+import pstb.benchmark.object.client.PayloadProvider;
 import pstb.startup.config.AttributeRatio;
 import pstb.startup.config.NumAttribute;
 import pstb.startup.workload.PSActionType;
@@ -33,9 +33,15 @@ public class PSClientPADRES extends PSClient
 {
     // Constants
     private static final long serialVersionUID = 1L;
+    private static final String SENDER_ID_SEPARATOR = "-sender";
+    
+    // Throughput templates - keyed by NumAttribute|AttributeRatio|PSActionType
+    private static final ConcurrentHashMap<String, ThroughputTemplate> THROUGHPUT_TEMPLATES = 
+            new ConcurrentHashMap<String, ThroughputTemplate>();
     
     // PADRES Client Variables
     private PADRESClientExtension actualClient;
+    private transient PADRESClientExtension[] senderClients; // one per sender thread - only ever used to publish
     private ArrayList<BrokerState> connectedBrokers;
     private ClientConfig cConfig;
     
@@ -48,7 +54,7 @@ public class PSClientPADRES extends PSClient
         
         logHeader = "PClient: ";
     }
-
+    
     /**
      * Sets some of the variables and creates a new Client
      * (The idea being you would initialize a general Client first before giving it it's tasks
@@ -109,7 +115,7 @@ public class PSClientPADRES extends PSClient
         nodeLog.debug(logHeader + "Initialized client " + nodeName);
         return true;
     }
-
+    
     /**
      * Attempts to shutdown the Client
      * 
@@ -132,7 +138,7 @@ public class PSClientPADRES extends PSClient
         nodeLog.debug(logHeader + "Client " + nodeName + " shutdown");
         return true;
     }
-
+    
     /**
      * Connects this client to the network
      * NOTE: NOT CURRENTLY WORKING! 
@@ -166,7 +172,7 @@ public class PSClientPADRES extends PSClient
         nodeLog.debug(logHeader + "Added client " + nodeName + " to network.");
         return true;
     }
-
+    
     /**
      * Disconnects the client from the network
      */
@@ -176,16 +182,86 @@ public class PSClientPADRES extends PSClient
         actualClient.disconnectAll();
     }
     
+    @Override
+    protected boolean openSenderConnections(int numSenders)
+    {
+        senderClients = new PADRESClientExtension[numSenders];
+        for(int i = 0 ; i < numSenders ; i++)
+        {
+            String senderID = nodeName + SENDER_ID_SEPARATOR + i;
+            try
+            {
+                ClientConfig senderConfig = new ClientConfig();
+                senderConfig.clientID = senderID;
+                senderConfig.connectBrokerList = (String[]) brokersURIs.toArray(new String[brokersURIs.size()]);
+                senderClients[i] = new PADRESClientExtension(senderConfig, this);
+            }
+            catch(ClientException e)
+            {
+                nodeLog.error(logHeader + "Couldn't create sender client " + senderID + ": ", e);
+                closeSenderConnections();
+                return false;
+            }
+        }
+        
+        nodeLog.debug(logHeader + "Opened " + numSenders + " sender connections.");
+        return true;
+    }
+    
+    @Override
+    protected void closeSenderConnections()
+    {
+        if(senderClients == null)
+        {
+            return;
+        }
+        
+        for(int i = 0 ; i < senderClients.length ; i++)
+        {
+            if(senderClients[i] != null)
+            {
+                try
+                {
+                    senderClients[i].shutdown();
+                }
+                catch(ClientException e)
+                {
+                    nodeLog.warn(logHeader + "Couldn't shutdown sender client " + i + ": ", e);
+                }
+            }
+        }
+        senderClients = null;
+    }
+    
+    /**
+     * @return the client the calling thread should publish through - its own sender client if it's a sender thread
+     */
+    private PADRESClientExtension getPublisher()
+    {
+        int senderIndex = getSenderIndex();
+        PADRESClientExtension[] currentSenders = senderClients;
+        if(senderIndex < 0 || currentSenders == null)
+        {
+            return actualClient;
+        }
+        return currentSenders[senderIndex];
+    }
+    
     /**
      * Stores the given Message
      * Assuming it's a Publication
+     * 
+     * This is called by PADRES' receiving thread, so it doesn't take any locks - 
+     * the message is written into the ReceiveRing and the Client's own thread adds it to the diary later.
+     * @see ReceiveRing
+     * 
      * @param msg - the given Message
      */
     public void storePublication(Message msg) 
     {
         try
         {
-            ThreadContext.put("client", generateNodeContext());
+            setReceiveContext();
             
             Boolean areWeRunning = getCurrentlyRunning();
             if(areWeRunning == null)
@@ -196,31 +272,23 @@ public class PSClientPADRES extends PSClient
             {
                 if(msg instanceof PublicationMessage)
                 {
-                    Long currentTime = System.currentTimeMillis();
-                    DiaryEntry receivedMsg = new DiaryEntry();
+                    long currentTime = System.currentTimeMillis();
                     
                     Publication pub = ((PublicationMessage) msg).getPublication();
                     
-                    Long timePubCreated = pub.getTimeStamp().getTime();
+                    long timePubCreated = pub.getTimeStamp().getTime();
                     
-                    receivedMsg.setPSActionType(PSActionType.R);
-                    receivedMsg.addMessageID(pub.getPubID());
-                    receivedMsg.addTimeCreated(timePubCreated);
-                    receivedMsg.addTimeReceived(currentTime);
-                    receivedMsg.addTimeDifference(currentTime - timePubCreated);
-                    receivedMsg.addAttributes(pub.toString());
-
-                    diaryLock.lock();
-                    try
+                    // A histogram (or a throughput subscriber's counters) only needs the times
+                    // - so don't pay for turning the publication into a string
+                    String pubAttributes = null;
+                    if(!recordingHistograms() && !receivedMessages.isCounting())
                     {
-                        diary.addDiaryEntryToDiary(receivedMsg);
-                    }
-                    finally
-                    {
-                        diaryLock.unlock();
+                        pubAttributes = pub.toString();
                     }
                     
-                    nodeLog.debug(logHeader + "new publication received " + pub.toString());
+                    receivedMessages.record(pub.getPubID(), timePubCreated, currentTime, pubAttributes);
+                    
+                    nodeLog.debug(logHeader + "new publication received " + pub.getPubID());
                 }
             }
         }
@@ -240,7 +308,7 @@ public class PSClientPADRES extends PSClient
     @Override
     protected void unadvertise(String givenAttributes, DiaryEntry resultingEntry) throws Exception
     {
-        DiaryEntry originalAd = diary.getDiaryEntryGivenActionTypeNAttributes(PSActionType.A, givenAttributes, nodeLog);
+        DiaryEntry originalAd = findDiaryEntry(PSActionType.A, givenAttributes);
         if(originalAd == null)
         {
             throw new Exception("Couldn't find original advertisement!");
@@ -262,7 +330,7 @@ public class PSClientPADRES extends PSClient
     protected void unsubscribe(String givenAttributes, DiaryEntry resultingEntry) throws Exception
     {
         nodeLog.debug(logHeader + "Attempting to find original subscription...");
-        DiaryEntry originalSub = diary.getDiaryEntryGivenActionTypeNAttributes(PSActionType.S, givenAttributes, nodeLog);
+        DiaryEntry originalSub = findDiaryEntry(PSActionType.S, givenAttributes);
         if(originalSub == null)
         {
             throw new Exception("Couldn't find original subscription!");
@@ -297,25 +365,48 @@ public class PSClientPADRES extends PSClient
         }
         else if(givenPayloadSize == 0)
         {
-            result = actualClient.publish(givenAttributes, brokersURIs.get(0));
-            
+            result = getPublisher().publish(givenAttributes, brokersURIs.get(0));
+        
         }
         else
         {
-            byte[] payload = new byte[givenPayloadSize];
-            Arrays.fill( payload, (byte) 1 );
+            byte[] payload = PayloadProvider.getPayload(givenPayloadSize, payloadContent);
             
             Publication pubI = MessageFactory.createPublicationFromString(givenAttributes);
             
             pubI.setPayload(payload);
             
-            result = actualClient.publish(pubI, brokersURIs.get(0));
-            
+            result = getPublisher().publish(pubI, brokersURIs.get(0));
+        
         }
         
         resultingEntry.addMessageID(result.getMessageID());
     }
-
+    
+    @Override
+    protected void publishThroughput(int messageNumber, DiaryEntry resultingEntry, Integer givenPayloadSize) throws Exception
+    {
+        if(givenPayloadSize < 0)
+        {
+            throw new Exception("Payload size is less than 0!");
+        }
+        
+        ThroughputTemplate template = getThroughputTemplate(PSActionType.P);
+        if(template == null)
+        {
+            throw new Exception("Couldn't create the throughput publication template!");
+        }
+        
+        Publication pubI = template.generatePublication(messageNumber);
+        if(givenPayloadSize > 0)
+        {
+            pubI.setPayload(PayloadProvider.getPayload(givenPayloadSize, payloadContent));
+        }
+        
+        Message result = getPublisher().publish(pubI, brokersURIs.get(0));
+        resultingEntry.addMessageID(result.getMessageID());
+    }
+    
     @Override
     protected String generateThroughputAttributes(PSActionType givenPSAT, int messageNumber) 
     {
@@ -324,6 +415,79 @@ public class PSClientPADRES extends PSClient
             return null;
         }
         
+        ThroughputTemplate template = getThroughputTemplate(givenPSAT);
+        if(template == null)
+        {
+            return null;
+        }
+        
+        return template.generateAttributes(messageNumber);
+    }
+    
+    @Override
+    protected String getThroughputTemplateAttributes(PSActionType givenPSAT)
+    {
+        if(givenPSAT == null)
+        {
+            return null;
+        }
+        
+        ThroughputTemplate template = getThroughputTemplate(givenPSAT);
+        if(template == null)
+        {
+            return null;
+        }
+        
+        return template.getTemplateAttributes();
+    }
+    
+    /**
+     * Gets the ThroughputTemplate for the given action type (and this client's NumAttribute and AttributeRatio)
+     * - building it if this is the first time it's been asked for.
+     * Templates are shared by every client in this JVM.
+     * 
+     * @param givenPSAT - the action type
+     * @return null on error; the template otherwise
+     */
+    private ThroughputTemplate getThroughputTemplate(PSActionType givenPSAT)
+    {
+        boolean isPub = givenPSAT.equals(PSActionType.P) || givenPSAT.equals(PSActionType.R);
+        PSActionType templateType = isPub ? PSActionType.P : givenPSAT;
+        String key = na + "|" + ar + "|" + templateType;
+        
+        ThroughputTemplate retVal = THROUGHPUT_TEMPLATES.get(key);
+        if(retVal == null)
+        {
+            String templateAttributes = buildThroughputAttributes(templateType, ThroughputTemplate.NUMBER_MARKER);
+            try
+            {
+                retVal = new ThroughputTemplate(templateAttributes, isPub);
+            }
+            catch(ParseException e)
+            {
+                nodeLog.error(logHeader + "Couldn't parse throughput template " + templateAttributes + ": ", e);
+                return null;
+            }
+            
+            ThroughputTemplate existing = THROUGHPUT_TEMPLATES.putIfAbsent(key, retVal);
+            if(existing != null)
+            {
+                retVal = existing;
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Builds the throughput attributes for the given action type
+     * 
+     * @param givenPSAT - the action type
+     * @param messageNumber - what to put as the Number attribute's value
+     * @return the attributes
+     */
+    private String buildThroughputAttributes(PSActionType givenPSAT, String messageNumber) 
+    {
         String retVal = null;
         
         if(givenPSAT.equals(PSActionType.P) || givenPSAT.equals(PSActionType.R))
@@ -479,7 +643,7 @@ public class PSClientPADRES extends PSClient
                             + "[LeapingLords,10],"
                             + "[PipingPipers,11],"
                             + "[DrummingDrummers,12]";
-                    
+                
                 }
                 else
                 {
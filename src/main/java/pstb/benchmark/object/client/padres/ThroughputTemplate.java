@@ -0,0 +1,130 @@
+package pstb.benchmark.object.client.padres;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import ca.utoronto.msrg.padres.common.message.Publication;
+import ca.utoronto.msrg.padres.common.message.parser.MessageFactory;
+import ca.utoronto.msrg.padres.common.message.parser.ParseException;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * A pre-built throughput message.
+ * 
+ * Throughput messages for a given NumAttribute / AttributeRatio / PSActionType only differ in their Number attribute,
+ * so the attribute String is split around that value once, and (for publications) parsed into a Publication once.
+ * Every message after that is a prefix + number + suffix String and a duplicate of the prototype Publication.
+ */
+class ThroughputTemplate
+{
+    // Where the message number goes in the attributes given to the constructor
+    public static final String NUMBER_MARKER = "#";
+    private static final String NUMBER_ATTRIBUTE = "Number";
+    
+    private final String templateAttributes;
+    private final String prefix;
+    private final String suffix; // null if these attributes have no Number to fill in
+    private final Publication prototype; // null if this isn't a publication template
+    
+    /**
+     * Constructor
+     * 
+     * @param givenAttributes - the attributes, with NUMBER_MARKER where the message number should go
+     * @param isPublication - should a prototype Publication be built as well?
+     * @throws ParseException if the attributes can't be parsed into a Publication
+     */
+    public ThroughputTemplate(String givenAttributes, boolean isPublication) throws ParseException
+    {
+        templateAttributes = givenAttributes;
+        int markerIndex = givenAttributes.indexOf(NUMBER_MARKER);
+        if(markerIndex < 0)
+        {
+            prefix = givenAttributes;
+            suffix = null;
+        }
+        else
+        {
+            prefix = givenAttributes.substring(0, markerIndex);
+            suffix = givenAttributes.substring(markerIndex + NUMBER_MARKER.length());
+        }
+        
+        if(isPublication)
+        {
+            prototype = MessageFactory.createPublicationFromString(generateAttributes(0));
+        }
+        else
+        {
+            prototype = null;
+        }
+    }
+    
+    /**
+     * @return the attributes this template was built from - NUMBER_MARKER and all
+     */
+    public String getTemplateAttributes()
+    {
+        return templateAttributes;
+    }
+    
+    /**
+     * @param messageNumber - the message number
+     * @return the attribute String for that message
+     */
+    public String generateAttributes(int messageNumber)
+    {
+        if(suffix == null)
+        {
+            return prefix;
+        }
+        
+        return new StringBuilder(prefix.length() + suffix.length() + 11)
+                .append(prefix)
+                .append(messageNumber)
+                .append(suffix)
+                .toString();
+    }
+    
+    /**
+     * @param messageNumber - the message number
+     * @return a new Publication for that message; null if this isn't a publication template
+     */
+    public Publication generatePublication(int messageNumber)
+    {
+        if(prototype == null)
+        {
+            return null;
+        }
+        
+        Publication retVal = prototype.duplicate();
+        // The duplicate carries the prototype's creation time - and receivers measure latency from it
+        retVal.setTimeStamp(new Date());
+        
+        if(suffix != null)
+        {
+            Serializable currentNumber = retVal.getPairMap().get(NUMBER_ATTRIBUTE);
+            retVal.addPair(NUMBER_ATTRIBUTE, matchNumberType(currentNumber, messageNumber));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Keeps the Number attribute the same type the parser gave it
+     */
+    private Serializable matchNumberType(Serializable parsedNumber, int messageNumber)
+    {
+        if(parsedNumber instanceof Double)
+        {
+            return Double.valueOf(messageNumber);
+        }
+        else if(parsedNumber instanceof Long)
+        {
+            return Long.valueOf(messageNumber);
+        }
+        else
+        {
+            return Integer.valueOf(messageNumber);
+        }
+    }
+}
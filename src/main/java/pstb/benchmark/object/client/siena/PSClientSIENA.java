@@ -32,11 +32,16 @@ public class PSClientSIENA extends PSClient
 {
     // Constants
     private static final long serialVersionUID = 1L;
+    private static final String SENDER_ID_SEPARATOR = "-sender";
     private final String standardAttribute = "class,=,\"oneITS\"|Date,any,'some_date'|ID,any,0|Name,any,'some_name'|Address,any,'some_addr'|Latitude,any,0.0|Longitude,any,0.0|LaneIndex,any,0|LoopOccupancy,any,'some_occupancy'|AvgSpeed,any,0|Vehicles/Interval,any,0|VdsDeviceID,any,0|RegionName,any,'some_region'";
     private final String stdPubAttribute = "class,\"oneITS\"|Date,'2012-06-25 00:00:00'|ID,200|Name,'ds0040dsa Allen05'|Address,'SB Allen Road - 401'|Latitude,43.7276177739601|Longitude,-79.4490468206761|LaneIndex,2|LoopOccupancy,'null'|AvgSpeed,73|Vehicles/Interval,1|VdsDeviceID,1271|RegionName,'Allen Road'";
     
+    // The throughput Notification - the SIENA throughput attributes never change, so it's parsed once and shared
+    private static volatile Notification throughputNotification = null;
+    
     // SIENA Client Variables
     private ThinClient actualClient;
+    private transient ThinClient[] senderClients; // one per sender thread - only ever used to publish
     private SIENAListener actualSub;
     
     /**
@@ -88,7 +93,7 @@ public class PSClientSIENA extends PSClient
         
         nodeLog.debug(logHeader + "Creating a subscriber listener...");
         String context = generateNodeContext();
-        actualSub = new SIENAListener(diary, diaryLock, context);
+        actualSub = new SIENAListener(receivedMessages, context);
         nodeLog.info(logHeader + "Listener created.");
         
         return true;
@@ -111,6 +116,62 @@ public class PSClientSIENA extends PSClient
         return true;
     }
     
+    @Override
+    protected boolean openSenderConnections(int numSenders)
+    {
+        String brokerURI = brokersURIs.get(0);
+        senderClients = new ThinClient[numSenders];
+        for(int i = 0 ; i < numSenders ; i++)
+        {
+            String senderID = nodeName + SENDER_ID_SEPARATOR + i;
+            try
+            {
+                senderClients[i] = new ThinClient(brokerURI, senderID);
+            }
+            catch(InvalidSenderException e)
+            {
+                nodeLog.error(logHeader + "Couldn't create sender ThinClient " + senderID + ": ", e);
+                closeSenderConnections();
+                return false;
+            }
+        }
+        
+        nodeLog.debug(logHeader + "Opened " + numSenders + " sender connections.");
+        return true;
+    }
+    
+    @Override
+    protected void closeSenderConnections()
+    {
+        if(senderClients == null)
+        {
+            return;
+        }
+        
+        for(int i = 0 ; i < senderClients.length ; i++)
+        {
+            if(senderClients[i] != null)
+            {
+                senderClients[i].shutdown();
+            }
+        }
+        senderClients = null;
+    }
+    
+    /**
+     * @return the ThinClient the calling thread should publish through - its own sender client if it's a sender thread
+     */
+    private ThinClient getPublisher()
+    {
+        int senderIndex = getSenderIndex();
+        ThinClient[] currentSenders = senderClients;
+        if(senderIndex < 0 || currentSenders == null)
+        {
+            return actualClient;
+        }
+        return currentSenders[senderIndex];
+    }
+    
     @Override
     protected void advertise(String givenAttributes, DiaryEntry resultingEntry) throws Exception
     {
@@ -187,7 +248,28 @@ public class PSClientSIENA extends PSClient
             throw new Exception("Couldn't create notification!");
         }
         
-        actualClient.publish(pubI);
+        getPublisher().publish(pubI);
+        
+        nodeLog.debug(logHeader + "Publication successful.");
+    }
+    
+    @Override
+    protected void publishThroughput(int messageNumber, DiaryEntry resultingEntry, Integer givenPayloadSize) throws Exception
+    {
+        Notification pubI = throughputNotification;
+        if(pubI == null)
+        {
+            // Worst case, two senders both parse it - which is harmless
+            pubI = generateNotificationFromAttributes(stdPubAttribute);
+            if(pubI == null)
+            {
+                throw new Exception("Couldn't create the throughput notification template!");
+            }
+            throughputNotification = pubI;
+        }
+        
+        // The Notification is only read by publish(), so every sender can share it
+        getPublisher().publish(pubI);
         
         nodeLog.debug(logHeader + "Publication successful.");
     }
@@ -305,4 +387,11 @@ public class PSClientSIENA extends PSClient
             return standardAttribute;
         }
     }
+    
+    @Override
+    protected String getThroughputTemplateAttributes(PSActionType givenPSAT)
+    {
+        // SIENA's throughput messages don't carry a message number
+        return generateThroughputAttributes(givenPSAT, 0);
+    }
 }
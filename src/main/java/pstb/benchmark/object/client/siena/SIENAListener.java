@@ -3,16 +3,12 @@
  */
 package pstb.benchmark.object.client.siena;
 
-import java.util.concurrent.locks.ReentrantLock;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
 
-import pstb.analysis.diary.ClientDiary;
-import pstb.analysis.diary.DiaryEntry;
+import pstb.benchmark.object.client.ReceiveRing;
 import pstb.benchmark.process.client.PSTBClientProcess;
-import pstb.startup.workload.PSActionType;
 import siena.Notifiable;
 import siena.Notification;
 import siena.SienaException;
@@ -20,52 +16,44 @@ import siena.SienaException;
 /**
  * @author padres-dev-4187
  *
+ * Listens for the Notifications a SIENA Client has subscribed to.
+ * Received Notifications are written into the Client's ReceiveRing without taking any locks - 
+ * the Client's own thread adds them to the diary.
+ * @see ReceiveRing
  */
 public class SIENAListener implements Notifiable
 {
     // Needed variables
-    private ClientDiary diary;
-    private ReentrantLock diaryLock;
+    private ReceiveRing receivedMessages;
     private String diaryName;
+    private volatile Thread contextThread;
     
     // Logger
     private final String logHeader = "SListener: ";
     private final Logger clientLog = LogManager.getLogger(PSTBClientProcess.class);
     
-    public SIENAListener(ClientDiary givenDiary, ReentrantLock givenLock, String givenDiaryName)
+    public SIENAListener(ReceiveRing givenRing, String givenDiaryName)
     {
-        diary = givenDiary;
-        diaryLock = givenLock;
+        receivedMessages = givenRing;
         diaryName = givenDiaryName;
+        contextThread = null;
     }
 
     @Override
     public void notify(Notification arg0) throws SienaException {
-        ThreadContext.put("client", diaryName);
-        
-        clientLog.debug("Received a new message...");
-        
-        Long currentTime = System.currentTimeMillis();
-        DiaryEntry receivedMsg = new DiaryEntry();
+        Thread currentThread = Thread.currentThread();
+        if(contextThread != currentThread)
+        {
+            ThreadContext.put("client", diaryName);
+            contextThread = currentThread;
+        }
         
+        long currentTime = System.currentTimeMillis();
         String attributes = arg0.toString();
         
-        receivedMsg.setPSActionType(PSActionType.R);
-        receivedMsg.addTimeReceived(currentTime);
-        receivedMsg.addAttributes(attributes);
-
-        diaryLock.lock();
-        try
-        {
-            diary.addDiaryEntryToDiary(receivedMsg);
-        }
-        finally
-        {
-            diaryLock.unlock();
-        }
+        receivedMessages.record(null, ReceiveRing.NO_TIME, currentTime, attributes);
         
         clientLog.debug(logHeader + "New publication received " + attributes + ".");
-        System.out.println(attributes);
     }
 
     @Override
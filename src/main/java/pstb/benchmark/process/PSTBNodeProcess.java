@@ -0,0 +1,80 @@
+package pstb.benchmark.process;
+
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.benchmark.object.PSNode;
+import pstb.startup.config.SupportedEngines.PSEngine;
+import pstb.startup.topology.NodeRole;
+import pstb.util.PSTBError;
+import pstb.util.PSTBUtil;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * A process that holds a single node (a broker or a client):
+ * it gets that node's Object from the master over its connection, and then sets it up, runs it and completes it.
+ */
+public abstract class PSTBNodeProcess extends PSTBProcess {
+    public PSTBNodeProcess(String givenName, String givenContext, String givenIPAddress, Integer givenPort, 
+            PSEngine givenEngine, NodeRole givenRole, Boolean shouldWeSendDiary,
+            boolean areWeDistributed, String givenUsername,
+            Socket givenConnection, OutputStream givenOut,
+            Logger givenLog, String givenLogHeader, String givenTCS)
+    {
+        super(givenName, givenContext, givenIPAddress, givenPort, 
+                givenEngine, givenRole, shouldWeSendDiary,
+                areWeDistributed, givenUsername,
+                givenConnection, givenOut,
+                givenLog, givenLogHeader, givenTCS);
+    }
+    
+    /**
+     * Gets this node's Object from the master and hands it off to complete()
+     */
+    @Override
+    protected void begin()
+    {
+        log.debug(logHeader + "Attempting to send name to master...");
+        PSTBUtil.sendStringAcrossSocket(connOut, nodeName);
+        log.info(logHeader + "Name sent.");
+        
+        log.debug(logHeader + "Attempting to retrieve " + nodeName + "'s Object from master...");
+        Object check = getObjectFromMaster();
+        if(check == null)
+        {
+            log.error(logHeader + "Didn't get object " + nodeName + "'s Object from master!");
+            System.exit(PSTBError.N_OBJECT);
+        }
+        log.info(logHeader + nodeName + "'s Object received.");
+        
+        complete((PSNode) check);
+    }
+    
+    protected static Object getObjectFromMaster()
+    {
+        return getObjectFromMaster(connection);
+    }
+    
+    protected void initalized()
+    {
+        log.debug(logHeader + "Letting server know we've initialized...");
+        PSTBUtil.sendStringAcrossSocket(connOut, PSTBUtil.INIT);
+        log.debug(logHeader + "Server should know of initialization.");
+    }
+    
+    protected void error()
+    {
+        log.debug(logHeader + "Letting server know we've failed...");
+        PSTBUtil.sendStringAcrossSocket(connOut, PSTBUtil.ERROR);
+        log.debug(logHeader + "Server should know of failure.");
+    }
+    
+    protected abstract void complete(PSNode givenNode);
+    
+    protected abstract boolean setup(PSNode givenNode);
+    
+    protected abstract boolean run();
+}
@@ -12,11 +12,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
 
-import pstb.benchmark.object.PSNode;
 import pstb.benchmark.process.broker.PADRESBrokerProcess;
 import pstb.benchmark.process.broker.PSTBBrokerProcess;
 import pstb.benchmark.process.broker.SIENABrokerProcess;
 import pstb.benchmark.process.client.PADRESClientProcess;
+import pstb.benchmark.process.client.PSTBClientHostProcess;
 import pstb.benchmark.process.client.PSTBClientProcess;
 import pstb.benchmark.process.client.SIENAClientProcess;
 import pstb.startup.config.SupportedEngines.PSEngine;
@@ -27,6 +27,10 @@ import pstb.util.PSTBUtil;
 /**
  * @author padres-dev-4187
  *
+ * Everything a process started on a node has in common:
+ * parsing its arguments, and getting Objects from the master.
+ * What the process then does is up to begin().
+ * @see PSTBNodeProcess
  */
 public abstract class PSTBProcess {
     // Constants
@@ -104,22 +108,15 @@ public abstract class PSTBProcess {
         ThreadContext.put(threadContextString, context);
         Thread.currentThread().setName(context);
         
-        log.debug(logHeader + "Attempting to send name to master...");
-        PSTBUtil.sendStringAcrossSocket(connOut, nodeName);
-        log.info(logHeader + "Name sent.");
-        
-        log.debug(logHeader + "Attempting to retrieve " + nodeName + "'s Object from master...");
-        Object check = getObjectFromMaster();
-        if(check == null)
-        {
-            log.error(logHeader + "Didn't get object " + nodeName + "'s Object from master!");
-            System.exit(PSTBError.N_OBJECT);
-        }
-        log.info(logHeader + nodeName + "'s Object received.");
-        
-        fleshedNode.complete((PSNode) check);
+        fleshedNode.begin();
     }
     
+    /**
+     * Does whatever this process is for, once its arguments have been parsed
+     * (It should exit the process when it's done.)
+     */
+    protected abstract void begin();
+    
     private static PSTBProcess parseArguments(String[] args)
     {
         PSTBProcess retVal = null;
@@ -182,24 +179,29 @@ public abstract class PSTBProcess {
         
         sendDiary = Boolean.valueOf(sendDiaryString);
         
-        try
-        {
-            connection = new Socket(masterIPAddress, portNumber);
-        }
-        catch (IOException e) 
-        {
-            log.error(logHeader + "error creating a new Socket: ", e);
-            return null;
-        }
-        
-        try
-        {
-            connOut = connection.getOutputStream();
-        }
-        catch(IOException e)
+        // A client host is given a list of client names - and connects to the master once per client itself
+        boolean hosting = role.equals(NodeRole.C) && nodeName.contains(PSTBUtil.ITEM_SEPARATOR);
+        if(!hosting)
         {
-            log.error(logHeader + "Couldn't create an OutputStream from connection!");
-            return null;
+            try
+            {
+                connection = new Socket(masterIPAddress, portNumber);
+            }
+            catch (IOException e) 
+            {
+                log.error(logHeader + "error creating a new Socket: ", e);
+                return null;
+            }
+            
+            try
+            {
+                connOut = connection.getOutputStream();
+            }
+            catch(IOException e)
+            {
+                log.error(logHeader + "Couldn't create an OutputStream from connection!");
+                return null;
+            }
         }
         
         if(role.equals(NodeRole.B))
@@ -231,7 +233,16 @@ public abstract class PSTBProcess {
             log = LogManager.getLogger(PSTBClientProcess.class);
             threadContextString = "client";
             
-            if (engine.equals(PSEngine.PADRES))
+            if(hosting)
+            {
+                logHeader = "CHP: ";
+                retVal = new PSTBClientHostProcess(nodeName, context, masterIPAddress, portNumber, 
+                        engine, role, sendDiary,
+                        distributed, username,
+                        null, null, 
+                        log,logHeader, threadContextString);
+            }
+            else if (engine.equals(PSEngine.PADRES))
             {
                 logHeader = "PCP: ";
                 retVal = new PADRESClientProcess(nodeName, context, masterIPAddress, portNumber, 
@@ -254,12 +265,18 @@ public abstract class PSTBProcess {
         return retVal;
     }
     
-    protected static Object getObjectFromMaster()
+    /**
+     * Reads a node Object the master has sent down the given connection
+     * 
+     * @param givenConnection - the connection to the master
+     * @return null on error; the Object otherwise
+     */
+    protected static Object getObjectFromMaster(Socket givenConnection)
     {
         Object retVal = null;
         try
         {
-            ObjectInputStream oISIn = new ObjectInputStream(connection.getInputStream());
+            ObjectInputStream oISIn = new ObjectInputStream(givenConnection.getInputStream());
             retVal = oISIn.readObject();
         }
         catch (IOException e)
@@ -275,24 +292,4 @@ public abstract class PSTBProcess {
         
         return retVal;
     }
-    
-    protected void initalized()
-    {
-        log.debug(logHeader + "Letting server know we've initialized...");
-        PSTBUtil.sendStringAcrossSocket(connOut, PSTBUtil.INIT);
-        log.debug(logHeader + "Server should know of initialization.");
-    }
-    
-    protected void error()
-    {
-        log.debug(logHeader + "Letting server know we've failed...");
-        PSTBUtil.sendStringAcrossSocket(connOut, PSTBUtil.ERROR);
-        log.debug(logHeader + "Server should know of failure.");
-    }
-    
-    protected abstract void complete(PSNode givenNode);
-    
-    protected abstract boolean setup(PSNode givenNode);
-    
-    protected abstract boolean run();
 }
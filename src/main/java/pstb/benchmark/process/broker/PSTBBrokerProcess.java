@@ -6,7 +6,7 @@ import java.net.Socket;
 import org.apache.logging.log4j.Logger;
 
 import pstb.benchmark.object.PSNode;
-import pstb.benchmark.process.PSTBProcess;
+import pstb.benchmark.process.PSTBNodeProcess;
 import pstb.creation.topology.PADRESTopology;
 import pstb.startup.config.SupportedEngines.PSEngine;
 import pstb.startup.topology.NodeRole;
@@ -35,7 +35,7 @@ import pstb.util.PSTBError;
  *         Otherwise
  *             Float until killed
  */
-public abstract class PSTBBrokerProcess extends PSTBProcess{
+public abstract class PSTBBrokerProcess extends PSTBNodeProcess{
     public PSTBBrokerProcess(String givenName, String givenContext, String givenIPAddress, Integer givenPort, 
             PSEngine givenEngine, NodeRole givenRole, Boolean shouldWeSendDiary,
             boolean areWeDistributed, String givenUsername,
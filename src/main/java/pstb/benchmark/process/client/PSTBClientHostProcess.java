@@ -0,0 +1,242 @@
+package pstb.benchmark.process.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+
+import pstb.benchmark.object.client.PSClient;
+import pstb.benchmark.object.client.PSClientMode;
+import pstb.benchmark.object.client.padres.PSClientPADRES;
+import pstb.benchmark.object.client.siena.PSClientSIENA;
+import pstb.benchmark.process.PSTBProcess;
+import pstb.startup.config.SupportedEngines.PSEngine;
+import pstb.startup.topology.NodeRole;
+import pstb.util.PSTBError;
+import pstb.util.PSTBUtil;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * The Client Host Process
+ * Runs several clients inside one JVM, each on its own thread
+ * - so that a machine can hold far more clients than it could if each one needed its own JVM.
+ * 
+ * The host is given a list of client names (separated by PSTBUtil.ITEM_SEPARATOR) instead of a single name.
+ * For each client it then does exactly what a PSTBClientProcess would:
+ * connect to the master, get the client object, setup, initialize, wait for the start time, run and record the diary.
+ * Each client therefore keeps its own connection to the master and its own diary.
+ * (So a host isn't a PSTBNodeProcess - it never holds a single node.)
+ * 
+ * Every hosted client gets a platform thread of its own for its whole run
+ * - on top of whatever threads its PADRES / SIENA client and its sender pool start.
+ * That is what limits how many clients one host can hold.
+ * @see PSTBClientProcess
+ */
+public class PSTBClientHostProcess extends PSTBProcess {
+    private ArrayList<String> clientNames;
+    
+    public PSTBClientHostProcess(String givenName, String givenContext, String givenIPAddress, Integer givenPort,
+            PSEngine givenEngine, NodeRole givenRole, Boolean shouldWeSendDiary,
+            boolean areWeDistributed, String givenUsername,
+            Socket givenConnection, OutputStream givenOut,
+            Logger givenLog, String givenLogHeader, String givenTCS)
+    {
+        super(givenName, givenContext, givenIPAddress, givenPort,
+                givenEngine, givenRole, shouldWeSendDiary,
+                areWeDistributed, givenUsername,
+                givenConnection, givenOut,
+                givenLog, givenLogHeader, givenTCS);
+        
+        clientNames = new ArrayList<String>(Arrays.asList(givenName.split(PSTBUtil.ITEM_SEPARATOR)));
+    }
+    
+    /**
+     * Runs every hosted client on its own thread, and exits once they've all finished
+     */
+    @Override
+    protected void begin()
+    {
+        int numClients = clientNames.size();
+        log.info(logHeader + "Hosting " + numClients + " clients.");
+        
+        ExecutorService hostedClients = Executors.newFixedThreadPool(numClients);
+        ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for(int i = 0 ; i < numClients ; i++)
+        {
+            String clientIName = clientNames.get(i);
+            results.add(hostedClients.submit(() -> hostClient(clientIName)));
+        }
+        
+        boolean allSuccessful = true;
+        for(int i = 0 ; i < numClients ; i++)
+        {
+            String clientIName = clientNames.get(i);
+            try
+            {
+                if(!results.get(i).get())
+                {
+                    log.error(logHeader + "Hosted client " + clientIName + " failed!");
+                    allSuccessful = false;
+                }
+            }
+            catch(InterruptedException | ExecutionException e)
+            {
+                log.error(logHeader + "Error waiting for hosted client " + clientIName + ": ", e);
+                allSuccessful = false;
+            }
+        }
+        hostedClients.shutdown();
+        
+        if(!allSuccessful)
+        {
+            log.error(logHeader + "Not every hosted client completed its run!");
+            System.exit(PSTBError.C_RUN);
+        }
+        
+        log.info("Successful run with client host " + nodeName);
+        System.exit(0);
+    }
+    
+    /**
+     * Runs one hosted client from start to finish
+     * 
+     * @param clientName - the name of the client
+     * @return false on error; true otherwise
+     */
+    private boolean hostClient(String clientName)
+    {
+        Thread.currentThread().setName(clientName);
+        
+        Socket clientConnection = null;
+        OutputStream clientOut = null;
+        try
+        {
+            clientConnection = new Socket(masterIPAddress, portNumber);
+            clientOut = clientConnection.getOutputStream();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't connect " + clientName + " to the master: ", e);
+            return false;
+        }
+        
+        try
+        {
+            log.debug(logHeader + "Attempting to retrieve " + clientName + "'s Object from master...");
+            PSTBUtil.sendStringAcrossSocket(clientOut, clientName);
+            Object check = getObjectFromMaster(clientConnection);
+            if(check == null)
+            {
+                log.error(logHeader + "Didn't get object " + clientName + "'s Object from master!");
+                return false;
+            }
+            PSClient hostedClient = (PSClient) check;
+            
+            String clientContext = hostedClient.generateNodeContext();
+            ThreadContext.put(threadContextString, clientContext);
+            log.info(logHeader + clientName + "'s Object received.");
+            
+            PSClientMode givenMode = hostedClient.getClientMode();
+            if(givenMode.equals(PSClientMode.TPPub) || givenMode.equals(PSClientMode.TPSub))
+            {
+                hostedClient.setMIP(masterIPAddress);
+                hostedClient.setMasterPort(portNumber);
+            }
+            else if(givenMode.equals(PSClientMode.Scenario) && !sendDiary)
+            {
+                // A scenario run is useless without its diary
+                log.error(logHeader + "Client " + clientName + " is a Scenario client, but its diary won't be sent!");
+                PSTBUtil.sendStringAcrossSocket(clientOut, PSTBUtil.ERROR);
+                return false;
+            }
+            
+            boolean setupCheck = setupClient(hostedClient);
+            if(!setupCheck)
+            {
+                log.error(logHeader + "Couldn't setup client " + clientName + "!");
+                PSTBUtil.sendStringAcrossSocket(clientOut, PSTBUtil.ERROR);
+                return false;
+            }
+            
+            PSTBUtil.sendStringAcrossSocket(clientOut, PSTBUtil.INIT);
+            
+            Long startTime = PSTBClientProcess.getStartTimeFromMaster(clientConnection, clientOut);
+            if(startTime == null)
+            {
+                log.error(logHeader + "Didn't get " + clientName + "'s start signal from master!");
+                return false;
+            }
+            hostedClient.setStartTime(startTime);
+            
+            boolean runCheck = hostedClient.startRun();
+            if(!runCheck)
+            {
+                log.error(logHeader + "Run failed in client " + clientName + "!");
+                return false;
+            }
+            
+            if(sendDiary)
+            {
+                boolean diaryCheck = PSTBClientProcess.recordDiary(hostedClient, clientContext);
+                if(!diaryCheck)
+                {
+                    log.error(logHeader + "Couldn't record " + clientName + "'s diary!");
+                    return false;
+                }
+            }
+            
+            log.info(logHeader + "Hosted client " + clientName + " complete.");
+            return true;
+        }
+        finally
+        {
+            try
+            {
+                clientConnection.close();
+            }
+            catch(IOException e)
+            {
+                log.warn(logHeader + "Couldn't close " + clientName + "'s connection to the master: ", e);
+            }
+        }
+    }
+    
+    /**
+     * Sets up a hosted client, the same way its PSTBClientProcess would
+     * 
+     * @param givenClient - the client
+     * @return false on error; true otherwise
+     */
+    private boolean setupClient(PSClient givenClient)
+    {
+        String givenName = givenClient.getNodeName();
+        
+        boolean setupCheck = false;
+        if(engine.equals(PSEngine.PADRES))
+        {
+            setupCheck = ((PSClientPADRES) givenClient).initialize(true);
+        }
+        else if(engine.equals(PSEngine.SIENA))
+        {
+            setupCheck = ((PSClientSIENA) givenClient).setupClient();
+        }
+        
+        if(!setupCheck)
+        {
+            log.error(logHeader + "Couldn't setup client " + givenName);
+            return false;
+        }
+        
+        log.info(logHeader + givenName + " setup.");
+        return true;
+    }
+}
@@ -1,18 +1,21 @@
 package pstb.benchmark.process.client;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import org.apache.logging.log4j.Logger;
 
 import pstb.analysis.diary.ClientDiary;
+import pstb.analysis.diary.DiaryWriter;
 import pstb.benchmark.object.PSNode;
 import pstb.benchmark.object.client.PSClient;
 import pstb.benchmark.object.client.PSClientMode;
-import pstb.benchmark.process.PSTBProcess;
+import pstb.benchmark.process.PSTBNodeProcess;
 import pstb.creation.topology.PADRESTopology;
 import pstb.startup.config.SupportedEngines.PSEngine;
 import pstb.startup.topology.NodeRole;
@@ -46,7 +49,7 @@ import pstb.util.PSTBUtil;
  *         Otherwise
  *             Exit with success
  */
-public abstract class PSTBClientProcess extends PSTBProcess {
+public abstract class PSTBClientProcess extends PSTBNodeProcess {
     public PSTBClientProcess(String givenName, String givenContext, String givenIPAddress, Integer givenPort, 
             PSEngine givenEngine, NodeRole givenRole, Boolean shouldWeSendDiary,
             boolean areWeDistributed, String givenUsername,
@@ -93,13 +96,14 @@ public abstract class PSTBClientProcess extends PSTBProcess {
         initalized();
         
         log.debug(logHeader + "Attempting to get start signal from master...");
-        String start = PSTBUtil.readConnection(connection, log, logHeader);
-        if(start != null && !start.equals(PSTBUtil.START))
+        Long startTime = getStartTimeFromMaster(connection, connOut);
+        if(startTime == null)
         {
             log.error(logHeader + "Didn't get start signal from master!");
             error();
             System.exit(PSTBError.C_START);
         }
+        givenClient.setStartTime(startTime);
         log.debug(logHeader + "Start signal received.");
         
         log.debug(logHeader + "Attempting to run experiment...");
@@ -122,54 +126,125 @@ public abstract class PSTBClientProcess extends PSTBProcess {
         
         if(sendDiary)
         {
-            log.debug(logHeader + "recording a diary object with name " + context);
-            String diaryFileString = context + ".dia";
-            FileOutputStream out = null;
-            try 
-            {
-                out = new FileOutputStream(diaryFileString);
-            } 
-            catch (FileNotFoundException e) 
+            boolean diaryCheck = recordDiary(givenClient, context);
+            if(!diaryCheck)
             {
-                log.error(logHeader + "Couldn't create a FileOutputStream to record diary object: ", e);
+                log.error(logHeader + "Couldn't record " + nodeName + "'s diary!");
                 System.exit(PSTBError.C_DIARY);
             }
-            
-            ClientDiary currentDiary = givenClient.getDiary();
-            boolean diaryCheck = PSTBUtil.sendObject(currentDiary, out, log, logHeader);
-            if(!diaryCheck)
+        }
+        
+        log.info("Successful run with client " + nodeName);
+        System.exit(0);
+    }
+    
+    /**
+     * Answers the master's clock sync requests until it sends the start signal
+     * 
+     * @param givenConnection - the connection to the master
+     * @param givenOut - the OutputStream of that connection
+     * @return null on error; the time the run should start at (in this machine's System.currentTimeMillis()) otherwise
+     */
+    protected static Long getStartTimeFromMaster(Socket givenConnection, OutputStream givenOut)
+    {
+        String startPrefix = PSTBUtil.START + PSTBUtil.ITEM_SEPARATOR;
+        
+        String line = PSTBUtil.readConnection(givenConnection, log, logHeader);
+        while(line != null && line.equals(PSTBUtil.SYNC))
+        {
+            PSTBUtil.sendStringAcrossSocket(givenOut, String.valueOf(System.currentTimeMillis()));
+            line = PSTBUtil.readConnection(givenConnection, log, logHeader);
+        }
+        
+        if(line == null || !line.startsWith(startPrefix))
+        {
+            log.error(logHeader + "Expected a start signal - got " + line + "!");
+            return null;
+        }
+        
+        return PSTBUtil.checkIfLong(line.substring(startPrefix.length()), true, log);
+    }
+    
+    /**
+     * Records the given client's diary to a file named after the given context
+     * - and sends it upstream if we're distributed
+     * 
+     * @param givenClient - the client whose diary should be recorded
+     * @param diaryContext - the client's context
+     * @return false on error; true otherwise
+     */
+    protected static boolean recordDiary(PSClient givenClient, String diaryContext)
+    {
+        log.debug(logHeader + "recording a diary object with name " + diaryContext);
+        String diaryFileString = diaryContext + ".dia";
+        
+        ClientDiary currentDiary = givenClient.getDiary();
+        if(currentDiary.isSpilling())
+        {
+            boolean spillCheck = finishSpilledDiary(currentDiary, Paths.get(diaryFileString));
+            if(!spillCheck)
             {
-                log.error(logHeader + "Couldn't record " + nodeName + "'s diary object!");
-                System.exit(PSTBError.C_DIARY);
+                log.error(logHeader + "Couldn't finish " + diaryContext + "'s spilled diary!");
+                return false;
             }
-            
-            try 
+        }
+        else
+        {
+            boolean writeCheck = DiaryWriter.writeDiary(currentDiary, diaryContext, Paths.get(diaryFileString), log, logHeader);
+            if(!writeCheck)
             {
-                out.close();
-            } 
-            catch (IOException e) 
+                log.error(logHeader + "Couldn't record " + diaryContext + "'s diary object!");
+                return false;
+            }
+        }
+        
+        if(distributed)
+        {
+            String[] command = {"./sendDiaryUpstream.sh", username, masterIPAddress, diaryFileString};
+            Boolean sendDiaryCheck = PSTBUtil.createANewProcess(command, log, true, true,
+                                                                    "Error creating process to send " + diaryContext + "'s diary: ", 
+                                                                    "Sent " + diaryContext + "'s diary upstream.", 
+                                                                    "Couldn't send " + diaryContext + "'s diary upstream.");
+            if(sendDiaryCheck == null || !sendDiaryCheck.booleanValue())
             {
-                log.error(logHeader + "error closing diary OutputStream: ", e);
-                System.exit(PSTBError.C_DIARY);
+                log.error(logHeader + "error sending diary!");
+                return false;
             }
-            
-            if(distributed)
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Writes the last chunk of a spilled diary, and makes sure the spill file is where the diary file should be
+     * 
+     * @param givenDiary - the spilled diary
+     * @param diaryFile - where the diary file should be
+     * @return false on error; true otherwise
+     */
+    private static boolean finishSpilledDiary(ClientDiary givenDiary, Path diaryFile)
+    {
+        boolean finishCheck = givenDiary.finishSpilling(log);
+        if(!finishCheck)
+        {
+            return false;
+        }
+        
+        Path spillFile = givenDiary.getSpillFile();
+        if(!spillFile.toAbsolutePath().equals(diaryFile.toAbsolutePath()))
+        {
+            try
+            {
+                Files.move(spillFile, diaryFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch(IOException e)
             {
-                String[] command = {"./sendDiaryUpstream.sh", username, masterIPAddress, diaryFileString};
-                Boolean sendDiaryCheck = PSTBUtil.createANewProcess(command, log, true, true,
-                                                                        "Error creating process to send " + nodeName + "'s diary: ", 
-                                                                        "Sent " + nodeName + "'s diary upstream.", 
-                                                                        "Couldn't send " + nodeName + "'s diary upstream.");
-                if(sendDiaryCheck == null || !sendDiaryCheck.booleanValue())
-                {
-                    log.error(logHeader + "error sending diary!");
-                    System.exit(PSTBError.C_DIARY);
-                }
+                log.error(logHeader + "Couldn't move the spilled diary " + spillFile + " to " + diaryFile + ": ", e);
+                return false;
             }
         }
         
-        log.info("Successful run with client " + nodeName);
-        System.exit(0);
+        return true;
     }
     
     protected abstract boolean cleanup();
@@ -0,0 +1,120 @@
+package pstb.benchmark.throughput;
+
+import pstb.analysis.diary.DiaryEntry;
+import pstb.startup.config.RateSearch;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * A PID controller that steers the message rate towards the edge of stability.
+ * 
+ * The error is the topology's headroom in the last round, scaled so that 1 means "keeping up easily" and 0 means "at the limit":
+ * the smaller of its throughput headroom (how far its delivered / offered ratio is above STABLE_THROUGHPUT_RATIO of the baseline)
+ * and its latency headroom (how far its latency is below LATENCY_GROWTH_LIMIT times the baseline).
+ * The controller's output is a relative step: the rate is multiplied by (1 + output).
+ * 
+ * Below saturation the headroom barely changes with the rate, so a fixed gain would just bounce across the edge.
+ * Instead the step is limited, starting at MAX_STEP, and every time the error changes sign (i.e. the rate crossed the edge)
+ * that limit is multiplied by STEP_DECAY and the integral is reset.
+ * (The integral also only grows while the output isn't being limited.)
+ * 
+ * The search is over once the step limit falls below CONVERGENCE_STEP, or after MAX_ROUNDS rounds
+ * - either way, the final throughput is the average of the last STEADY_ROUNDS rounds' throughputs.
+ */
+public class GradientSearch extends RateSearchStrategy
+{
+    private static final double KP = 0.5;
+    private static final double KI = 0.1;
+    private static final double KD = 0.1;
+    private static final double MAX_STEP = 1.0;
+    private static final double STEP_DECAY = 0.5;
+    private static final double CONVERGENCE_STEP = 0.02;
+    private static final int STEADY_ROUNDS = 3;
+    private static final int MAX_ROUNDS = 100;
+    
+    private double integral;
+    private double lastError;
+    private double stepLimit;
+    private int numRounds;
+    private double[] recentThroughputs;
+    
+    public GradientSearch()
+    {
+        super();
+        integral = 0.0;
+        lastError = Double.NaN;
+        stepLimit = MAX_STEP;
+        numRounds = 0;
+        recentThroughputs = new double[STEADY_ROUNDS];
+    }
+    
+    @Override
+    public RateSearch getType()
+    {
+        return RateSearch.Gradient;
+    }
+    
+    @Override
+    public Boolean nextRound(DiaryEntry entryI, double currentThroughput, double roundThroughput, double roundLatency)
+    {
+        isStable(roundThroughput, roundLatency);
+        double normalizedRatio = (roundThroughput / messageRate) / getBaselineRatio();
+        if(Double.isNaN(normalizedRatio) || Double.isInfinite(normalizedRatio))
+        {
+            normalizedRatio = 0.0;
+        }
+        entryI.setCurrentRatio(normalizedRatio);
+        
+        // Whichever of throughput and latency is closer to its limit drives the controller
+        double error = (normalizedRatio - STABLE_THROUGHPUT_RATIO) / (1.0 - STABLE_THROUGHPUT_RATIO);
+        if(roundLatency > 0.0 && getBaselineLatency() > 0.0)
+        {
+            double latencyLimit = LATENCY_GROWTH_LIMIT * getBaselineLatency();
+            double latencyError = (latencyLimit - roundLatency) / (latencyLimit - getBaselineLatency());
+            error = Math.min(error, latencyError);
+        }
+        error = Math.min(Math.max(error, -1.0), 1.0);
+        
+        if(!Double.isNaN(lastError) && (error * lastError) < 0.0)
+        {
+            stepLimit *= STEP_DECAY;
+            integral = 0.0;
+        }
+        entryI.setUpperRate(messageRate * (1.0 + stepLimit));
+        entryI.setLowerRate(messageRate / (1.0 + stepLimit));
+        
+        double derivative = Double.isNaN(lastError) ? 0.0 : (error - lastError);
+        double output = (KP * error) + (KI * (integral + error)) + (KD * derivative);
+        
+        // Limited the same amount in both directions (in terms of the rate's ratio)
+        double minStep = -stepLimit / (1.0 + stepLimit);
+        if(output > minStep && output < stepLimit)
+        {
+            integral += error;
+        }
+        output = Math.min(Math.max(output, minStep), stepLimit);
+        lastError = error;
+        
+        entryI.setSearchPhase(RateSearchPhase.Control);
+        
+        recentThroughputs[numRounds % STEADY_ROUNDS] = roundThroughput;
+        numRounds++;
+        
+        if(stepLimit < CONVERGENCE_STEP || numRounds >= MAX_ROUNDS)
+        {
+            double sum = 0.0;
+            int numRecent = Math.min(numRounds, STEADY_ROUNDS);
+            for(int i = 0 ; i < numRecent ; i++)
+            {
+                sum += recentThroughputs[i];
+            }
+            finalThroughput = sum / numRecent;
+            entryI.setAverageThroughput(finalThroughput);
+            entryI.setSearchPhase(RateSearchPhase.Converged);
+            return false;
+        }
+        
+        messageRate *= (1.0 + output);
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package pstb.benchmark.throughput;
+
+import pstb.analysis.diary.DiaryEntry;
+import pstb.startup.config.RateSearch;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Ramps the message rate up by RAMP_FACTOR every stable round, until the topology can't keep up.
+ * That brackets the saturation point between the last stable rate and the first unstable one,
+ * and the bracket is then bisected until it's within BISECT_TOLERANCE of its upper end.
+ * So a saturation point of r takes about log2(r) + log2(1 / BISECT_TOLERANCE) rounds to find.
+ * 
+ * The final throughput is what was delivered during the highest stable round.
+ */
+public class RampBisectSearch extends RateSearchStrategy
+{
+    private static final double RAMP_FACTOR = 2.0;
+    private static final double BISECT_TOLERANCE = 0.05;
+    private static final double MIN_MESSAGES_PER_SECOND = 1.0;
+    
+    private boolean rampingUp;
+    private double lowerRate;
+    private double upperRate;
+    private double lowerThroughput;
+    
+    public RampBisectSearch()
+    {
+        super();
+        rampingUp = true;
+        lowerRate = 0.0;
+        upperRate = Double.POSITIVE_INFINITY;
+        lowerThroughput = Double.NaN;
+    }
+    
+    @Override
+    public RateSearch getType()
+    {
+        return RateSearch.RampBisect;
+    }
+    
+    @Override
+    public Boolean nextRound(DiaryEntry entryI, double currentThroughput, double roundThroughput, double roundLatency)
+    {
+        boolean stable = isStable(roundThroughput, roundLatency);
+        entryI.setCurrentRatio(roundThroughput / messageRate);
+        
+        if(stable)
+        {
+            lowerRate = messageRate;
+            lowerThroughput = roundThroughput;
+        }
+        else
+        {
+            upperRate = messageRate;
+            rampingUp = false;
+        }
+        
+        if(rampingUp)
+        {
+            entryI.setSearchPhase(RateSearchPhase.RampUp);
+            entryI.setLowerRate(lowerRate);
+            messageRate *= RAMP_FACTOR;
+            return true;
+        }
+        
+        entryI.setSearchPhase(RateSearchPhase.Bisect);
+        entryI.setLowerRate(lowerRate);
+        entryI.setUpperRate(upperRate);
+        
+        if((upperRate - lowerRate) <= (BISECT_TOLERANCE * upperRate) || upperRate <= MIN_MESSAGES_PER_SECOND)
+        {
+            // If no round was ever stable, there's no throughput to report
+            finalThroughput = lowerThroughput;
+            entryI.setSearchPhase(Double.isNaN(finalThroughput) ? RateSearchPhase.Failed : RateSearchPhase.Converged);
+            return false;
+        }
+        
+        messageRate = (lowerRate + upperRate) / 2.0;
+        return true;
+    }
+}
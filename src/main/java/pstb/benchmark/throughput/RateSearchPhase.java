@@ -0,0 +1,10 @@
+package pstb.benchmark.throughput;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * What a RateSearchStrategy was doing in a given round
+ */
+public enum RateSearchPhase {
+    Secant, RampUp, Bisect, Control, Converged, Failed
+}
@@ -0,0 +1,145 @@
+package pstb.benchmark.throughput;
+
+import pstb.analysis.diary.DiaryEntry;
+import pstb.startup.config.RateSearch;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * How the TPMaster searches for the highest message rate the topology can sustain.
+ * 
+ * Every round, the master tells the strategy what happened at the current message rate
+ * and the strategy picks the next one - or decides the search is over.
+ * Each strategy records what it did (its phase, its bounds, the next rate) in that round's DiaryEntry,
+ * so the master diary holds the whole convergence trace.
+ * 
+ * A round counts as stable if the topology kept up with it:
+ * - its delivered / offered ratio is at least STABLE_THROUGHPUT_RATIO of the baseline ratio
+ * (the baseline stands in for the fan-out, as a rate that the topology keeps up with delivers everything)
+ * - and its latency is at most LATENCY_GROWTH_LIMIT times the baseline latency.
+ * The baselines are the averages over the stable rounds so far
+ * - an average rather than a best, so one lucky round doesn't make every round after it look unstable.
+ * (The first round that delivers anything has nothing to be compared to, so it's always stable.)
+ */
+public abstract class RateSearchStrategy
+{
+    public static final double INIT_MESSAGES_PER_SECOND = 10.0;
+    protected static final double STABLE_THROUGHPUT_RATIO = 0.9;
+    protected static final double LATENCY_GROWTH_LIMIT = 2.0;
+    
+    protected double messageRate;
+    protected double finalThroughput;
+    private double sumStableRatios;
+    private double sumStableLatencies;
+    private int numStableRounds;
+    
+    protected RateSearchStrategy()
+    {
+        messageRate = INIT_MESSAGES_PER_SECOND;
+        finalThroughput = Double.NaN;
+        sumStableRatios = 0.0;
+        sumStableLatencies = 0.0;
+        numStableRounds = 0;
+    }
+    
+    /**
+     * Creates the requested strategy
+     * 
+     * @param givenRS - the strategy
+     * @return the strategy; null if it isn't supported
+     */
+    public static RateSearchStrategy create(RateSearch givenRS)
+    {
+        switch(givenRS)
+        {
+            case Secant:
+                return new SecantSearch();
+            case RampBisect:
+                return new RampBisectSearch();
+            case Gradient:
+                return new GradientSearch();
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * @return which strategy this is
+     */
+    public abstract RateSearch getType();
+    
+    /**
+     * Picks the next message rate, given what happened during the last round
+     * 
+     * @param entryI - the round's DiaryEntry - to record the search's trace into
+     * @param currentThroughput - the messages per second received since the run started
+     * @param roundThroughput - the messages per second received during the last round
+     * @param roundLatency - the average latency of those messages
+     * @return null on error; false if the search is over; true if another round is needed
+     */
+    public abstract Boolean nextRound(DiaryEntry entryI, double currentThroughput, double roundThroughput, double roundLatency);
+    
+    /**
+     * @return the message rate (messages per second, across all publishers) to run the next round at
+     */
+    public double getMessageRate()
+    {
+        return messageRate;
+    }
+    
+    /**
+     * @return the throughput the search settled on; NaN if it hasn't (or couldn't)
+     */
+    public double getFinalThroughput()
+    {
+        return finalThroughput;
+    }
+    
+    /**
+     * Judges whether the topology kept up with the last round's message rate
+     * (Every round should be judged exactly once, in order - the baselines are updated here.)
+     * 
+     * @param roundThroughput - the messages per second received during the round
+     * @param roundLatency - the average latency of those messages
+     * @return true if it's stable; false otherwise
+     */
+    protected boolean isStable(double roundThroughput, double roundLatency)
+    {
+        double ratio = roundThroughput / messageRate;
+        
+        // Nothing getting through is never stable
+        boolean stable = (ratio > 0.0);
+        if(stable && numStableRounds > 0)
+        {
+            boolean throughputStable = ratio >= (STABLE_THROUGHPUT_RATIO * getBaselineRatio());
+            boolean latencyStable = (getBaselineLatency() <= 0.0) 
+                    || (roundLatency <= (LATENCY_GROWTH_LIMIT * getBaselineLatency()));
+            stable = throughputStable && latencyStable;
+        }
+        
+        if(stable)
+        {
+            sumStableRatios += ratio;
+            sumStableLatencies += roundLatency;
+            numStableRounds++;
+        }
+        
+        return stable;
+    }
+    
+    /**
+     * @return the average delivered / offered ratio of the stable rounds so far; NaN if there haven't been any
+     */
+    protected double getBaselineRatio()
+    {
+        return (numStableRounds == 0) ? Double.NaN : sumStableRatios / numStableRounds;
+    }
+    
+    /**
+     * @return the average latency of the stable rounds so far; NaN if there haven't been any
+     */
+    protected double getBaselineLatency()
+    {
+        return (numStableRounds == 0) ? Double.NaN : sumStableLatencies / numStableRounds;
+    }
+}
@@ -0,0 +1,101 @@
+package pstb.benchmark.throughput;
+
+import java.awt.geom.Point2D;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import pstb.analysis.diary.DiaryEntry;
+import pstb.startup.config.RateSearch;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * The original search: move the message rate along the secant between this round's throughput
+ * and the throughput QUEUE_SIZE rounds ago, and stop once that secant flattens out below TOLERANCE_LIMIT.
+ * (It works on the throughput since the run started, rather than the last round's.)
+ */
+public class SecantSearch extends RateSearchStrategy
+{
+    private static final double TOLERANCE_LIMIT = 0.1;
+    private static final int MR_CONSTANT = 20;
+    private static final int QUEUE_SIZE = 10;
+    
+    private ArrayBlockingQueue<Point2D.Double> queue;
+    
+    public SecantSearch()
+    {
+        super();
+        queue = new ArrayBlockingQueue<Point2D.Double>(QUEUE_SIZE);
+        queue.add(new Point2D.Double());
+    }
+    
+    @Override
+    public RateSearch getType()
+    {
+        return RateSearch.Secant;
+    }
+    
+    @Override
+    public Boolean nextRound(DiaryEntry entryI, double currentThroughput, double roundThroughput, double roundLatency)
+    {
+        entryI.setSearchPhase(RateSearchPhase.Secant);
+        
+        Point2D.Double startingPoint = null;
+        if(queue.remainingCapacity() != 0)
+        {
+            startingPoint = queue.peek();
+        }
+        else
+        {
+            startingPoint = queue.remove();
+        }
+        
+        if(startingPoint == null)
+        {
+            return null;
+        }
+        
+        entryI.setY1(currentThroughput);
+        entryI.setX1(messageRate);
+        
+        Double currentRatio = currentThroughput / messageRate;
+        entryI.setCurrentRatio(currentRatio);
+        
+        Double y0 = startingPoint.getY();
+        Double x0 = startingPoint.getX();
+        entryI.setY0(y0);
+        entryI.setX0(x0);
+        
+        Double sNumerator = currentThroughput - y0;
+        Double sDenominator = messageRate - x0;
+        Double secant = sNumerator / sDenominator;
+        entryI.setSecant(secant);
+        
+        Double avgNum = 0.0;
+        Object[] currentPairs = queue.toArray();
+        int numPairs = queue.size();
+        for(int j = 0 ; j < numPairs ; j++)
+        {
+            Point2D.Double pairI = (Point2D.Double) currentPairs[j];
+            avgNum += pairI.getY();
+        }
+        Double avg = avgNum / numPairs;
+        entryI.setAverageThroughput(avg);
+        
+        if(secant.isNaN())
+        {
+            return null;
+        }
+        else if(secant < TOLERANCE_LIMIT)
+        {
+            finalThroughput = avg;
+            entryI.setSearchPhase(RateSearchPhase.Converged);
+            return false;
+        }
+        
+        Point2D.Double newPoint = new Point2D.Double(messageRate, currentThroughput);
+        queue.add(newPoint);
+        
+        messageRate += MR_CONSTANT * secant;
+        return true;
+    }
+}
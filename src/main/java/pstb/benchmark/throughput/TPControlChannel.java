@@ -0,0 +1,518 @@
+package pstb.benchmark.throughput;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.util.PSTBUtil;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * The control channel between the TPMaster and its throughput Clients.
+ * 
+ * Every Client opens one connection to the master, and keeps it for the whole experiment.
+ * Each round, every Client sends the master one report (its name, messages received and round latency),
+ * and then waits for the master's reply - the new message delay, or PSTBUtil.STOP.
+ * 
+ * Every message is sent as a frame: an int byte length followed by that many UTF-8 bytes.
+ * 
+ * On the master's side, every connection is handled by one thread through a Selector
+ * - so there's no new connection, or new thread, per Client per round.
+ * A Client closing its connection is only an error if it still owes a report or is waiting on a reply
+ * (and never once STOP has been sent) - otherwise it's simply dropped from the channel.
+ * The master borrows the universal ServerSocket for this (it must have been created from a ServerSocketChannel),
+ * and hands it back in blocking mode when it closes the channel.
+ */
+public class TPControlChannel
+{
+    public static final int MAX_FRAME_LENGTH = 4096;
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    
+    private final ServerSocketChannel serverChannel;
+    private final int numClients;
+    private Selector selector;
+    private final ArrayList<Connection> connections;
+    private int numClosed;
+    private boolean stopSent;
+    
+    private final Logger log;
+    private final String logHeader;
+    
+    /**
+     * A Client's connection, and whatever has been read from or is waiting to be written to it
+     */
+    private static class Connection
+    {
+        private final SocketChannel channel;
+        private final ByteBuffer in;
+        private ByteBuffer out;
+        private boolean reported;
+        
+        private Connection(SocketChannel givenChannel)
+        {
+            channel = givenChannel;
+            in = ByteBuffer.allocate(LENGTH_BYTES + MAX_FRAME_LENGTH);
+            out = null;
+            reported = false;
+        }
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param givenSS - the ServerSocket the Clients will connect to (it must have a ServerSocketChannel)
+     * @param givenNumClients - the number of Clients that will connect
+     * @param givenLog - the Logger to record errors
+     * @param givenLogHeader - the header to put on any errors
+     */
+    public TPControlChannel(ServerSocket givenSS, int givenNumClients, Logger givenLog, String givenLogHeader)
+    {
+        serverChannel = (givenSS == null) ? null : givenSS.getChannel();
+        numClients = givenNumClients;
+        selector = null;
+        connections = new ArrayList<Connection>();
+        numClosed = 0;
+        stopSent = false;
+        log = givenLog;
+        logHeader = givenLogHeader;
+    }
+    
+    /**
+     * Starts listening for the Clients' connections
+     * 
+     * @return false on error; true otherwise
+     */
+    public boolean open()
+    {
+        if(serverChannel == null)
+        {
+            log.error(logHeader + "The master's ServerSocket wasn't created from a ServerSocketChannel!");
+            return false;
+        }
+        
+        try
+        {
+            selector = Selector.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't open the control channel: ", e);
+            close();
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Waits until every Client has sent its report for this round
+     * (Accepting any Client that hasn't connected yet, and not waiting on any that have closed their connection.)
+     * 
+     * @return the reports, in the order they arrived; null on error
+     */
+    public ArrayList<String> collectReports()
+    {
+        ArrayList<String> retVal = new ArrayList<String>(numClients);
+        for(int i = 0 ; i < connections.size() ; i++)
+        {
+            Connection connectionI = connections.get(i);
+            connectionI.reported = false;
+            
+            // A report may have arrived while the last reply was still being written
+            boolean parseCheck = parseReports(connectionI, retVal);
+            if(!parseCheck)
+            {
+                return null;
+            }
+        }
+        
+        while(retVal.size() < numClients - numClosed)
+        {
+            boolean selectCheck = selectAndHandle(retVal);
+            if(!selectCheck)
+            {
+                return null;
+            }
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Sends every Client the same reply, and waits until it has been written to all of them
+     * 
+     * @param givenReply - the reply
+     * @return false on error; true otherwise
+     */
+    public boolean replyToAll(String givenReply)
+    {
+        stopSent = givenReply.equals(PSTBUtil.STOP);
+        
+        byte[] frame = encodeFrame(givenReply);
+        for(int i = 0 ; i < connections.size() ; i++)
+        {
+            Connection connectionI = connections.get(i);
+            connectionI.out = ByteBuffer.wrap(frame);
+            boolean writeCheck = write(connectionI);
+            if(!writeCheck)
+            {
+                return false;
+            }
+        }
+        
+        while(pendingWrites())
+        {
+            boolean selectCheck = selectAndHandle(null);
+            if(!selectCheck)
+            {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Closes every Client's connection, and hands the ServerSocket back in blocking mode
+     */
+    public void close()
+    {
+        for(int i = 0 ; i < connections.size() ; i++)
+        {
+            try
+            {
+                connections.get(i).channel.close();
+            }
+            catch(IOException e)
+            {
+                log.warn(logHeader + "Couldn't close a Client's connection: ", e);
+            }
+        }
+        connections.clear();
+        
+        if(selector != null)
+        {
+            try
+            {
+                // Closing the selector deregisters the ServerSocketChannel, so it can go back to blocking
+                selector.close();
+                serverChannel.configureBlocking(true);
+            }
+            catch(IOException e)
+            {
+                log.warn(logHeader + "Couldn't hand back the ServerSocket: ", e);
+            }
+            selector = null;
+        }
+    }
+    
+    /**
+     * Waits for the next events on the channel, and handles them
+     * 
+     * @param reports - where to put any reports that arrive; null if they should be kept for later
+     * @return false on error; true otherwise
+     */
+    private boolean selectAndHandle(ArrayList<String> reports)
+    {
+        try
+        {
+            selector.select();
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't wait on the control channel: ", e);
+            return false;
+        }
+        
+        Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+        while(keyIterator.hasNext())
+        {
+            SelectionKey keyI = keyIterator.next();
+            keyIterator.remove();
+            
+            if(!keyI.isValid())
+            {
+                continue;
+            }
+            
+            if(keyI.isAcceptable())
+            {
+                boolean acceptCheck = accept();
+                if(!acceptCheck)
+                {
+                    return false;
+                }
+                continue;
+            }
+            
+            Connection connectionI = (Connection) keyI.attachment();
+            if(keyI.isWritable())
+            {
+                boolean writeCheck = write(connectionI);
+                if(!writeCheck)
+                {
+                    return false;
+                }
+            }
+            if(keyI.isValid() && keyI.isReadable())
+            {
+                boolean readCheck = read(connectionI, reports);
+                if(!readCheck)
+                {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    private boolean accept()
+    {
+        SocketChannel newChannel = null;
+        try
+        {
+            newChannel = serverChannel.accept();
+            if(newChannel == null)
+            {
+                return true;
+            }
+            
+            if(connections.size() + numClosed >= numClients)
+            {
+                log.warn(logHeader + "More connections than Clients - ignoring " + newChannel.getRemoteAddress() + ".");
+                newChannel.close();
+                return true;
+            }
+            
+            newChannel.configureBlocking(false);
+            newChannel.socket().setTcpNoDelay(true);
+            Connection newConnection = new Connection(newChannel);
+            newChannel.register(selector, SelectionKey.OP_READ, newConnection);
+            connections.add(newConnection);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't accept a Client's connection: ", e);
+            if(newChannel != null)
+            {
+                try
+                {
+                    newChannel.close();
+                }
+                catch(IOException eIO)
+                {
+                    // We're already reporting an error
+                }
+            }
+            return false;
+        }
+        
+        log.debug(logHeader + "Client " + connections.size() + " of " + numClients + " connected.");
+        return true;
+    }
+    
+    private boolean read(Connection givenConnection, ArrayList<String> reports)
+    {
+        int numRead = 0;
+        try
+        {
+            numRead = givenConnection.channel.read(givenConnection.in);
+        }
+        catch(IOException e)
+        {
+            log.error(logHeader + "Couldn't read from a Client: ", e);
+            return false;
+        }
+        
+        if(numRead < 0)
+        {
+            // Anything it sent before closing still counts
+            if(reports != null)
+            {
+                boolean parseCheck = parseReports(givenConnection, reports);
+                if(!parseCheck)
+                {
+                    return false;
+                }
+            }
+            
+            if(!stopSent && (givenConnection.out != null || (reports != null && !givenConnection.reported)))
+            {
+                log.error(logHeader + "A Client closed its connection mid-experiment!");
+                return false;
+            }
+            
+            closeConnection(givenConnection);
+            return true;
+        }
+        
+        if(reports == null)
+        {
+            // Keep it until the reports are being collected
+            return true;
+        }
+        
+        return parseReports(givenConnection, reports);
+    }
+    
+    private void closeConnection(Connection givenConnection)
+    {
+        givenConnection.channel.keyFor(selector).cancel();
+        try
+        {
+            givenConnection.channel.close();
+        }
+        catch(IOException e)
+        {
+            log.warn(logHeader + "Couldn't close a Client's connection: ", e);
+        }
+        
+        connections.remove(givenConnection);
+        numClosed++;
+        log.debug(logHeader + "A Client closed its connection - " + connections.size() + " still open.");
+    }
+    
+    private boolean parseReports(Connection givenConnection, ArrayList<String> reports)
+    {
+        ByteBuffer in = givenConnection.in;
+        in.flip();
+        while(in.remaining() >= LENGTH_BYTES)
+        {
+            int length = in.getInt(in.position());
+            if(length < 0 || length > MAX_FRAME_LENGTH)
+            {
+                log.error(logHeader + "A Client sent a frame of invalid length " + length + "!");
+                return false;
+            }
+            if(in.remaining() < LENGTH_BYTES + length)
+            {
+                break;
+            }
+            
+            in.position(in.position() + LENGTH_BYTES);
+            byte[] frame = new byte[length];
+            in.get(frame);
+            String report = new String(frame, StandardCharsets.UTF_8);
+            
+            if(givenConnection.reported)
+            {
+                in.compact();
+                log.error(logHeader + "Got report " + report + " before the last one was answered!");
+                return false;
+            }
+            givenConnection.reported = true;
+            reports.add(report);
+        }
+        in.compact();
+        
+        return true;
+    }
+    
+    private boolean write(Connection givenConnection)
+    {
+        ByteBuffer out = givenConnection.out;
+        if(out != null)
+        {
+            try
+            {
+                givenConnection.channel.write(out);
+            }
+            catch(IOException e)
+            {
+                log.error(logHeader + "Couldn't write to a Client: ", e);
+                return false;
+            }
+            
+            if(!out.hasRemaining())
+            {
+                givenConnection.out = null;
+            }
+        }
+        
+        SelectionKey key = givenConnection.channel.keyFor(selector);
+        if(givenConnection.out == null)
+        {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+        else
+        {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        
+        return true;
+    }
+    
+    private boolean pendingWrites()
+    {
+        for(int i = 0 ; i < connections.size() ; i++)
+        {
+            if(connections.get(i).out != null)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static byte[] encodeFrame(String givenMessage)
+    {
+        byte[] message = givenMessage.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_BYTES + message.length);
+        frame.putInt(message.length);
+        frame.put(message);
+        return frame.array();
+    }
+    
+    /**
+     * Sends a frame down a (blocking) stream - i.e. a Client's side of the channel
+     * 
+     * @param out - the stream
+     * @param givenMessage - the message to send
+     * @throws IOException if it can't be sent
+     */
+    public static void writeFrame(DataOutputStream out, String givenMessage) throws IOException
+    {
+        byte[] message = givenMessage.getBytes(StandardCharsets.UTF_8);
+        if(message.length > MAX_FRAME_LENGTH)
+        {
+            throw new IOException("Message is too long to send (" + message.length + " bytes)!");
+        }
+        out.writeInt(message.length);
+        out.write(message);
+        out.flush();
+    }
+    
+    /**
+     * Reads a frame from a (blocking) stream - i.e. a Client's side of the channel
+     * 
+     * @param in - the stream
+     * @return the message
+     * @throws IOException if it can't be read (or isn't a valid frame)
+     */
+    public static String readFrame(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if(length < 0 || length > MAX_FRAME_LENGTH)
+        {
+            throw new IOException("Got a frame of invalid length " + length + "!");
+        }
+        byte[] message = new byte[length];
+        in.readFully(message);
+        return new String(message, StandardCharsets.UTF_8);
+    }
+}
@@ -3,16 +3,11 @@
  */
 package pstb.benchmark.throughput;
 
-import java.awt.geom.Point2D;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
@@ -21,23 +16,21 @@ import org.apache.logging.log4j.ThreadContext;
 
 import pstb.analysis.diary.ClientDiary;
 import pstb.analysis.diary.DiaryEntry;
+import pstb.analysis.diary.DiaryWriter;
 import pstb.benchmark.object.client.PSClientMode;
+import pstb.startup.config.RateSearch;
 import pstb.util.PSTBUtil;
 
 /**
  * @author adecaria
- *
+ * 
  */
 public class TPMaster extends Thread {
     // Constants
-    private final double TOLERANCE_LIMIT = 0.1;
-    private final double INIT_MESSAGES_PER_SECOND = 10.0;
     private final int RECEIVE_ERROR_LIMIT = 4;
-    private final int MR_CONSTANT = 20;
 //    private final int LOC_CLIENT_NAME = 0;
     private final int LOC_NUMBER_MESSAGES_RECEIEVED = 1;
     private final int LOC_DELAY = 2;
-    private final int QUEUE_SIZE = 10;
     
     // Just Master - Database
     private HashMap<String, PSClientMode> database;
@@ -47,6 +40,7 @@ public class TPMaster extends Thread {
     
     // Just Master - Message Rate
     private Double messageRate;
+    private RateSearchStrategy rateSearch;
     
     // Just Master - Delays
     private Double finalThroughput;
@@ -64,13 +58,15 @@ public class TPMaster extends Thread {
     
     // Server stuff
     private ServerSocket objectConnection;
+    private TPControlChannel controlChannel;
     
     // Logger
     private String context;
     private String logHeader = "TPMaster: ";
     private Logger log = LogManager.getRootLogger();
     
-    public TPMaster(HashMap<String, PSClientMode> givenDatabase, Long givenPL, String givenContext, ServerSocket givenSS)
+    public TPMaster(HashMap<String, PSClientMode> givenDatabase, Long givenPL, RateSearch givenRS, String givenContext, 
+            ServerSocket givenSS)
     {
         database = givenDatabase;
         numPubs = 0;
@@ -88,7 +84,8 @@ public class TPMaster extends Thread {
         
         periodLength = givenPL;
         
-        messageRate = INIT_MESSAGES_PER_SECOND;
+        rateSearch = RateSearchStrategy.create(givenRS);
+        messageRate = rateSearch.getMessageRate();
         updateMessageDelay();
         
         finalThroughput = Double.NaN;
@@ -110,9 +107,9 @@ public class TPMaster extends Thread {
         return database.containsKey(clientName);
     }
     
-    private void updateMessageRate(Double givenDir)
+    private void updateMessageRate()
     {
-        messageRate += MR_CONSTANT * givenDir;
+        messageRate = rateSearch.getMessageRate();
     }
     
     private void updateMessageDelay()
@@ -127,7 +124,7 @@ public class TPMaster extends Thread {
                 + " secondsPubsPerMessage = " + secondsPubPerMessage
                 + " messageDelay = " + messageDelay);
     }
-        
+    
     public Long getMessageDelay()
     {
         Long temp;
@@ -223,12 +220,21 @@ public class TPMaster extends Thread {
         
         log.info(logHeader + "Master started.");
         
+        log.info(logHeader + "Searching for the final throughput with the " + rateSearch.getType() + " strategy.");
+        
         ClientDiary serverDiary = new ClientDiary();
-        ArrayBlockingQueue<Point2D.Double> queue = new ArrayBlockingQueue<Point2D.Double>(QUEUE_SIZE);
-        queue.add(new Point2D.Double());
         int numClients = database.size();
+        
+        controlChannel = new TPControlChannel(objectConnection, numClients, log, logHeader);
+        boolean openCheck = controlChannel.open();
+        if(!openCheck)
+        {
+            masterFailure(logHeader + "Couldn't open the control channel!", null);
+        }
+        
         int roundNum = 0;
         int receivedErrorCounter = 0;
+        int lastNMR = 0;
         while(experimentRunning)
         {
             log.info(logHeader + "Beginning round " + roundNum + "...");
@@ -236,51 +242,16 @@ public class TPMaster extends Thread {
             entryI.setRound(roundNum);
             entryI.setMessageRate(messageRate);
             
-            CountDownLatch missingDelays = new CountDownLatch(numClients);
-            CountDownLatch masterComplete = new CountDownLatch(1);
-            CountDownLatch threadsActive = new CountDownLatch(numClients);
-            log.debug(logHeader + "Latches set.");
-            
-            log.debug(logHeader + "Attempting to send all clients the current message delay...");
-            int i = 0;
-            while(i < numClients)
+            log.debug(logHeader + "Waiting for " + numClients + " clients' delays to arrive...");
+            ArrayList<String> reports = controlChannel.collectReports();
+            if(reports == null)
             {
-                log.debug(logHeader + "Waiting for " + (numClients - i) +  " more connections ...");
-                Socket objectPipe = null;
-                try
-                {
-                    objectPipe = objectConnection.accept();
-                }
-                catch(IOException e)
-                {
-                    masterFailure(logHeader + "Couldn't create an object pipe: ", e);
-                }
-                
-                log.debug(logHeader + "Got a new connection.");
-                
-                Thread.UncaughtExceptionHandler nodeHandlerExceptionNet = new Thread.UncaughtExceptionHandler() {
-                    @Override
-                    public void uncaughtException(Thread t, Throwable e) {
-                        log.error(logHeader + "Error in the thread " + t.getName() + ": ", e);
-                    }
-                };
-                
-                TPHandler clientIHandler = new TPHandler(objectPipe, missingDelays, masterComplete, threadsActive, this);
-                clientIHandler.setUncaughtExceptionHandler(nodeHandlerExceptionNet);
-                clientIHandler.start();
-                            
-                i++;
+                masterFailure(logHeader + "Error waiting for clients!", null);
             }
-            log.debug(logHeader + "All clients connected.");
-            
-            log.debug(logHeader + "Waiting for delays to arrive...");
-            try 
-            {
-                missingDelays.await();
-            } 
-            catch (InterruptedException e) 
+            for(int i = 0 ; i < reports.size() ; i++)
             {
-                masterFailure(logHeader + "Error waiting for clients: ", e);
+                log.debug(logHeader + "Received " + reports.get(i) + ".");
+                addToSubMessages(reports.get(i));
             }
             log.info(logHeader + "All delays receieved.");
             
@@ -313,7 +284,7 @@ public class TPMaster extends Thread {
                 
                 Double averageLatency = currentLatency / numSubs;
                 entryI.setRoundLatency(averageLatency);
-                                
+                
                 Double denominator = (roundNum * periodLength.doubleValue() / PSTBUtil.SEC_TO_NANOSEC);
                 Double currentThroughput = currentNMR / denominator;
                 log.info(logHeader + "currentThroughput = " + currentThroughput + " | currentNMR = " + currentNMR 
@@ -331,88 +302,51 @@ public class TPMaster extends Thread {
                 }
                 else
                 {
-                    Point2D.Double startingPoint = null;
-                    if(queue.remainingCapacity() != 0)
-                    {
-                        startingPoint = queue.peek();
-                    }
-                    else
+                    Double roundThroughput = (currentNMR - lastNMR) / (periodLength.doubleValue() / PSTBUtil.SEC_TO_NANOSEC);
+                    entryI.setRoundThroughput(roundThroughput);
+                    
+                    Boolean continueSearch = rateSearch.nextRound(entryI, currentThroughput, roundThroughput, averageLatency);
+                    log.info(logHeader + "roundThroughput = " + roundThroughput + " | phase = " + entryI.getSearchPhase());
+                    if(continueSearch == null)
                     {
-                        startingPoint = queue.remove();
+                        masterFailure(logHeader + "The " + rateSearch.getType() + " search couldn't continue!", null);
                     }
-                    
-                    if(startingPoint == null)
+                    else if(!continueSearch)
                     {
-                        masterFailure(logHeader + "Queue got empty!", null);
+                        stopExperiment();
+                        finalThroughput = rateSearch.getFinalThroughput();
                     }
                     else
                     {
-                        entryI.setY1(currentThroughput);
-                        entryI.setX1(messageRate);
-                        
-                        Double currentRatio = currentThroughput / messageRate;
-                        entryI.setCurrentRatio(currentRatio);
-                        
-                        Double y0 = startingPoint.getY();
-                        Double x0 = startingPoint.getX();
-                        entryI.setY0(y0);
-                        entryI.setX0(x0);
-                        
-                        Double sNumerator = currentThroughput - y0;
-                        Double sDenominator = messageRate - x0;
-                        Double secant = sNumerator / sDenominator;
-                        log.info(logHeader + "secant = " + secant + " | num = " + sNumerator + " | dem = " + sDenominator 
-                                + " | startY = " + startingPoint.getY() + " | startX = " + startingPoint.getX());
-                        entryI.setSecant(secant);
-                        
-                        Double avgNum = 0.0;
-                        Object[] currentPairs = queue.toArray();
-                        int numPairs = queue.size();
-                        for(int j = 0 ; j < numPairs ; j++)
-                        {
-                            Point2D.Double pairI = (Point2D.Double) currentPairs[j];
-                            avgNum += pairI.getY();
-                        }
-                        Double avg = avgNum / numPairs;
-                        entryI.setAverageThroughput(avg);
-                        
-                        if(secant == null || secant.isNaN())
-                        {
-                            masterFailure(logHeader + "Null delay received!", null);
-                        }
-                        else if(secant < TOLERANCE_LIMIT)
-                        {
-                            stopExperiment();
-                            finalThroughput = avg;
-                        }
-                        else
-                        {
-                            log.debug(logHeader + "Updating queue.");
-                            Point2D.Double newPoint = new Point2D.Double(messageRate, currentThroughput);
-                            queue.add(newPoint);
-                            
-                            log.debug(logHeader + "Updating message delay.");
-                            updateMessageRate(secant);
-                            updateMessageDelay();
-                        }
+                        log.debug(logHeader + "Updating message delay.");
+                        updateMessageRate();
+                        updateMessageDelay();
+                        entryI.setNextMessageRate(messageRate);
                     }
                 }
+                lastNMR = currentNMR;
                 
                 serverDiary.addDiaryEntryToDiary(entryI);
             }
             
             log.debug(logHeader + "Calucaltions complete.");
             resetSubMessages();
-            masterComplete.countDown();
             
-            log.debug(logHeader + "Waiting for handler to finish...");
-            try 
+            String reply = null;
+            if(isExperimentRunning())
             {
-                threadsActive.await();
-            } 
-            catch (InterruptedException e) 
+                reply = getMessageDelay().toString();
+                log.info(logHeader + "Sending all clients message delay " + reply + "...");
+            }
+            else
             {
-                masterFailure(logHeader + "Error waiting for all delays: ", e);
+                reply = PSTBUtil.STOP;
+                log.info(logHeader + "Telling all clients to stop...");
+            }
+            boolean replyCheck = controlChannel.replyToAll(reply);
+            if(!replyCheck)
+            {
+                masterFailure(logHeader + "Couldn't reply to all clients!", null);
             }
             log.debug(logHeader + "All clients should have the current message delay.");
             
@@ -420,8 +354,11 @@ public class TPMaster extends Thread {
             roundNum++;
         }
         
+        controlChannel.close();
+        
         DiaryEntry finalEntry = new DiaryEntry();
         finalEntry.setFinalThroughput(finalThroughput);
+        finalEntry.setRateSearch(rateSearch.getType());
         serverDiary.addDiaryEntryToDiary(finalEntry);
         
         recordDiary(serverDiary);
@@ -431,35 +368,21 @@ public class TPMaster extends Thread {
     
     private void recordDiary(ClientDiary givenDiary)
     {
-        FileOutputStream out = null;
-        try 
-        {
-            out = new FileOutputStream(context + ".dia");
-        } 
-        catch (FileNotFoundException e) 
-        {
-            masterFailure(logHeader + "Couldn't create a FileOutputStream to record diary object: ", e);
-        }
-        
-        boolean diaryCheck = PSTBUtil.sendObject(givenDiary, out, log, logHeader);
+        boolean diaryCheck = DiaryWriter.writeDiary(givenDiary, context, Paths.get(context + ".dia"), log, logHeader);
         if(!diaryCheck)
         {
             masterFailure(logHeader + "Couldn't record server " + context + "'s diary object!", null);
         }
         log.info(logHeader + "Diary Inserted.");
-        
-        try 
-        {
-            out.close();
-        } 
-        catch (IOException e) 
-        {
-            masterFailure(logHeader + "error closing diary OutputStream: ", e);
-        }
     }
     
     private void masterFailure(String record, Exception givenException)
     {
+        if(controlChannel != null)
+        {
+            controlChannel.close();
+        }
+        
         if(objectConnection != null)
         {
             try 
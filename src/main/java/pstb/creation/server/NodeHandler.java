@@ -123,6 +123,17 @@ public class NodeHandler extends Thread
                     }
                     log.info(logHeader + "Init received from node " + nodeName + ".");
                     
+                    Long clockOffset = 0L;
+                    if(master.isClientServer())
+                    {
+                        clockOffset = estimateClockOffset(bufferedIn, pipeOut);
+                        if(clockOffset == null)
+                        {
+                            nodeHandlerFailed(logHeader + "Couldn't estimate " + nodeName + "'s clock offset!", null, false);
+                        }
+                        log.debug(logHeader + nodeName + "'s clock is offset by " + clockOffset + " ms.");
+                    }
+                    
                     log.debug(logHeader + "Letting server know node has initialized...");
                     nodeInitalized.countDown();
                     log.debug(logHeader + "Server should know.");
@@ -138,8 +149,11 @@ public class NodeHandler extends Thread
                             nodeHandlerFailed(logHeader + "Interrupted waiting for start signal: ", e, true);
                         }
                         
+                        // Hand the node the start time in its own clock
+                        Long nodeStartTime = master.getStartTime() + clockOffset;
+                        
                         log.debug(logHeader + "Sending " + nodeName + " the start signal...");
-                        PSTBUtil.sendStringAcrossSocket(pipeOut, PSTBUtil.START);
+                        PSTBUtil.sendStringAcrossSocket(pipeOut, PSTBUtil.START + PSTBUtil.ITEM_SEPARATOR + nodeStartTime);
                         log.info(logHeader + "Start signal sent to " + nodeName + ".");
                     }
                     
@@ -178,6 +192,45 @@ public class NodeHandler extends Thread
         log.info(logHeader + "Object loop complete.");
     }
     
+    /**
+     * Estimates how far the node's clock is ahead of ours
+     * by bouncing NUM_SYNC_SAMPLES sync requests off of it
+     * and using the one with the shortest round trip (NTP style).
+     * 
+     * @param bufferedIn - the reader for the node's replies
+     * @param pipeOut - the stream to the node
+     * @return null on error; the node's clock minus ours (in milliseconds) otherwise
+     */
+    private Long estimateClockOffset(BufferedReader bufferedIn, OutputStream pipeOut) throws IOException
+    {
+        Long retVal = null;
+        long shortestRoundTrip = Long.MAX_VALUE;
+        
+        for(int i = 0 ; i < PSTBUtil.NUM_SYNC_SAMPLES ; i++)
+        {
+            long timeSent = System.currentTimeMillis();
+            PSTBUtil.sendStringAcrossSocket(pipeOut, PSTBUtil.SYNC);
+            String reply = bufferedIn.readLine();
+            long timeReplied = System.currentTimeMillis();
+            
+            Long nodeTime = PSTBUtil.checkIfLong(reply, false, null);
+            if(nodeTime == null)
+            {
+                log.error(logHeader + "Node replied to a sync request with " + reply + "!");
+                return null;
+            }
+            
+            long roundTrip = timeReplied - timeSent;
+            if(roundTrip < shortestRoundTrip)
+            {
+                shortestRoundTrip = roundTrip;
+                retVal = nodeTime - ((timeSent + timeReplied) / 2);
+            }
+        }
+        
+        return retVal;
+    }
+    
     private void nodeHandlerFailed(String record, Exception givenException, boolean exceptionPresent)
     {
         nodeInitalized.countDown();
@@ -17,6 +17,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
 
 import pstb.benchmark.object.PSNode;
+import pstb.util.PSTBUtil;
 
 /**
  * @author padres-dev-4187
@@ -30,6 +31,7 @@ public class ObjectServer extends Thread
     // Database Variables 
     private HashMap<String, PSNode> data;
     private boolean clientServer;
+    private volatile Long startTime; // the time the run starts at, in this machine's System.currentTimeMillis()
     
     // Other Variables
     private ServerSocket objectConnection;
@@ -60,6 +62,8 @@ public class ObjectServer extends Thread
         objServerComplete = objServerCompleteSignal;
         
         objectConnection = givenSS;
+        
+        startTime = null;
     }
     
     public int numNodes()
@@ -105,6 +109,14 @@ public class ObjectServer extends Thread
         return clientServer;
     }
     
+    /**
+     * @return the time the run starts at (in the master's System.currentTimeMillis()); null if the start signal hasn't been sent
+     */
+    public Long getStartTime()
+    {
+        return startTime;
+    }
+    
     public void run()
     {
         setName(context);
@@ -161,6 +173,7 @@ public class ObjectServer extends Thread
         serverLog.debug(logHeader + "All nodes have initialized.");
         
         serverLog.debug(logHeader + "Sending start signal...");
+        startTime = System.currentTimeMillis() + PSTBUtil.START_LEAD_TIME;
         start.countDown();
         serverLog.debug(logHeader + "Start signal sent.");
         
@@ -10,6 +10,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -18,6 +19,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import pstb.analysis.diary.DistributedFlagValue;
+import pstb.analysis.diary.LatencyHistogram;
 import pstb.benchmark.object.PSNode;
 import pstb.benchmark.object.broker.PSBroker;
 import pstb.benchmark.object.client.PSClient;
@@ -26,9 +28,12 @@ import pstb.benchmark.throughput.TPMaster;
 import pstb.creation.server.ObjectServer;
 import pstb.startup.config.AttributeRatio;
 import pstb.startup.config.ExperimentType;
+import pstb.startup.config.LatencyRecording;
 import pstb.startup.config.MessageSize;
 import pstb.startup.config.NetworkProtocol;
 import pstb.startup.config.NumAttribute;
+import pstb.startup.config.PayloadContent;
+import pstb.startup.config.RateSearch;
 import pstb.startup.config.SupportedEngines.PSEngine;
 import pstb.startup.distributed.Machine;
 import pstb.startup.topology.ClientNotes;
@@ -36,6 +41,7 @@ import pstb.startup.topology.LogicalTopology;
 import pstb.startup.topology.NodeRole;
 import pstb.startup.workload.PSAction;
 import pstb.util.PSTBUtil;
+import pstb.util.PSTBUtil.WaitType;
 
 /**
  * @author padres-dev-4187
@@ -71,10 +77,20 @@ public abstract class PhysicalTopology {
     // Variables set on initial start up
     protected boolean distributed;
     
+    // Client options
+    protected boolean openLoop;
+    protected int asyncWindow;
+    protected int clientsPerHost;
+    protected PayloadContent payloadContent;
+    protected int diaryChunkSize;
+    protected LatencyRecording latencyRecording;
+    protected int histogramPrecision;
+    protected RateSearch rateSearch;
+    
     // Variables set during Object creation
     private HashMap<String, String> nodeMachine;
     private HashMap<String, HashMap<NodeRole, Integer>> numNodesMachine;
-        
+    
     // Objects
     protected HashMap<String, PSNode> brokerObjects;
     protected HashMap<String, PSNode> clientObjects;
@@ -138,6 +154,15 @@ public abstract class PhysicalTopology {
         
         distributed = false;
         
+        openLoop = false;
+        asyncWindow = 0;
+        clientsPerHost = 1;
+        payloadContent = PayloadContent.Constant;
+        diaryChunkSize = 0;
+        latencyRecording = LatencyRecording.Entries;
+        histogramPrecision = LatencyHistogram.DEFAULT_PRECISION;
+        rateSearch = RateSearch.Secant;
+        
         nodeMachine = new HashMap<String, String>();
         numNodesMachine = new HashMap<String, HashMap<NodeRole, Integer>>();
         
@@ -191,6 +216,94 @@ public abstract class PhysicalTopology {
         return topologyFileString;
     }
     
+    /**
+     * Sets whether the clients should send their workloads on an open-loop schedule
+     * (This has to be called before developTopologyObjects())
+     * 
+     * @param givenOL - the open-loop flag
+     */
+    public void setOpenLoop(boolean givenOL)
+    {
+        openLoop = givenOL;
+    }
+    
+    /**
+     * Sets how many publications each client can have in flight at once
+     * (This has to be called before developTopologyObjects())
+     * 
+     * @param givenAW - the window size (0 = synchronous)
+     */
+    public void setAsyncWindow(int givenAW)
+    {
+        asyncWindow = givenAW;
+    }
+    
+    /**
+     * Sets how many clients can share a single client process (JVM)
+     * (This has to be called before prepareScenarioExperiment() / prepareThroughputRun())
+     * 
+     * @param givenCPH - the number of clients per host (1 = every client gets its own process)
+     */
+    public void setClientsPerHost(int givenCPH)
+    {
+        clientsPerHost = givenCPH;
+    }
+    
+    /**
+     * Sets what each client's publication payloads should contain
+     * (This has to be called before developTopologyObjects())
+     * 
+     * @param givenPC - the PayloadContent
+     */
+    public void setPayloadContent(PayloadContent givenPC)
+    {
+        payloadContent = givenPC;
+    }
+    
+    /**
+     * Sets how many entries each client's diary can hold before they're spilled to disk
+     * (This has to be called before developTopologyObjects())
+     * 
+     * @param givenDCS - the chunk size (0 = keep the whole diary in memory)
+     */
+    public void setDiaryChunkSize(int givenDCS)
+    {
+        diaryChunkSize = givenDCS;
+    }
+    
+    /**
+     * Sets how each client should record its latencies
+     * (This has to be called before developTopologyObjects())
+     * 
+     * @param givenLR - the LatencyRecording
+     */
+    public void setLatencyRecording(LatencyRecording givenLR)
+    {
+        latencyRecording = givenLR;
+    }
+    
+    /**
+     * Sets how many significant digits each client's latency histograms should keep
+     * (This has to be called before developTopologyObjects())
+     * 
+     * @param givenHP - the precision
+     */
+    public void setHistogramPrecision(int givenHP)
+    {
+        histogramPrecision = givenHP;
+    }
+    
+    /**
+     * Sets how the throughput master should search for the final throughput
+     * (This has to be called before developTopologyObjects())
+     * 
+     * @param givenRS - the RateSearch
+     */
+    public void setRateSearch(RateSearch givenRS)
+    {
+        rateSearch = givenRS;
+    }
+    
     /**
      * Gets the Distributed Boolean
      * 
@@ -595,6 +708,12 @@ public abstract class PhysicalTopology {
             clientI.setBenchmarkNumber(benchmarkNumber);
             clientI.setWorkload(clientIWorkload);
             clientI.setMode(mode);
+            clientI.setOpenLoop(openLoop);
+            clientI.setAsyncWindow(asyncWindow);
+            clientI.setPayloadContent(payloadContent);
+            clientI.setDiaryChunkSize(diaryChunkSize);
+            clientI.setLatencyRecording(latencyRecording);
+            clientI.setHistogramPrecision(histogramPrecision);
             
             clientObjects.put(clientIName, clientI);
             
@@ -757,6 +876,19 @@ public abstract class PhysicalTopology {
         clientServer = new ObjectServer(clientObjects, true, contextCS, clientServerComplete, everythingSocket);
     }
     
+    /**
+     * @return the time the current run starts at (in this machine's System.currentTimeMillis()); null if it hasn't been set
+     */
+    public Long getRunStartTime()
+    {
+        if(clientServer == null)
+        {
+            return null;
+        }
+        
+        return clientServer.getStartTime();
+    }
+    
     private void setUpTPMaster(Long givenPL, String context)
     {
         logger.debug(logHeader + "Starting Throughput Master...");
@@ -771,7 +903,7 @@ public abstract class PhysicalTopology {
         
         logger.info(logHeader + "Throughput Master started.");
         
-        throughputMaster = new TPMaster(tmDatabase, givenPL, context, everythingSocket);
+        throughputMaster = new TPMaster(tmDatabase, givenPL, rateSearch, context, everythingSocket);
     }
     
     /**
@@ -789,7 +921,15 @@ public abstract class PhysicalTopology {
             return false;
         }
         
-        boolean clientCheck = generateMultipleNodeProcesses(clientObjects, clientProcesses, false, sendDiaries);
+        boolean clientCheck = false;
+        if(clientsPerHost > 1)
+        {
+            clientCheck = generateClientHostProcesses(sendDiaries);
+        }
+        else
+        {
+            clientCheck = generateMultipleNodeProcesses(clientObjects, clientProcesses, false, sendDiaries);
+        }
         if(!clientCheck)
         {
             logger.error(logHeader + "Issue generating client processes!");
@@ -833,6 +973,68 @@ public abstract class PhysicalTopology {
         return true;
     }
     
+    /**
+     * Generates a ProcessBuilder for each group of (up to clientsPerHost) clients on the same machine
+     * Each group is run by a single client host process - named after the clients it holds
+     * @see PSTBClientHostProcess
+     * 
+     * @param sendDiaries - should the clients record their diaries?
+     * @return false on failure; true otherwise
+     */
+    private boolean generateClientHostProcesses(boolean sendDiaries)
+    {
+        TreeMap<String, ArrayList<String>> machineClients = new TreeMap<String, ArrayList<String>>();
+        TreeMap<String, PSNode> sortedClients = new TreeMap<String, PSNode>(clientObjects);
+        sortedClients.forEach((clientIName, clientI)->{
+            String clientIMachine = nodeMachine.get(clientIName);
+            if(!machineClients.containsKey(clientIMachine))
+            {
+                machineClients.put(clientIMachine, new ArrayList<String>());
+            }
+            machineClients.get(clientIMachine).add(clientIName);
+        });
+        
+        Iterator<String> iteratorMC = machineClients.keySet().iterator();
+        for( ; iteratorMC.hasNext() ; )
+        {
+            ArrayList<String> machineIClients = machineClients.get(iteratorMC.next());
+            int numMachineIClients = machineIClients.size();
+            
+            for(int j = 0 ; j < numMachineIClients ; j += clientsPerHost)
+            {
+                List<String> hostJClients = machineIClients.subList(j, Math.min(j + clientsPerHost, numMachineIClients));
+                String hostJName = String.join(PSTBUtil.ITEM_SEPARATOR, hostJClients);
+                String hostJContext = clientObjects.get(hostJClients.get(0)).generateNodeContext();
+                if(hostJClients.size() > 1)
+                {
+                    hostJContext += PSTBUtil.CONTEXT_SEPARATOR + "host";
+                }
+                
+                ProcessBuilder hostJProcess = generateNodeProcess(hostJName, hostJContext, false, sendDiaries);
+                if(hostJProcess == null)
+                {
+                    logger.error(logHeader + "Couldn't create client host process for " + hostJName + "!");
+                    return false;
+                }
+                clientProcesses.put(hostJName, hostJProcess);
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Gets the machine a node (or a client host) is on
+     * 
+     * @param nodeName - the name of the node - or the names of the clients a host holds
+     * @return the machine's name
+     */
+    private String getNodeMachine(String nodeName)
+    {
+        String firstName = nodeName.split(PSTBUtil.ITEM_SEPARATOR)[0];
+        return nodeMachine.get(firstName);
+    }
+    
     /**
      * Generates the ProcessBuilder for the requested node
      * 
@@ -889,7 +1091,7 @@ public abstract class PhysicalTopology {
             }
             command.add(user);
             
-            machine = nodeMachine.get(nodeName);
+            machine = getNodeMachine(nodeName);
             command.add(machine);
         }
         
@@ -918,7 +1120,9 @@ public abstract class PhysicalTopology {
             return null;
         }
         
-        String machineName = nodeMachine.get(nodeName);
+        // A client host gets the memory all of its clients would have had
+        int numHostedNodes = nodeName.split(PSTBUtil.ITEM_SEPARATOR).length;
+        String machineName = getNodeMachine(nodeName);
         HashMap<NodeRole, Integer> numNodesMachineI = numNodesMachine.get(machineName);
         Integer numNodeNTMachineI = numNodesMachineI.get(givenNT);
         Integer memory = AVAILABLE_MACHINE_MEM;
@@ -939,7 +1143,7 @@ public abstract class PhysicalTopology {
             }
         }
         
-        return memory / numNodeNTMachineI;
+        return (memory * numHostedNodes) / numNodeNTMachineI;
     }
     
     protected abstract PSEngine getEngine();
@@ -989,7 +1193,7 @@ public abstract class PhysicalTopology {
         }
         logger.debug(logHeader + "Broker Server done.");
         
-        PSTBUtil.waitAPeriod(numBrokers * PSTBUtil.SEC_TO_NANOSEC, logger, logHeader);
+        PSTBUtil.waitAPeriod(numBrokers * PSTBUtil.SEC_TO_NANOSEC, WaitType.Park, logger, logHeader);
         
         if(!noBrokerErrors.get())
         {
@@ -1003,7 +1207,7 @@ public abstract class PhysicalTopology {
             return false;
         }
         
-        PSTBUtil.waitAPeriod(numBrokers * PSTBUtil.SEC_TO_NANOSEC, logger, logHeader);
+        PSTBUtil.waitAPeriod(numBrokers * PSTBUtil.SEC_TO_NANOSEC, WaitType.Park, logger, logHeader);
         
         if(!noBrokerErrors.get())
         {
@@ -1305,7 +1509,7 @@ public abstract class PhysicalTopology {
         {
             command.add("scripts/checkMachine.sh"); 
             command.add(user);
-            command.add(nodeMachine.get(nodeIName));
+            command.add(getNodeMachine(nodeIName));
             command.add("\"" + nodeIClass + " " + nodeIName + "\"");
         }
         
@@ -2,7 +2,7 @@
  * @author padres-dev-4187
  * 
  * A wrapper around the variables that set a certain benchmark.
- *
+ * 
  */
 package pstb.startup.config;
 
@@ -13,6 +13,7 @@ import java.util.Properties;
 
 import org.apache.logging.log4j.Logger;
 
+import pstb.analysis.diary.LatencyHistogram;
 import pstb.creation.topology.PADRESTopology;
 import pstb.creation.topology.SIENATopology;
 import pstb.startup.config.SupportedEngines.PSEngine;
@@ -32,6 +33,14 @@ public class BenchmarkConfig {
     private final String naString = "startup.numAttribute";
     private final String arString = "startup.attributeRatio";
     private final String wfsString = "startup.workloadFilesStrings";
+    private final String openLoopString = "startup.openLoop";
+    private final String asyncWindowString = "startup.asyncWindow";
+    private final String clientsPerHostString = "startup.clientsPerHost";
+    private final String payloadContentString = "startup.payloadContent";
+    private final String diaryChunkSizeString = "startup.diaryChunkSize";
+    private final String latencyRecordingString = "startup.latencyRecording";
+    private final String histogramPrecisionString = "startup.histogramPrecision";
+    private final String rateSearchString = "startup.rateSearch";
     
     private ArrayList<PSEngine> engines;
     private ArrayList<ExperimentType> modes;
@@ -58,6 +67,15 @@ public class BenchmarkConfig {
     
     private ArrayList<String> workloadFilesStrings;
     
+    private Boolean openLoop;
+    private Integer asyncWindow;
+    private Integer clientsPerHost;
+    private PayloadContent payloadContent;
+    private Integer diaryChunkSize;
+    private LatencyRecording latencyRecording;
+    private Integer histogramPrecision;
+    private RateSearch rateSearch;
+    
     private Logger logger = null;
     private final String logHeader = "Benchmark Config: ";
     
@@ -95,6 +113,15 @@ public class BenchmarkConfig {
         attributeRatios = new ArrayList<AttributeRatio>();
         
         workloadFilesStrings = new ArrayList<String>();
+        
+        openLoop = null;
+        asyncWindow = null;
+        clientsPerHost = null;
+        payloadContent = null;
+        diaryChunkSize = null;
+        latencyRecording = null;
+        histogramPrecision = null;
+        rateSearch = null;
     }
     
     /**
@@ -492,6 +519,92 @@ public class BenchmarkConfig {
             everythingisProper = false;
         }
         
+        // OpenLoop
+        String givenOL = givenProperty.getProperty(openLoopString);
+        openLoop = PSTBUtil.checkIfBoolean(givenOL, false, null);
+        if(openLoop == null)
+        {
+            logger.error(logHeader + givenOL + " is not a valid openLoop value!");
+            everythingisProper = false;
+        }
+        
+        // AsyncWindow
+        String givenAW = givenProperty.getProperty(asyncWindowString);
+        asyncWindow = PSTBUtil.checkIfInteger(givenAW, false, null);
+        if(asyncWindow == null || asyncWindow < 0)
+        {
+            logger.error(logHeader + givenAW + " is not a valid asyncWindow value!");
+            asyncWindow = null;
+            everythingisProper = false;
+        }
+        
+        // ClientsPerHost
+        String givenCPH = givenProperty.getProperty(clientsPerHostString);
+        clientsPerHost = PSTBUtil.checkIfInteger(givenCPH, false, null);
+        if(clientsPerHost == null || clientsPerHost < 1)
+        {
+            logger.error(logHeader + givenCPH + " is not a valid clientsPerHost value!");
+            clientsPerHost = null;
+            everythingisProper = false;
+        }
+        
+        // PayloadContent
+        String givenPC = givenProperty.getProperty(payloadContentString);
+        try
+        {
+            payloadContent = PayloadContent.valueOf(givenPC);
+        }
+        catch(IllegalArgumentException | NullPointerException e)
+        {
+            logger.error(logHeader + givenPC + " is not a valid PayloadContent: ", e);
+            everythingisProper = false;
+        }
+        
+        // DiaryChunkSize
+        String givenDCS = givenProperty.getProperty(diaryChunkSizeString);
+        diaryChunkSize = PSTBUtil.checkIfInteger(givenDCS, false, null);
+        if(diaryChunkSize == null || diaryChunkSize < 0)
+        {
+            logger.error(logHeader + givenDCS + " is not a valid diaryChunkSize value!");
+            diaryChunkSize = null;
+            everythingisProper = false;
+        }
+        
+        // LatencyRecording
+        String givenLR = givenProperty.getProperty(latencyRecordingString);
+        try
+        {
+            latencyRecording = LatencyRecording.valueOf(givenLR);
+        }
+        catch(IllegalArgumentException | NullPointerException e)
+        {
+            logger.error(logHeader + givenLR + " is not a valid LatencyRecording: ", e);
+            everythingisProper = false;
+        }
+        
+        // HistogramPrecision
+        String givenHP = givenProperty.getProperty(histogramPrecisionString);
+        histogramPrecision = PSTBUtil.checkIfInteger(givenHP, false, null);
+        if(histogramPrecision == null || histogramPrecision < LatencyHistogram.MIN_PRECISION 
+                || histogramPrecision > LatencyHistogram.MAX_PRECISION)
+        {
+            logger.error(logHeader + givenHP + " is not a valid histogramPrecision value!");
+            histogramPrecision = null;
+            everythingisProper = false;
+        }
+        
+        // RateSearch
+        String givenRS = givenProperty.getProperty(rateSearchString);
+        try
+        {
+            rateSearch = RateSearch.valueOf(givenRS);
+        }
+        catch(IllegalArgumentException | NullPointerException e)
+        {
+            logger.error(logHeader + givenRS + " is not a valid RateSearch: ", e);
+            everythingisProper = false;
+        }
+        
         return everythingisProper;
     }
     
@@ -655,6 +768,86 @@ public class BenchmarkConfig {
         return workloadFilesStrings;
     }
     
+    /**
+     * Gets the openLoop flag
+     * 
+     * @return openLoop - whether clients should send their workloads on an open-loop schedule
+     */
+    public Boolean getOpenLoop()
+    {
+        return openLoop;
+    }
+    
+    /**
+     * Gets the asyncWindow
+     * 
+     * @return asyncWindow - how many publications a client can have in flight at once (0 = synchronous)
+     */
+    public Integer getAsyncWindow()
+    {
+        return asyncWindow;
+    }
+    
+    /**
+     * Gets the clientsPerHost
+     * 
+     * @return clientsPerHost - how many clients can share a single client process
+     */
+    public Integer getClientsPerHost()
+    {
+        return clientsPerHost;
+    }
+    
+    /**
+     * Gets the payloadContent
+     * 
+     * @return payloadContent - what the publication payloads should contain
+     */
+    public PayloadContent getPayloadContent()
+    {
+        return payloadContent;
+    }
+    
+    /**
+     * Gets the diaryChunkSize
+     * 
+     * @return diaryChunkSize - how many entries a client's diary holds before they're spilled to disk (0 = never spill)
+     */
+    public Integer getDiaryChunkSize()
+    {
+        return diaryChunkSize;
+    }
+    
+    /**
+     * Gets the latencyRecording
+     * 
+     * @return latencyRecording - whether clients record every latency as a diary entry or into histograms
+     */
+    public LatencyRecording getLatencyRecording()
+    {
+        return latencyRecording;
+    }
+    
+    /**
+     * Gets the histogramPrecision
+     * 
+     * @return histogramPrecision - the number of significant digits the clients' latency histograms keep
+     */
+    public Integer getHistogramPrecision()
+    {
+        return histogramPrecision;
+    }
+    
+    /**
+     * Gets the rateSearch
+     * 
+     * @return rateSearch - how the throughput master searches for the final throughput
+     */
+    public RateSearch getRateSearch()
+    {
+        return rateSearch;
+    }
+    
     /**
      * Prints all of the Benchmark variables
      */
@@ -687,6 +880,14 @@ public class BenchmarkConfig {
             logger.info(logHeader + "attributeRatios = " + Arrays.toString(attributeRatios.toArray()) + ".");
         }
         logger.info(logHeader + "workloadFilesStrings = " + Arrays.toString(workloadFilesStrings.toArray()) + ".");
+        logger.info(logHeader + "openLoop = " + openLoop + ".");
+        logger.info(logHeader + "asyncWindow = " + asyncWindow + ".");
+        logger.info(logHeader + "clientsPerHost = " + clientsPerHost + ".");
+        logger.info(logHeader + "payloadContent = " + payloadContent + ".");
+        logger.info(logHeader + "diaryChunkSize = " + diaryChunkSize + ".");
+        logger.info(logHeader + "latencyRecording = " + latencyRecording + ".");
+        logger.info(logHeader + "histogramPrecision = " + histogramPrecision + ".");
+        logger.info(logHeader + "rateSearch = " + rateSearch + ".");
     }
     
     /**
@@ -764,6 +965,46 @@ public class BenchmarkConfig {
             logger.error(logHeader + "No Workload File String(s) were given!");
             anyFieldNull = true;
         }
+        if(openLoop == null)
+        {
+            logger.error(logHeader + "No openLoop value was given!");
+            anyFieldNull = true;
+        }
+        if(asyncWindow == null)
+        {
+            logger.error(logHeader + "No asyncWindow value was given!");
+            anyFieldNull = true;
+        }
+        if(clientsPerHost == null)
+        {
+            logger.error(logHeader + "No clientsPerHost value was given!");
+            anyFieldNull = true;
+        }
+        if(payloadContent == null)
+        {
+            logger.error(logHeader + "No payloadContent value was given!");
+            anyFieldNull = true;
+        }
+        if(diaryChunkSize == null)
+        {
+            logger.error(logHeader + "No diaryChunkSize value was given!");
+            anyFieldNull = true;
+        }
+        if(latencyRecording == null)
+        {
+            logger.error(logHeader + "No latencyRecording value was given!");
+            anyFieldNull = true;
+        }
+        if(histogramPrecision == null)
+        {
+            logger.error(logHeader + "No histogramPrecision value was given!");
+            anyFieldNull = true;
+        }
+        if(rateSearch == null)
+        {
+            logger.error(logHeader + "No rateSearch value was given!");
+            anyFieldNull = true;
+        }
         
         return anyFieldNull;
     }
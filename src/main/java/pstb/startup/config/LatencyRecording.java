@@ -0,0 +1,5 @@
+package pstb.startup.config;
+
+public enum LatencyRecording {
+    Entries, Histograms
+}
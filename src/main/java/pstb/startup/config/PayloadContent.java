@@ -0,0 +1,5 @@
+package pstb.startup.config;
+
+public enum PayloadContent {
+    Constant, Compressible75P, Compressible50P, Compressible25P, Random
+}
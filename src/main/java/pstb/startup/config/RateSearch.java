@@ -0,0 +1,5 @@
+package pstb.startup.config;
+
+public enum RateSearch {
+    Secant, RampBisect, Gradient
+}
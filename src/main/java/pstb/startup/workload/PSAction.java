@@ -13,6 +13,7 @@ public class PSAction implements java.io.Serializable
     private String attributes;
     private Integer payloadSize;    // bytes
     private Long timeActive;    // nanoseconds
+    private Integer messageNumber;    // only set on generated throughput publications
     
     public PSAction()
     {
@@ -21,6 +22,7 @@ public class PSAction implements java.io.Serializable
         attributes = null;
         payloadSize = null;
         timeActive = null;
+        messageNumber = null;
     }
     
     public PSAction(PSActionType givenActionType, Long givenDelay, String givenAttributes, Integer givenPayloadSize, 
@@ -31,6 +33,7 @@ public class PSAction implements java.io.Serializable
         attributes = givenAttributes;
         payloadSize = givenPayloadSize;
         timeActive = givenTimeActive;
+        messageNumber = null;
     }
     
     /**
@@ -78,6 +81,16 @@ public class PSAction implements java.io.Serializable
         this.timeActive = nTA;
     }
     
+    /**
+     * Sets the message number
+     * (Throughput publications are built from a cached template - this is the only part that changes between them)
+     * @param nMN - the new message number
+     */
+    public void setMessageNumber(Integer nMN) 
+    {
+        this.messageNumber = nMN;
+    }
+    
     /**
      * Gets the actionType of this action
      * 
@@ -124,5 +137,14 @@ public class PSAction implements java.io.Serializable
         return timeActive;
     }
     
+    /**
+     * Gets the message number
+     * @return the message number (null if this action isn't a generated throughput publication)
+     */
+    public Integer getMessageNumber() 
+    {
+        return messageNumber;
+    }
+    
 
 }
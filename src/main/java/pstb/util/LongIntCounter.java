@@ -0,0 +1,241 @@
+package pstb.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Counts how many times each long value occurs - without boxing either the value or its count.
+ * 
+ * The values and counts sit in two parallel arrays, and a value's slot is found by open addressing
+ * (hash, then probe forward until the value or an empty slot turns up).
+ * The table doubles whenever it gets half full, so probes stay short.
+ * Nothing is kept in order - the values are only sorted when they're asked for.
+ */
+public class LongIntCounter
+{
+    private static final int MIN_CAPACITY = 16;
+    
+    private long[] keys;
+    private int[] counts; // 0 means the slot is empty
+    private int size;
+    private int mask;
+    
+    /**
+     * Constructor
+     */
+    public LongIntCounter()
+    {
+        this(MIN_CAPACITY);
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param givenExpectedSize - the number of distinct values expected
+     */
+    public LongIntCounter(int givenExpectedSize)
+    {
+        int capacity = MIN_CAPACITY;
+        while(capacity < givenExpectedSize * 2)
+        {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+    
+    private void allocate(int givenCapacity)
+    {
+        keys = new long[givenCapacity];
+        counts = new int[givenCapacity];
+        mask = givenCapacity - 1;
+        size = 0;
+    }
+    
+    /**
+     * @return the number of distinct values counted
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+    
+    /**
+     * Adds to the given value's count
+     * (Counts saturate at Integer.MAX_VALUE rather than wrapping.)
+     * 
+     * @param givenKey - the value
+     * @param givenCount - how much to add (nothing is added unless this is positive)
+     */
+    public void add(long givenKey, int givenCount)
+    {
+        if(givenCount <= 0)
+        {
+            return;
+        }
+        
+        int slot = findSlot(givenKey);
+        if(counts[slot] == 0)
+        {
+            keys[slot] = givenKey;
+            counts[slot] = givenCount;
+            size++;
+            if(size * 2 > keys.length)
+            {
+                grow();
+            }
+        }
+        else
+        {
+            counts[slot] = (int) Math.min((long) counts[slot] + givenCount, Integer.MAX_VALUE);
+        }
+    }
+    
+    /**
+     * @param givenKey - the value
+     * @return the number of times the given value was counted; 0 if it never was
+     */
+    public int get(long givenKey)
+    {
+        return counts[findSlot(givenKey)];
+    }
+    
+    /**
+     * Adds every count in the given counter to this one
+     * 
+     * @param givenCounter - the counter to add
+     */
+    public void merge(LongIntCounter givenCounter)
+    {
+        for(int i = 0 ; i < givenCounter.keys.length ; i++)
+        {
+            if(givenCounter.counts[i] != 0)
+            {
+                add(givenCounter.keys[i], givenCounter.counts[i]);
+            }
+        }
+    }
+    
+    /**
+     * Writes every value and its count
+     * 
+     * @param out - where to write them
+     * @throws IOException if they can't be written
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeInt(size);
+        for(int i = 0 ; i < keys.length ; i++)
+        {
+            if(counts[i] != 0)
+            {
+                out.writeLong(keys[i]);
+                out.writeInt(counts[i]);
+            }
+        }
+    }
+    
+    /**
+     * Reads values and counts written by writeTo(), and adds them to this counter
+     * 
+     * @param in - where to read them from
+     * @throws IOException if they can't be read
+     */
+    public void readFrom(DataInput in) throws IOException
+    {
+        int numKeys = in.readInt();
+        if(numKeys < 0)
+        {
+            throw new IOException("Counter has an invalid size " + numKeys + "!");
+        }
+        
+        for(int i = 0 ; i < numKeys ; i++)
+        {
+            long key = in.readLong();
+            add(key, in.readInt());
+        }
+    }
+    
+    /**
+     * @return every value counted, smallest first
+     */
+    public long[] keysByValue()
+    {
+        long[] retVal = new long[size];
+        int j = 0;
+        for(int i = 0 ; i < keys.length ; i++)
+        {
+            if(counts[i] != 0)
+            {
+                retVal[j++] = keys[i];
+            }
+        }
+        Arrays.sort(retVal);
+        return retVal;
+    }
+    
+    /**
+     * @return every value counted, most frequent first (values with the same count are smallest first)
+     */
+    public long[] keysByCount()
+    {
+        long[] sortedKeys = keysByValue();
+        
+        // Sort (count, position) pairs packed into longs - the inverted count goes in the high half, so the largest count comes first
+        long[] packed = new long[size];
+        for(int i = 0 ; i < size ; i++)
+        {
+            long invertedCount = Integer.MAX_VALUE - get(sortedKeys[i]);
+            packed[i] = (invertedCount << 32) | i;
+        }
+        Arrays.sort(packed);
+        
+        long[] retVal = new long[size];
+        for(int i = 0 ; i < size ; i++)
+        {
+            retVal[i] = sortedKeys[(int) packed[i]];
+        }
+        return retVal;
+    }
+    
+    private int findSlot(long givenKey)
+    {
+        int slot = hash(givenKey) & mask;
+        while(counts[slot] != 0 && keys[slot] != givenKey)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private static int hash(long givenKey)
+    {
+        long h = givenKey * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        for(int i = 0 ; i < oldKeys.length ; i++)
+        {
+            if(oldCounts[i] != 0)
+            {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                size++;
+            }
+        }
+    }
+}
@@ -9,7 +9,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
@@ -19,18 +18,17 @@ import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.Logger;
 
-import pstb.analysis.diary.ClientDiary;
 import pstb.analysis.diary.DiaryHeader;
 import pstb.analysis.diary.DistributedFlagValue;
 import pstb.benchmark.process.broker.PSTBBrokerProcess;
@@ -47,6 +45,12 @@ public class PSTBUtil {
     public static final Long SEC_TO_MILLISEC = 1000L;
     public static final Long MILLISEC_TO_NANOSEC = 1000000L;
     
+    // How long before the end of a Hybrid wait to stop parking and start spinning
+    // (parkNanos typically wakes up 50-100 microseconds late on Linux)
+    public static final long WAIT_SPIN_WINDOW = 200000L;
+    // The waits of anything that doesn't keep its own WaitStatistics (i.e. everything but the Clients)
+    public static final WaitStatistics WAIT_STATS = new WaitStatistics();
+    
     public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyy-MM-dd-HH:mm:ss.SSS");
     public static final String DATE_REGEX = "\\d{4}-\\d{2}-\\d{2}-\\d{2}:\\d{2}:\\d{2}.\\d{3}";
     public static final String BENCHMARK_NUMBER_REGEX = "[a-zA-Z0-9+-]{5}";
@@ -74,8 +78,15 @@ public class PSTBUtil {
     
     public static final String INIT = "On your command.";
     public static final String START = "start";
+    public static final String SYNC = "sync";
     public static final String LINK = "connect";
     
+    // How many round trips the master uses to estimate a node's clock offset
+    public static final int NUM_SYNC_SAMPLES = 5;
+    // How far in the future (in milliseconds) the master schedules the start of a run
+    // - it has to cover sending the start signal to every node
+    public static final Long START_LEAD_TIME = 500L;
+    
     public static final String ERROR = "ERROR!";
     public static final String STOP = "STOP!";
     
@@ -170,6 +181,45 @@ public class PSTBUtil {
         return num;
     }
     
+    /**
+     * Sees if a given String is a Boolean
+     * (Unlike Boolean.parseBoolean, anything other than true or false isn't treated as false)
+     * 
+     * @param s - the String to look at
+     * @param log - a boolean that determines if we should log or not
+     * @return null if the String isn't a Boolean; the value otherwise
+     */
+    public static Boolean checkIfBoolean(String s, boolean log, Logger logger) 
+    {
+        Boolean retVal = null;
+        if(s != null)
+        {
+            String trimmed = s.trim();
+            if(trimmed.equalsIgnoreCase("true"))
+            {
+                retVal = new Boolean(true);
+            }
+            else if(trimmed.equalsIgnoreCase("false"))
+            {
+                retVal = new Boolean(false);
+            }
+        }
+        
+        if(log)
+        {
+            if(retVal == null)
+            {
+                logger.error("isBoolean: " + s + " is not a boolean.");
+            }
+            else
+            {
+                logger.debug("isBoolean: " + s + " is a boolean.");
+            }
+        }
+        
+        return retVal;
+    }
+    
     /**
      * Turns a String[] into a ArrayList<String>
      * 
@@ -261,35 +311,6 @@ public class PSTBUtil {
         return null; 
     }
     
-    /**
-     * Deserializes a ClientDiary object
-     * 
-     * @param diaryName - the name of this diary
-     * @return null on failure; the requested diary otherwise
-     */
-    public static ClientDiary readDiaryObject(InputStream givenIS, Logger log, String logHeader)
-    {
-        ClientDiary diaryI = null;
-        try
-        {
-            ObjectInputStream oISIn = new ObjectInputStream(givenIS);
-            diaryI = (ClientDiary) oISIn.readObject();
-            oISIn.close();
-        }
-        catch (IOException e)
-        {
-            log.error(logHeader + "error accessing ObjectInputStream ", e);
-            return null;
-        }
-        catch(ClassNotFoundException e)
-        {
-            log.error(logHeader + "can't find class ", e);
-            return null;
-        }
-        
-        return diaryI;
-    }
-    
     public static boolean sendStringAcrossSocket(OutputStream givenOutputStream, String givenString)
     {
         PrintWriter out = new PrintWriter(givenOutputStream, true);
@@ -324,6 +345,16 @@ public class PSTBUtil {
         Nano, Milli
     }
     
+    /**
+     * How waitAPeriod() should wait
+     *  - Spin: busy-wait for the whole period (most precise, but uses a whole core)
+     *  - Park: park the thread for the whole period (cheapest, but may overshoot by the scheduler's granularity)
+     *  - Hybrid: park for most of the period and only spin for the last WAIT_SPIN_WINDOW nanoseconds
+     */
+    public enum WaitType{
+        Spin, Park, Hybrid
+    }
+    
     /**
      * Given a time value and what the original units are 
      * generates an associated string.
@@ -742,15 +773,45 @@ public class PSTBUtil {
         }
     }
     
-    public static void synchronizeRun()
+    /**
+     * Waits until the given start time
+     * (Replaces the old "wait for the next quarter minute" synchronization - 
+     * the master now hands every node a start time already corrected for that node's clock offset.)
+     * 
+     * @param startTime - the time the run should start at, in this machine's System.currentTimeMillis() - null to start immediately
+     * @param log - the Logger to use
+     * @param logHeader - the header to put on the log lines
+     */
+    public static void waitUntil(Long startTime, Logger log, String logHeader)
+    {
+        waitUntil(startTime, WAIT_STATS, log, logHeader);
+    }
+    
+    /**
+     * Waits until the given start time
+     * @see waitUntil(Long, Logger, String)
+     * 
+     * @param startTime - the time the run should start at, in this machine's System.currentTimeMillis() - null to start immediately
+     * @param givenStats - the WaitStatistics to record the wait into (null not to record it)
+     * @param log - the Logger to use
+     * @param logHeader - the header to put on the log lines
+     */
+    public static void waitUntil(Long startTime, WaitStatistics givenStats, Logger log, String logHeader)
     {
-        Calendar cal = Calendar.getInstance();
-        int seconds = -1;
+        if(startTime == null)
+        {
+            log.warn(logHeader + "No start time given - starting immediately.");
+            return;
+        }
         
-        while(seconds != 00 && seconds != 15 && seconds != 30 && seconds != 45)
+        long timeUntilStart = (startTime - System.currentTimeMillis()) * MILLISEC_TO_NANOSEC;
+        if(timeUntilStart > 0)
+        {
+            waitAPeriod(timeUntilStart, WaitType.Hybrid, givenStats, log, logHeader);
+        }
+        else
         {
-            cal.setTimeInMillis(System.currentTimeMillis());
-            seconds = cal.get(Calendar.SECOND);
+            log.warn(logHeader + "Start time passed " + (-timeUntilStart / MILLISEC_TO_NANOSEC) + " ms ago - starting immediately.");
         }
     }
     
@@ -793,16 +854,79 @@ public class PSTBUtil {
     }
     
     public static void waitAPeriod(long periodToWait, Logger log, String logHeader)
+    {
+        waitAPeriod(periodToWait, WaitType.Hybrid, log, logHeader);
+    }
+    
+    /**
+     * Waits for the given period using the given WaitType
+     * How late the wait returned is added to WAIT_STATS
+     * @see waitAPeriod(long, WaitType, WaitStatistics, Logger, String)
+     */
+    public static long waitAPeriod(long periodToWait, WaitType givenWT, Logger log, String logHeader)
+    {
+        return waitAPeriod(periodToWait, givenWT, WAIT_STATS, log, logHeader);
+    }
+    
+    /**
+     * Waits for the given period using the given WaitType
+     * How late the wait returned is added to the given WaitStatistics
+     * 
+     * If the thread is interrupted, the wait ends there and then (with the interrupt flag still set)
+     * - and isn't recorded, as it never got to its end time.
+     * 
+     * @param periodToWait - how long to wait (in nanoseconds)
+     * @param givenWT - how to wait
+     * @param givenStats - the WaitStatistics to record the wait into (null not to record it)
+     * @param log - the Logger to use
+     * @param logHeader - the header to put on the log lines
+     * @return how long after the requested end time the wait actually returned (in nanoseconds)
+     * - negative if it was cut short by an interrupt
+     */
+    public static long waitAPeriod(long periodToWait, WaitType givenWT, WaitStatistics givenStats, Logger log, String logHeader)
     {
         String convertedPeriod = createTimeString(periodToWait, TimeType.Nano, TimeUnit.SECONDS);
-        
         log.debug(logHeader + "Pausing for " + convertedPeriod + "...");
+        
         long endTime = System.nanoTime() + periodToWait;
-        while(endTime > System.nanoTime())
+        
+        if(!givenWT.equals(WaitType.Spin))
+        {
+            long parkUntil = endTime;
+            if(givenWT.equals(WaitType.Hybrid))
+            {
+                parkUntil -= WAIT_SPIN_WINDOW;
+            }
+            
+            // parkNanos can return early (spuriously or because of an interrupt) - so keep parking until we're due
+            long remaining = parkUntil - System.nanoTime();
+            while(remaining > 0)
+            {
+                LockSupport.parkNanos(remaining);
+                if(Thread.interrupted())
+                {
+                    // Don't swallow the interrupt - but don't let it turn the rest of the wait into a spin either
+                    Thread.currentThread().interrupt();
+                    log.debug(logHeader + "Pause interrupted.");
+                    return System.nanoTime() - endTime;
+                }
+                remaining = parkUntil - System.nanoTime();
+            }
+        }
+        
+        long now = System.nanoTime();
+        while(endTime > now)
+        {
+            now = System.nanoTime();
+        }
+        
+        long overshoot = now - endTime;
+        if(givenStats != null)
         {
-            // Nothing
+            givenStats.recordWait(givenWT, overshoot);
         }
         log.debug(logHeader + "Pause complete.");
+        return overshoot;
     }
     
     public static String generateContext(Boolean distributed, String benchmarkStartTime, String topologyFileString, 
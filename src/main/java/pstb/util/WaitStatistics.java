@@ -0,0 +1,116 @@
+package pstb.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Logger;
+
+import pstb.util.PSTBUtil.TimeType;
+import pstb.util.PSTBUtil.WaitType;
+
+/**
+ * @author padres-dev-4187
+ * 
+ * Keeps track of how late PSTBUtil.waitAPeriod() returns - i.e. how far past the requested end time each wait ran -
+ * for each WaitType.
+ * It's safe to use from multiple threads.
+ * @see PSTBUtil#waitAPeriod(long, WaitType, Logger, String)
+ */
+public class WaitStatistics
+{
+    private final LongAdder[] numWaits;
+    private final LongAdder[] totalOvershoot;
+    private final AtomicLong[] maxOvershoot;
+    
+    /**
+     * Empty Constructor
+     */
+    public WaitStatistics()
+    {
+        int numTypes = WaitType.values().length;
+        numWaits = new LongAdder[numTypes];
+        totalOvershoot = new LongAdder[numTypes];
+        maxOvershoot = new AtomicLong[numTypes];
+        for(int i = 0 ; i < numTypes ; i++)
+        {
+            numWaits[i] = new LongAdder();
+            totalOvershoot[i] = new LongAdder();
+            maxOvershoot[i] = new AtomicLong(0L);
+        }
+    }
+    
+    /**
+     * Records a completed wait
+     * 
+     * @param givenWT - the type of wait that was done
+     * @param overshoot - how long after the requested end time the wait returned (in nanoseconds)
+     */
+    public void recordWait(WaitType givenWT, long overshoot)
+    {
+        int i = givenWT.ordinal();
+        numWaits[i].increment();
+        totalOvershoot[i].add(overshoot);
+        
+        AtomicLong maxI = maxOvershoot[i];
+        long currentMax = maxI.get();
+        while(overshoot > currentMax && !maxI.compareAndSet(currentMax, overshoot))
+        {
+            currentMax = maxI.get();
+        }
+    }
+    
+    /**
+     * @param givenWT - the WaitType
+     * @return the number of waits of that type
+     */
+    public long getNumWaits(WaitType givenWT)
+    {
+        return numWaits[givenWT.ordinal()].sum();
+    }
+    
+    /**
+     * @param givenWT - the WaitType
+     * @return the average overshoot of that type (in nanoseconds); 0 if there were no waits
+     */
+    public long getAverageOvershoot(WaitType givenWT)
+    {
+        long num = getNumWaits(givenWT);
+        if(num == 0)
+        {
+            return 0L;
+        }
+        return totalOvershoot[givenWT.ordinal()].sum() / num;
+    }
+    
+    /**
+     * @param givenWT - the WaitType
+     * @return the largest overshoot of that type (in nanoseconds)
+     */
+    public long getMaxOvershoot(WaitType givenWT)
+    {
+        return maxOvershoot[givenWT.ordinal()].get();
+    }
+    
+    /**
+     * Logs the statistics for every WaitType that was used
+     * 
+     * @param log - the Logger to use
+     * @param logHeader - the header to put on each line
+     */
+    public void logStatistics(Logger log, String logHeader)
+    {
+        WaitType[] allTypes = WaitType.values();
+        for(int i = 0 ; i < allTypes.length ; i++)
+        {
+            WaitType typeI = allTypes[i];
+            long num = getNumWaits(typeI);
+            if(num > 0)
+            {
+                String avg = PSTBUtil.createTimeString(getAverageOvershoot(typeI), TimeType.Nano, TimeUnit.MICROSECONDS);
+                String max = PSTBUtil.createTimeString(getMaxOvershoot(typeI), TimeType.Nano, TimeUnit.MICROSECONDS);
+                log.info(logHeader + typeI + " waits: " + num + " | average overshoot = " + avg + " | max overshoot = " + max + ".");
+            }
+        }
+    }
+}